@@ -9,6 +9,7 @@ import android.view.Menu;
 import android.view.MenuItem;
 
 import io.github.patrickconley.arbutus.R;
+import io.github.patrickconley.arbutus.settings.ScanPreferences;
 import io.github.patrickconley.arbutus.settings.view.SettingsActivity;
 
 public class LibraryActivity extends AppCompatActivity {
@@ -21,6 +22,7 @@ public class LibraryActivity extends AppCompatActivity {
         setSupportActionBar((Toolbar) findViewById(R.id.library_toolbar));
 
         PreferenceManager.setDefaultValues(this, R.xml.preferences, false);
+        ScanPreferences.updateWatcher(this);
     }
 
     @Override
@@ -0,0 +1,177 @@
+package io.github.patrickconley.arbutus.datastorage;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Feature: every DAO query is answered from an index, not by reading a whole table.
+ * <p/>
+ * Room doesn't keep its queries at runtime, so they're copied here: add any new {@code @Query}
+ * to this list.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryPlanTest {
+
+    /*
+     * A plan step that reads every row of a table, e.g., "SCAN TABLE Tag (~100000 rows)" (older
+     * SQLite) or "SCAN Tag", including in an index's order, e.g., "SCAN Tag USING INDEX
+     * index_Tag_key_value", which also looks up each row. Scans of a covering index read only the
+     * index, so they're allowed.
+     */
+    private static final Pattern TABLE_SCAN = Pattern.compile(
+            "^SCAN (TABLE )?\\w+( AS \\w+)?( USING INDEX \\w+)?( \\(~\\d+ rows\\))?$");
+
+    /*
+     * Queries that need every row, and queries that shouldn't
+     */
+    private static final Map<String, String> FULL_SCANS = new LinkedHashMap<>();
+    private static final Map<String, String> QUERIES = new LinkedHashMap<>();
+
+    static {
+        FULL_SCANS.put("LibraryEntryDao.truncate", "delete from LibraryEntry");
+        FULL_SCANS.put("LibraryEntryDao.getAll", "select * from LibraryEntry");
+        FULL_SCANS.put("LibraryNodeDao.getAll", "select * from LibraryNode order by id");
+        FULL_SCANS.put("QuarantinedFileDao.truncate", "delete from QuarantinedFile");
+        FULL_SCANS.put("QuarantinedFileDao.count", "select count(*) from QuarantinedFile");
+        FULL_SCANS.put("QuarantinedFileDao.getAll", "select * from QuarantinedFile order by uri");
+        FULL_SCANS.put("ScannedDirectoryDao.truncate", "delete from ScannedDirectory");
+        FULL_SCANS.put("ScannedDirectoryDao.getAll", "select * from ScannedDirectory");
+        FULL_SCANS.put("TagDao.truncate", "delete from tag");
+        FULL_SCANS.put("TagDao.deleteUnused",
+                       "delete from tag " +
+                       "where id not in (select tagId from TagInTrack) " +
+                       "and id not in (select tagId from LibraryEntry where tagId is not null)");
+        FULL_SCANS.put("TagDao.getMostUsed",
+                       "select tag.* from tag join TagInTrack on TagInTrack.tagId = tag.id " +
+                       "group by tag.id order by count(*) desc limit ?");
+        FULL_SCANS.put("TagDao.getAll", "select * from tag");
+        FULL_SCANS.put("TagInTrackDao.truncate", "delete from TagInTrack");
+        FULL_SCANS.put("TagInTrackDao.getAll", "select * from TagInTrack");
+        FULL_SCANS.put("TrackDao.truncate", "delete from track");
+        FULL_SCANS.put("TrackDao.getAll", "select * from track");
+
+        QUERIES.put("LibraryEntryDao.deleteByTrackId",
+                    "delete from LibraryEntry where trackId = ?");
+        QUERIES.put("LibraryEntryDao.deleteEmptyEntries",
+                    "delete from LibraryEntry where trackId is null " +
+                    "and id not in (select parentId from LibraryEntry where parentId is not null)");
+        QUERIES.put("LibraryEntryDao.getNullTagAtRoot",
+                    "select * from LibraryEntry " +
+                    "where parentId is null and tagId is null and trackId is null");
+        QUERIES.put("LibraryEntryDao.getTagAtRoot",
+                    "select * from LibraryEntry " +
+                    "where parentId is null and tagId = ? and trackId is null");
+        QUERIES.put("LibraryEntryDao.getTrackAtRoot",
+                    "select * from LibraryEntry " +
+                    "where parentId is null and tagId = ? and trackId = ?");
+        QUERIES.put("LibraryEntryDao.getTrackWithNullTagAtRoot",
+                    "select * from LibraryEntry " +
+                    "where parentId is null and tagId is null and trackId = ?");
+        QUERIES.put("LibraryEntryDao.getTagBelowRoot",
+                    "select * from LibraryEntry " +
+                    "where parentId = ? and tagId = ? and trackId is null");
+        QUERIES.put("LibraryEntryDao.getNullTagBelowRoot",
+                    "select * from LibraryEntry " +
+                    "where parentId = ? and tagId is null and trackId is null");
+        QUERIES.put("LibraryEntryDao.getTrackBelowRoot",
+                    "select * from LibraryEntry " +
+                    "where parentId = ? and tagId = ? and trackId = ?");
+        QUERIES.put("LibraryEntryDao.getTrackWithNullTagBelowRoot",
+                    "select * from LibraryEntry " +
+                    "where parentId = ? and tagId is null and trackId = ?");
+        QUERIES.put("LibraryEntryDao.getRootEntries",
+                    "select * from LibraryEntry where parentId is null");
+        QUERIES.put("LibraryEntryDao.getByParent",
+                    "select * from LibraryEntry where parentId = ?");
+        QUERIES.put("LibraryNodeDao.getRootNodes",
+                    "select * from LibraryNode where parentId is null");
+        QUERIES.put("LibraryNodeDao.getByParent", "select * from LibraryNode where parentId = ?");
+        QUERIES.put("QuarantinedFileDao.deleteByUri", "delete from QuarantinedFile where uri = ?");
+        QUERIES.put("TagDao.getTagByKeyValue",
+                    "select * from tag where \"key\" = ? and value = ?");
+        QUERIES.put("TagInTrackDao.deleteByTrackId", "delete from TagInTrack where trackId = ?");
+        QUERIES.put("TrackDao.deleteById", "delete from track where id = ?");
+        QUERIES.put("TrackDao.getByUri", "select * from track where uri = ?");
+        QUERIES.put("TrackDao.getByUriRange", "select * from track where uri >= ? and uri < ?");
+    }
+
+    private Context context = ApplicationProvider.getApplicationContext();
+    private AppDatabase db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+
+    @After
+    public void after() {
+        db.close();
+    }
+
+    /**
+     * Given the library's schema, when I explain each query, then no query scans a table.
+     */
+    @Test
+    public void queriesUseIndexes() {
+        List<String> scans = new ArrayList<>();
+        for (Map.Entry<String, String> query : QUERIES.entrySet()) {
+            for (String step : explain(query.getValue())) {
+                if (TABLE_SCAN.matcher(step).matches()) {
+                    scans.add(query.getKey() + ": " + step);
+                }
+            }
+        }
+
+        assertThat(scans).isEmpty();
+    }
+
+    /**
+     * Given the library's schema, when I explain each query that needs every row, then the query
+     * is valid.
+     */
+    @Test
+    public void fullScansAreValid() {
+        for (String query : FULL_SCANS.values()) {
+            explain(query);
+        }
+    }
+
+    /**
+     * Given plan steps of each kind, when I check them for table scans, then only scans of a
+     * covering index, and searches, pass.
+     */
+    @Test
+    public void tableScansAreRecognized() {
+        assertThat(TABLE_SCAN.matcher("SCAN TABLE Tag (~100000 rows)").matches()).isTrue();
+        assertThat(TABLE_SCAN.matcher("SCAN Tag").matches()).isTrue();
+        assertThat(TABLE_SCAN.matcher("SCAN Tag USING INDEX index_Tag_key_value").matches())
+                .isTrue();
+        assertThat(TABLE_SCAN.matcher("SCAN Tag USING COVERING INDEX index_Tag_key_value")
+                             .matches()).isFalse();
+        assertThat(TABLE_SCAN.matcher("SEARCH Tag USING INDEX index_Tag_key_value (key=?)")
+                             .matches()).isFalse();
+    }
+
+    private List<String> explain(String query) {
+        List<String> steps = new ArrayList<>();
+        try (Cursor cursor = db.query("explain query plan " + query, new Object[0])) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                steps.add(cursor.getString(detail));
+            }
+        }
+        return steps;
+    }
+
+}
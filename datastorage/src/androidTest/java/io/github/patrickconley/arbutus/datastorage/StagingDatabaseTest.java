@@ -0,0 +1,118 @@
+package io.github.patrickconley.arbutus.datastorage;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import io.github.patrickconley.arbutus.datastorage.library.LibraryManager;
+import io.github.patrickconley.arbutus.datastorage.metadata.TrackManager;
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.datastorage.metadata.model.TagInTrack;
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Feature: rebuild the library without emptying it while the rebuild runs.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StagingDatabaseTest {
+
+    private static final Uri OLD_URI = Uri.parse("file://old.ogg");
+    private static final Uri NEW_URI = Uri.parse("file://new.ogg");
+
+    /*
+     * The library is attached to the staging database to publish, so it needs a file
+     */
+    private static final String LIBRARY_NAME = "arbutus-staging-test.db";
+
+    private Context context = ApplicationProvider.getApplicationContext();
+    private AppDatabase library;
+
+    private MetadataTestUtil metadata = new MetadataTestUtil();
+
+    private StagingDatabase staging;
+
+    @Before
+    public void setupLibrary() {
+        context.deleteDatabase(LIBRARY_NAME);
+        library = Room.databaseBuilder(context, AppDatabase.class, LIBRARY_NAME).build();
+        new LibraryContentTypePopulator(library).run();
+        new LibraryNodePopulator(library).run();
+
+        Track track = new Track(OLD_URI);
+        Tag tag = new Tag("artist", "foo");
+        new TrackManager(library).addTrack(track, Collections.singletonMap("artist", tag));
+        new LibraryManager(library).addTrack(track, Collections.singletonMap("artist", tag));
+
+        staging = StagingDatabase.create(context, library);
+    }
+
+    @After
+    public void after() {
+        staging.close();
+        library.close();
+        context.deleteDatabase(LIBRARY_NAME);
+    }
+
+    /**
+     * Given a new staging database, then it has the library's nodes but none of its tracks.
+     */
+    @Test
+    public void stagingStartsEmpty() {
+        AppDatabase db = staging.getDatabase();
+
+        assertThat(db.libraryNodeDao().getAll())
+                .containsExactlyElementsIn(library.libraryNodeDao().getAll());
+        assertThat(db.trackDao().getAll()).isEmpty();
+    }
+
+    /**
+     * Given a library with a track, when I stage a different track and publish it, then the
+     * library contains only the staged track, its tags, and its entries.
+     */
+    @Test
+    public void publishReplacesLibrary() {
+        AppDatabase db = staging.getDatabase();
+        Track track = new Track(NEW_URI);
+        Tag artist = new Tag("artist", "bar");
+        Tag album = new Tag("album", "baz");
+        new TrackManager(db).addTrack(track, metadata.buildTagMap(artist, album));
+        new LibraryManager(db).addTrack(track, metadata.buildTagMap(artist, album));
+
+        staging.publish();
+
+        assertThat(library.trackDao().getAll()).containsExactly(track);
+        assertThat(library.tagDao().getAll()).containsExactly(artist, album);
+        assertThat(library.tagInTrackDao().getAll())
+                .containsExactly(new TagInTrack(track, artist), new TagInTrack(track, album));
+        assertThat(library.libraryEntryDao().getAll())
+                .containsExactlyElementsIn(db.libraryEntryDao().getAll());
+        assertThat(library.libraryEntryDao().getAll()).hasSize(3);
+    }
+
+    /**
+     * Given a library with a track, when I publish an empty staging database, then the library
+     * is empty.
+     */
+    @Test
+    public void publishEmptyStaging() {
+        staging.publish();
+
+        assertThat(library.trackDao().getAll()).isEmpty();
+        assertThat(library.tagDao().getAll()).isEmpty();
+        assertThat(library.libraryEntryDao().getAll()).isEmpty();
+        assertThat(library.libraryNodeDao().getAll()).hasSize(3);
+    }
+
+}
@@ -13,7 +13,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import io.github.patrickconley.arbutus.datastorage.AppDatabase;
@@ -24,6 +26,7 @@ import io.github.patrickconley.arbutus.datastorage.library.dao.LibraryNodeDao;
 import io.github.patrickconley.arbutus.datastorage.library.model.LibraryContentType;
 import io.github.patrickconley.arbutus.datastorage.library.model.LibraryEntry;
 import io.github.patrickconley.arbutus.datastorage.library.model.LibraryNode;
+import io.github.patrickconley.arbutus.datastorage.metadata.TrackManager;
 import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
 import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
 
@@ -296,6 +299,187 @@ public class LibraryManagerTest {
         assertThat(getAllEntries()).containsExactly(artist, album1, album2, title1, title2);
     }
 
+    /**
+     * Given the library contains two tracks on different albums by the same artist, when I remove
+     * one track and its empty entries, then only the other track's entries remain.
+     */
+    @Test
+    public void removeTrack() {
+        Tag artistTag = buildTag("artist", "foo");
+        Tag album1Tag = buildTag("album", "bar");
+        Tag album2Tag = buildTag("album", "ham");
+        Tag titleTag = buildTag("title", "baz");
+
+        Track track1 = buildTrack(DEFAULT_URI);
+        Track track2 = buildTrack(Uri.parse("file://sample.mp3"));
+
+        library.addTrack(track1, metadata.buildTagMap(artistTag, album1Tag, titleTag));
+        library.addTrack(track2, metadata.buildTagMap(artistTag, album2Tag, titleTag));
+
+        library.removeTrack(track1);
+        library.removeEmptyEntries();
+
+        LibraryEntry artist = buildLibraryEntry(null, artists, artistTag, null);
+        LibraryEntry album1 = buildLibraryEntry(artist, albums, album1Tag, null);
+        buildLibraryEntry(album1, titles, titleTag, track1);
+        LibraryEntry album2 = buildLibraryEntry(artist, albums, album2Tag, null);
+        LibraryEntry title2 = buildLibraryEntry(album2, titles, titleTag, track2);
+
+        assertThat(getAllEntries()).containsExactly(artist, album2, title2);
+    }
+
+    /**
+     * Given the library contains a single track, when I remove it and its empty entries, then the
+     * library is empty.
+     */
+    @Test
+    public void removeOnlyTrack() {
+        Track track = buildTrack(DEFAULT_URI);
+        library.addTrack(track, Collections.<String, Tag>emptyMap());
+
+        library.removeTrack(track);
+        library.removeEmptyEntries();
+
+        assertThat(getAllEntries()).isEmpty();
+    }
+
+    /**
+     * Given an entry cache, when I insert two tracks on the same album and commit between them,
+     * then the second track's artist and album entries are found in the cache.
+     */
+    @Test
+    public void insertTracksWithCachedEntries() {
+        LibraryEntryCache cache = new LibraryEntryCache(16);
+        LibraryManager cachingLibrary = new LibraryManager(db, cache);
+
+        Tag artistTag = buildTag("artist", "foo");
+        Tag albumTag = buildTag("album", "bar");
+
+        Track track1 = buildTrack(DEFAULT_URI);
+        Track track2 = buildTrack(Uri.parse("file://sample.mp3"));
+
+        cachingLibrary.addTrack(track1, metadata.buildTagMap(artistTag, albumTag));
+        cachingLibrary.commitEntries();
+        cachingLibrary.addTrack(track2, metadata.buildTagMap(artistTag, albumTag));
+
+        LibraryEntry artist = buildLibraryEntry(null, artists, artistTag, null);
+        LibraryEntry album = buildLibraryEntry(artist, albums, albumTag, null);
+        LibraryEntry title1 = buildLibraryEntry(album, titles, null, track1);
+        LibraryEntry title2 = buildLibraryEntry(album, titles, null, track2);
+
+        assertThat(getAllEntries()).containsExactly(artist, album, title1, title2);
+        assertThat(cache.getHitCount()).isEqualTo(2);
+    }
+
+    /**
+     * Given an entry cache with room for two entries, when I insert an artist's albums one after
+     * the other, then the first album's entry is evicted before the artist's.
+     */
+    @Test
+    public void cacheFollowsFolders() {
+        LibraryEntryCache cache = new LibraryEntryCache(2);
+        LibraryManager cachingLibrary = new LibraryManager(db, cache);
+
+        Tag artistTag = buildTag("artist", "foo");
+        Tag firstAlbumTag = buildTag("album", "bar");
+        Tag secondAlbumTag = buildTag("album", "baz");
+
+        cachingLibrary.addTrack(buildTrack(DEFAULT_URI),
+                                metadata.buildTagMap(artistTag, firstAlbumTag));
+        cachingLibrary.commitEntries();
+        cachingLibrary.addTrack(buildTrack(Uri.parse("file://sample.mp3")),
+                                metadata.buildTagMap(artistTag, secondAlbumTag));
+        cachingLibrary.commitEntries();
+
+        LibraryEntry artist = buildLibraryEntry(null, artists, artistTag, null);
+        assertThat(cache.get(artist)).isNotNull();
+        assertThat(cache.get(buildLibraryEntry(artist, albums, firstAlbumTag, null))).isNull();
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+    }
+
+    /**
+     * Given an entry cache, when I insert a track and discard its entries, then the entries aren't
+     * cached.
+     */
+    @Test
+    public void discardedEntriesAreNotCached() {
+        LibraryEntryCache cache = new LibraryEntryCache(16);
+        LibraryManager cachingLibrary = new LibraryManager(db, cache);
+        Tag artistTag = buildTag("artist", "foo");
+
+        cachingLibrary.addTrack(buildTrack(DEFAULT_URI),
+                                Collections.singletonMap("artist", artistTag));
+        cachingLibrary.discardEntries();
+
+        assertThat(cache.get(new LibraryEntry(null, artists, artistTag, null))).isNull();
+    }
+
+    /**
+     * Given an empty library, when I rebuild it, then it's still empty.
+     */
+    @Test
+    public void rebuildEmptyLibrary() {
+        library.rebuild();
+
+        assertThat(getAllEntries()).isEmpty();
+    }
+
+    /**
+     * Given a library built one track at a time, when I rebuild it, then it has the same entries.
+     */
+    @Test
+    public void rebuildMatchesAddTrack() {
+        TrackManager trackManager = new TrackManager(db);
+        Map<Track, Map<String, Tag>> tracks = new HashMap<>();
+        tracks.put(new Track(DEFAULT_URI),
+                   metadata.buildTagMap(new Tag("artist", "foo"), new Tag("album", "bar"),
+                                        new Tag("title", "baz")));
+        tracks.put(new Track(Uri.parse("file://sample.mp3")),
+                   metadata.buildTagMap(new Tag("artist", "foo"), new Tag("album", "bar")));
+        tracks.put(new Track(Uri.parse("file://sample.flac")),
+                   metadata.buildTagMap(new Tag("artist", "foo"), new Tag("album", "ham")));
+        tracks.put(new Track(Uri.parse("file://sample.m4a")),
+                   metadata.buildTagMap(new Tag("album", "bar"), new Tag("genre", "spam")));
+        tracks.put(new Track(Uri.parse("file://sample.wav")), Collections.<String, Tag>emptyMap());
+
+        for (Map.Entry<Track, Map<String, Tag>> track : tracks.entrySet()) {
+            trackManager.addTrack(track.getKey(), track.getValue());
+            library.addTrack(track.getKey(), track.getValue());
+        }
+        Set<String> expected = getPaths(null, "");
+
+        library.rebuild();
+
+        assertThat(getPaths(null, "")).containsExactlyElementsIn(expected);
+        assertThat(getAllEntries()).hasSize(expected.size());
+    }
+
+    /**
+     * Given a library whose entries are out of date, when I rebuild it, then only the current
+     * tracks have entries.
+     */
+    @Test
+    public void rebuildRemovesStaleEntries() {
+        TrackManager trackManager = new TrackManager(db);
+        Track track1 = new Track(DEFAULT_URI);
+        Track track2 = new Track(Uri.parse("file://sample.mp3"));
+        Tag artistTag = new Tag("artist", "foo");
+
+        trackManager.addTrack(track1, Collections.singletonMap("artist", artistTag));
+        library.addTrack(track1, Collections.singletonMap("artist", artistTag));
+        trackManager.addTrack(track2, Collections.<String, Tag>emptyMap());
+        library.addTrack(track2, Collections.<String, Tag>emptyMap());
+        trackManager.removeTrack(track1);
+
+        library.rebuild();
+
+        assertThat(getPaths(null, "")).containsExactly(
+                "/" + artists.getId() + ":null:null",
+                "/" + artists.getId() + ":null:null/" + albums.getId() + ":null:null",
+                "/" + artists.getId() + ":null:null/" + albums.getId() + ":null:null/" +
+                titles.getId() + ":null:" + track2.getId());
+    }
+
     private long trackId = 0L;
     private long tagId = 0L;
     private long entryId = 0L;
@@ -320,6 +504,21 @@ public class LibraryManagerTest {
         return entry;
     }
 
+    /*
+     * Describe each entry by its node, tag, and track, and those of the entries above it
+     */
+    private Set<String> getPaths(LibraryEntry parent, String prefix) {
+        Set<String> paths = new HashSet<>();
+        for (LibraryEntry entry : entryDao.getChildrenOf(parent)) {
+            String path = prefix + "/" + entry.getNodeId() + ":" + entry.getTagId() + ":" +
+                          entry.getTrackId();
+            paths.add(path);
+            paths.addAll(getPaths(entry, path));
+        }
+
+        return paths;
+    }
+
     private Set<LibraryEntry> getAllEntries() {
         return getDescendantsOf(null);
     }
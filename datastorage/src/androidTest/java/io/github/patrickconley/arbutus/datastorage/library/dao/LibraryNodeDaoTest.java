@@ -17,6 +17,7 @@ import java.util.Collections;
 import java.util.List;
 
 import io.github.patrickconley.arbutus.datastorage.AppDatabase;
+import io.github.patrickconley.arbutus.datastorage.library.LibraryNodeTree;
 import io.github.patrickconley.arbutus.datastorage.library.model.LibraryContentType;
 import io.github.patrickconley.arbutus.datastorage.library.model.LibraryNode;
 
@@ -144,4 +145,34 @@ public class LibraryNodeDaoTest {
         assertEquals(Collections.emptyList(), dao.getChildrenOf(node));
     }
 
+    /*
+     * Given a library with a node with parent, when I get the node tree, then it should have the
+     * same structure
+     */
+    @Test
+    public void getTree() {
+        LibraryNode root = dao.insert(new LibraryNode(null, LibraryContentType.Type.TAG, "foo"));
+        LibraryNode child = dao.insert(new LibraryNode(root, LibraryContentType.Type.TAG, "child"));
+
+        LibraryNodeTree tree = dao.getTree();
+
+        assertEquals(Collections.singletonList(root), tree.getChildrenOf(null));
+        assertEquals(Collections.singletonList(child), tree.getChildrenOf(root));
+        assertEquals(Collections.emptyList(), tree.getChildrenOf(child));
+    }
+
+    /*
+     * Given a node tree, when I insert a node, then the next tree should include it
+     */
+    @Test
+    public void getTreeAfterInsert() {
+        LibraryNode root = dao.insert(new LibraryNode(null, LibraryContentType.Type.TAG, "foo"));
+        LibraryNodeTree tree = dao.getTree();
+
+        LibraryNode child = dao.insert(new LibraryNode(root, LibraryContentType.Type.TAG, "child"));
+
+        assertEquals(Collections.emptyList(), tree.getChildrenOf(root));
+        assertEquals(Collections.singletonList(child), dao.getTree().getChildrenOf(root));
+    }
+
 }
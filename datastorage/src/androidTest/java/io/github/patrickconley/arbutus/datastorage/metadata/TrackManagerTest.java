@@ -24,6 +24,7 @@ import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
 
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * Feature: populate the database with new tracks.
@@ -217,6 +218,108 @@ public class TrackManagerTest {
         assertEquals(bar1.getId(), bar2.getId());
     }
 
+    /**
+     * Given a library with two tracks with overlapping tags, when I remove one track, then the
+     * library contains the other track and its relations, and all the tags.
+     */
+    @Test
+    public void removeTrack() {
+        Track track1 = new Track(DEFAULT_URI);
+        Track track2 = new Track(ALTERNATE_URI);
+
+        Tag foo = new Tag("foo", "foo");
+        Tag bar = new Tag("bar", "bar");
+        Tag baz = new Tag("foo", "baz");
+
+        trackManager.addTrack(track1, metadata.buildTagMap(foo, bar));
+        trackManager.addTrack(track2, metadata.buildTagMap(baz, new Tag("bar", "bar")));
+        trackManager.removeTrack(track1);
+
+        assertTrack(track2);
+        assertTag(foo, bar, baz);
+        assertTagInTrack(new TagInTrack(track2, baz), new TagInTrack(track2, bar));
+    }
+
+    /**
+     * Given a library with a track removed, when I remove unused tags, then only the remaining
+     * track's tags are kept.
+     */
+    @Test
+    public void removeUnusedTags() {
+        Track track1 = new Track(DEFAULT_URI);
+        Track track2 = new Track(ALTERNATE_URI);
+
+        Tag foo = new Tag("foo", "foo");
+        Tag bar = new Tag("bar", "bar");
+        Tag baz = new Tag("foo", "baz");
+
+        trackManager.addTrack(track1, metadata.buildTagMap(foo, bar));
+        trackManager.addTrack(track2, metadata.buildTagMap(baz, new Tag("bar", "bar")));
+        trackManager.removeTrack(track1);
+
+        assertEquals(1, trackManager.removeUnusedTags());
+        assertTag(bar, baz);
+    }
+
+    /**
+     * Given a tag cache, when I insert two tracks with identical tags and commit, then the second
+     * track's tags are found in the cache.
+     */
+    @Test
+    public void addTracksWithCachedTags() {
+        TagCache tagCache = new TagCache(16);
+        TrackManager trackManager = new TrackManager(db, tagCache);
+        Track track1 = new Track(DEFAULT_URI);
+        Track track2 = new Track(ALTERNATE_URI);
+
+        Tag foo1 = new Tag("foo", "foo");
+        Tag foo2 = new Tag("foo", "foo");
+
+        trackManager.addTrack(track1, metadata.buildTagMap(foo1));
+        trackManager.commitTags();
+        trackManager.addTrack(track2, metadata.buildTagMap(foo2));
+
+        assertTag(foo1);
+        assertTagInTrack(new TagInTrack(track1, foo1), new TagInTrack(track2, foo1));
+        assertEquals(foo1.getId(), foo2.getId());
+        assertEquals(1, tagCache.getHitCount());
+    }
+
+    /**
+     * Given a tag cache, when I insert a track and discard its tags, then the tags aren't cached.
+     */
+    @Test
+    public void discardedTagsAreNotCached() {
+        TagCache tagCache = new TagCache(16);
+        TrackManager trackManager = new TrackManager(db, tagCache);
+        Tag foo = new Tag("foo", "foo");
+
+        trackManager.addTrack(new Track(DEFAULT_URI), metadata.buildTagMap(foo));
+        trackManager.discardTags();
+
+        assertNull(tagCache.get(new Tag("foo", "foo")));
+    }
+
+    /**
+     * Given a library with tracks, when I warm a small tag cache, then it contains the tags used
+     * by the most tracks.
+     */
+    @Test
+    public void warmTagCache() {
+        Tag foo = new Tag("foo", "foo");
+        Tag bar = new Tag("bar", "bar");
+
+        trackManager.addTrack(new Track(DEFAULT_URI), metadata.buildTagMap(foo, bar));
+        trackManager.addTrack(new Track(ALTERNATE_URI),
+                              metadata.buildTagMap(new Tag("foo", "foo")));
+
+        TagCache tagCache = new TagCache(1);
+        tagCache.warm(tagDao);
+
+        assertEquals(Long.valueOf(foo.getId()), tagCache.get(new Tag("foo", "foo")));
+        assertNull(tagCache.get(new Tag("bar", "bar")));
+    }
+
     private void assertTrack(Track... expected) {
         for (Track track : expected) {
             assertThat(track.getId()).isGreaterThan(0);
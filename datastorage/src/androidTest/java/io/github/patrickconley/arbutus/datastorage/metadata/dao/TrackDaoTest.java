@@ -34,6 +34,18 @@ public class TrackDaoTest {
         assertThat(dao.insert(new Track(Uri.parse("file:///sample.ogg"))).getId()).isGreaterThan(0);
     }
 
+    @Test
+    public void getByUriRangeShouldReturnTracksUnderDirectory() {
+        dao.insert(new Track(Uri.parse("file:///music/album/1.ogg")));
+        dao.insert(new Track(Uri.parse("file:///music/album/disc/2.ogg")));
+        dao.insert(new Track(Uri.parse("file:///music/album2/3.ogg")));
+        dao.insert(new Track(Uri.parse("file:///music/album.ogg")));
+
+        assertThat(dao.getByUriRange("file:///music/album/", "file:///music/album0"))
+                .containsExactly(new Track(Uri.parse("file:///music/album/1.ogg")),
+                                 new Track(Uri.parse("file:///music/album/disc/2.ogg")));
+    }
+
     @SuppressWarnings("ConstantConditions")
     @Test(expected = NullPointerException.class)
     public void insertShouldFailWithMissingUri() {
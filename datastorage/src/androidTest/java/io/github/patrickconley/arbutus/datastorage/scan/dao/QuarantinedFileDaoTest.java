@@ -0,0 +1,73 @@
+package io.github.patrickconley.arbutus.datastorage.scan.dao;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.patrickconley.arbutus.datastorage.AppDatabase;
+import io.github.patrickconley.arbutus.datastorage.scan.model.QuarantinedFile;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class QuarantinedFileDaoTest {
+
+    private Context context = ApplicationProvider.getApplicationContext();
+
+    private AppDatabase db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+    private QuarantinedFileDao dao = db.quarantinedFileDao();
+
+    @After
+    public void after() {
+        db.close();
+    }
+
+    @Test
+    public void insertShouldReplaceEarlierFailure() {
+        dao.insertAll(Collections.singletonList(file("file:///sample.mp3", 100L, "corrupt")));
+        dao.insertAll(Collections.singletonList(file("file:///sample.mp3", 200L, "drm")));
+
+        List<QuarantinedFile> files = dao.getAll();
+        assertThat(files).hasSize(1);
+        assertThat(files.get(0).getSize()).isEqualTo(200L);
+        assertThat(files.get(0).getReason()).isEqualTo("drm");
+    }
+
+    @Test
+    public void deleteByUriShouldDeleteOnlyThatFile() {
+        dao.insertAll(Arrays.asList(file("file:///a.mp3", 100L, "corrupt"),
+                                    file("file:///b.mp3", 100L, "corrupt")));
+
+        dao.deleteByUri(Uri.parse("file:///a.mp3"));
+
+        assertThat(dao.getAll()).containsExactly(file("file:///b.mp3", 100L, "corrupt"));
+    }
+
+    @Test
+    public void truncateShouldDeleteEverything() {
+        dao.insertAll(Collections.singletonList(file("file:///sample.mp3", 100L, "corrupt")));
+
+        dao.truncate();
+
+        assertThat(dao.count()).isEqualTo(0);
+    }
+
+    private static QuarantinedFile file(String uri, long size, String reason) {
+        QuarantinedFile file = new QuarantinedFile(Uri.parse(uri));
+        file.setSize(size);
+        file.setReason(reason);
+        return file;
+    }
+
+}
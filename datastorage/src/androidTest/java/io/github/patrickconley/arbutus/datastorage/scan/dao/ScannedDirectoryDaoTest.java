@@ -0,0 +1,78 @@
+package io.github.patrickconley.arbutus.datastorage.scan.dao;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.patrickconley.arbutus.datastorage.AppDatabase;
+import io.github.patrickconley.arbutus.datastorage.scan.model.ScannedDirectory;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class ScannedDirectoryDaoTest {
+
+    private Context context = ApplicationProvider.getApplicationContext();
+
+    private AppDatabase db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+    private ScannedDirectoryDao dao = db.scannedDirectoryDao();
+
+    @After
+    public void after() {
+        db.close();
+    }
+
+    @Test
+    public void insertShouldReplaceEarlierListing() {
+        dao.insertAll(Collections.singletonList(directory("/music/album", 100L, 4)));
+        dao.insertAll(Collections.singletonList(directory("/music/album", 200L, 5)));
+
+        List<ScannedDirectory> directories = dao.getAll();
+        assertThat(directories).hasSize(1);
+        assertThat(directories.get(0).getLastModified()).isEqualTo(200L);
+        assertThat(directories.get(0).getChildCount()).isEqualTo(5);
+        assertThat(directories.get(0).getParent()).isEqualTo("/music");
+    }
+
+    @Test
+    public void deleteAllShouldDeleteOnlyThoseDirectories() {
+        dao.insertAll(Arrays.asList(directory("/music/a", 100L, 1),
+                                    directory("/music/b", 100L, 1)));
+
+        for (ScannedDirectory directory : dao.getAll()) {
+            if (directory.getPath().equals("/music/a")) {
+                dao.deleteAll(Collections.singletonList(directory));
+            }
+        }
+
+        assertThat(dao.getAll()).containsExactly(directory("/music/b", 100L, 1));
+    }
+
+    @Test
+    public void truncateShouldDeleteEverything() {
+        dao.insertAll(Collections.singletonList(directory("/music/album", 100L, 4)));
+
+        dao.truncate();
+
+        assertThat(dao.getAll()).isEmpty();
+    }
+
+    private static ScannedDirectory directory(String path, long lastModified, int childCount) {
+        ScannedDirectory directory = new ScannedDirectory(path);
+        directory.setParent(path.substring(0, path.lastIndexOf('/')));
+        directory.setLastModified(lastModified);
+        directory.setChildCount(childCount);
+        return directory;
+    }
+
+}
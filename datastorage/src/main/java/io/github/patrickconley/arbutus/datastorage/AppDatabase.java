@@ -27,11 +27,15 @@ import io.github.patrickconley.arbutus.datastorage.metadata.dao.TrackDao;
 import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
 import io.github.patrickconley.arbutus.datastorage.metadata.model.TagInTrack;
 import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
+import io.github.patrickconley.arbutus.datastorage.scan.dao.QuarantinedFileDao;
+import io.github.patrickconley.arbutus.datastorage.scan.dao.ScannedDirectoryDao;
+import io.github.patrickconley.arbutus.datastorage.scan.model.QuarantinedFile;
+import io.github.patrickconley.arbutus.datastorage.scan.model.ScannedDirectory;
 
 @Database(entities = {
         LibraryContentType.class, LibraryEntry.class, LibraryNode.class, Tag.class, Track.class,
-        TagInTrack.class
-}, version = 1, exportSchema = false)
+        TagInTrack.class, QuarantinedFile.class, ScannedDirectory.class
+}, version = 5, exportSchema = false)
 @TypeConverters({ Converters.class })
 public abstract class AppDatabase extends RoomDatabase {
 
@@ -50,7 +54,8 @@ public abstract class AppDatabase extends RoomDatabase {
 
         return Room
                 .databaseBuilder(context.getApplicationContext(), AppDatabase.class, DATABASE_NAME)
-                .addCallback(new HandlePopulateDatabase(context)).build();
+                .addCallback(new HandlePopulateDatabase(context))
+                .addMigrations(Migrations.ALL).build();
     }
 
     public abstract LibraryContentTypeDao libraryContentTypeDao();
@@ -65,6 +70,10 @@ public abstract class AppDatabase extends RoomDatabase {
 
     public abstract TagInTrackDao tagInTrackDao();
 
+    public abstract QuarantinedFileDao quarantinedFileDao();
+
+    public abstract ScannedDirectoryDao scannedDirectoryDao();
+
     // TODO test this by extracting the callback and adding that to the test framework's in-memory DB
     private static class HandlePopulateDatabase extends Callback {
         private final Context context;
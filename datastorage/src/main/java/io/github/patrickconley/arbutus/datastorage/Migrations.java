@@ -0,0 +1,91 @@
+package io.github.patrickconley.arbutus.datastorage;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * Upgrades between versions of {@link AppDatabase}.
+ */
+final class Migrations {
+
+    private Migrations() {
+    }
+
+    /**
+     * Store each track's file size and modification time, so unchanged files can be skipped by
+     * an incremental scan. Existing tracks get a fingerprint of 0, so they'll be read again on
+     * the next scan.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("alter table `Track` add column `size` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("alter table `Track` add column `lastModified` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    /**
+     * Index the library's entries by the columns they're looked up by, and tracks by their URIs.
+     * A track's URI must now be unique: if a file was somehow scanned twice, only its first track
+     * is kept.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("drop index if exists `index_LibraryEntry_parentId`");
+            db.execSQL("create index if not exists " +
+                       "`index_LibraryEntry_parentId_tagId_trackId_nodeId` " +
+                       "on `LibraryEntry` (`parentId`, `tagId`, `trackId`, `nodeId`)");
+            db.execSQL("create index if not exists `index_LibraryEntry_tagId` " +
+                       "on `LibraryEntry` (`tagId`)");
+            db.execSQL("create index if not exists `index_LibraryEntry_trackId` " +
+                       "on `LibraryEntry` (`trackId`)");
+
+            String duplicates = "select id from `Track` " +
+                                "where id not in (select min(id) from `Track` group by uri)";
+            db.execSQL("delete from `TagInTrack` where trackId in (" + duplicates + ")");
+            db.execSQL("delete from `LibraryEntry` where trackId in (" + duplicates + ")");
+            db.execSQL("delete from `Track` where id in (" + duplicates + ")");
+            db.execSQL("create unique index if not exists `index_Track_uri` on `Track` (`uri`)");
+        }
+    };
+
+    /**
+     * Remember files whose tags couldn't be read, so scans can skip them until they change.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("create table if not exists `QuarantinedFile` (" +
+                       "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `uri` TEXT NOT NULL, " +
+                       "`size` INTEGER NOT NULL, `lastModified` INTEGER NOT NULL, " +
+                       "`reason` TEXT)");
+            db.execSQL("create unique index if not exists `index_QuarantinedFile_uri` " +
+                       "on `QuarantinedFile` (`uri`)");
+        }
+    };
+
+    /**
+     * Remember each directory's modification time when it was last listed, so incremental scans
+     * can skip directories that haven't changed.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("create table if not exists `ScannedDirectory` (" +
+                       "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `path` TEXT NOT NULL, " +
+                       "`parent` TEXT, `lastModified` INTEGER NOT NULL, " +
+                       "`childCount` INTEGER NOT NULL, `rulesHash` INTEGER NOT NULL)");
+            db.execSQL("create unique index if not exists `index_ScannedDirectory_path` " +
+                       "on `ScannedDirectory` (`path`)");
+            db.execSQL("create index if not exists `index_ScannedDirectory_parent` " +
+                       "on `ScannedDirectory` (`parent`)");
+        }
+    };
+
+    static final Migration[] ALL = {
+            MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5
+    };
+
+}
@@ -0,0 +1,123 @@
+package io.github.patrickconley.arbutus.datastorage;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * A scratch library to rebuild into while the real library stays readable. The staging database
+ * starts with the library's structure (its content types and nodes) but no tracks; once it's
+ * filled, {@link #publish()} replaces the library's tracks, tags, and entries with the staged
+ * ones in a single transaction, so readers see either the old library or the new one.
+ * <p/>
+ * The staging tables live in a database of their own rather than attached to the library:
+ * Android turns off write-ahead logging for a database with attachments, which would block
+ * readers during the rebuild. Instead, the library is attached to the staging database to
+ * publish, and the rows copied in SQL. The staging database doesn't use write-ahead logging
+ * itself, since Android can't turn it off while another thread is using the database.
+ */
+public final class StagingDatabase {
+    private static final String TAG = StagingDatabase.class.getName();
+
+    private static final String DATABASE_NAME = "arbutus-staging.db";
+
+    /*
+     * The tables a rebuild fills, and their columns, parents before children
+     */
+    private static final String[][] TABLES = {
+            { "Track", "id, uri, size, lastModified" },
+            { "Tag", "id, `key`, value" },
+            { "TagInTrack", "id, trackId, tagId" },
+            { "LibraryEntry", "id, parentId, nodeId, tagId, trackId" }
+    };
+
+    private final Context context;
+    private final AppDatabase library;
+    private final AppDatabase staging;
+
+    private StagingDatabase(Context context, AppDatabase library, AppDatabase staging) {
+        this.context = context;
+        this.library = library;
+        this.staging = staging;
+    }
+
+    /**
+     * Create an empty staging database with the library's structure, replacing any left by an
+     * earlier rebuild.
+     */
+    public static StagingDatabase create(@NonNull Context context, @NonNull AppDatabase library) {
+        Context appContext = context.getApplicationContext();
+        appContext.deleteDatabase(DATABASE_NAME);
+
+        AppDatabase staging = Room.databaseBuilder(appContext, AppDatabase.class, DATABASE_NAME)
+                                  .setJournalMode(RoomDatabase.JournalMode.TRUNCATE)
+                                  .build();
+        new LibraryContentTypePopulator(staging).run();
+        staging.libraryNodeDao().insertAll(library.libraryNodeDao().getAll());
+
+        return new StagingDatabase(appContext, library, staging);
+    }
+
+    /**
+     * @return The database to fill
+     */
+    @NonNull
+    public AppDatabase getDatabase() {
+        return staging;
+    }
+
+    /**
+     * Replace the library's contents with the staged contents. The rows are copied from table to
+     * table by the database, without reading them into memory.
+     *
+     * @throws IllegalStateException If the library is in memory, so it can't be attached
+     */
+    public void publish() {
+        String libraryPath = library.getOpenHelper().getWritableDatabase().getPath();
+        if (libraryPath == null || ":memory:".equals(libraryPath)) {
+            throw new IllegalStateException("Can't publish to an in-memory library");
+        }
+
+        final SupportSQLiteDatabase db = staging.getOpenHelper().getWritableDatabase();
+        db.execSQL("attach database ? as library", new Object[]{ libraryPath });
+        try {
+            staging.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = TABLES.length - 1; i >= 0; i--) {
+                        db.execSQL("delete from library." + TABLES[i][0]);
+                    }
+                    for (String[] table : TABLES) {
+                        db.execSQL("insert into library." + table[0] + " (" + table[1] + ") " +
+                                   "select " + table[1] + " from main." + table[0]);
+                    }
+                }
+            });
+        } finally {
+            db.execSQL("detach database library");
+        }
+
+        Log.i(TAG, "Published " + count(db, "Track") + " tracks and " +
+                   count(db, "LibraryEntry") + " library entries");
+    }
+
+    private static long count(SupportSQLiteDatabase db, String table) {
+        try (Cursor cursor = db.query("select count(*) from " + table)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0L;
+        }
+    }
+
+    /**
+     * Close and delete the staging database.
+     */
+    public void close() {
+        staging.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+}
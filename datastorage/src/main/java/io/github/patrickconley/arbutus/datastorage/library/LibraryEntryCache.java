@@ -0,0 +1,86 @@
+package io.github.patrickconley.arbutus.datastorage.library;
+
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+
+import io.github.patrickconley.arbutus.datastorage.library.model.LibraryEntry;
+
+/**
+ * Bounded map from library entries (by parent, node, tag, and track) to their saved versions,
+ * shared by the {@link LibraryManager}s writing a scan. Tracks in the same album share all but
+ * their last entry, and albums are usually scanned a folder at a time, so a small cache of the
+ * most recently used entries finds nearly every artist and album entry without a query.
+ * <p/>
+ * Least-recently-used eviction follows the scan's folders without the cache knowing about them:
+ * while a folder is scanned its entries are used with every track, and once the scan moves on,
+ * an album's entries stop being used and are evicted first, while an artist's entries are kept
+ * as long as the artist's other folders follow. The cache need only hold the entries of the
+ * folders being scanned at once, one per thread; if it evicts about as often as it misses, it's
+ * too small for them.
+ * <p/>
+ * Track entries are never looked up twice, so only the entries above them are cached. Only
+ * committed entries belong here: a library manager holds the entries it finds until its
+ * transaction commits (see {@link LibraryManager#commitEntries()}). Entries deleted from the
+ * database (see {@link LibraryManager#removeEmptyEntries()}) aren't removed from the cache, so a
+ * cache shouldn't outlive the scan it was built for.
+ * <p/>
+ * This is thread-safe.
+ */
+public class LibraryEntryCache {
+
+    private final LruCache<LibraryEntry, LibraryEntry> entries;
+
+    /**
+     * @param maxSize Most entries to keep
+     */
+    public LibraryEntryCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Invalid cache size " + maxSize);
+        }
+        entries = new LruCache<>(maxSize);
+    }
+
+    /**
+     * @return The saved entry with the same parent, node, tag, and track, or null if it isn't
+     * cached
+     */
+    public LibraryEntry get(@NonNull LibraryEntry entry) {
+        return entries.get(entry);
+    }
+
+    /**
+     * Cache a saved entry.
+     */
+    public void put(@NonNull LibraryEntry entry) {
+        entries.put(entry, entry);
+    }
+
+    /**
+     * Empty the cache.
+     */
+    public void clear() {
+        entries.evictAll();
+    }
+
+    public int getHitCount() {
+        return entries.hitCount();
+    }
+
+    public int getMissCount() {
+        return entries.missCount();
+    }
+
+    public int getEvictionCount() {
+        return entries.evictionCount();
+    }
+
+    @Override
+    public String toString() {
+        int lookups = getHitCount() + getMissCount();
+        return "LibraryEntryCache[size=" + entries.size() + ", hits=" + getHitCount() +
+               ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + ", hitRate=" +
+               (lookups == 0 ? 0 : 100 * getHitCount() / lookups) + "%]";
+    }
+
+}
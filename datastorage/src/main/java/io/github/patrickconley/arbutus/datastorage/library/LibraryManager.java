@@ -2,6 +2,7 @@ package io.github.patrickconley.arbutus.datastorage.library;
 
 import androidx.annotation.NonNull;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import io.github.patrickconley.arbutus.datastorage.AppDatabase;
@@ -18,24 +19,96 @@ import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
  */
 public class LibraryManager {
 
+    private final AppDatabase db;
     private final LibraryNodeDao libraryNodeDao;
     private final LibraryEntryDao libraryEntryDao;
 
+    private final LibraryEntryCache entryCache;
+    // Entries found by the current transaction, which can't be shared until it commits
+    private final Map<LibraryEntry, LibraryEntry> pendingEntries = new HashMap<>();
+
     public LibraryManager(AppDatabase db) {
+        this(db, null);
+    }
+
+    /**
+     * @param entryCache Saved entries, consulted before the database; or null
+     */
+    public LibraryManager(AppDatabase db, LibraryEntryCache entryCache) {
+        this.db = db;
         libraryNodeDao = db.libraryNodeDao();
         libraryEntryDao = db.libraryEntryDao();
+        this.entryCache = entryCache;
     }
 
     public void addTrack(@NonNull Track track, @NonNull Map<String, Tag> tags) {
 
+            LibraryNodeTree nodes = libraryNodeDao.getTree();
+
             // FIXME this isn't safe if there is inexplicably no root node
             // FIXME this won't work as expected if there is inexplicably more than one root node
-            addEntryAtNode(null, libraryNodeDao.getChildrenOf(null).get(0), track, tags);
+            addEntryAtNode(nodes, null, nodes.getChildrenOf(null).get(0), track, tags);
+    }
+
+    /**
+     * Remove a track's entries from the library. Entries above it are left in place, even if
+     * they're now empty: call {@link #removeEmptyEntries()} when finished removing tracks.
+     */
+    public void removeTrack(@NonNull Track track) {
+        libraryEntryDao.deleteByTrack(track);
+    }
+
+    /**
+     * Delete library entries that no longer lead to any track.
+     */
+    public void removeEmptyEntries() {
+        //noinspection StatementWithEmptyBody
+        while (libraryEntryDao.deleteEmptyEntries() > 0) {
+            // each pass removes one level of the tree
+        }
+    }
+
+    /**
+     * Replace every library entry with entries built from the tracks' tags, in a single
+     * transaction. This is much faster than adding tracks one at a time, and puts the library in
+     * the shape of the current node hierarchy.
+     */
+    public void rebuild() {
+        final LibraryNodeTree nodes = libraryNodeDao.getTree();
+        db.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                new LibraryRebuilder(db.getOpenHelper().getWritableDatabase(), nodes).run();
+            }
+        });
+        pendingEntries.clear();
+        if (entryCache != null) {
+            entryCache.clear();
+        }
+    }
+
+    /**
+     * Add the entries found or inserted since the last commit to the entry cache. Call this once
+     * the transaction that added them has committed.
+     */
+    public void commitEntries() {
+        for (LibraryEntry entry : pendingEntries.values()) {
+            entryCache.put(entry);
+        }
+        pendingEntries.clear();
+    }
+
+    /**
+     * Forget the entries found or inserted since the last commit. Call this if the transaction
+     * that added them was rolled back, as those entries may no longer exist.
+     */
+    public void discardEntries() {
+        pendingEntries.clear();
     }
 
     private void addEntryAtNode(
-            LibraryEntry parentEntry, @NonNull LibraryNode currentNode, @NonNull Track track,
-            @NonNull Map<String, Tag> tags
+            @NonNull LibraryNodeTree nodes, LibraryEntry parentEntry,
+            @NonNull LibraryNode currentNode, @NonNull Track track, @NonNull Map<String, Tag> tags
     ) {
         // base case: current node is a track node
         // get or insert a LibraryEntries for this track by node/parent
@@ -49,8 +122,8 @@ public class LibraryManager {
         LibraryEntry entry = insertEntry(parentEntry, currentNode, tags, null);
 
         // recurse for each child node/library entry pair
-        for (LibraryNode childNode : libraryNodeDao.getChildrenOf(currentNode)) {
-            addEntryAtNode(entry, childNode, track, tags);
+        for (LibraryNode childNode : nodes.getChildrenOf(currentNode)) {
+            addEntryAtNode(nodes, entry, childNode, track, tags);
         }
     }
 
@@ -58,6 +131,26 @@ public class LibraryManager {
             LibraryEntry parent, @NonNull LibraryNode node, @NonNull Map<String, Tag> tags,
             Track track
     ) {
+        if (entryCache == null || track != null) {
+            return findOrInsertEntry(parent, node, tags, track);
+        }
+
+        LibraryEntry key = new LibraryEntry(parent, node, tags.get(node.getName()), null);
+        LibraryEntry savedEntry = entryCache.get(key);
+        if (savedEntry == null) {
+            savedEntry = pendingEntries.get(key);
+        }
+        if (savedEntry == null) {
+            savedEntry = findOrInsertEntry(parent, node, tags, null);
+            pendingEntries.put(key, savedEntry);
+        }
+        return savedEntry;
+    }
+
+    private LibraryEntry findOrInsertEntry(
+            LibraryEntry parent, @NonNull LibraryNode node, @NonNull Map<String, Tag> tags,
+            Track track
+    ) {
 
         LibraryEntry savedEntry = libraryEntryDao.getEntry(parent, tags.get(node.getName()), track);
         if (savedEntry != null) {
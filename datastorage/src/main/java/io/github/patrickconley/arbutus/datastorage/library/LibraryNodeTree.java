@@ -0,0 +1,55 @@
+package io.github.patrickconley.arbutus.datastorage.library;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.library.dao.LibraryNodeDao;
+import io.github.patrickconley.arbutus.datastorage.library.model.LibraryNode;
+
+/**
+ * Snapshot of the library's node hierarchy. The hierarchy is a handful of rows that only change
+ * when the library's structure is reconfigured, so it's read once and shared rather than queried
+ * at every level of every track.
+ * <p/>
+ * The snapshot is immutable, so it's safe to share between threads. It isn't updated when the
+ * nodes change: get a fresh one from {@link LibraryNodeDao#getTree()}.
+ */
+public final class LibraryNodeTree {
+
+    private final Map<Long, List<LibraryNode>> children;
+
+    /**
+     * @param nodes Every node in the library
+     */
+    public LibraryNodeTree(@NonNull List<LibraryNode> nodes) {
+        Map<Long, List<LibraryNode>> children = new HashMap<>();
+        for (LibraryNode node : nodes) {
+            List<LibraryNode> siblings = children.get(node.getParentId());
+            if (siblings == null) {
+                siblings = new ArrayList<>();
+                children.put(node.getParentId(), siblings);
+            }
+            siblings.add(node);
+        }
+
+        for (Map.Entry<Long, List<LibraryNode>> entry : children.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        this.children = Collections.unmodifiableMap(children);
+    }
+
+    /**
+     * @return The nodes below the parent, or the root nodes if the parent is null
+     */
+    @NonNull
+    public List<LibraryNode> getChildrenOf(LibraryNode parent) {
+        List<LibraryNode> nodes = children.get(parent == null ? null : parent.getId());
+        return nodes == null ? Collections.<LibraryNode>emptyList() : nodes;
+    }
+
+}
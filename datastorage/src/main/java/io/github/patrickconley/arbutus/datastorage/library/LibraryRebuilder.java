@@ -0,0 +1,117 @@
+package io.github.patrickconley.arbutus.datastorage.library;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.patrickconley.arbutus.datastorage.library.model.LibraryContentType;
+import io.github.patrickconley.arbutus.datastorage.library.model.LibraryNode;
+
+/**
+ * Regenerate the library's entries from its tracks' tags with one pair of statements per node,
+ * rather than a series of queries per track. The entries are the same as those built by
+ * {@link LibraryManager#addTrack}, though their IDs may differ.
+ * <p/>
+ * Each tag node's entries are mapped to the tracks below them in a temporary table, which the
+ * node's children join to find their parents. Room can't compile queries against a table it
+ * doesn't know about, so this works on the database directly. It must be run in a transaction.
+ */
+class LibraryRebuilder {
+
+    private static final String CREATE_ENTRY_MAP =
+            "create temp table if not exists LibraryEntryMap (" + //
+            "nodeId integer not null, " + //
+            "trackId integer not null, " + //
+            "entryId integer not null, " + //
+            "primary key (nodeId, trackId))";
+
+    /*
+     * Each track's tag for a node, or null if it doesn't have one. Binds the node's name.
+     */
+    private static final String TAG_FOR_NODE =
+            "left join (" + //
+            "select TagInTrack.trackId, TagInTrack.tagId from TagInTrack " + //
+            "join Tag on Tag.id = TagInTrack.tagId " + //
+            "where Tag.\"key\" = ?) tag on tag.trackId = Track.id ";
+
+    /*
+     * The entry above each track at the parent node. Binds the parent node's ID.
+     */
+    private static final String PARENT_ENTRY =
+            "join temp.LibraryEntryMap parent " + //
+            "on parent.trackId = Track.id and parent.nodeId = ? ";
+
+    private final SupportSQLiteDatabase db;
+    private final LibraryNodeTree nodes;
+
+    LibraryRebuilder(@NonNull SupportSQLiteDatabase db, @NonNull LibraryNodeTree nodes) {
+        this.db = db;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Replace every entry in the library.
+     */
+    void run() {
+        db.execSQL("delete from LibraryEntry");
+        db.execSQL(CREATE_ENTRY_MAP);
+        db.execSQL("delete from temp.LibraryEntryMap");
+
+        for (LibraryNode root : nodes.getChildrenOf(null)) {
+            buildNode(null, root);
+        }
+
+        db.execSQL("drop table temp.LibraryEntryMap");
+    }
+
+    /*
+     * Insert the node's entries below its parent's entries, then do the same for its children
+     */
+    private void buildNode(LibraryNode parent, @NonNull LibraryNode node) {
+        boolean isTrack = node.getContentTypeId() == LibraryContentType.Type.TRACK.getId();
+
+        List<Object> args = new ArrayList<>();
+        args.add(node.getId());
+        String source = buildSource(parent, node, args);
+        db.execSQL("insert into LibraryEntry (parentId, nodeId, tagId, trackId) " + //
+                   "select distinct " + (parent == null ? "null" : "parent.entryId") + ", ?, " + //
+                   "tag.tagId, " + (isTrack ? "Track.id " : "null ") + source + //
+                   "order by 1, 3, 4", args.toArray());
+
+        List<LibraryNode> children = nodes.getChildrenOf(node);
+        if (isTrack || children.isEmpty()) {
+            return;
+        }
+
+        args.clear();
+        args.add(node.getId());
+        source = buildSource(parent, node, args);
+        args.add(node.getId());
+        db.execSQL("insert into temp.LibraryEntryMap (nodeId, trackId, entryId) " + //
+                   "select ?, Track.id, entry.id " + source + //
+                   "join LibraryEntry entry on entry.nodeId = ? " + //
+                   "and entry.parentId " + (parent == null ? "is null " : "= parent.entryId ") +
+                   "and entry.tagId is tag.tagId " + //
+                   "and entry.trackId is null", args.toArray());
+
+        for (LibraryNode child : children) {
+            buildNode(node, child);
+        }
+    }
+
+    /*
+     * Select every track, with its entry at the parent node and its tag for this node
+     */
+    private String buildSource(LibraryNode parent, @NonNull LibraryNode node, List<Object> args) {
+        String source = "from Track ";
+        if (parent != null) {
+            source += PARENT_ENTRY;
+            args.add(parent.getId());
+        }
+        args.add(node.getName());
+        return source + TAG_FOR_NODE;
+    }
+
+}
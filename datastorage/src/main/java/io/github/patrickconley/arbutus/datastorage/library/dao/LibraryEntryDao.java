@@ -32,9 +32,33 @@ public abstract class LibraryEntryDao {
         return entry;
     }
 
+    /**
+     * Insert entries with the IDs they already have.
+     */
+    @Insert
+    public abstract void insertAll(List<LibraryEntry> entries);
+
     @Query("delete from LibraryEntry")
     public abstract void truncate();
 
+    @Query("delete from LibraryEntry where trackId = :trackId")
+    abstract void deleteByTrackId(long trackId);
+
+    public void deleteByTrack(Track track) {
+        deleteByTrackId(track.getId());
+    }
+
+    /**
+     * Delete tag entries with no children. An entry's parent may be left empty in turn, so call
+     * this until it returns 0.
+     *
+     * @return Number of entries deleted
+     */
+    @Query("delete from LibraryEntry " + //
+           "where trackId is null " + //
+           "and id not in (select parentId from LibraryEntry where parentId is not null)")
+    public abstract int deleteEmptyEntries();
+
     @Query("select * from LibraryEntry " + //
            "where parentId is null " + //
            "and tagId is null " + //
@@ -107,6 +131,9 @@ public abstract class LibraryEntryDao {
         }
     }
 
+    @Query("select * from LibraryEntry")
+    public abstract List<LibraryEntry> getAll();
+
     @Query("select * from LibraryEntry where parentId is null")
     abstract List<LibraryEntry> getRootEntries();
 
@@ -1,23 +1,70 @@
 package io.github.patrickconley.arbutus.datastorage.library.dao;
 
+import androidx.annotation.NonNull;
 import androidx.room.Dao;
 import androidx.room.Insert;
+import androidx.room.InvalidationTracker;
 import androidx.room.Query;
+import androidx.room.RoomDatabase;
+import io.github.patrickconley.arbutus.datastorage.library.LibraryNodeTree;
 import io.github.patrickconley.arbutus.datastorage.library.model.LibraryNode;
 
 import java.util.List;
+import java.util.Set;
 
 @Dao
 public abstract class LibraryNodeDao {
 
+    /*
+     * The tree is replaced under the lock, and the generation counts the changes, so a tree read
+     * before a change isn't cached after it
+     */
+    private final Object treeLock = new Object();
+    private volatile LibraryNodeTree tree;
+    private int generation;
+
+    public LibraryNodeDao(RoomDatabase db) {
+        db.getInvalidationTracker().addObserver(new InvalidationTracker.Observer("LibraryNode") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                invalidateTree();
+            }
+        });
+    }
+
+    private void invalidateTree() {
+        synchronized (treeLock) {
+            generation++;
+            tree = null;
+        }
+    }
+
     @Insert
     abstract long insertForId(LibraryNode node);
 
     public LibraryNode insert(LibraryNode node) {
         node.setId(insertForId(node));
+        invalidateTree();
         return node;
     }
 
+    /**
+     * Insert nodes with the IDs they already have. Parents must come before their children.
+     */
+    public void insertAll(List<LibraryNode> nodes) {
+        insertAllWithIds(nodes);
+        invalidateTree();
+    }
+
+    @Insert
+    abstract void insertAllWithIds(List<LibraryNode> nodes);
+
+    /**
+     * @return Every node, parents before their children
+     */
+    @Query("select * from LibraryNode order by id")
+    public abstract List<LibraryNode> getAll();
+
     @Query("select * from LibraryNode where parentId is null")
     abstract List<LibraryNode> getRootNodes();
 
@@ -32,4 +79,29 @@ public abstract class LibraryNodeDao {
         return getByParent(parent.getId());
     }
 
+    /**
+     * Get a snapshot of the node hierarchy, reading it from the database only if the nodes have
+     * changed since the last snapshot.
+     */
+    @NonNull
+    public LibraryNodeTree getTree() {
+        LibraryNodeTree snapshot = tree;
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        int loaded;
+        synchronized (treeLock) {
+            loaded = generation;
+        }
+        snapshot = new LibraryNodeTree(getAll());
+        synchronized (treeLock) {
+            // If the nodes changed while they were read, the next call reads them again
+            if (generation == loaded) {
+                tree = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
 }
@@ -19,7 +19,11 @@ import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
         @ForeignKey(entity = LibraryNode.class, parentColumns = "id", childColumns = "nodeId"),
         // @ForeignKey(entity = Tag.class, parentColumns = "id", childColumns = "tagId"),
         //        @ForeignKey(entity = Track.class, parentColumns = "id", childColumns = "trackId")
-}, indices = { @Index("parentId"), @Index("nodeId") })
+}, indices = {
+        /* covers the lookups by parent, tag, and track that build the library */
+        @Index({ "parentId", "tagId", "trackId", "nodeId" }), @Index("nodeId"), @Index("tagId"),
+        @Index("trackId")
+})
 public class LibraryEntry {
 
     @PrimaryKey(autoGenerate = true)
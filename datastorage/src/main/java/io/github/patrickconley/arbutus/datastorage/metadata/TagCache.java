@@ -0,0 +1,82 @@
+package io.github.patrickconley.arbutus.datastorage.metadata;
+
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.dao.TagDao;
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+
+/**
+ * Bounded map from tags (by key and value) to their IDs, shared by the {@link TrackManager}s
+ * writing a scan. Common tags (artist, album, genre) repeat on thousands of tracks, so most tags
+ * can be found here instead of in the database.
+ * <p/>
+ * Only committed IDs belong here: a track manager holds the IDs it finds until its transaction
+ * commits (see {@link TrackManager#commitTags()}). Tags deleted from the database (see
+ * {@link TrackManager#removeUnusedTags()}) aren't removed from the cache, so a cache shouldn't
+ * outlive the scan it was built for.
+ * <p/>
+ * This is thread-safe.
+ */
+public class TagCache {
+
+    private final LruCache<Tag, Long> ids;
+
+    /**
+     * @param maxSize Most tags to keep
+     */
+    public TagCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Invalid cache size " + maxSize);
+        }
+        ids = new LruCache<>(maxSize);
+    }
+
+    /**
+     * Fill the cache with the tags used by the most tracks.
+     */
+    public void warm(@NonNull TagDao tagDao) {
+        for (Tag tag : tagDao.getMostUsed(ids.maxSize())) {
+            put(tag);
+        }
+    }
+
+    /**
+     * @return The ID of the saved tag with the same key and value, or null if it isn't cached
+     */
+    public Long get(@NonNull Tag tag) {
+        return ids.get(tag);
+    }
+
+    /**
+     * Cache a saved tag's ID.
+     */
+    public void put(@NonNull Tag tag) {
+        ids.put(new Tag(tag.getKey(), tag.getValue()), tag.getId());
+    }
+
+    /**
+     * Empty the cache.
+     */
+    public void clear() {
+        ids.evictAll();
+    }
+
+    public int getHitCount() {
+        return ids.hitCount();
+    }
+
+    public int getMissCount() {
+        return ids.missCount();
+    }
+
+    @Override
+    public String toString() {
+        int lookups = getHitCount() + getMissCount();
+        return "TagCache[size=" + ids.size() + ", hits=" + getHitCount() + ", misses=" +
+               getMissCount() + ", hitRate=" +
+               (lookups == 0 ? 0 : 100 * getHitCount() / lookups) + "%]";
+    }
+
+}
@@ -2,6 +2,7 @@ package io.github.patrickconley.arbutus.datastorage.metadata;
 
 import androidx.annotation.NonNull;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import io.github.patrickconley.arbutus.datastorage.AppDatabase;
@@ -18,10 +19,22 @@ public class TrackManager {
     private final TagDao tagDao;
     private final TagInTrackDao tagInTrackDao;
 
+    private final TagCache tagCache;
+    // IDs found by the current transaction, which can't be shared until it commits
+    private final Map<Tag, Long> pendingTags = new HashMap<>();
+
     public TrackManager(AppDatabase db) {
+        this(db, null);
+    }
+
+    /**
+     * @param tagCache IDs of saved tags, consulted before the database; or null
+     */
+    public TrackManager(AppDatabase db, TagCache tagCache) {
         trackDao = db.trackDao();
         tagDao = db.tagDao();
         tagInTrackDao = db.tagInTrackDao();
+        this.tagCache = tagCache;
     }
 
     public void addTrack(@NonNull Track track, @NonNull Map<String, Tag> tags) {
@@ -35,16 +48,68 @@ public class TrackManager {
 
     }
 
+    /**
+     * Remove a track and its relations to its tags. The tags themselves are kept.
+     */
+    public void removeTrack(@NonNull Track track) {
+        tagInTrackDao.deleteByTrack(track);
+        trackDao.delete(track);
+    }
+
+    /**
+     * Delete tags that no longer belong to any track or library entry.
+     *
+     * @return Number of tags deleted
+     */
+    public int removeUnusedTags() {
+        return tagDao.deleteUnused();
+    }
+
+    /**
+     * Add the IDs of the tags found or inserted since the last commit to the tag cache. Call this
+     * once the transaction that added them has committed.
+     */
+    public void commitTags() {
+        for (Map.Entry<Tag, Long> entry : pendingTags.entrySet()) {
+            entry.getKey().setId(entry.getValue());
+            tagCache.put(entry.getKey());
+        }
+        pendingTags.clear();
+    }
+
+    /**
+     * Forget the IDs of the tags found or inserted since the last commit. Call this if the
+     * transaction that added them was rolled back, as those IDs may no longer exist.
+     */
+    public void discardTags() {
+        pendingTags.clear();
+    }
+
     /*
      * If the tag is new, insert it; if the tag exists, set its ID
      */
     private void insertTag(Tag tag) {
+        if (tagCache != null) {
+            Long id = tagCache.get(tag);
+            if (id == null) {
+                id = pendingTags.get(tag);
+            }
+            if (id != null) {
+                tag.setId(id);
+                return;
+            }
+        }
+
         Tag savedTag = tagDao.getTag(tag);
         if (savedTag != null) {
             tag.setId(savedTag.getId());
         } else {
             tagDao.insert(tag);
         }
+
+        if (tagCache != null) {
+            pendingTags.put(new Tag(tag.getKey(), tag.getValue()), tag.getId());
+        }
     }
 
 }
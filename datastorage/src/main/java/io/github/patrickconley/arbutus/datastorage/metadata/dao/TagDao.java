@@ -19,9 +19,20 @@ public abstract class TagDao {
         return tag;
     }
 
+    /**
+     * Insert tags with the IDs they already have.
+     */
+    @Insert
+    public abstract void insertAll(List<Tag> tags);
+
     @Query("delete from tag")
     public abstract void truncate();
 
+    @Query("delete from tag " + //
+           "where id not in (select tagId from TagInTrack) " + //
+           "and id not in (select tagId from LibraryEntry where tagId is not null)")
+    public abstract int deleteUnused();
+
     @Query("select * from tag where \"key\" = :key and value = :value")
     abstract Tag getTagByKeyValue(String key, String value);
 
@@ -29,7 +40,13 @@ public abstract class TagDao {
         return getTagByKeyValue(tag.getKey(), tag.getValue());
     }
 
+    @Query("select tag.* from tag " + //
+           "join TagInTrack on TagInTrack.tagId = tag.id " + //
+           "group by tag.id " + //
+           "order by count(*) desc " + //
+           "limit :limit")
+    public abstract List<Tag> getMostUsed(int limit);
+
     @Query("select * from tag")
-    @Deprecated // Only use this in unit tests
     public abstract List<Tag> getAll();
 }
@@ -7,6 +7,7 @@ import androidx.room.Query;
 import java.util.List;
 
 import io.github.patrickconley.arbutus.datastorage.metadata.model.TagInTrack;
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
 
 @Dao
 public abstract class TagInTrackDao {
@@ -19,10 +20,22 @@ public abstract class TagInTrackDao {
         return trackTag;
     }
 
+    /**
+     * Insert relations with the IDs they already have.
+     */
+    @Insert
+    public abstract void insertAll(List<TagInTrack> trackTags);
+
     @Query("delete from TagInTrack")
     public abstract void truncate();
 
+    @Query("delete from TagInTrack where trackId = :trackId")
+    abstract void deleteByTrackId(long trackId);
+
+    public void deleteByTrack(Track track) {
+        deleteByTrackId(track.getId());
+    }
+
     @Query("select * from TagInTrack")
-    @Deprecated // Only use this in unit tests
     public abstract List<TagInTrack> getAll();
 }
@@ -1,5 +1,7 @@
 package io.github.patrickconley.arbutus.datastorage.metadata.dao;
 
+import android.net.Uri;
+
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.Query;
@@ -19,10 +21,32 @@ public abstract class TrackDao {
         return track;
     }
 
+    /**
+     * Insert tracks with the IDs they already have.
+     */
+    @Insert
+    public abstract void insertAll(List<Track> tracks);
+
     @Query("delete from track")
     public abstract void truncate();
 
+    @Query("delete from track where id = :id")
+    abstract void deleteById(long id);
+
+    public void delete(Track track) {
+        deleteById(track.getId());
+    }
+
+    @Query("select * from track where uri = :uri")
+    public abstract Track getByUri(Uri uri);
+
     @Query("select * from track")
-    @Deprecated // Only use this in unit tests
     public abstract List<Track> getAll();
+
+    /**
+     * @return Tracks whose URIs sort from the first (inclusive) to the last (exclusive), e.g.,
+     * those of the files under a directory
+     */
+    @Query("select * from track where uri >= :from and uri < :to")
+    public abstract List<Track> getByUriRange(String from, String to);
 }
@@ -3,13 +3,17 @@ package io.github.patrickconley.arbutus.datastorage.metadata.model;
 import android.net.Uri;
 
 import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-@Entity
+@Entity(indices = {
+        @Index(value = "uri", unique = true)
+})
 public class Track {
 
     @PrimaryKey(autoGenerate = true)
@@ -18,6 +22,16 @@ public class Track {
     @NonNull
     private final Uri uri;
 
+    /*
+     * File size and modification time when the track was scanned. If neither has changed, the
+     * track's tags needn't be read again.
+     */
+    @ColumnInfo(defaultValue = "0")
+    private long size;
+
+    @ColumnInfo(defaultValue = "0")
+    private long lastModified;
+
     public Track(@NonNull Uri uri) {
         this.uri = uri;
     }
@@ -34,6 +48,29 @@ public class Track {
         return uri;
     }
 
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return whether the other track has the same file size and modification time as this one
+     */
+    public boolean hasSameFingerprint(@NonNull Track other) {
+        return size == other.size && lastModified == other.lastModified;
+    }
+
     @NonNull
     @Override
     public String toString() {
@@ -0,0 +1,35 @@
+package io.github.patrickconley.arbutus.datastorage.scan.dao;
+
+import android.net.Uri;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+import io.github.patrickconley.arbutus.datastorage.scan.model.QuarantinedFile;
+
+import static androidx.room.OnConflictStrategy.REPLACE;
+
+@Dao
+public abstract class QuarantinedFileDao {
+
+    /**
+     * Insert files, replacing any earlier failures of the same files.
+     */
+    @Insert(onConflict = REPLACE)
+    public abstract void insertAll(List<QuarantinedFile> files);
+
+    @Query("delete from QuarantinedFile")
+    public abstract void truncate();
+
+    @Query("delete from QuarantinedFile where uri = :uri")
+    public abstract void deleteByUri(Uri uri);
+
+    @Query("select count(*) from QuarantinedFile")
+    public abstract int count();
+
+    @Query("select * from QuarantinedFile order by uri")
+    public abstract List<QuarantinedFile> getAll();
+}
@@ -0,0 +1,31 @@
+package io.github.patrickconley.arbutus.datastorage.scan.dao;
+
+import androidx.room.Dao;
+import androidx.room.Delete;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+import io.github.patrickconley.arbutus.datastorage.scan.model.ScannedDirectory;
+
+import static androidx.room.OnConflictStrategy.REPLACE;
+
+@Dao
+public abstract class ScannedDirectoryDao {
+
+    /**
+     * Insert directories, replacing any earlier listings of the same paths.
+     */
+    @Insert(onConflict = REPLACE)
+    public abstract void insertAll(List<ScannedDirectory> directories);
+
+    @Delete
+    public abstract void deleteAll(List<ScannedDirectory> directories);
+
+    @Query("delete from ScannedDirectory")
+    public abstract void truncate();
+
+    @Query("select * from ScannedDirectory")
+    public abstract List<ScannedDirectory> getAll();
+}
@@ -0,0 +1,112 @@
+package io.github.patrickconley.arbutus.datastorage.scan.model;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+/**
+ * A file whose tags couldn't be read. Until its size or modification time changes, scans skip it
+ * rather than failing to read it again.
+ */
+@Entity(indices = {
+        @Index(value = "uri", unique = true)
+})
+public class QuarantinedFile {
+
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    @NonNull
+    private final Uri uri;
+
+    /*
+     * File size and modification time when the file failed to be read
+     */
+    private long size;
+
+    private long lastModified;
+
+    /*
+     * Why the file couldn't be read
+     */
+    private String reason;
+
+    public QuarantinedFile(@NonNull Uri uri) {
+        this.uri = uri;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public @NonNull Uri getUri() {
+        return uri;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+    /**
+     * @return whether the file still has the size and modification time it had when it failed
+     */
+    public boolean isUnchanged(long size, long lastModified) {
+        return this.size == size && this.lastModified == lastModified;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return uri.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+
+        QuarantinedFile file = (QuarantinedFile) obj;
+
+        return new EqualsBuilder().append(uri, file.uri).isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder(17, 37).append(uri).toHashCode();
+    }
+}
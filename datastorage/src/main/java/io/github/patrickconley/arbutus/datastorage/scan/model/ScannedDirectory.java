@@ -0,0 +1,111 @@
+package io.github.patrickconley.arbutus.datastorage.scan.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+/**
+ * A directory as it was when it was last listed. A directory's modification time changes when a
+ * child is added, removed, or renamed, so while it's unchanged (and the scan's rules are the
+ * same), an incremental scan needn't list it again.
+ */
+@Entity(indices = {
+        @Index(value = "path", unique = true), @Index("parent")
+})
+public class ScannedDirectory {
+
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    @NonNull
+    private final String path;
+
+    private String parent;
+
+    private long lastModified;
+
+    private int childCount;
+
+    /*
+     * Hash of the filter rules the directory was listed with
+     */
+    private int rulesHash;
+
+    public ScannedDirectory(@NonNull String path) {
+        this.path = path;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public @NonNull String getPath() {
+        return path;
+    }
+
+    public String getParent() {
+        return parent;
+    }
+
+    public void setParent(String parent) {
+        this.parent = parent;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public int getChildCount() {
+        return childCount;
+    }
+
+    public void setChildCount(int childCount) {
+        this.childCount = childCount;
+    }
+
+    public int getRulesHash() {
+        return rulesHash;
+    }
+
+    public void setRulesHash(int rulesHash) {
+        this.rulesHash = rulesHash;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return path;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+
+        ScannedDirectory directory = (ScannedDirectory) obj;
+
+        return new EqualsBuilder().append(path, directory.path).isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder(17, 37).append(path).toHashCode();
+    }
+}
@@ -0,0 +1,12 @@
+package io.github.patrickconley.arbutus.scanner;
+
+/**
+ * Thrown for a file that isn't audio, e.g., cover art or a rip log, so it can be skipped rather
+ * than treated as a file whose tags couldn't be read.
+ */
+public class NotAudioException extends ScannerException {
+
+    public NotAudioException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,260 @@
+package io.github.patrickconley.arbutus.scanner;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Settings for a single library scan.
+ */
+public class ScanOptions implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Mode {
+        /**
+         * Only read files that are new or have changed since the last scan, and remove tracks
+         * whose files have disappeared.
+         */
+        INCREMENTAL,
+        /**
+         * Read every file into a staging copy of the library, then replace the library with it.
+         * The old library stays readable until the new one is complete. Quarantined files are
+         * tried again.
+         */
+        REBUILD
+    }
+
+    private Mode mode = Mode.REBUILD;
+    private int threadCount = 1;
+    private boolean pipelined = false;
+    private int batchSize = 64;
+    private long flushIntervalMillis = 2000L;
+    private int tagCacheSize = 4096;
+    private int entryCacheSize = 256;
+    private boolean bulkLibraryBuild = false;
+    private HashSet<String> includedExtensions = new HashSet<>();
+    private ArrayList<String> excludedPaths = new ArrayList<>();
+    private long minFileSize = 0L;
+    private boolean scanHidden = true;
+    private boolean skipBinaryTags = true;
+    private int maxTagValueLength = 4096;
+    private boolean pruneUnchangedDirectories = false;
+    private long watchDebounceMillis = 2000L;
+    private int maxWatches = 4096;
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public ScanOptions setMode(Mode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    /**
+     * @return Number of directories to scan in parallel (or, in a pipelined scan, the number of
+     * threads reading tags). 1 for a serial scan.
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public ScanOptions setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+        return this;
+    }
+
+    /**
+     * @return whether to scan in a pipeline, with directory traversal, tag reading, and database
+     * writes running concurrently
+     */
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    public ScanOptions setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+        return this;
+    }
+
+    /**
+     * @return Most tracks to write to the library in a single transaction
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public ScanOptions setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @return Longest time a scanned track may wait for the rest of its batch before being
+     * written
+     */
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public ScanOptions setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+        return this;
+    }
+
+    /**
+     * @return Most tag IDs to keep in memory while writing tracks
+     */
+    public int getTagCacheSize() {
+        return tagCacheSize;
+    }
+
+    public ScanOptions setTagCacheSize(int tagCacheSize) {
+        this.tagCacheSize = tagCacheSize;
+        return this;
+    }
+
+    /**
+     * @return Most library entries to keep in memory while writing tracks. Entries are reused by
+     * the tracks of the same album, so this only needs to cover the albums being scanned at once.
+     */
+    public int getEntryCacheSize() {
+        return entryCacheSize;
+    }
+
+    public ScanOptions setEntryCacheSize(int entryCacheSize) {
+        this.entryCacheSize = entryCacheSize;
+        return this;
+    }
+
+    /**
+     * @return whether to build the library in one pass after every file has been read, rather
+     * than adding each track to the library as it's written
+     */
+    public boolean isBulkLibraryBuild() {
+        return bulkLibraryBuild;
+    }
+
+    public ScanOptions setBulkLibraryBuild(boolean bulkLibraryBuild) {
+        this.bulkLibraryBuild = bulkLibraryBuild;
+        return this;
+    }
+
+    /**
+     * @return Extensions of the files to scan; or empty to scan files with any extension
+     */
+    public Set<String> getIncludedExtensions() {
+        return includedExtensions;
+    }
+
+    public ScanOptions setIncludedExtensions(Collection<String> includedExtensions) {
+        this.includedExtensions = new HashSet<>(includedExtensions);
+        return this;
+    }
+
+    /**
+     * @return Globs matching files and directories not to scan
+     */
+    public List<String> getExcludedPaths() {
+        return excludedPaths;
+    }
+
+    public ScanOptions setExcludedPaths(Collection<String> excludedPaths) {
+        this.excludedPaths = new ArrayList<>(excludedPaths);
+        return this;
+    }
+
+    /**
+     * @return Size in bytes of the smallest file to scan
+     */
+    public long getMinFileSize() {
+        return minFileSize;
+    }
+
+    public ScanOptions setMinFileSize(long minFileSize) {
+        this.minFileSize = minFileSize;
+        return this;
+    }
+
+    /**
+     * @return whether to scan files and directories whose names start with a dot (by default,
+     * they're scanned)
+     */
+    public boolean isScanHidden() {
+        return scanHidden;
+    }
+
+    public ScanOptions setScanHidden(boolean scanHidden) {
+        this.scanHidden = scanHidden;
+        return this;
+    }
+
+    /**
+     * @return whether to drop artwork and other binary fields before they're read, rather than
+     * storing them as text tags
+     */
+    public boolean isSkipBinaryTags() {
+        return skipBinaryTags;
+    }
+
+    public ScanOptions setSkipBinaryTags(boolean skipBinaryTags) {
+        this.skipBinaryTags = skipBinaryTags;
+        return this;
+    }
+
+    /**
+     * @return Most bytes of a tag value (encoded as UTF-8) to keep; or 0 to keep values whole
+     */
+    public int getMaxTagValueLength() {
+        return maxTagValueLength;
+    }
+
+    public ScanOptions setMaxTagValueLength(int maxTagValueLength) {
+        this.maxTagValueLength = maxTagValueLength;
+        return this;
+    }
+
+    /**
+     * @return whether an incremental scan should skip listing directories that haven't changed
+     * since they were last listed, rather than checking every file
+     */
+    public boolean isPruneUnchangedDirectories() {
+        return pruneUnchangedDirectories;
+    }
+
+    public ScanOptions setPruneUnchangedDirectories(boolean pruneUnchangedDirectories) {
+        this.pruneUnchangedDirectories = pruneUnchangedDirectories;
+        return this;
+    }
+
+    /**
+     * @return Time without filesystem events after which a watched library scans the paths that
+     * changed
+     */
+    public long getWatchDebounceMillis() {
+        return watchDebounceMillis;
+    }
+
+    public ScanOptions setWatchDebounceMillis(long watchDebounceMillis) {
+        this.watchDebounceMillis = watchDebounceMillis;
+        return this;
+    }
+
+    /**
+     * @return Most directories to watch for changes. Each is an inotify watch, which the kernel
+     * limits.
+     */
+    public int getMaxWatches() {
+        return maxWatches;
+    }
+
+    public ScanOptions setMaxWatches(int maxWatches) {
+        this.maxWatches = maxWatches;
+        return this;
+    }
+
+}
@@ -0,0 +1,327 @@
+package io.github.patrickconley.arbutus.scanner.cache;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+
+/**
+ * The tags last read from each file, keyed by its path, size, and modification time, so a file
+ * that hasn't changed since it was last read needn't be read again, even if the library has been
+ * emptied or rebuilt since.
+ * <p/>
+ * The cache is an append-only log: each file read adds a record, superseding any earlier record
+ * for the same path. The log's header is stamped with how its tags were read (see
+ * {@link io.github.patrickconley.arbutus.scanner.strategy.TagReadOptions#getStamp()}); a log
+ * with a different stamp is discarded, since its tags might not be what the readers return now.
+ * The whole log is loaded when the cache is opened; when it's closed, if the log has gathered
+ * more superseded records than live ones, it's compacted, dropping records for files that no
+ * longer exist.
+ * <p/>
+ * The cache is shared by every thread in a scan, so it's thread-safe. If the log can't be read,
+ * the cache starts empty; if it can't be written, it carries on in memory.
+ */
+public final class TagReadCache implements Closeable {
+    private static final String TAG = TagReadCache.class.getName();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x41545243; // "ATRC"
+    private static final int VERSION = 2;
+
+    /*
+     * Don't bother compacting a log smaller than this many records
+     */
+    private static final int MIN_COMPACTION_RECORDS = 1024;
+
+    private final File file;
+    private final int stamp;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private DataOutputStream log;
+    private int recordCount;
+    private long hits;
+    private long misses;
+
+    private TagReadCache(File file, int stamp) {
+        this.file = file;
+        this.stamp = stamp;
+    }
+
+    /**
+     * Load the cache from its log, creating the log if it doesn't exist.
+     *
+     * @param file  Log file
+     * @param stamp How the tags are read; the log is emptied if they were read differently
+     */
+    @NonNull
+    public static TagReadCache open(@NonNull File file, int stamp) {
+        TagReadCache cache = new TagReadCache(file, stamp);
+        boolean complete = cache.load();
+        try {
+            if (complete) {
+                cache.log = cache.openLog(file, true);
+            } else {
+                // Rewrite the log without its damaged tail
+                cache.compact();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to open tag cache " + file + "; caching in memory", e);
+            cache.log = null;
+        }
+        return cache;
+    }
+
+    /*
+     * Read every record in the log, returning false if the log is damaged
+     */
+    private boolean load() {
+        if (!file.exists()) {
+            return true;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.w(TAG, "Discarding tag cache " + file + " (unknown format)");
+                return false;
+            }
+            if (in.readInt() != stamp) {
+                Log.i(TAG, "Discarding tag cache " + file + " (tags read differently)");
+                return false;
+            }
+
+            long maxLength = file.length();
+            while (true) {
+                // Only the end of a record is a clean end of the log
+                in.mark(1);
+                if (in.read() < 0) {
+                    return true;
+                }
+                in.reset();
+
+                String path = readString(in, maxLength);
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                String[] tags = new String[in.readInt() * 2];
+                for (int i = 0; i < tags.length; i++) {
+                    tags[i] = readString(in, maxLength);
+                }
+                entries.put(path, new Entry(size, lastModified, tags));
+                recordCount++;
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Tag cache " + file + " is damaged after " + recordCount + " records", e);
+            return false;
+        }
+    }
+
+    private DataOutputStream openLog(File file, boolean append) throws IOException {
+        boolean header = !append || file.length() == 0;
+        DataOutputStream log =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)));
+        if (header) {
+            log.writeInt(MAGIC);
+            log.writeInt(VERSION);
+            log.writeInt(stamp);
+        }
+        return log;
+    }
+
+    /**
+     * @param path         File's path
+     * @param size         File's size
+     * @param lastModified File's modification time
+     * @return The tags last read from the file, if it's the same size and modification time as it
+     * was then; or null
+     */
+    public synchronized Map<String, Tag> get(String path, long size, long lastModified) {
+        Entry entry = entries.get(path);
+        if (entry == null || entry.size != size || entry.lastModified != lastModified) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        // New tags each time, since writing a tag sets its ID
+        Map<String, Tag> tags = new HashMap<>();
+        for (int i = 0; i < entry.tags.length; i += 2) {
+            tags.put(entry.tags[i], new Tag(entry.tags[i], entry.tags[i + 1]));
+        }
+        return tags;
+    }
+
+    /**
+     * Remember the tags read from a file.
+     *
+     * @param path         File's path
+     * @param size         File's size
+     * @param lastModified File's modification time
+     */
+    public synchronized void put(
+            String path, long size, long lastModified, Map<String, Tag> tags
+    ) {
+        String[] values = new String[tags.size() * 2];
+        int i = 0;
+        for (Map.Entry<String, Tag> tag : tags.entrySet()) {
+            values[i++] = tag.getKey();
+            values[i++] = tag.getValue().getValue();
+        }
+        Entry entry = new Entry(size, lastModified, values);
+        entries.put(path, entry);
+
+        if (log != null) {
+            try {
+                write(log, path, entry);
+                recordCount++;
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write tag cache " + file + "; caching in memory", e);
+                closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * Forget every file, emptying the log.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        recordCount = 0;
+        closeQuietly();
+        try {
+            log = openLog(file, false);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to clear tag cache " + file + "; caching in memory", e);
+        }
+    }
+
+    /**
+     * Finish writing the log, compacting it if it's mostly superseded records.
+     */
+    @Override
+    public synchronized void close() {
+        if (log == null) {
+            return;
+        }
+
+        if (recordCount >= MIN_COMPACTION_RECORDS && recordCount > 2 * entries.size()) {
+            try {
+                log.close();
+                compact();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to compact tag cache " + file, e);
+            }
+        }
+        closeQuietly();
+    }
+
+    /*
+     * Rewrite the log with only the latest record for each file that still exists, replacing
+     * the old log once the new one is complete, and leave the new log open
+     */
+    private void compact() throws IOException {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (!new File(iterator.next().getKey()).exists()) {
+                iterator.remove();
+            }
+        }
+
+        File compacted = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = openLog(compacted, false)) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                write(out, entry.getKey(), entry.getValue());
+            }
+        }
+        if (!compacted.renameTo(file)) {
+            throw new IOException("Failed to replace " + file);
+        }
+        recordCount = entries.size();
+        Log.i(TAG, "Compacted tag cache " + file + " to " + recordCount + " records");
+
+        log = openLog(file, true);
+    }
+
+    private void closeQuietly() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close tag cache " + file, e);
+            }
+            log = null;
+        }
+    }
+
+    private static void write(DataOutputStream out, String path, Entry entry) throws IOException {
+        writeString(out, path);
+        out.writeLong(entry.size);
+        out.writeLong(entry.lastModified);
+        out.writeInt(entry.tags.length / 2);
+        for (String value : entry.tags) {
+            writeString(out, value);
+        }
+    }
+
+    /*
+     * Unlike DataOutput.writeUTF, not limited to 64KB
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, long maxLength) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * @return Number of files whose tags are cached
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return "TagReadCache[hits=" + hits + ", misses=" + misses + ", entries=" + entries.size() +
+               "]";
+    }
+
+    /**
+     * A file's fingerprint and tags, as alternating keys and values
+     */
+    private static final class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String[] tags;
+
+        private Entry(long size, long lastModified, String[] tags) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.tags = tags;
+        }
+    }
+
+}
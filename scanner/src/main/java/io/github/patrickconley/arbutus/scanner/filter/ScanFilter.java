@@ -0,0 +1,240 @@
+package io.github.patrickconley.arbutus.scanner.filter;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
+
+/**
+ * Decide which files and directories are worth scanning before anything reads them, so files
+ * that will never be tracks (cover art, booklets, lyrics, sample packs) don't cost a tag read.
+ * The rules are compiled once per scan, and the filter is shared by every thread in it, so it's
+ * thread-safe.
+ * <p/>
+ * Each rejection is counted against the rule that made it.
+ */
+public final class ScanFilter {
+
+    /**
+     * Accepts everything.
+     */
+    public static final ScanFilter ACCEPT_ALL =
+            new ScanFilter(Collections.<String>emptySet(), Collections.<String>emptySet(), 0L,
+                           true);
+
+    public enum Rule {
+        /**
+         * The file or directory's name starts with a dot.
+         */
+        HIDDEN,
+        /**
+         * The path matches an excluded glob.
+         */
+        EXCLUDED,
+        /**
+         * The file's extension isn't one of those included.
+         */
+        EXTENSION,
+        /**
+         * The file is smaller than the minimum size.
+         */
+        SIZE
+    }
+
+    private final Set<String> extensions = new HashSet<>();
+    private final Pattern excludedNames;
+    private final Pattern excludedPaths;
+    private final long minFileSize;
+    private final boolean scanHidden;
+
+    private final AtomicLongArray skipped = new AtomicLongArray(Rule.values().length);
+
+    /**
+     * @param options Rules for the scan
+     */
+    public ScanFilter(@NonNull ScanOptions options) {
+        this(options.getIncludedExtensions(), options.getExcludedPaths(),
+             options.getMinFileSize(), options.isScanHidden());
+    }
+
+    /**
+     * @param extensions  Extensions of files to scan (with or without the dot, in any case); or
+     *                    empty to scan files with any extension
+     * @param globs       Paths not to scan. A glob with no slash matches a file or directory
+     *                    name anywhere in the tree; otherwise it matches the whole path. '*' and
+     *                    '?' match within a name, and '**' matches across names.
+     * @param minFileSize Size in bytes of the smallest file to scan
+     * @param scanHidden  Whether to scan hidden files and directories
+     */
+    public ScanFilter(
+            @NonNull Collection<String> extensions, @NonNull Collection<String> globs,
+            long minFileSize, boolean scanHidden
+    ) {
+        for (String extension : extensions) {
+            String normalized = extension.trim().toLowerCase(Locale.US);
+            if (normalized.startsWith(".")) {
+                normalized = normalized.substring(1);
+            }
+            if (!normalized.isEmpty()) {
+                this.extensions.add(normalized);
+            }
+        }
+
+        StringBuilder names = new StringBuilder();
+        StringBuilder paths = new StringBuilder();
+        for (String glob : globs) {
+            String trimmed = glob.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            StringBuilder patterns = trimmed.indexOf('/') < 0 ? names : paths;
+            if (patterns.length() > 0) {
+                patterns.append('|');
+            }
+            patterns.append(toRegex(trimmed));
+        }
+        this.excludedNames = compile(names);
+        this.excludedPaths = compile(paths);
+
+        this.minFileSize = minFileSize;
+        this.scanHidden = scanHidden;
+    }
+
+    /*
+     * Translate a glob into a regular expression, quoting everything but the wildcards
+     */
+    private static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder("(?:");
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c != '*' && c != '?') {
+                continue;
+            }
+            if (i > literalStart) {
+                regex.append(Pattern.quote(glob.substring(literalStart, i)));
+            }
+            if (c == '?') {
+                regex.append("[^/]");
+            } else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else {
+                regex.append("[^/]*");
+            }
+            literalStart = i + 1;
+        }
+        if (literalStart < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        return regex.append(')').toString();
+    }
+
+    private static Pattern compile(StringBuilder patterns) {
+        if (patterns.length() == 0) {
+            return null;
+        }
+        // Android's shared storage is case-insensitive
+        return Pattern.compile(patterns.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+    /**
+     * @return Whether the directory (and so everything below it) should be scanned
+     */
+    public boolean acceptDirectory(@NonNull File dir) {
+        return acceptName(dir, true);
+    }
+
+    /**
+     * @return Whether the file's tags should be read. Only the size rule needs to look at the
+     * file itself, so it's checked last.
+     */
+    public boolean acceptFile(@NonNull File file) {
+        if (!acceptName(file, false)) {
+            return false;
+        }
+
+        if (!extensions.isEmpty() && !extensions.contains(getExtension(file.getName()))) {
+            return skip(Rule.EXTENSION);
+        }
+
+        if (minFileSize > 0 && file.length() < minFileSize) {
+            return skip(Rule.SIZE);
+        }
+
+        return true;
+    }
+
+    private boolean acceptName(File file, boolean directory) {
+        String name = file.getName();
+        if (!scanHidden && name.startsWith(".")) {
+            return skip(Rule.HIDDEN);
+        }
+
+        if (excludedNames != null && excludedNames.matcher(name).matches() ||
+            excludedPaths != null && isExcludedPath(file.getPath(), directory)) {
+            return skip(Rule.EXCLUDED);
+        }
+
+        return true;
+    }
+
+    /*
+     * A glob ending in "/**" excludes the directory itself, not just its contents
+     */
+    private boolean isExcludedPath(String path, boolean directory) {
+        return excludedPaths.matcher(path).matches() ||
+               directory && excludedPaths.matcher(path + "/").matches();
+    }
+
+    private static String getExtension(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.US);
+    }
+
+    /**
+     * @return A hash of the rules, which changes when a rule is added, removed, or changed; to
+     * tell whether an earlier scan's listings still apply
+     */
+    public int getRulesHash() {
+        return Arrays.asList(new TreeSet<>(extensions), String.valueOf(excludedNames),
+                             String.valueOf(excludedPaths), minFileSize, scanHidden).hashCode();
+    }
+
+    private boolean skip(Rule rule) {
+        skipped.incrementAndGet(rule.ordinal());
+        return false;
+    }
+
+    /**
+     * @return Number of files and directories skipped by the rule
+     */
+    public long getSkippedCount(@NonNull Rule rule) {
+        return skipped.get(rule.ordinal());
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        StringBuilder counts = new StringBuilder("ScanFilter[");
+        for (Rule rule : Rule.values()) {
+            if (rule.ordinal() > 0) {
+                counts.append(", ");
+            }
+            counts.append(rule.name().toLowerCase(Locale.US)).append("=")
+                  .append(getSkippedCount(rule));
+        }
+        return counts.append("]").toString();
+    }
+
+}
@@ -0,0 +1,207 @@
+package io.github.patrickconley.arbutus.scanner.model.impl;
+
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * List a directory's children with their types, reading the directory only once: a .nomedia file
+ * is found in the same listing as the children, and the children are only stat'd (for their
+ * types) if there isn't one.
+ * <p/>
+ * Where java.nio.file is available (API 26+), the directory is read with a
+ * {@link DirectoryStream} and each child's attributes with {@link Files#readAttributes}; otherwise
+ * with {@link File#list()} and {@link File#isDirectory()}. Either way, symbolic links are
+ * followed, and a child that can't be stat'd (e.g., a broken link) is listed as a file.
+ * <p/>
+ * The directory reads and stats are counted and logged with the scan summary. This is shared by
+ * every folder in a traversal, so it's thread-safe.
+ */
+public abstract class DirectoryLister {
+    private static final String TAG = DirectoryLister.class.getName();
+
+    private static final String NO_MEDIA_FILE = ".nomedia";
+
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong stats = new AtomicLong();
+
+    /**
+     * @return The best lister for this platform
+     */
+    @NonNull
+    public static DirectoryLister create() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return new NioLister();
+        }
+        return new FileLister();
+    }
+
+    /**
+     * @return The directory's listing, or null if it can't be read
+     */
+    public Listing list(@NonNull File directory) {
+        reads.incrementAndGet();
+        List<String> names = readNames(directory);
+        if (names == null) {
+            return null;
+        }
+
+        for (String name : names) {
+            if (name.equalsIgnoreCase(NO_MEDIA_FILE)) {
+                return Listing.NO_MEDIA;
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>(names.size());
+        for (String name : names) {
+            stats.incrementAndGet();
+            File child = new File(directory, name);
+            entries.add(new Entry(child, isDirectory(child)));
+        }
+        return new Listing(entries);
+    }
+
+    /**
+     * @return The names of the directory's children, in the order the filesystem lists them; or
+     * null if it can't be read
+     */
+    abstract List<String> readNames(File directory);
+
+    /**
+     * @return whether the file is a directory (or a link to one)
+     */
+    abstract boolean isDirectory(File file);
+
+    /**
+     * @return Number of times a directory has been read
+     */
+    public long getReadCount() {
+        return reads.get();
+    }
+
+    /**
+     * @return Number of times a child has been stat'd for its type
+     */
+    public long getStatCount() {
+        return stats.get();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[reads=" + reads.get() + ", stats=" + stats.get() +
+               "]";
+    }
+
+    /**
+     * A directory's children, unless it has a .nomedia file.
+     */
+    public static final class Listing {
+        static final Listing NO_MEDIA = new Listing(Collections.<Entry>emptyList());
+
+        private final List<Entry> entries;
+
+        Listing(List<Entry> entries) {
+            this.entries = entries;
+        }
+
+        /**
+         * @return whether the directory has a .nomedia file, and so shouldn't be scanned
+         */
+        public boolean isNoMedia() {
+            return this == NO_MEDIA;
+        }
+
+        /**
+         * @return The directory's children, or none if it has a .nomedia file
+         */
+        @NonNull
+        public List<Entry> getEntries() {
+            return entries;
+        }
+    }
+
+    /**
+     * A child of a directory, and whether it's a directory itself.
+     */
+    public static final class Entry {
+        private final File file;
+        private final boolean directory;
+
+        Entry(File file, boolean directory) {
+            this.file = file;
+            this.directory = directory;
+        }
+
+        @NonNull
+        public File getFile() {
+            return file;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+    }
+
+    static final class FileLister extends DirectoryLister {
+
+        @Override
+        List<String> readNames(File directory) {
+            String[] names = directory.list();
+            if (names == null) {
+                return null;
+            }
+
+            List<String> list = new ArrayList<>(names.length);
+            Collections.addAll(list, names);
+            return list;
+        }
+
+        @Override
+        boolean isDirectory(File file) {
+            return file.isDirectory();
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    static final class NioLister extends DirectoryLister {
+
+        @Override
+        List<String> readNames(File directory) {
+            List<String> names = new ArrayList<>();
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(directory.toPath())) {
+                for (Path child : children) {
+                    names.add(child.getFileName().toString());
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Failed to list " + directory, e);
+                return null;
+            }
+            return names;
+        }
+
+        @Override
+        boolean isDirectory(File file) {
+            try {
+                return Files.readAttributes(file.toPath(), BasicFileAttributes.class)
+                            .isDirectory();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+}
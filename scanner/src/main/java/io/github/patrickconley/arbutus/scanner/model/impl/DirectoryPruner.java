@@ -0,0 +1,246 @@
+package io.github.patrickconley.arbutus.scanner.model.impl;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.AppDatabase;
+import io.github.patrickconley.arbutus.datastorage.scan.dao.ScannedDirectoryDao;
+import io.github.patrickconley.arbutus.datastorage.scan.model.ScannedDirectory;
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
+import io.github.patrickconley.arbutus.scanner.filter.ScanFilter;
+import io.github.patrickconley.arbutus.scanner.visitor.impl.TrackFingerprints;
+
+/**
+ * The directories listed by earlier scans, with their modification times. Adding, removing, or
+ * renaming a child changes a directory's modification time, so an incremental scan can skip
+ * listing a directory whose time hasn't changed since it was last listed with the same rules:
+ * its files' tracks are claimed as found, and only its subdirectories are visited.
+ * <p/>
+ * Editing a file in place doesn't change its directory's time, so a file edited without being
+ * renamed isn't read again until its directory is listed; a scan with pruning turned off lists
+ * and checks every file. A directory whose time is too recent to be sure of (filesystem times
+ * may be as coarse as two seconds) is recorded as not to be trusted, so it's listed again.
+ * <p/>
+ * Every scan records the directories it lists, in the library (not a staging database), but only
+ * an incremental scan prunes. Changes are kept in memory during a scan and saved at the end.
+ * <p/>
+ * This is shared by every folder in a traversal, so it's thread-safe.
+ */
+public class DirectoryPruner {
+    private static final String TAG = DirectoryPruner.class.getName();
+
+    /*
+     * Times within this long of being read may yet be changed without changing
+     */
+    private static final long RACY_MILLIS = 2000L;
+
+    private final String root;
+    private final int rulesHash;
+    private final TrackFingerprints fingerprints;
+
+    private final Map<String, ScannedDirectory> saved = new HashMap<>();
+    private final Map<String, List<String>> children = new HashMap<>();
+    private final Map<String, ScannedDirectory> seen = new HashMap<>();
+    private final Map<String, ScannedDirectory> recorded = new HashMap<>();
+    private long pruned;
+    private long prunedEntries;
+
+    /**
+     * @param directories  The directories recorded by earlier scans
+     * @param root         The directory being scanned; directories outside it are left alone
+     * @param rulesHash    Hash of the scan's filter rules (see {@link ScanFilter#getRulesHash()})
+     * @param fingerprints The library's tracks, to claim the files of unchanged directories; or
+     *                     null not to prune
+     */
+    public DirectoryPruner(
+            @NonNull List<ScannedDirectory> directories, @NonNull File root, int rulesHash,
+            TrackFingerprints fingerprints
+    ) {
+        this.root = root.getAbsolutePath();
+        this.rulesHash = rulesHash;
+        this.fingerprints = fingerprints;
+
+        for (ScannedDirectory directory : directories) {
+            saved.put(directory.getPath(), directory);
+            List<String> siblings = children.get(directory.getParent());
+            if (siblings == null) {
+                siblings = new ArrayList<>();
+                children.put(directory.getParent(), siblings);
+            }
+            siblings.add(directory.getPath());
+        }
+    }
+
+    /**
+     * Load the directories recorded by earlier scans.
+     *
+     * @param db           The library (not a staging database, whose contents are discarded)
+     * @param root         The directory being scanned
+     * @param options      The scan's options: only an incremental scan prunes, and only if the
+     *                     options allow it
+     * @param fingerprints The library's tracks, if the scan is incremental
+     */
+    @NonNull
+    public static DirectoryPruner load(
+            @NonNull AppDatabase db, @NonNull File root, @NonNull ScanOptions options,
+            TrackFingerprints fingerprints
+    ) {
+        boolean prune = options.getMode() == ScanOptions.Mode.INCREMENTAL &&
+                        options.isPruneUnchangedDirectories();
+        return new DirectoryPruner(db.scannedDirectoryDao().getAll(), root,
+                                   new ScanFilter(options).getRulesHash(),
+                                   prune ? fingerprints : null);
+    }
+
+    /**
+     * If the directory hasn't changed since it was last listed, claim its files' tracks as found.
+     *
+     * @param lastModified The directory's modification time, read before anything else about it
+     * @return The directory's subdirectories when it was last listed, if it hasn't changed since;
+     * or null if it must be listed
+     */
+    synchronized List<File> getUnchangedSubdirectories(
+            @NonNull File directory, long lastModified
+    ) {
+        if (fingerprints == null || lastModified == 0L) {
+            return null;
+        }
+
+        String path = directory.getAbsolutePath();
+        ScannedDirectory previous = saved.get(path);
+        if (previous == null || previous.getLastModified() != lastModified ||
+            previous.getRulesHash() != rulesHash) {
+            return null;
+        }
+
+        seen.put(path, previous);
+        recorded.remove(path);
+        pruned++;
+        prunedEntries += previous.getChildCount();
+        fingerprints.claimFolder(directory);
+
+        List<File> subdirectories = new ArrayList<>();
+        List<String> paths = children.get(path);
+        if (paths != null) {
+            for (String child : paths) {
+                subdirectories.add(new File(child));
+            }
+        }
+        return subdirectories;
+    }
+
+    /**
+     * Record a directory that's been listed.
+     *
+     * @param lastModified   The directory's modification time, read before it was listed
+     * @param childCount     Number of children it listed
+     * @param subdirectories Its subdirectories to be scanned; these are recorded as not yet
+     *                       listed, so a subdirectory that isn't (e.g., it has a .nomedia file, or
+     *                       can't be read) is still visited when this directory is pruned
+     */
+    synchronized void record(
+            @NonNull File directory, long lastModified, int childCount,
+            @NonNull List<File> subdirectories
+    ) {
+        if (System.currentTimeMillis() - lastModified < RACY_MILLIS) {
+            lastModified = 0L;
+        }
+        put(directory, lastModified, childCount);
+
+        for (File subdirectory : subdirectories) {
+            if (!seen.containsKey(subdirectory.getAbsolutePath())) {
+                put(subdirectory, 0L, 0);
+            }
+        }
+    }
+
+    private void put(File directory, long lastModified, int childCount) {
+        ScannedDirectory row = new ScannedDirectory(directory.getAbsolutePath());
+        row.setParent(directory.getAbsoluteFile().getParent());
+        row.setLastModified(lastModified);
+        row.setChildCount(childCount);
+        row.setRulesHash(rulesHash);
+
+        seen.put(row.getPath(), row);
+        ScannedDirectory previous = saved.get(row.getPath());
+        if (previous != null && isSame(previous, row)) {
+            recorded.remove(row.getPath());
+        } else {
+            recorded.put(row.getPath(), row);
+        }
+    }
+
+    private static boolean isSame(ScannedDirectory a, ScannedDirectory b) {
+        return a.getLastModified() == b.getLastModified() &&
+               a.getChildCount() == b.getChildCount() && a.getRulesHash() == b.getRulesHash() &&
+               (a.getParent() == null ? b.getParent() == null :
+                a.getParent().equals(b.getParent()));
+    }
+
+    /**
+     * Save the directories listed during the scan, and forget those under its root that weren't
+     * reached. Call this only once the scan's tracks are in the library.
+     *
+     * @param db The library the directories were loaded from
+     */
+    public void save(@NonNull AppDatabase db) {
+        final List<ScannedDirectory> insert;
+        final List<ScannedDirectory> delete = new ArrayList<>();
+        synchronized (this) {
+            insert = getRecorded();
+            for (ScannedDirectory directory : saved.values()) {
+                if (!seen.containsKey(directory.getPath()) && isUnderRoot(directory.getPath())) {
+                    delete.add(directory);
+                }
+            }
+        }
+        if (insert.isEmpty() && delete.isEmpty()) {
+            return;
+        }
+
+        final ScannedDirectoryDao dao = db.scannedDirectoryDao();
+        db.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                dao.deleteAll(delete);
+                dao.insertAll(insert);
+            }
+        });
+        Log.i(TAG, "Recorded " + insert.size() + " directories; forgot " + delete.size());
+    }
+
+    /**
+     * @return The directories listed during the scan that have changed since they were last
+     * listed
+     */
+    synchronized List<ScannedDirectory> getRecorded() {
+        return new ArrayList<>(recorded.values());
+    }
+
+    private boolean isUnderRoot(String path) {
+        return path.equals(root) || path.startsWith(root.endsWith(File.separator) ? root :
+                                                    root + File.separator);
+    }
+
+    /**
+     * @return Number of directories skipped because they hadn't changed
+     */
+    public synchronized long getPrunedCount() {
+        return pruned;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return "DirectoryPruner[pruned=" + pruned + ", entries=" + prunedEntries + ", recorded=" +
+               recorded.size() + "]";
+    }
+
+}
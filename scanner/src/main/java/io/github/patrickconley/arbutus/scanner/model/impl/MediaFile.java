@@ -4,18 +4,28 @@ import android.util.Log;
 
 import java.io.File;
 
+import io.github.patrickconley.arbutus.scanner.filter.ScanFilter;
 import io.github.patrickconley.arbutus.scanner.model.MediaFileBase;
 import io.github.patrickconley.arbutus.scanner.visitor.MediaVisitor;
 
 public class MediaFile extends MediaFileBase {
     private final String tag = getClass().getName();
+    private final ScanFilter filter;
 
     public MediaFile(File file) {
+        this(file, ScanFilter.ACCEPT_ALL);
+    }
+
+    /**
+     * @param filter Rules for whether to scan the file
+     */
+    public MediaFile(File file, ScanFilter filter) {
         super(file);
+        this.filter = filter;
     }
 
     /**
-     * Validate the file (it must be readable), then visit it.
+     * Validate the file (it must be readable, and accepted by the filter), then visit it.
      */
     @Override
     public long accept(MediaVisitor visitor) {
@@ -26,6 +36,11 @@ public class MediaFile extends MediaFileBase {
             return 0L;
         }
 
+        if (!filter.acceptFile(getFile())) {
+            Log.d(tag, "Skipping file (filtered)");
+            return 0L;
+        }
+
         visitor.visit(this);
 
         return 1L;
@@ -3,9 +3,12 @@ package io.github.patrickconley.arbutus.scanner.model.impl;
 import android.util.Log;
 
 import java.io.File;
-import java.io.FilenameFilter;
-import java.util.Objects;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 
+import io.github.patrickconley.arbutus.scanner.filter.ScanFilter;
 import io.github.patrickconley.arbutus.scanner.model.MediaFileBase;
 import io.github.patrickconley.arbutus.scanner.visitor.MediaVisitor;
 
@@ -16,51 +19,175 @@ import io.github.patrickconley.arbutus.scanner.visitor.MediaVisitor;
  */
 public class MediaFolder extends MediaFileBase {
     private final String tag = getClass().getName();
+    private final ScanFilter filter;
+    private final VisitedDirectories visited;
+    private final DirectoryLister lister;
+    private final DirectoryPruner pruner;
 
     public MediaFolder(File file) {
+        this(file, ScanFilter.ACCEPT_ALL);
+    }
+
+    /**
+     * @param filter Rules for which of the directory's descendants to scan
+     */
+    public MediaFolder(File file, ScanFilter filter) {
+        this(file, filter, null);
+    }
+
+    /**
+     * @param filter Rules for which of the directory's descendants to scan
+     * @param pruner The directories listed by earlier scans, to skip those that haven't changed
+     *               and record those that are listed; or null to list every directory
+     */
+    public MediaFolder(File file, ScanFilter filter, DirectoryPruner pruner) {
+        this(file, filter, new VisitedDirectories(), DirectoryLister.create(), pruner);
+    }
+
+    private MediaFolder(
+            File file, ScanFilter filter, VisitedDirectories visited, DirectoryLister lister,
+            DirectoryPruner pruner
+    ) {
         super(file);
+        this.filter = filter;
+        this.visited = visited;
+        this.lister = lister;
+        this.pruner = pruner;
     }
 
     /**
      * Validate the directory (it must be a readable directory that does not contain a .nomedia
-     * file), then visit it and call its children's appropriate accept methods.
+     * file, and hasn't already been scanned by another path), then visit it and its descendants.
+     * <p/>
+     * The tree is walked depth-first from an explicit stack rather than by recursion, so a deep
+     * tree can't overflow a small thread stack; files and directories are visited in the same
+     * order as they would be by recursion.
      */
     @Override
     public long accept(MediaVisitor visitor) {
+        Deque<MediaFileBase> pending = new ArrayDeque<>();
+        pending.push(this);
+
+        long count = 0L;
+        while (!pending.isEmpty()) {
+            MediaFileBase next = pending.pop();
+            if (!(next instanceof MediaFolder)) {
+                count += next.accept(visitor);
+                continue;
+            }
+
+            MediaFolder folder = (MediaFolder) next;
+            List<MediaFileBase> contents = folder.listContents();
+            if (contents == null) {
+                continue;
+            }
+
+            visitor.visit(folder);
+
+            // Push in reverse, so the first child is popped first
+            for (int i = contents.size() - 1; i >= 0; i--) {
+                pending.push(contents.get(i));
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Validate the directory (it must be a readable directory that does not contain a .nomedia
+     * file, and hasn't already been scanned by another path), then list its children.
+     * Subdirectories rejected by the filter aren't listed, so nothing below them is scanned.
+     * <p/>
+     * The directory is read once, for both its .nomedia file and its children (see
+     * {@link DirectoryLister}). If it hasn't changed since it was last listed, it isn't read at
+     * all: its files are already in the library, and only its subdirectories are returned (see
+     * {@link DirectoryPruner}).
+     *
+     * @return The directory's children, or null if the directory shouldn't be scanned
+     */
+    List<MediaFileBase> listContents() {
 
         // Check the directory is readable
         if (!getFile().exists() || !getFile().isDirectory() || !getFile().canExecute()) {
             Log.w(tag, "Directory is invalid");
-            return 0L;
+            return null;
+        }
+
+        // Check the directory hasn't already been reached by a link or another mount
+        if (!visited.add(getFile())) {
+            return null;
+        }
+
+        // Read the time first, so a change made while listing is seen by the next scan
+        long lastModified = getFile().lastModified();
+        if (pruner != null) {
+            List<File> subdirectories =
+                    pruner.getUnchangedSubdirectories(getFile(), lastModified);
+            if (subdirectories != null) {
+                Log.d(tag, "Skipping directory " + getFile().toString() + " (unchanged)");
+                List<MediaFileBase> contents = new ArrayList<>(subdirectories.size());
+                for (File subdirectory : subdirectories) {
+                    contents.add(newChild(subdirectory));
+                }
+                return contents;
+            }
         }
 
         Log.d(tag, "Scanning directory " + getFile().toString());
 
+        DirectoryLister.Listing listing = lister.list(getFile());
+        if (listing == null) {
+            Log.w(tag, "Directory can't be listed");
+            return null;
+        }
+
         // Check the directory allows media scanning
-        if (Objects.requireNonNull(getFile().listFiles(new NoMediaFilter())).length > 0) {
+        if (listing.isNoMedia()) {
             Log.d(tag, "Skipping directory (.nomedia)");
-            return 0L;
+            return null;
         }
 
-        visitor.visit(this);
-
-        File[] contents = Objects.requireNonNull(getFile().listFiles());
-        long count = 0L;
-        for (File file : contents) {
-            if (file.isDirectory()) {
-                count += new MediaFolder(file).accept(visitor);
-            } else {
-                count += new MediaFile(file).accept(visitor);
+        List<MediaFileBase> contents = new ArrayList<>(listing.getEntries().size());
+        List<File> subdirectories = new ArrayList<>();
+        for (DirectoryLister.Entry entry : listing.getEntries()) {
+            if (!entry.isDirectory()) {
+                contents.add(new MediaFile(entry.getFile(), filter));
+            } else if (filter.acceptDirectory(entry.getFile())) {
+                contents.add(newChild(entry.getFile()));
+                subdirectories.add(entry.getFile());
             }
         }
 
-        return count;
+        if (pruner != null) {
+            pruner.record(getFile(), lastModified, listing.getEntries().size(), subdirectories);
+        }
+
+        return contents;
     }
 
-    private static class NoMediaFilter implements FilenameFilter {
-        @Override
-        public boolean accept(File dir, String name) {
-            return name.equalsIgnoreCase(".nomedia");
-        }
+    private MediaFolder newChild(File subdirectory) {
+        return new MediaFolder(subdirectory, filter, visited, lister, pruner);
+    }
+
+    /**
+     * @return The directories scanned in this folder's traversal, including any skipped as
+     * duplicates
+     */
+    public VisitedDirectories getVisitedDirectories() {
+        return visited;
+    }
+
+    /**
+     * @return The lister shared by this folder's traversal, with its counts
+     */
+    public DirectoryLister getDirectoryLister() {
+        return lister;
+    }
+
+    /**
+     * @return The pruner shared by this folder's traversal, or null if every directory is listed
+     */
+    public DirectoryPruner getDirectoryPruner() {
+        return pruner;
     }
 }
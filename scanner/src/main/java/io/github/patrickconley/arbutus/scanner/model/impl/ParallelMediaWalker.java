@@ -0,0 +1,178 @@
+package io.github.patrickconley.arbutus.scanner.model.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.github.patrickconley.arbutus.scanner.model.MediaFileBase;
+import io.github.patrickconley.arbutus.scanner.visitor.MediaVisitor;
+import io.github.patrickconley.arbutus.scanner.visitor.MediaVisitorFactory;
+
+/**
+ * Traverse a directory tree on a fixed pool of threads, listing subdirectories concurrently. Each
+ * directory is visited by whichever worker lists it, and each worker has its own visitor, so
+ * visitors don't need to be thread-safe.
+ * <p/>
+ * Directories are validated exactly as in {@link MediaFolder#accept(MediaVisitor)}, so a parallel
+ * walk visits the same files as a serial one (though not in the same order).
+ */
+public class ParallelMediaWalker {
+
+    private final int threadCount;
+
+    /**
+     * @param threadCount Maximum number of directories to scan at once
+     */
+    public ParallelMediaWalker(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Invalid thread count " + threadCount);
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Visit every file below the root directory, then release the visitors once every worker has
+     * stopped using them.
+     *
+     * @param root    Directory to scan
+     * @param factory Source of a visitor for each worker thread
+     *
+     * @return Number of files (not folders) visited
+     *
+     * @throws IllegalStateException If the walk is interrupted before every file is visited
+     */
+    public <V extends MediaVisitor> long walk(MediaFolder root, MediaVisitorFactory<V> factory) {
+        Walk<V> walk = new Walk<>(factory);
+        try {
+            return walk.run(root);
+        } finally {
+            walk.awaitTermination();
+            walk.release();
+        }
+    }
+
+    /**
+     * State of a single traversal.
+     */
+    private class Walk<V extends MediaVisitor> {
+        private final MediaVisitorFactory<V> factory;
+        private final List<V> visitors = Collections.synchronizedList(new ArrayList<V>());
+        private final ThreadLocal<V> visitor = new ThreadLocal<V>() {
+            @Override
+            protected V initialValue() {
+                V visitor = factory.newVisitor();
+                visitors.add(visitor);
+                return visitor;
+            }
+        };
+
+        private final ExecutorService executor =
+                new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                                       new LinkedBlockingQueue<Runnable>());
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        Walk(MediaVisitorFactory<V> factory) {
+            this.factory = factory;
+        }
+
+        long run(MediaFolder root) {
+            submit(root);
+
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                // The files not yet visited would look like they'd vanished
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted", e);
+            } finally {
+                executor.shutdownNow();
+            }
+
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+
+            return count.get();
+        }
+
+        private void submit(final MediaFolder folder) {
+            pending.incrementAndGet();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        scan(folder);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        if (pending.decrementAndGet() == 0) {
+                            done.countDown();
+                        }
+                    }
+                }
+            });
+        }
+
+        /*
+         * Visit the folder and its files; queue its subfolders
+         */
+        private void scan(MediaFolder folder) {
+            if (failure.get() != null) {
+                return;
+            }
+
+            List<MediaFileBase> contents = folder.listContents();
+            if (contents == null) {
+                return;
+            }
+
+            visitor.get().visit(folder);
+
+            for (MediaFileBase child : contents) {
+                if (child instanceof MediaFolder) {
+                    submit((MediaFolder) child);
+                } else {
+                    count.addAndGet(child.accept(visitor.get()));
+                }
+            }
+        }
+
+        /*
+         * Wait for the workers to finish their current visits, even if this thread is
+         * interrupted, so no visitor is released while it's in use
+         */
+        void awaitTermination() {
+            boolean interrupted = false;
+            while (!executor.isTerminated()) {
+                try {
+                    executor.awaitTermination(1L, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void release() {
+            synchronized (visitors) {
+                for (V visitor : visitors) {
+                    factory.release(visitor);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package io.github.patrickconley.arbutus.scanner.model.impl;
+
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.StructStat;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The directories a traversal has scanned, by physical identity, so that a directory reached
+ * again through a symbolic link or a bind mount isn't scanned twice, and a link to one of its own
+ * ancestors doesn't loop.
+ * <p/>
+ * Where the platform exposes them (API 21+), directories are identified by device and inode;
+ * otherwise by canonical path, which resolves symbolic links but not bind mounts.
+ * <p/>
+ * This is shared by every folder in a traversal, so it's thread-safe.
+ */
+public final class VisitedDirectories {
+    private static final String TAG = VisitedDirectories.class.getName();
+
+    /*
+     * The path each directory was first reached by, by identity
+     */
+    private final ConcurrentMap<String, String> visited = new ConcurrentHashMap<>();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    /**
+     * Mark a directory as visited.
+     *
+     * @return whether the directory hadn't already been visited, by this path or any other
+     */
+    public boolean add(@NonNull File directory) {
+        String first = visited.putIfAbsent(identify(directory), directory.getPath());
+        if (first == null) {
+            return true;
+        }
+
+        duplicates.incrementAndGet();
+        Log.i(TAG, "Skipping directory " + directory + " (already scanned as " + first + ")");
+        return false;
+    }
+
+    /*
+     * Device and inode numbers never start with a slash, so they can't collide with paths
+     */
+    private static String identify(File directory) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            try {
+                StructStat stat = Os.stat(directory.getPath());
+                return stat.st_dev + ":" + stat.st_ino;
+            } catch (ErrnoException e) {
+                Log.w(TAG, "Failed to stat " + directory, e);
+            }
+        }
+
+        try {
+            return directory.getCanonicalPath();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to resolve " + directory, e);
+            return directory.getAbsolutePath();
+        }
+    }
+
+    /**
+     * @return Number of distinct directories visited
+     */
+    public int size() {
+        return visited.size();
+    }
+
+    /**
+     * @return Number of times a directory was skipped because it had already been visited
+     */
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "VisitedDirectories[directories=" + visited.size() + ", duplicates=" +
+               duplicates.get() + "]";
+    }
+
+}
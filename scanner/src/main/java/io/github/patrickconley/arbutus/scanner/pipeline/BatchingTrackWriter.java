@@ -0,0 +1,100 @@
+package io.github.patrickconley.arbutus.scanner.pipeline;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group scanned tracks into batches, writing each batch in a single transaction. A batch is
+ * written once it's full or once its oldest track has waited for the flush interval, whichever
+ * comes first.
+ * <p/>
+ * If a batch fails, its tracks are written again one per transaction (see
+ * {@link TrackWriter#write(List)}), so a bad track only loses itself. Android treats any
+ * {@code ROLLBACK} statement as the end of the outer transaction, so a savepoint per track isn't
+ * an option.
+ * <p/>
+ * This isn't thread-safe: each writing thread needs its own batches.
+ */
+public class BatchingTrackWriter {
+
+    private final TrackWriter writer;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+
+    private final List<ScannedTrack> batch;
+    private long batchStarted;
+
+    /**
+     * @param writer              Writer for each batch
+     * @param batchSize           Most tracks to write in a single transaction
+     * @param flushIntervalMillis Longest time a track may wait to be written
+     */
+    public BatchingTrackWriter(TrackWriter writer, int batchSize, long flushIntervalMillis) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size " + batchSize);
+        }
+        this.writer = writer;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Queue a track, writing the batch if it's due.
+     *
+     * @return false if the batch was written and any of its tracks failed
+     */
+    public boolean add(@NonNull ScannedTrack track) {
+        if (batch.isEmpty()) {
+            batchStarted = System.nanoTime();
+        }
+        batch.add(track);
+
+        return flushIfDue();
+    }
+
+    /**
+     * Write the batch if it's full or has waited long enough.
+     *
+     * @return false if the batch was written and any of its tracks failed
+     */
+    public boolean flushIfDue() {
+        if (batch.size() >= batchSize || (!batch.isEmpty() && getMillisUntilDue() == 0L)) {
+            return flush();
+        }
+        return true;
+    }
+
+    /**
+     * @return Time until the current batch must be written, or the full flush interval if there's
+     * no batch
+     */
+    public long getMillisUntilDue() {
+        if (batch.isEmpty()) {
+            return TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos);
+        }
+
+        long remaining = batchStarted + flushIntervalNanos - System.nanoTime();
+        return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(remaining));
+    }
+
+    /**
+     * Write the current batch.
+     *
+     * @return false if any of its tracks failed
+     */
+    public boolean flush() {
+        if (batch.isEmpty()) {
+            return true;
+        }
+
+        int written = writer.write(batch);
+        boolean success = written == batch.size();
+        batch.clear();
+        return success;
+    }
+
+}
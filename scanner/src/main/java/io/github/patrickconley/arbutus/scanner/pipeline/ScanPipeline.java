@@ -0,0 +1,233 @@
+package io.github.patrickconley.arbutus.scanner.pipeline;
+
+import android.net.Uri;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.github.patrickconley.arbutus.datastorage.AppDatabase;
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
+import io.github.patrickconley.arbutus.scanner.cache.TagReadCache;
+import io.github.patrickconley.arbutus.scanner.model.impl.MediaFile;
+import io.github.patrickconley.arbutus.scanner.model.impl.MediaFolder;
+import io.github.patrickconley.arbutus.scanner.quarantine.Quarantine;
+import io.github.patrickconley.arbutus.scanner.strategy.StrategyFactory;
+import io.github.patrickconley.arbutus.scanner.visitor.MediaVisitor;
+import io.github.patrickconley.arbutus.scanner.visitor.impl.TrackFingerprints;
+
+/**
+ * Scan a directory tree in three overlapping stages: the calling thread walks the tree, a pool of
+ * workers reads tags, and a single writer commits the tracks to the library in batches (see
+ * {@link BatchingTrackWriter}).
+ * <p/>
+ * The stages are joined by bounded queues, so a slow stage blocks the one before it: however
+ * large the library, only a few hundred files are in flight at once. While the walk waits for
+ * room, it checks the other stages are still running, so a stage that fails ends the scan rather
+ * than leaving the walk blocked.
+ */
+public class ScanPipeline {
+
+    /*
+     * Files (or tracks) queued per reader thread between stages
+     */
+    private static final int QUEUE_DEPTH = 32;
+
+    /*
+     * How long the walk waits for room in the files queue before checking the other stages
+     */
+    private static final long OFFER_MILLIS = 500L;
+
+    /*
+     * Marks the end of a queue. Each reader passes one to the writer when it's finished.
+     */
+    private static final MediaFile END_OF_FILES = new MediaFile(new File(""));
+    private static final ScannedTrack END_OF_TRACKS =
+            new ScannedTrack(new Track(Uri.EMPTY), Collections.<String, Tag>emptyMap(), null);
+
+    private final AppDatabase db;
+    private final WriteCaches caches;
+    private final StrategyFactory strategyFactory;
+    private final TrackReader reader;
+    private final ScanOptions options;
+    private final int readerCount;
+
+    private final BlockingQueue<MediaFile> files;
+    private final BlockingQueue<ScannedTrack> tracks;
+    private final List<Future<?>> stages = new ArrayList<>();
+
+    /**
+     * @param db           Library to write to
+     * @param options      Number of threads reading tags, and batching of database writes
+     * @param fingerprints Tracks already in the library, for an incremental scan; or null
+     * @param caches       Lookups for the writer; or null
+     * @param strategies   Tag readers, shared by the reader threads. Each reader releases its
+     *                     own strategies when it finishes; the caller releases the factory.
+     * @param tagCache     Tags already read from unchanged files; or null
+     * @param quarantine   Files whose tags couldn't be read, to skip and add to; or null
+     */
+    public ScanPipeline(
+            AppDatabase db, ScanOptions options, TrackFingerprints fingerprints, WriteCaches caches,
+            StrategyFactory strategies, TagReadCache tagCache, Quarantine quarantine
+    ) {
+        this.readerCount = options.getThreadCount();
+        if (readerCount < 1) {
+            throw new IllegalArgumentException("Invalid reader count " + readerCount);
+        }
+        this.db = db;
+        this.options = options;
+        this.caches = caches;
+        this.strategyFactory = strategies;
+        this.reader = new TrackReader(fingerprints, strategies, tagCache, quarantine);
+
+        this.files = new ArrayBlockingQueue<>(QUEUE_DEPTH * readerCount);
+        this.tracks = new ArrayBlockingQueue<>(QUEUE_DEPTH * readerCount);
+    }
+
+    /**
+     * Scan the directory tree, returning once every track has been written.
+     *
+     * @return Number of files (not folders) found
+     *
+     * @throws IllegalStateException If a stage fails, or the scan is interrupted
+     */
+    public long run(MediaFolder root) {
+        ExecutorService executor = Executors.newFixedThreadPool(readerCount + 1);
+        try {
+            for (int i = 0; i < readerCount; i++) {
+                stages.add(executor.submit(new Reader()));
+            }
+            stages.add(executor.submit(new Writer()));
+
+            long count = root.accept(new QueueingVisitor());
+            for (int i = 0; i < readerCount; i++) {
+                queue(END_OF_FILES);
+            }
+
+            for (Future<?> stage : stages) {
+                stage.get();
+            }
+
+            return count;
+        } catch (InterruptedException e) {
+            // The files still queued would look like they'd vanished
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Scan failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * Wait for room for the file, failing if another stage has stopped, since it would never
+     * make room
+     */
+    private void queue(MediaFile file) throws InterruptedException, ExecutionException {
+        while (!files.offer(file, OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+            for (Future<?> stage : stages) {
+                if (stage.isDone()) {
+                    stage.get();
+                    throw new IllegalStateException("Scan stage stopped early");
+                }
+            }
+        }
+    }
+
+    /**
+     * First stage: queue files whose tags need to be read.
+     */
+    private class QueueingVisitor implements MediaVisitor {
+
+        @Override
+        public boolean visit(MediaFolder dir) {
+            return true;
+        }
+
+        @Override
+        public boolean visit(MediaFile file) {
+            if (reader.claimIfUnchanged(file)) {
+                return true;
+            }
+
+            try {
+                queue(file);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Scan failed", e.getCause());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Second stage: read tags (see {@link TrackReader}). Each reader leases its own tag-reading
+     * strategies from the shared factory.
+     */
+    private class Reader implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                for (MediaFile file = files.take(); file != END_OF_FILES; file = files.take()) {
+                    ScannedTrack track = reader.read(file);
+                    if (track != null) {
+                        tracks.put(track);
+                    }
+                }
+                tracks.put(END_OF_TRACKS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                strategyFactory.releaseCurrentThread();
+            }
+        }
+    }
+
+    /**
+     * Third stage: write tracks to the library in batches, committing each batch once it's full
+     * or has waited for the flush interval.
+     */
+    private class Writer implements Runnable {
+
+        private final BatchingTrackWriter writer =
+                new BatchingTrackWriter(new TrackWriter(db, caches, !options.isBulkLibraryBuild()),
+                                        options.getBatchSize(), options.getFlushIntervalMillis());
+
+        @Override
+        public void run() {
+            int readersRunning = readerCount;
+            try {
+                while (readersRunning > 0) {
+                    ScannedTrack track =
+                            tracks.poll(writer.getMillisUntilDue(), TimeUnit.MILLISECONDS);
+                    if (track == null) {
+                        writer.flushIfDue();
+                    } else if (track == END_OF_TRACKS) {
+                        readersRunning--;
+                    } else {
+                        writer.add(track);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                writer.flush();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package io.github.patrickconley.arbutus.scanner.pipeline;
+
+import androidx.annotation.NonNull;
+
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
+
+/**
+ * A track whose tags have been read, waiting to be written to the library.
+ */
+public class ScannedTrack {
+
+    private final Track track;
+    private final Map<String, Tag> tags;
+    private final Track previous;
+
+    /**
+     * @param track    Track to write
+     * @param tags     The track's tags
+     * @param previous The library's previous version of the track, which will be replaced, or
+     *                 null if the track is new
+     */
+    public ScannedTrack(@NonNull Track track, @NonNull Map<String, Tag> tags, Track previous) {
+        this.track = track;
+        this.tags = tags;
+        this.previous = previous;
+    }
+
+    @NonNull
+    public Track getTrack() {
+        return track;
+    }
+
+    @NonNull
+    public Map<String, Tag> getTags() {
+        return tags;
+    }
+
+    public Track getPrevious() {
+        return previous;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return track.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.patrickconley.arbutus.scanner.pipeline;
+
+import android.util.Log;
+
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
+import io.github.patrickconley.arbutus.scanner.NotAudioException;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.cache.TagReadCache;
+import io.github.patrickconley.arbutus.scanner.model.impl.MediaFile;
+import io.github.patrickconley.arbutus.scanner.quarantine.Quarantine;
+import io.github.patrickconley.arbutus.scanner.strategy.StrategyFactory;
+import io.github.patrickconley.arbutus.scanner.visitor.impl.TrackFingerprints;
+
+/**
+ * Read each file found by a scan into a track for the library, the same way whether the scan is
+ * serial, parallel, or pipelined. Files whose tags are cached aren't read, and quarantined files
+ * are skipped; files that aren't audio are skipped quietly, and a file whose tags can't be read,
+ * for whatever other reason, is quarantined.
+ * <p/>
+ * This is shared by all the threads in a scan, so everything it's given must be thread-safe.
+ */
+public class TrackReader {
+    private static final String TAG = TrackReader.class.getName();
+
+    private final TrackFingerprints fingerprints;
+    private final StrategyFactory strategyFactory;
+    private final TagReadCache tagCache;
+    private final Quarantine quarantine;
+
+    /**
+     * @param fingerprints Tracks already in the library, for an incremental scan; or null
+     * @param strategies   Tag readers
+     * @param tagCache     Tags already read from unchanged files; or null
+     * @param quarantine   Files whose tags couldn't be read, to skip and add to; or null
+     */
+    public TrackReader(
+            TrackFingerprints fingerprints, StrategyFactory strategies, TagReadCache tagCache,
+            Quarantine quarantine
+    ) {
+        this.fingerprints = fingerprints;
+        this.strategyFactory = strategies;
+        this.tagCache = tagCache;
+        this.quarantine = quarantine;
+    }
+
+    /**
+     * In an incremental scan, claim the file's track if the file hasn't changed since it was
+     * last scanned, so it needn't be read again.
+     *
+     * @return whether the file is unchanged
+     */
+    public boolean claimIfUnchanged(MediaFile file) {
+        if (fingerprints == null) {
+            return false;
+        }
+
+        Track track = newTrack(file);
+        if (!fingerprints.isUnchanged(track)) {
+            return false;
+        }
+        fingerprints.claim(track);
+        return true;
+    }
+
+    /**
+     * Read the file's tags, unless they're cached. In an incremental scan, the file claims its
+     * previous track, which it will replace.
+     *
+     * @return The track to write, or null if the file isn't audio, is quarantined, or its tags
+     * couldn't be read
+     */
+    public ScannedTrack read(MediaFile file) {
+        Track track = newTrack(file);
+
+        if (quarantine != null && quarantine.isQuarantined(track)) {
+            Log.d(TAG, "Skipping " + file + " (quarantined)");
+            return null;
+        }
+
+        Map<String, Tag> tags = tagCache == null ? null : tagCache.get(
+                file.getFile().getAbsolutePath(), track.getSize(), track.getLastModified());
+        if (tags == null) {
+            try {
+                tags = strategyFactory.getStrategy(file).readTags(file.getFile());
+            } catch (NotAudioException e) {
+                Log.d(TAG, "Skipping " + file + " (" + e.getMessage() + ")");
+                return null;
+            } catch (ScannerException | RuntimeException e) {
+                Log.e(TAG, "Failed to read tags from " + file, e);
+                if (quarantine != null) {
+                    quarantine.add(track, e);
+                }
+                return null;
+            }
+            if (tagCache != null) {
+                tagCache.put(file.getFile().getAbsolutePath(), track.getSize(),
+                             track.getLastModified(), tags);
+            }
+        }
+        if (quarantine != null) {
+            quarantine.release(track);
+        }
+
+        return new ScannedTrack(track, tags,
+                                fingerprints == null ? null : fingerprints.claim(track));
+    }
+
+    private static Track newTrack(MediaFile file) {
+        Track track = new Track(file.getUri());
+        track.setSize(file.getFile().length());
+        track.setLastModified(file.getFile().lastModified());
+        return track;
+    }
+
+}
@@ -0,0 +1,144 @@
+package io.github.patrickconley.arbutus.scanner.pipeline;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+import io.github.patrickconley.arbutus.datastorage.AppDatabase;
+import io.github.patrickconley.arbutus.datastorage.library.LibraryManager;
+import io.github.patrickconley.arbutus.datastorage.metadata.TrackManager;
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+
+/**
+ * Write scanned tracks to the library.
+ */
+public class TrackWriter {
+    private static final String TAG = TrackWriter.class.getName();
+
+    private final AppDatabase db;
+    private final TrackManager trackManager;
+    private final LibraryManager libraryManager;
+    private final boolean addToLibrary;
+
+    public TrackWriter(AppDatabase db) {
+        this(db, null, true);
+    }
+
+    /**
+     * @param caches       Lookups shared with the scan's other writers; or null
+     * @param addToLibrary whether to add tracks to the library as they're written, rather than
+     *                     leaving the library to be rebuilt once the scan is finished
+     */
+    public TrackWriter(AppDatabase db, WriteCaches caches, boolean addToLibrary) {
+        this.db = db;
+        this.addToLibrary = addToLibrary;
+        if (caches == null) {
+            this.trackManager = new TrackManager(db);
+            this.libraryManager = new LibraryManager(db);
+        } else {
+            this.trackManager = new TrackManager(db, caches.getTagCache());
+            this.libraryManager = new LibraryManager(db, caches.getEntryCache());
+        }
+    }
+
+    /**
+     * Write a batch of tracks in a single transaction. If the batch fails, write each track in its
+     * own transaction so one bad track doesn't lose the rest.
+     *
+     * @return Number of tracks written
+     */
+    public int write(@NonNull final List<ScannedTrack> tracks) {
+        if (tracks.size() > 1) {
+            try {
+                db.runInTransaction(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (ScannedTrack track : tracks) {
+                            save(track);
+                        }
+                    }
+                });
+                commit();
+                return tracks.size();
+            } catch (RuntimeException e) {
+                discard(tracks);
+                Log.w(TAG, "Failed to save batch of " + tracks.size() + " tracks; retrying singly",
+                      e);
+            }
+        }
+
+        int count = 0;
+        for (ScannedTrack track : tracks) {
+            if (write(track)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write a track in its own transaction.
+     *
+     * @return whether the track was written
+     */
+    public boolean write(@NonNull final ScannedTrack track) {
+        try {
+            db.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    save(track);
+                }
+            });
+            commit();
+        } catch (RuntimeException e) {
+            discard(Collections.singletonList(track));
+            // TODO: broadcast failures
+            Log.e(TAG, "Failed to save " + track, e);
+            return false;
+        }
+
+        return true;
+    }
+
+    /*
+     * Share what the last transaction found with the scan's other writers
+     */
+    private void commit() {
+        trackManager.commitTags();
+        libraryManager.commitEntries();
+    }
+
+    /*
+     * Forget what the last transaction found, as it was rolled back. That includes the IDs it
+     * gave the tracks and their tags: another writer may have taken them since, so the tracks
+     * must be inserted afresh if they're written again.
+     */
+    private void discard(List<ScannedTrack> tracks) {
+        trackManager.discardTags();
+        libraryManager.discardEntries();
+        for (ScannedTrack track : tracks) {
+            track.getTrack().setId(0);
+            for (Tag tag : track.getTags().values()) {
+                tag.setId(0);
+            }
+        }
+    }
+
+    /*
+     * Replace the track's previous version, if any. Must be called in a transaction.
+     */
+    private void save(ScannedTrack track) {
+        if (track.getPrevious() != null) {
+            libraryManager.removeTrack(track.getPrevious());
+            trackManager.removeTrack(track.getPrevious());
+        }
+        trackManager.addTrack(track.getTrack(), track.getTags());
+        if (addToLibrary) {
+            libraryManager.addTrack(track.getTrack(), track.getTags());
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package io.github.patrickconley.arbutus.scanner.pipeline;
+
+import androidx.annotation.NonNull;
+
+import io.github.patrickconley.arbutus.datastorage.AppDatabase;
+import io.github.patrickconley.arbutus.datastorage.library.LibraryEntryCache;
+import io.github.patrickconley.arbutus.datastorage.metadata.TagCache;
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
+
+/**
+ * Lookups shared by every {@link TrackWriter} in a scan. These only hold what's been committed,
+ * so they're safe to share between writers, but they don't see rows deleted after the scan: build
+ * new caches for each scan.
+ */
+public final class WriteCaches {
+
+    private final TagCache tagCache;
+    private final LibraryEntryCache entryCache;
+
+    public WriteCaches(@NonNull ScanOptions options) {
+        this.tagCache = new TagCache(options.getTagCacheSize());
+        this.entryCache = new LibraryEntryCache(options.getEntryCacheSize());
+    }
+
+    /**
+     * Fill the caches from the library.
+     */
+    public void warm(@NonNull AppDatabase db) {
+        tagCache.warm(db.tagDao());
+    }
+
+    @NonNull
+    public TagCache getTagCache() {
+        return tagCache;
+    }
+
+    @NonNull
+    public LibraryEntryCache getEntryCache() {
+        return entryCache;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return tagCache + ", " + entryCache;
+    }
+
+}
@@ -0,0 +1,173 @@
+package io.github.patrickconley.arbutus.scanner.quarantine;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.AppDatabase;
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
+import io.github.patrickconley.arbutus.datastorage.scan.dao.QuarantinedFileDao;
+import io.github.patrickconley.arbutus.datastorage.scan.model.QuarantinedFile;
+
+/**
+ * Files whose tags couldn't be read, by URI. A quarantined file is skipped by later scans until
+ * its size or modification time changes, rather than failing (and logging the failure) every
+ * time. Changes are kept in memory during a scan and saved at the end.
+ * <p/>
+ * This is shared by all the visitors in a scan, so it's thread-safe.
+ */
+public class Quarantine {
+    private static final String TAG = Quarantine.class.getName();
+
+    private final Map<String, QuarantinedFile> files = new HashMap<>();
+    private final Map<String, QuarantinedFile> added = new HashMap<>();
+    private final Map<String, Uri> released = new HashMap<>();
+    private boolean cleared;
+    private long hits;
+
+    public Quarantine(List<QuarantinedFile> files) {
+        for (QuarantinedFile file : files) {
+            this.files.put(file.toString(), file);
+        }
+    }
+
+    /**
+     * Load the files quarantined by earlier scans.
+     *
+     * @param db The library (not a staging database, whose contents are discarded)
+     */
+    @NonNull
+    public static Quarantine load(@NonNull AppDatabase db) {
+        return new Quarantine(db.quarantinedFileDao().getAll());
+    }
+
+    /**
+     * @return whether the track's file failed to be read, and hasn't changed since
+     */
+    public synchronized boolean isQuarantined(Track track) {
+        QuarantinedFile file = files.get(track.toString());
+        if (file == null || !file.isUnchanged(track.getSize(), track.getLastModified())) {
+            return false;
+        }
+
+        hits++;
+        return true;
+    }
+
+    /**
+     * Quarantine the track's file, which couldn't be read.
+     *
+     * @param reason Why the file couldn't be read
+     */
+    public synchronized void add(Track track, Exception reason) {
+        QuarantinedFile file = new QuarantinedFile(track.getUri());
+        file.setSize(track.getSize());
+        file.setLastModified(track.getLastModified());
+        file.setReason(String.valueOf(reason));
+
+        files.put(track.toString(), file);
+        added.put(track.toString(), file);
+        released.remove(track.toString());
+    }
+
+    /**
+     * Release the track's file from quarantine, if it's there, since it's now been read.
+     */
+    public synchronized void release(Track track) {
+        if (files.remove(track.toString()) != null) {
+            added.remove(track.toString());
+            released.put(track.toString(), track.getUri());
+        }
+    }
+
+    /**
+     * Release every file, e.g., before a rebuild, which tries every file again.
+     */
+    public synchronized void clear() {
+        files.clear();
+        added.clear();
+        released.clear();
+        cleared = true;
+    }
+
+    /**
+     * Save the files quarantined and released during the scan.
+     *
+     * @param db The library the quarantine was loaded from
+     */
+    public void save(@NonNull AppDatabase db) {
+        final boolean truncate;
+        final List<QuarantinedFile> insert;
+        final List<Uri> delete;
+        synchronized (this) {
+            truncate = cleared;
+            insert = new ArrayList<>(added.values());
+            delete = new ArrayList<>(released.values());
+        }
+        if (!truncate && insert.isEmpty() && delete.isEmpty()) {
+            return;
+        }
+
+        final QuarantinedFileDao dao = db.quarantinedFileDao();
+        db.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                if (truncate) {
+                    dao.truncate();
+                }
+                for (Uri uri : delete) {
+                    dao.deleteByUri(uri);
+                }
+                dao.insertAll(insert);
+            }
+        });
+        Log.i(TAG, "Quarantined " + insert.size() + " files; released " + delete.size());
+    }
+
+    /**
+     * @return Number of files skipped because they're quarantined
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return "Quarantine[hits=" + hits + ", added=" + added.size() + ", released=" +
+               released.size() + ", files=" + files.size() + "]";
+    }
+
+    /**
+     * List the quarantined files, for display. This reads the library, so it mustn't be called on
+     * the main thread.
+     *
+     * @return Each file's path and why it couldn't be read
+     */
+    @NonNull
+    public static List<String> describeAll(@NonNull Context context) {
+        List<String> descriptions = new ArrayList<>();
+        for (QuarantinedFile file : AppDatabase.getInstance(context).quarantinedFileDao()
+                                               .getAll()) {
+            String path = file.getUri().getPath();
+            descriptions.add((path == null ? file.toString() : path) + "\n" + file.getReason());
+        }
+        return descriptions;
+    }
+
+    /**
+     * Release every quarantined file, so the next scan tries to read them again. This writes to
+     * the library, so it mustn't be called on the main thread.
+     */
+    public static void releaseAll(@NonNull Context context) {
+        AppDatabase.getInstance(context).quarantinedFileDao().truncate();
+    }
+
+}
@@ -0,0 +1,166 @@
+package io.github.patrickconley.arbutus.scanner.strategy;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Identify a file's format from its first few bytes, so it can be given to the right tag reader
+ * (or none) whatever its extension. Only the start of the file is read, plus the start of the
+ * audio after an ID3v2 tag, which might be MP3, AAC, or FLAC.
+ * <p/>
+ * The buffer is reused between files, so a sniffer mustn't be shared between threads.
+ */
+public final class ContentSniffer {
+
+    private static final int SNIFF_LENGTH = 64;
+    private static final int ID3_HEADER_LENGTH = 10;
+    private static final int ID3_FOOTER_FLAG = 0x10;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(SNIFF_LENGTH);
+
+    /**
+     * @return The file's format, or {@link MediaFormat#UNKNOWN} if it isn't recognised (e.g.,
+     * because the file is empty)
+     * @throws IOException If the file can't be read
+     */
+    @NonNull
+    public MediaFormat sniff(@NonNull File file) throws IOException {
+        try (FileInputStream stream = new FileInputStream(file)) {
+            FileChannel channel = stream.getChannel();
+            read(channel, 0);
+
+            if (startsWith("ID3") && buffer.limit() >= ID3_HEADER_LENGTH) {
+                // Identify what follows the tag
+                read(channel, getId3TagLength());
+                MediaFormat format = sniffAudio();
+                return format == MediaFormat.UNKNOWN ? MediaFormat.MP3 : format;
+            }
+
+            MediaFormat format = sniffAudio();
+            return format == MediaFormat.UNKNOWN ? sniffOther() : format;
+        }
+    }
+
+    private void read(FileChannel channel, long position) throws IOException {
+        buffer.clear();
+        channel.position(position);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // keep reading
+        }
+        buffer.flip();
+    }
+
+    private long getId3TagLength() {
+        long size = 0;
+        for (int i = 6; i < ID3_HEADER_LENGTH; i++) {
+            size = size << 7 | buffer.get(i) & 0x7F;
+        }
+        boolean footer = (buffer.get(5) & ID3_FOOTER_FLAG) != 0;
+        return ID3_HEADER_LENGTH + size + (footer ? ID3_HEADER_LENGTH : 0);
+    }
+
+    @NonNull
+    private MediaFormat sniffAudio() {
+        if (startsWith("fLaC")) {
+            return MediaFormat.FLAC;
+        } else if (startsWith("OggS")) {
+            return MediaFormat.OGG;
+        } else if (matches(4, "ftyp")) {
+            return MediaFormat.MP4;
+        } else if (startsWith(0x1A, 0x45, 0xDF, 0xA3)) {
+            return MediaFormat.MATROSKA;
+        } else if (startsWith("RIFF") && matches(8, "WAVE")) {
+            return MediaFormat.WAV;
+        } else if (startsWith("FORM") && (matches(8, "AIFF") || matches(8, "AIFC"))) {
+            return MediaFormat.AIFF;
+        } else if (buffer.limit() >= 2 && (buffer.get(0) & 0xFF) == 0xFF) {
+            return sniffFrameSync(buffer.get(1) & 0xFF);
+        }
+        return MediaFormat.UNKNOWN;
+    }
+
+    /*
+     * An MPEG audio frame header or an AAC ADTS header: eleven set bits, then the version and
+     * layer
+     */
+    @NonNull
+    private MediaFormat sniffFrameSync(int second) {
+        if ((second & 0xE0) != 0xE0 || (second & 0x18) == 0x08) {
+            return MediaFormat.UNKNOWN;
+        }
+        return (second & 0x06) == 0 ? MediaFormat.AAC : MediaFormat.MP3;
+    }
+
+    @NonNull
+    private MediaFormat sniffOther() {
+        if (startsWith(0xFF, 0xD8, 0xFF)) {
+            return MediaFormat.JPEG;
+        } else if (startsWith(0x89, 'P', 'N', 'G')) {
+            return MediaFormat.PNG;
+        } else if (startsWith("GIF8")) {
+            return MediaFormat.GIF;
+        } else if (startsWith("%PDF")) {
+            return MediaFormat.PDF;
+        } else if (startsWith(0x50, 0x4B, 0x03, 0x04)) {
+            return MediaFormat.ZIP;
+        } else if (startsWith("RIFF") && matches(8, "AVI ")) {
+            return MediaFormat.AVI;
+        } else if (startsWith("RIFF") && matches(8, "WEBP")) {
+            return MediaFormat.WEBP;
+        } else if (isText()) {
+            return MediaFormat.TEXT;
+        }
+        return MediaFormat.UNKNOWN;
+    }
+
+    /*
+     * Text (e.g., a cue sheet or rip log) has no control characters other than whitespace. Every
+     * audio format has some in its first few bytes.
+     */
+    private boolean isText() {
+        if (!buffer.hasRemaining()) {
+            return false;
+        }
+        for (int i = 0; i < buffer.limit(); i++) {
+            int b = buffer.get(i) & 0xFF;
+            if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' || b == 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWith(String signature) {
+        return matches(0, signature);
+    }
+
+    private boolean matches(int offset, String signature) {
+        if (buffer.limit() < offset + signature.length()) {
+            return false;
+        }
+        for (int i = 0; i < signature.length(); i++) {
+            if (buffer.get(offset + i) != signature.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWith(int... signature) {
+        if (buffer.limit() < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((buffer.get(i) & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
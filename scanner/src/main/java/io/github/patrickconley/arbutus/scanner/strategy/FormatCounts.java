@@ -0,0 +1,66 @@
+package io.github.patrickconley.arbutus.scanner.strategy;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of the formats files in a scan turned out to be, against the formats their extensions
+ * claimed. Shared by every {@link StrategyFactory} in a scan, so it's thread-safe.
+ */
+public final class FormatCounts {
+
+    private final AtomicLongArray sniffed = new AtomicLongArray(MediaFormat.values().length);
+    private final AtomicLongArray claimed = new AtomicLongArray(MediaFormat.values().length);
+    private final AtomicLongArray mislabeled = new AtomicLongArray(1);
+
+    /**
+     * Count a file.
+     *
+     * @param sniffed Format found from the file's contents
+     * @param claimed Format claimed by the file's extension
+     */
+    void record(@NonNull MediaFormat sniffed, @NonNull MediaFormat claimed) {
+        this.sniffed.incrementAndGet(sniffed.ordinal());
+        this.claimed.incrementAndGet(claimed.ordinal());
+        if (sniffed != claimed && sniffed != MediaFormat.UNKNOWN &&
+            claimed != MediaFormat.UNKNOWN) {
+            mislabeled.incrementAndGet(0);
+        }
+    }
+
+    /**
+     * @return Number of files whose contents were of the format
+     */
+    public long getSniffedCount(@NonNull MediaFormat format) {
+        return sniffed.get(format.ordinal());
+    }
+
+    /**
+     * @return Number of files whose extensions claimed the format
+     */
+    public long getClaimedCount(@NonNull MediaFormat format) {
+        return claimed.get(format.ordinal());
+    }
+
+    /**
+     * @return Number of files whose contents and extension were of different known formats
+     */
+    public long getMislabeledCount() {
+        return mislabeled.get(0);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        StringBuilder counts = new StringBuilder("FormatCounts[");
+        for (MediaFormat format : MediaFormat.values()) {
+            if (getSniffedCount(format) > 0 || getClaimedCount(format) > 0) {
+                counts.append(format).append("=").append(getSniffedCount(format))
+                      .append(" (claimed ").append(getClaimedCount(format)).append("), ");
+            }
+        }
+        return counts.append("mislabeled=").append(getMislabeledCount()).append("]").toString();
+    }
+
+}
@@ -0,0 +1,73 @@
+package io.github.patrickconley.arbutus.scanner.strategy;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The formats of file a scan can tell apart, whether from the file's contents (see {@link
+ * ContentSniffer}) or its extension. Files of formats that aren't audio are skipped without being
+ * read.
+ */
+public enum MediaFormat {
+    FLAC(true, ".flac"),
+    OGG(true, ".ogg", ".oga", ".opus"),
+    MP3(true, ".mp3"),
+    AAC(true, ".aac"),
+    MP4(true, ".mp4", ".m4a", ".m4b"),
+    MATROSKA(true, ".mkv", ".mka", ".webm"),
+    WAV(true, ".wav"),
+    AIFF(true, ".aif", ".aiff"),
+    JPEG(false, ".jpg", ".jpeg"),
+    PNG(false, ".png"),
+    GIF(false, ".gif"),
+    PDF(false, ".pdf"),
+    ZIP(false, ".zip"),
+    AVI(false, ".avi"),
+    WEBP(false, ".webp"),
+    TEXT(false, ".txt", ".cue", ".log", ".m3u", ".nfo"),
+
+    /**
+     * Anything else: the file might still be audio, so let a tag reader decide
+     */
+    UNKNOWN(true);
+
+    private static final Map<String, MediaFormat> EXTENSIONS;
+
+    static {
+        EXTENSIONS = new HashMap<>();
+        for (MediaFormat format : values()) {
+            for (String extension : format.extensions) {
+                EXTENSIONS.put(extension, format);
+            }
+        }
+    }
+
+    private final boolean audio;
+    private final String[] extensions;
+
+    MediaFormat(boolean audio, String... extensions) {
+        this.audio = audio;
+        this.extensions = extensions;
+    }
+
+    /**
+     * @return Whether files of this format might be audio
+     */
+    public boolean isAudio() {
+        return audio;
+    }
+
+    /**
+     * @param extension Extension, including the leading dot, in any case
+     * @return The format files with the extension claim to be
+     */
+    @NonNull
+    public static MediaFormat forExtension(@NonNull String extension) {
+        MediaFormat format = EXTENSIONS.get(extension.toLowerCase(Locale.US));
+        return format == null ? UNKNOWN : format;
+    }
+
+}
@@ -1,79 +1,295 @@
 package io.github.patrickconley.arbutus.scanner.strategy;
 
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.scanner.NotAudioException;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
 import io.github.patrickconley.arbutus.scanner.model.impl.MediaFile;
+import io.github.patrickconley.arbutus.scanner.strategy.impl.FallbackTagStrategy;
+import io.github.patrickconley.arbutus.scanner.strategy.impl.FlacTagStrategy;
 import io.github.patrickconley.arbutus.scanner.strategy.impl.GenericTagStrategy;
-import io.github.patrickconley.arbutus.scanner.strategy.impl.Mp4TagStrategy;
-import io.github.patrickconley.arbutus.scanner.strategy.impl.VorbisCommentTagStrategy;
+import io.github.patrickconley.arbutus.scanner.strategy.impl.Id3TagStrategy;
+import io.github.patrickconley.arbutus.scanner.strategy.impl.MatroskaTagStrategy;
+import io.github.patrickconley.arbutus.scanner.strategy.impl.Mp4AtomTagStrategy;
+import io.github.patrickconley.arbutus.scanner.strategy.impl.OggTagStrategy;
 
+/**
+ * Choose a tag-reading strategy for each file. A factory can be shared by every thread in a scan:
+ * each thread leases its own set of strategies on first use, and keeps it for as long as it
+ * lives, so a strategy (and any native retriever it holds) is only ever used on one thread.
+ * <p/>
+ * A thread's strategies can be released by the thread itself when it's finished with them;
+ * strategies leased by threads that have since died are reclaimed when another thread leases a
+ * set; and {@link #release()} reclaims whatever is left. A live thread's strategies are never
+ * reclaimed for being idle, since the factory can't tell whether the thread is still reading with
+ * them.
+ */
 public class StrategyFactory {
 
-    private TagStrategy vorbisStrategy;
-    private TagStrategy genericStrategy;
-    private TagStrategy mp4Strategy;
+    private final FormatCounts counts;
+    private final TagReadOptions options;
+
+    /*
+     * Every set currently leased, by the thread that leased it
+     */
+    private final Map<Thread, Strategies> leased = new IdentityHashMap<>();
+    private final ThreadLocal<Strategies> strategies = new ThreadLocal<Strategies>() {
+        @Override
+        protected Strategies initialValue() {
+            return lease();
+        }
+    };
+
+    /**
+     * Create a factory that counts formats on its own.
+     */
+    public StrategyFactory() {
+        this(new FormatCounts());
+    }
+
+    /**
+     * @param counts Counts of file formats, shared with the scan's other factories
+     */
+    public StrategyFactory(@NonNull FormatCounts counts) {
+        this(counts, TagReadOptions.DEFAULT);
+    }
 
     /**
-     * Identify the appropriate tag-reading strategy using the media file's
-     * extension.
+     * @param counts  Counts of file formats, shared with the scan's other factories
+     * @param options What the strategies keep of the tags they read
+     */
+    public StrategyFactory(@NonNull FormatCounts counts, @NonNull TagReadOptions options) {
+        this.counts = counts;
+        this.options = options;
+    }
+
+    /**
+     * Identify the appropriate tag-reading strategy from the media file's first few bytes, or
+     * from its extension if they aren't recognised. The strategy belongs to the calling thread,
+     * and mustn't be used on any other.
      *
      * @param file File to read
+     * @throws NotAudioException If the file isn't audio
+     * @throws ScannerException  If the file can't be read
      */
-    public TagStrategy getStrategy(MediaFile file) {
-        int index = file.toString().lastIndexOf('.');
-        String extension = index >= 0 ? file.toString().substring(index) : "";
-
-        switch (extension) {
-            case ".ogg":
-            case ".mkv":
-            case ".flac":
-                return getVorbisCommentTagStrategy();
-            case ".mp4":
-            case ".m4a":
-                return getMp4TagStrategy();
-            default:
-                return getGenericTagStrategy();
+    public TagStrategy getStrategy(MediaFile file) throws ScannerException {
+        Strategies current = strategies.get();
+        if (current.released) {
+            // Released by release(), which can't clear other threads' values
+            strategies.remove();
+            current = strategies.get();
+        }
+
+        String name = file.getFile().getName();
+        int index = name.lastIndexOf('.');
+        MediaFormat claimed = MediaFormat.forExtension(index >= 0 ? name.substring(index) : "");
+
+        MediaFormat sniffed;
+        try {
+            sniffed = current.sniffer.sniff(file.getFile());
+        } catch (IOException e) {
+            throw new ScannerException(e);
         }
+        counts.record(sniffed, claimed);
+
+        MediaFormat format = sniffed == MediaFormat.UNKNOWN ? claimed : sniffed;
+        if (!format.isAudio()) {
+            throw new NotAudioException("Not audio: " + format);
+        }
+
+        return current.get(format);
     }
 
     /**
-     * Release native resources. Call this when finished.
+     * @return Number of threads holding strategies
      */
-    public void release() {
-        if (genericStrategy != null) {
-            genericStrategy.release();
-            genericStrategy = null;
+    public int getLeasedCount() {
+        synchronized (leased) {
+            return leased.size();
         }
-        if (vorbisStrategy != null) {
-            vorbisStrategy.release();
-            vorbisStrategy = null;
+    }
+
+    /**
+     * Release the calling thread's strategies. Call this from a worker thread when it's finished
+     * scanning; if it scans again, it leases a new set.
+     */
+    public void releaseCurrentThread() {
+        Strategies current;
+        synchronized (leased) {
+            current = leased.remove(Thread.currentThread());
         }
-        if (mp4Strategy != null) {
-            mp4Strategy.release();
-            mp4Strategy = null;
+        strategies.remove();
+        if (current != null) {
+            current.release();
         }
     }
 
-    private TagStrategy getVorbisCommentTagStrategy() {
-        if (vorbisStrategy == null) {
-            vorbisStrategy = new VorbisCommentTagStrategy();
+    /**
+     * Release every thread's strategies, and with them native resources. Call this only once
+     * every thread that got strategies from the factory has finished reading with them, e.g.,
+     * after joining a scan's workers: a strategy released while another thread reads with it
+     * fails. A thread that uses the factory again afterwards leases a new set.
+     */
+    public void release() {
+        List<Strategies> released;
+        synchronized (leased) {
+            released = new ArrayList<>(leased.values());
+            leased.clear();
         }
+        strategies.remove();
+        for (Strategies set : released) {
+            set.release();
+        }
+    }
 
-        return vorbisStrategy;
+    /*
+     * Lease a set of strategies to the calling thread, first reclaiming any leased by threads
+     * that have died (and so can't use them again)
+     */
+    private Strategies lease() {
+        Strategies leasedSet = new Strategies(options);
+        List<Strategies> idle = new ArrayList<>();
+        synchronized (leased) {
+            Iterator<Map.Entry<Thread, Strategies>> entries = leased.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Thread, Strategies> entry = entries.next();
+                if (!entry.getKey().isAlive()) {
+                    idle.add(entry.getValue());
+                    entries.remove();
+                }
+            }
+            leased.put(Thread.currentThread(), leasedSet);
+        }
+        for (Strategies set : idle) {
+            set.release();
+        }
+        return leasedSet;
     }
 
-    private TagStrategy getGenericTagStrategy() {
-        if (genericStrategy == null) {
-            genericStrategy = new GenericTagStrategy();
+    /**
+     * One thread's strategies, each created on first use.
+     */
+    private static final class Strategies {
+
+        private final ContentSniffer sniffer = new ContentSniffer();
+        private final TagReadOptions options;
+
+        /*
+         * Set by whichever thread releases the set; read by the thread that leased it
+         */
+        private volatile boolean released;
+
+        private TagStrategy genericStrategy;
+        private TagStrategy mp4Strategy;
+        private TagStrategy flacStrategy;
+        private TagStrategy mp3Strategy;
+        private TagStrategy oggStrategy;
+        private TagStrategy matroskaStrategy;
+
+        Strategies(TagReadOptions options) {
+            this.options = options;
         }
 
-        return genericStrategy;
-    }
+        TagStrategy get(MediaFormat format) {
+            switch (format) {
+                case OGG:
+                    return getOggTagStrategy();
+                case MATROSKA:
+                    return getMatroskaTagStrategy();
+                case FLAC:
+                    return getFlacTagStrategy();
+                case MP4:
+                    return getMp4TagStrategy();
+                case MP3:
+                    return getMp3TagStrategy();
+                default:
+                    return getGenericTagStrategy();
+            }
+        }
+
+        void release() {
+            released = true;
+            if (genericStrategy != null) {
+                genericStrategy.release();
+                genericStrategy = null;
+            }
+            if (mp4Strategy != null) {
+                mp4Strategy.release();
+                mp4Strategy = null;
+            }
+            if (flacStrategy != null) {
+                flacStrategy.release();
+                flacStrategy = null;
+            }
+            if (mp3Strategy != null) {
+                mp3Strategy.release();
+                mp3Strategy = null;
+            }
+            if (oggStrategy != null) {
+                oggStrategy.release();
+                oggStrategy = null;
+            }
+            if (matroskaStrategy != null) {
+                matroskaStrategy.release();
+                matroskaStrategy = null;
+            }
+        }
 
-    private TagStrategy getMp4TagStrategy() {
-        if (mp4Strategy == null) {
-            mp4Strategy = new Mp4TagStrategy();
+        private TagStrategy getGenericTagStrategy() {
+            if (genericStrategy == null) {
+                genericStrategy = new GenericTagStrategy(options);
+            }
+
+            return genericStrategy;
+        }
+
+        private TagStrategy getMp4TagStrategy() {
+            if (mp4Strategy == null) {
+                mp4Strategy = new Mp4AtomTagStrategy(options);
+            }
+
+            return mp4Strategy;
         }
 
-        return mp4Strategy;
+        private TagStrategy getFlacTagStrategy() {
+            if (flacStrategy == null) {
+                flacStrategy = new FlacTagStrategy(options);
+            }
+
+            return flacStrategy;
+        }
+
+        private TagStrategy getMp3TagStrategy() {
+            if (mp3Strategy == null) {
+                mp3Strategy = new FallbackTagStrategy(new Id3TagStrategy(options),
+                                                      new GenericTagStrategy(options));
+            }
+
+            return mp3Strategy;
+        }
+
+        private TagStrategy getOggTagStrategy() {
+            if (oggStrategy == null) {
+                oggStrategy = new OggTagStrategy(options);
+            }
+
+            return oggStrategy;
+        }
+
+        private TagStrategy getMatroskaTagStrategy() {
+            if (matroskaStrategy == null) {
+                matroskaStrategy = new MatroskaTagStrategy(options);
+            }
+
+            return matroskaStrategy;
+        }
     }
 
 }
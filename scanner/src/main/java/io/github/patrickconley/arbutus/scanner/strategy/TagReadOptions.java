@@ -0,0 +1,122 @@
+package io.github.patrickconley.arbutus.scanner.strategy;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
+
+/**
+ * What the tag readers keep. Cover art embedded as a tag (e.g., a base64 METADATA_BLOCK_PICTURE
+ * comment) can run to megabytes, so by default artwork and other binary fields are dropped before
+ * they're decoded, and every value is cut to a maximum size.
+ */
+public final class TagReadOptions {
+
+    /**
+     * The options of a default scan.
+     */
+    public static final TagReadOptions DEFAULT = new TagReadOptions(new ScanOptions());
+
+    /*
+     * Version of the tag readers' output. Increase it when a change to a reader changes the tags
+     * it returns for the same file, so tags cached by the old readers are read again.
+     */
+    private static final int READER_VERSION = 1;
+
+    /*
+     * Keys of tags holding artwork, as read by the strategies
+     */
+    private static final Set<String> ARTWORK_KEYS = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList("artwork", "coverart", "coverartmime", "metadata_block_picture")));
+
+    private final boolean skipBinary;
+    private final int maxValueLength;
+
+    /**
+     * @param options Tag options for the scan
+     */
+    public TagReadOptions(@NonNull ScanOptions options) {
+        this(options.isSkipBinaryTags(), options.getMaxTagValueLength());
+    }
+
+    /**
+     * @param skipBinary     Whether to drop artwork and other binary fields
+     * @param maxValueLength Most bytes of a value, encoded as UTF-8; or 0 for no limit
+     */
+    public TagReadOptions(boolean skipBinary, int maxValueLength) {
+        this.skipBinary = skipBinary;
+        this.maxValueLength = maxValueLength;
+    }
+
+    /**
+     * @return Whether to drop artwork and other binary fields
+     */
+    public boolean isSkipBinary() {
+        return skipBinary;
+    }
+
+    /**
+     * @return A stamp of how tags are read with these options, which changes when the options
+     * or the readers do
+     */
+    public int getStamp() {
+        return Arrays.asList(READER_VERSION, skipBinary, maxValueLength).hashCode();
+    }
+
+    /**
+     * @param key A tag's key, in lower case
+     * @return Whether to drop the tag without reading its value
+     */
+    public boolean isSkipped(@NonNull String key) {
+        return skipBinary && ARTWORK_KEYS.contains(key);
+    }
+
+    /**
+     * @return The value, cut to the maximum length if necessary
+     */
+    @NonNull
+    public String limit(@NonNull String value) {
+        // No character takes more than three bytes per UTF-16 unit
+        if (maxValueLength <= 0 || value.length() * 3 <= maxValueLength) {
+            return value;
+        }
+
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            int length = c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isHighSurrogate(c) ? 4 : 3;
+            if (bytes + length > maxValueLength) {
+                return value.substring(0, i);
+            }
+            bytes += length;
+            if (length == 4) {
+                i++;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @param utf8   Encoded value
+     * @param offset Start of the value
+     * @param length Length of the value
+     * @return Length of the value cut to the maximum, without splitting a character
+     */
+    public int limit(@NonNull byte[] utf8, int offset, int length) {
+        if (maxValueLength <= 0 || length <= maxValueLength) {
+            return length;
+        }
+
+        // Back up over continuation bytes to the start of the character that's cut
+        int cut = maxValueLength;
+        while (cut > 0 && (utf8[offset + cut] & 0xC0) == 0x80) {
+            cut--;
+        }
+        return cut;
+    }
+
+}
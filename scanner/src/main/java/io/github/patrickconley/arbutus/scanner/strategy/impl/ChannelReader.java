@@ -0,0 +1,79 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read the parts of a file that hold its tags, skipping everything else by moving the channel's
+ * position. Reads go into a buffer supplied by the strategy, so one buffer serves every file the
+ * strategy reads; a read larger than the buffer gets a buffer of its own.
+ */
+final class ChannelReader implements Closeable {
+
+    private final FileInputStream stream;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    /**
+     * @param buffer Buffer to read into, which must be backed by an array
+     */
+    ChannelReader(@NonNull File file, @NonNull ByteBuffer buffer) throws IOException {
+        this.stream = new FileInputStream(file);
+        this.channel = stream.getChannel();
+        this.buffer = buffer;
+    }
+
+    /**
+     * Read the next bytes of the file. The buffer returned is big-endian, and is only valid until
+     * the next read.
+     *
+     * @throws EOFException If the file ends first
+     */
+    @NonNull
+    ByteBuffer read(int length) throws IOException {
+        ByteBuffer target = length <= buffer.capacity() ? buffer : ByteBuffer.allocate(length);
+        target.clear();
+        target.order(ByteOrder.BIG_ENDIAN);
+        target.limit(length);
+        while (target.hasRemaining()) {
+            if (channel.read(target) < 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+        }
+        target.flip();
+        return target;
+    }
+
+    /**
+     * Move past the next bytes of the file without reading them.
+     */
+    void skip(long length) throws IOException {
+        channel.position(channel.position() + length);
+    }
+
+    long position() throws IOException {
+        return channel.position();
+    }
+
+    void position(long position) throws IOException {
+        channel.position(position);
+    }
+
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+
+}
@@ -0,0 +1,47 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.strategy.TagStrategy;
+
+/**
+ * Read tags with one strategy, falling back to another for files it can't read. The fallback is
+ * typically slower or more tolerant, e.g., {@link GenericTagStrategy} behind {@link
+ * Id3TagStrategy}.
+ */
+public class FallbackTagStrategy implements TagStrategy {
+
+    private static final String TAG = FallbackTagStrategy.class.getName();
+
+    private final TagStrategy primary;
+    private final TagStrategy fallback;
+
+    public FallbackTagStrategy(@NonNull TagStrategy primary, @NonNull TagStrategy fallback) {
+        this.primary = primary;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Map<String, Tag> readTags(File file) throws ScannerException {
+        try {
+            return primary.readTags(file);
+        } catch (ScannerException e) {
+            Log.d(TAG, "Falling back to read " + file + ": " + e.getMessage());
+            return fallback.readTags(file);
+        }
+    }
+
+    @Override
+    public void release() {
+        primary.release();
+        fallback.release();
+    }
+
+}
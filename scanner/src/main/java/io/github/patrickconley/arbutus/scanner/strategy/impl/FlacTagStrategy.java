@@ -0,0 +1,113 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.strategy.TagReadOptions;
+import io.github.patrickconley.arbutus.scanner.strategy.TagStrategy;
+
+/**
+ * Read the Vorbis comments from a FLAC file without JAudioTagger, which parses the whole audio
+ * header to get to them. The comments are in one of the metadata blocks at the start of the file;
+ * this reads each block's header and skips over the rest (e.g., pictures and padding) until it
+ * finds the comments. The tags are the same as those read by {@link VorbisCommentTagStrategy}.
+ * <p/>
+ * The buffer is reused between files, so a strategy mustn't be shared between threads.
+ */
+public class FlacTagStrategy implements TagStrategy {
+
+    private static final int BLOCK_TYPE_VORBIS_COMMENT = 4;
+    private static final int BLOCK_TYPE_INVALID = 127;
+
+    private static final int ID3_HEADER_LENGTH = 10;
+    private static final int ID3_FOOTER_FLAG = 0x10;
+
+    /*
+     * Most comment blocks fit in this
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final TagReadOptions options;
+
+    public FlacTagStrategy() {
+        this(TagReadOptions.DEFAULT);
+    }
+
+    /**
+     * @param options What to keep of the tags read
+     */
+    public FlacTagStrategy(@NonNull TagReadOptions options) {
+        this.options = options;
+    }
+
+    @Override
+    public Map<String, Tag> readTags(File file) throws ScannerException {
+        Map<String, Tag> comments = new HashMap<>();
+
+        try (ChannelReader reader = new ChannelReader(file, buffer)) {
+            skipId3Tag(reader);
+            if (reader.read(4).getInt() != 0x664C6143) { // "fLaC"
+                throw new ScannerException("Not a FLAC file: " + file);
+            }
+
+            boolean last = false;
+            while (!last) {
+                int header = reader.read(4).getInt();
+                last = header < 0;
+                int type = (header >>> 24) & 0x7F;
+                int length = header & 0xFFFFFF;
+
+                if (type == BLOCK_TYPE_INVALID) {
+                    throw new ScannerException("Invalid FLAC metadata block in " + file);
+                } else if (type == BLOCK_TYPE_VORBIS_COMMENT) {
+                    VorbisCommentDecoder.decode(reader.read(length), comments, options);
+                    break;
+                }
+                reader.skip(length);
+            }
+        } catch (IOException e) {
+            throw new ScannerException(e);
+        }
+
+        return comments;
+    }
+
+    /*
+     * Some taggers put an ID3v2 tag before the FLAC stream. Leave the reader at the stream.
+     */
+    private void skipId3Tag(ChannelReader reader) throws IOException {
+        ByteBuffer header = reader.read(ID3_HEADER_LENGTH);
+        if (header.get() != 'I' || header.get() != 'D' || header.get() != '3') {
+            reader.position(0);
+            return;
+        }
+
+        header.position(5);
+        int flags = header.get();
+        int size = 0;
+        for (int i = 0; i < 4; i++) {
+            size = (size << 7) | (header.get() & 0x7F);
+        }
+
+        long end = ID3_HEADER_LENGTH + size;
+        if ((flags & ID3_FOOTER_FLAG) != 0) {
+            end += ID3_HEADER_LENGTH;
+        }
+        reader.position(end);
+    }
+
+    @Override
+    public void release() {
+        // nothing to do
+    }
+
+}
@@ -11,6 +11,7 @@ import java.util.Map;
 
 import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
 import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.strategy.TagReadOptions;
 import io.github.patrickconley.arbutus.scanner.strategy.TagStrategy;
 
 /**
@@ -41,11 +42,29 @@ public class GenericTagStrategy implements TagStrategy {
         METADATA_KEYS.put(MediaMetadataRetriever.METADATA_KEY_YEAR, "year");
     }
 
-    @SuppressWarnings("resource")
-    private MediaMetadataRetriever metadataRetriever = new MediaMetadataRetriever();
+    /*
+     * Created on first use, since a strategy behind a faster one may never be needed
+     */
+    private MediaMetadataRetriever metadataRetriever;
+
+    private final TagReadOptions options;
+
+    public GenericTagStrategy() {
+        this(TagReadOptions.DEFAULT);
+    }
+
+    /**
+     * @param options What to keep of the tags read
+     */
+    public GenericTagStrategy(@NonNull TagReadOptions options) {
+        this.options = options;
+    }
 
     public void release() {
-        metadataRetriever.release();
+        if (metadataRetriever != null) {
+            metadataRetriever.release();
+            metadataRetriever = null;
+        }
     }
 
     @Override
@@ -62,7 +81,12 @@ public class GenericTagStrategy implements TagStrategy {
         return readTags();
     }
 
+    @SuppressWarnings("resource")
     private void setRetrieverDataSource(File file) throws ScannerException {
+        if (metadataRetriever == null) {
+            metadataRetriever = new MediaMetadataRetriever();
+        }
+
         try {
             metadataRetriever.setDataSource(file.getAbsolutePath());
         } catch (IllegalArgumentException e) {
@@ -86,7 +110,8 @@ public class GenericTagStrategy implements TagStrategy {
         for (int i = 0; i < METADATA_KEYS.size(); i++) {
             String value = metadataRetriever.extractMetadata(METADATA_KEYS.keyAt(i));
             if (value != null && !value.equals("0")) {
-                tags.put(METADATA_KEYS.valueAt(i), new Tag(METADATA_KEYS.valueAt(i), value));
+                String key = METADATA_KEYS.valueAt(i);
+                tags.put(key, new Tag(key, options.limit(value)));
             }
         }
         return tags;
@@ -0,0 +1,363 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import androidx.annotation.NonNull;
+
+import org.jaudiotagger.tag.reference.GenreTypes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.strategy.TagReadOptions;
+import io.github.patrickconley.arbutus.scanner.strategy.TagStrategy;
+
+/**
+ * Read the ID3 tags from an MP3 file without {@link android.media.MediaMetadataRetriever}. This
+ * reads the text frames of an ID3v2.2, 2.3, or 2.4 tag at the start of the file, skipping other
+ * frames (e.g., pictures) without reading them, and fills in anything missing from an ID3v1 tag at
+ * the end. The keys are those used by {@link GenericTagStrategy}.
+ * <p/>
+ * Files this can't read (e.g., with a whole ID3v2.3 tag unsynchronised, or without MPEG audio
+ * after the tag) throw a {@link ScannerException}, so the retriever can be tried instead (see
+ * {@link FallbackTagStrategy}).
+ * <p/>
+ * The buffer is reused between files, so a strategy mustn't be shared between threads.
+ */
+public class Id3TagStrategy implements TagStrategy {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Charset[] ENCODINGS = {
+            ISO_8859_1, Charset.forName("UTF-16"), Charset.forName("UTF-16BE"),
+            Charset.forName("UTF-8")
+    };
+
+    private static final Map<String, String> FRAME_KEYS;
+
+    static {
+        FRAME_KEYS = new HashMap<>();
+
+        // ID3v2.3 and 2.4
+        FRAME_KEYS.put("TALB", "album");
+        FRAME_KEYS.put("TPE2", "albumartist");
+        FRAME_KEYS.put("TPE1", "artist");
+        FRAME_KEYS.put("TEXT", "author");
+        FRAME_KEYS.put("TRCK", "tracknumber");
+        FRAME_KEYS.put("TCMP", "compilation");
+        FRAME_KEYS.put("TCOM", "composer");
+        FRAME_KEYS.put("TDRC", "date");
+        FRAME_KEYS.put("TPOS", "discnumber");
+        FRAME_KEYS.put("TCON", "genre");
+        FRAME_KEYS.put("TIT2", "title");
+        FRAME_KEYS.put("TYER", "year");
+
+        // ID3v2.2
+        FRAME_KEYS.put("TAL", "album");
+        FRAME_KEYS.put("TP2", "albumartist");
+        FRAME_KEYS.put("TP1", "artist");
+        FRAME_KEYS.put("TXT", "author");
+        FRAME_KEYS.put("TRK", "tracknumber");
+        FRAME_KEYS.put("TCP", "compilation");
+        FRAME_KEYS.put("TCM", "composer");
+        FRAME_KEYS.put("TPA", "discnumber");
+        FRAME_KEYS.put("TCO", "genre");
+        FRAME_KEYS.put("TT2", "title");
+        FRAME_KEYS.put("TYE", "year");
+    }
+
+    /*
+     * An ID3v1 genre, possibly followed by a refinement, e.g., "(17)" or "(17)Rock"
+     */
+    private static final Pattern GENRE_REFERENCE = Pattern.compile("\\((\\d+)\\)(.*)");
+
+    private static final int HEADER_LENGTH = 10;
+    private static final int ID3V1_LENGTH = 128;
+
+    private static final int FLAG_UNSYNCHRONISATION = 0x80;
+    private static final int FLAG_EXTENDED_HEADER = 0x40;
+    private static final int FLAG_FOOTER = 0x10;
+
+    /*
+     * How far past the tag to look for the first MPEG frame
+     */
+    private static final int AUDIO_SEARCH_LENGTH = 4096;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(AUDIO_SEARCH_LENGTH);
+
+    private final TagReadOptions options;
+
+    public Id3TagStrategy() {
+        this(TagReadOptions.DEFAULT);
+    }
+
+    /**
+     * @param options What to keep of the tags read
+     */
+    public Id3TagStrategy(@NonNull TagReadOptions options) {
+        this.options = options;
+    }
+
+    @Override
+    public Map<String, Tag> readTags(File file) throws ScannerException {
+        Map<String, Tag> tags = new HashMap<>();
+
+        try (ChannelReader reader = new ChannelReader(file, buffer)) {
+            long audioStart = 0;
+            if (reader.size() >= HEADER_LENGTH) {
+                audioStart = readId3v2(reader, tags);
+            }
+
+            if (reader.size() >= audioStart + ID3V1_LENGTH) {
+                readId3v1(reader, tags);
+            }
+
+            if (!hasAudio(reader, audioStart)) {
+                throw new ScannerException("No MPEG audio found in " + file);
+            }
+        } catch (IOException e) {
+            throw new ScannerException(e);
+        }
+
+        return tags;
+    }
+
+    /*
+     * Read the text frames of the ID3v2 tag at the start of the file, if there is one. Return the
+     * end of the tag.
+     */
+    private long readId3v2(ChannelReader reader, Map<String, Tag> tags)
+            throws IOException, ScannerException {
+        ByteBuffer header = reader.read(HEADER_LENGTH);
+        if (header.get(0) != 'I' || header.get(1) != 'D' || header.get(2) != '3') {
+            return 0;
+        }
+
+        int version = header.get(3);
+        int flags = header.get(5);
+        long end = HEADER_LENGTH + readSyncsafe(header, 6);
+        if (version == 4 && (flags & FLAG_FOOTER) != 0) {
+            end += HEADER_LENGTH;
+        }
+        if (end > reader.size()) {
+            throw new ScannerException("ID3v2 tag runs past the end of the file");
+        }
+
+        if (version < 2 || version > 4 || version == 2 && (flags & FLAG_EXTENDED_HEADER) != 0) {
+            // An unknown version, or a compressed ID3v2.2 tag
+            return end;
+        }
+        boolean unsynchronised = (flags & FLAG_UNSYNCHRONISATION) != 0;
+        if (unsynchronised && version < 4) {
+            // Frame lengths count bytes before unsynchronisation, so the frames can't be skipped
+            throw new ScannerException("Unsynchronised ID3v2." + version + " tag");
+        }
+
+        if (version > 2 && (flags & FLAG_EXTENDED_HEADER) != 0) {
+            ByteBuffer extended = reader.read(4);
+            reader.skip(version == 3 ? extended.getInt() : readSyncsafe(extended, 0) - 4);
+        }
+
+        Map<String, Tag> frames = new HashMap<>();
+        readFrames(reader, end, version, unsynchronised, frames);
+
+        // ID3v2.4 has only a recording time, which may be just a year
+        Tag date = frames.get("date");
+        if (!frames.containsKey("year") && date != null && date.getValue().length() >= 4) {
+            frames.put("year", new Tag("year", date.getValue().substring(0, 4)));
+        }
+
+        tags.putAll(frames);
+        return end;
+    }
+
+    private void readFrames(ChannelReader reader, long end, int version, boolean unsynchronised,
+                            Map<String, Tag> tags) throws IOException {
+        int idLength = version == 2 ? 3 : 4;
+        int headerLength = version == 2 ? 6 : 10;
+
+        while (reader.position() + headerLength <= end) {
+            ByteBuffer header = reader.read(headerLength);
+            if (header.get(0) == 0) {
+                // Padding
+                return;
+            }
+
+            String id = new String(header.array(), header.arrayOffset(), idLength, ISO_8859_1);
+            long length;
+            int flags = 0;
+            if (version == 2) {
+                length = (header.getShort(3) & 0xFFFF) << 8 | header.get(5) & 0xFF;
+            } else {
+                length = version == 3 ? header.getInt(4) & 0xFFFFFFFFL : readSyncsafe(header, 4);
+                flags = header.getShort(8);
+            }
+
+            long next = reader.position() + length;
+            if (next > end) {
+                return;
+            }
+
+            String key = FRAME_KEYS.get(id);
+            if (key != null) {
+                ByteBuffer frame = reader.read((int) length);
+                String value = readFrame(frame, version, flags, unsynchronised);
+                if (value != null) {
+                    value = options.limit(key.equals("genre") ? getGenre(value) : value);
+                    tags.put(key, new Tag(key, value));
+                }
+            }
+            reader.position(next);
+        }
+    }
+
+    /*
+     * Read a text frame's first value, or return null if it can't be read
+     */
+    private String readFrame(ByteBuffer frame, int version, int flags, boolean unsynchronised) {
+        if (version == 3) {
+            if ((flags & 0xC0) != 0) {
+                // Compressed or encrypted
+                return null;
+            }
+            skip(frame, (flags & 0x20) != 0 ? 1 : 0);
+        } else if (version == 4) {
+            if ((flags & 0x0C) != 0) {
+                // Compressed or encrypted
+                return null;
+            }
+            skip(frame, ((flags & 0x40) != 0 ? 1 : 0) + ((flags & 0x01) != 0 ? 4 : 0));
+            if (unsynchronised || (flags & 0x02) != 0) {
+                frame = resynchronise(frame);
+            }
+        }
+
+        if (frame.remaining() < 2 || frame.get(frame.position()) >= ENCODINGS.length ||
+            frame.get(frame.position()) < 0) {
+            return null;
+        }
+        Charset encoding = ENCODINGS[frame.get()];
+        String text = new String(frame.array(), frame.arrayOffset() + frame.position(),
+                                 frame.remaining(), encoding);
+
+        // ID3v2.4 separates multiple values with nulls
+        int terminator = text.indexOf('\0');
+        String value = (terminator < 0 ? text : text.substring(0, terminator)).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /*
+     * Fill in tags missing from the ID3v2 tag from the ID3v1 tag at the end of the file, if there
+     * is one
+     */
+    private void readId3v1(ChannelReader reader, Map<String, Tag> tags) throws IOException {
+        reader.position(reader.size() - ID3V1_LENGTH);
+        ByteBuffer tag = reader.read(ID3V1_LENGTH);
+        if (tag.get(0) != 'T' || tag.get(1) != 'A' || tag.get(2) != 'G') {
+            return;
+        }
+
+        putIfMissing(tags, "title", readId3v1String(tag, 3, 30));
+        putIfMissing(tags, "artist", readId3v1String(tag, 33, 30));
+        putIfMissing(tags, "album", readId3v1String(tag, 63, 30));
+        putIfMissing(tags, "year", readId3v1String(tag, 93, 4));
+
+        // ID3v1.1 puts the track number at the end of the comment
+        if (tag.get(125) == 0 && tag.get(126) != 0) {
+            putIfMissing(tags, "tracknumber", String.valueOf(tag.get(126) & 0xFF));
+        }
+
+        String genre = GenreTypes.getInstanceOf().getValueForId(tag.get(127) & 0xFF);
+        putIfMissing(tags, "genre", genre);
+    }
+
+    private String readId3v1String(ByteBuffer tag, int offset, int length) {
+        String value = new String(tag.array(), tag.arrayOffset() + offset, length, ISO_8859_1);
+        int terminator = value.indexOf('\0');
+        return (terminator < 0 ? value : value.substring(0, terminator)).trim();
+    }
+
+    private void putIfMissing(Map<String, Tag> tags, String key, String value) {
+        if (value != null && !value.isEmpty() && !tags.containsKey(key)) {
+            tags.put(key, new Tag(key, value));
+        }
+    }
+
+    /*
+     * Look for an MPEG audio frame header shortly after the tag
+     */
+    private boolean hasAudio(ChannelReader reader, long audioStart) throws IOException {
+        reader.position(audioStart);
+        ByteBuffer audio =
+                reader.read((int) Math.min(AUDIO_SEARCH_LENGTH, reader.size() - audioStart));
+        for (int i = audio.position(); i + 1 < audio.limit(); i++) {
+            int first = audio.get(i) & 0xFF;
+            int second = audio.get(i + 1) & 0xFF;
+            // Frame sync, a valid version, and a valid layer
+            if (first == 0xFF && (second & 0xE0) == 0xE0 && (second & 0x18) != 0x08 &&
+                (second & 0x06) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Replace a numeric genre with its name
+     */
+    @NonNull
+    private String getGenre(String value) {
+        Matcher reference = GENRE_REFERENCE.matcher(value);
+        String id = reference.matches() ? reference.group(1) : value;
+        if (reference.matches() && !reference.group(2).isEmpty()) {
+            return reference.group(2);
+        }
+
+        if (id.isEmpty() || id.length() > 3 || !id.matches("\\d+")) {
+            return value;
+        }
+        String genre = GenreTypes.getInstanceOf().getValueForId(Integer.parseInt(id));
+        return genre == null ? value : genre;
+    }
+
+    /*
+     * Remove the zero bytes inserted after each 0xFF
+     */
+    @NonNull
+    private ByteBuffer resynchronise(ByteBuffer frame) {
+        byte[] bytes = new byte[frame.remaining()];
+        int length = 0;
+        boolean afterFF = false;
+        while (frame.hasRemaining()) {
+            byte b = frame.get();
+            if (!afterFF || b != 0) {
+                bytes[length++] = b;
+            }
+            afterFF = b == (byte) 0xFF;
+        }
+        return ByteBuffer.wrap(bytes, 0, length);
+    }
+
+    private static int readSyncsafe(ByteBuffer buffer, int index) {
+        int value = 0;
+        for (int i = index; i < index + 4; i++) {
+            value = value << 7 | buffer.get(i) & 0x7F;
+        }
+        return value;
+    }
+
+    private static void skip(ByteBuffer buffer, int length) {
+        buffer.position(Math.min(buffer.limit(), buffer.position() + length));
+    }
+
+    @Override
+    public void release() {
+        // nothing to do
+    }
+
+}
@@ -0,0 +1,523 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.strategy.TagReadOptions;
+import io.github.patrickconley.arbutus.scanner.strategy.TagStrategy;
+
+/**
+ * Read the tags from a Matroska or WebM file. The file is a tree of EBML elements; the tags and
+ * the track list are top-level elements of the segment, which the segment's SeekHead indexes.
+ * This follows the SeekHead straight to them, so the clusters (the media data) are never read,
+ * however large the file. If the SeekHead doesn't list the tags, this walks the top-level
+ * elements instead, skipping each cluster by its size.
+ * <p/>
+ * Matroska tag names are mapped to the keys used by the other strategies. A TITLE or ARTIST
+ * targeting the whole album becomes "album" or "albumartist" if there are also tags for the track;
+ * otherwise (as in files written by FFmpeg) it's the track's. Other names are dropped. Files
+ * without an audio track are rejected.
+ * <p/>
+ * The buffer is reused between files, so a strategy mustn't be shared between threads.
+ */
+public class MatroskaTagStrategy implements TagStrategy {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final long EBML = 0x1A45DFA3L;
+    private static final long DOC_TYPE = 0x4282;
+    private static final long SEGMENT = 0x18538067L;
+    private static final long SEEK_HEAD = 0x114D9B74L;
+    private static final long SEEK = 0x4DBB;
+    private static final long SEEK_ID = 0x53AB;
+    private static final long SEEK_POSITION = 0x53AC;
+    private static final long TRACKS = 0x1654AE6BL;
+    private static final long TRACK_ENTRY = 0xAE;
+    private static final long TRACK_TYPE = 0x83;
+    private static final long TAGS = 0x1254C367L;
+    private static final long TAG = 0x7373;
+    private static final long TARGETS = 0x63C0;
+    private static final long TARGET_TYPE_VALUE = 0x68CA;
+    private static final long TAG_EDITION_UID = 0x63C9;
+    private static final long TAG_CHAPTER_UID = 0x63C4;
+    private static final long TAG_ATTACHMENT_UID = 0x63C6;
+    private static final long SIMPLE_TAG = 0x67C8;
+    private static final long TAG_NAME = 0x45A3;
+    private static final long TAG_STRING = 0x4487;
+
+    private static final int TRACK_TYPE_AUDIO = 2;
+    private static final int TRACK_LEVEL = 30;
+    private static final int ALBUM_LEVEL = 50;
+
+    private static final int MAX_ID_LENGTH = 4;
+    private static final int MAX_SIZE_LENGTH = 8;
+    private static final long UNKNOWN_SIZE = -1;
+
+    /*
+     * Larger track lists or tags than this are assumed to be corrupt
+     */
+    private static final int MAX_ELEMENT_LENGTH = 16 * 1024 * 1024;
+
+    private static final Map<String, String> NAME_KEYS;
+    private static final Map<String, String> TRACK_KEYS;
+    private static final Map<String, String> ALBUM_KEYS;
+
+    static {
+        // Names with the same meaning at any level
+        NAME_KEYS = new HashMap<>();
+        NAME_KEYS.put("ALBUM", "album");
+        NAME_KEYS.put("ALBUM_ARTIST", "albumartist");
+        NAME_KEYS.put("COMPOSER", "composer");
+        NAME_KEYS.put("DATE", "date");
+        NAME_KEYS.put("DATE_RELEASED", "date");
+        NAME_KEYS.put("DATE_RECORDED", "date");
+        NAME_KEYS.put("DISC", "discnumber");
+        NAME_KEYS.put("GENRE", "genre");
+
+        TRACK_KEYS = new HashMap<>();
+        TRACK_KEYS.put("TITLE", "title");
+        TRACK_KEYS.put("ARTIST", "artist");
+        TRACK_KEYS.put("PART_NUMBER", "tracknumber");
+
+        ALBUM_KEYS = new HashMap<>();
+        ALBUM_KEYS.put("TITLE", "album");
+        ALBUM_KEYS.put("ARTIST", "albumartist");
+        ALBUM_KEYS.put("TOTAL_PARTS", "tracktotal");
+    }
+
+    /*
+     * Most track lists and tags fit in this
+     */
+    private static final int BUFFER_SIZE = 16384;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final TagReadOptions options;
+
+    public MatroskaTagStrategy() {
+        this(TagReadOptions.DEFAULT);
+    }
+
+    /**
+     * @param options What to keep of the tags read
+     */
+    public MatroskaTagStrategy(@NonNull TagReadOptions options) {
+        this.options = options;
+    }
+
+    @Override
+    public Map<String, Tag> readTags(File file) throws ScannerException {
+        List<SimpleTag> simpleTags = new ArrayList<>();
+
+        try (ChannelReader reader = new ChannelReader(file, buffer)) {
+            readEbmlHeader(reader, file);
+
+            Element segment = readElement(reader, reader.size());
+            if (segment.id != SEGMENT) {
+                throw new ScannerException("No Matroska segment in " + file);
+            }
+            long end = segment.end == UNKNOWN_SIZE ? reader.size() : segment.end;
+            TopLevel elements = findTopLevel(reader, segment.start, end);
+
+            if (elements.tracks < 0 || !hasAudio(readBody(reader, elements.tracks, TRACKS))) {
+                throw new ScannerException("Skipping non-audio media file");
+            }
+            for (long position : elements.tags) {
+                readTags(readBody(reader, position, TAGS), simpleTags);
+            }
+        } catch (IOException e) {
+            throw new ScannerException(e);
+        }
+
+        return getTags(simpleTags);
+    }
+
+    private void readEbmlHeader(ChannelReader reader, File file)
+            throws IOException, ScannerException {
+        if (reader.size() < 4 || reader.read(4).getInt() != (int) EBML) {
+            throw new ScannerException("Not a Matroska file: " + file);
+        }
+        reader.position(0);
+
+        ByteBuffer header = readBody(reader, 0, EBML);
+        while (header.hasRemaining()) {
+            Element element = readElement(header);
+            if (element.id == DOC_TYPE) {
+                String type = readString(body(header, element));
+                if (!type.equals("matroska") && !type.equals("webm")) {
+                    throw new ScannerException("Unknown EBML document type " + type);
+                }
+            }
+            skip(header, element);
+        }
+    }
+
+    /*
+     * Find the positions of the track list and tags, from the SeekHead if it lists the tags, or
+     * by walking the segment's children if not
+     */
+    private TopLevel findTopLevel(ChannelReader reader, long segmentStart, long segmentEnd)
+            throws IOException, ScannerException {
+        TopLevel elements = new TopLevel();
+        Set<Long> seekHeads = new LinkedHashSet<>();
+
+        long position = segmentStart;
+        while (segmentEnd - position >= 2) {
+            reader.position(position);
+            Element element = readElement(reader, segmentEnd);
+
+            if (element.id == SEEK_HEAD && seekHeads.add(position)) {
+                readSeekHead(reader, position, segmentStart, elements, seekHeads);
+                if (elements.tracks >= 0 && !elements.tags.isEmpty()) {
+                    return elements;
+                }
+            } else if (element.id == TRACKS) {
+                elements.tracks = position;
+            } else if (element.id == TAGS) {
+                elements.tags.add(position);
+            }
+
+            if (element.end == UNKNOWN_SIZE) {
+                // A live recording's cluster, which can only be skipped by reading it
+                break;
+            }
+            position = element.end;
+        }
+        return elements;
+    }
+
+    /*
+     * Add the track list and tags the SeekHead lists, following any further SeekHeads it lists
+     */
+    private void readSeekHead(ChannelReader reader, long position, long segmentStart,
+                              TopLevel elements, Set<Long> seekHeads)
+            throws IOException, ScannerException {
+        ByteBuffer seekHead = readBody(reader, position, SEEK_HEAD);
+
+        List<Long> others = new ArrayList<>();
+        while (seekHead.hasRemaining()) {
+            Element seek = readElement(seekHead);
+            if (seek.id == SEEK) {
+                ByteBuffer entry = body(seekHead, seek);
+                long id = 0;
+                long target = -1;
+                while (entry.hasRemaining()) {
+                    Element child = readElement(entry);
+                    if (child.id == SEEK_ID) {
+                        id = readUnsigned(body(entry, child));
+                    } else if (child.id == SEEK_POSITION) {
+                        target = segmentStart + readUnsigned(body(entry, child));
+                    }
+                    skip(entry, child);
+                }
+
+                if (target >= 0 && id == TRACKS) {
+                    elements.tracks = target;
+                } else if (target >= 0 && id == TAGS) {
+                    elements.tags.add(target);
+                } else if (target >= 0 && id == SEEK_HEAD && !seekHeads.contains(target)) {
+                    others.add(target);
+                }
+            }
+            skip(seekHead, seek);
+        }
+
+        for (long other : others) {
+            if (seekHeads.add(other)) {
+                readSeekHead(reader, other, segmentStart, elements, seekHeads);
+            }
+        }
+    }
+
+    private boolean hasAudio(ByteBuffer tracks) throws ScannerException {
+        while (tracks.hasRemaining()) {
+            Element entry = readElement(tracks);
+            if (entry.id == TRACK_ENTRY) {
+                ByteBuffer track = body(tracks, entry);
+                while (track.hasRemaining()) {
+                    Element child = readElement(track);
+                    if (child.id == TRACK_TYPE &&
+                        readUnsigned(body(track, child)) == TRACK_TYPE_AUDIO) {
+                        return true;
+                    }
+                    skip(track, child);
+                }
+            }
+            skip(tracks, entry);
+        }
+        return false;
+    }
+
+    /*
+     * Add the top-level simple tags of each tag that targets the whole file or a track
+     */
+    private void readTags(ByteBuffer tags, List<SimpleTag> simpleTags) throws ScannerException {
+        while (tags.hasRemaining()) {
+            Element tag = readElement(tags);
+            if (tag.id == TAG) {
+                readTag(body(tags, tag), simpleTags);
+            }
+            skip(tags, tag);
+        }
+    }
+
+    private void readTag(ByteBuffer tag, List<SimpleTag> simpleTags) throws ScannerException {
+        long level = ALBUM_LEVEL;
+        boolean otherTarget = false;
+        List<SimpleTag> contents = new ArrayList<>();
+
+        while (tag.hasRemaining()) {
+            Element child = readElement(tag);
+            if (child.id == TARGETS) {
+                ByteBuffer targets = body(tag, child);
+                while (targets.hasRemaining()) {
+                    Element target = readElement(targets);
+                    long value = readUnsigned(body(targets, target));
+                    if (target.id == TARGET_TYPE_VALUE) {
+                        level = value;
+                    } else if ((target.id == TAG_EDITION_UID || target.id == TAG_CHAPTER_UID ||
+                                target.id == TAG_ATTACHMENT_UID) && value != 0) {
+                        otherTarget = true;
+                    }
+                    skip(targets, target);
+                }
+            } else if (child.id == SIMPLE_TAG) {
+                SimpleTag simpleTag = readSimpleTag(body(tag, child));
+                if (simpleTag != null) {
+                    contents.add(simpleTag);
+                }
+            }
+            skip(tag, child);
+        }
+
+        if (!otherTarget) {
+            for (SimpleTag simpleTag : contents) {
+                simpleTag.level = level;
+                simpleTags.add(simpleTag);
+            }
+        }
+    }
+
+    private SimpleTag readSimpleTag(ByteBuffer simpleTag) throws ScannerException {
+        String name = null;
+        String value = null;
+        while (simpleTag.hasRemaining()) {
+            Element child = readElement(simpleTag);
+            if (child.id == TAG_NAME) {
+                name = readString(body(simpleTag, child)).toUpperCase(Locale.US);
+            } else if (child.id == TAG_STRING) {
+                value = readString(body(simpleTag, child));
+            }
+            skip(simpleTag, child);
+        }
+        return name == null || value == null || value.isEmpty() ? null
+                                                                : new SimpleTag(name, value);
+    }
+
+    /*
+     * Map the simple tags to our keys. If a key comes up more than once, the first value wins.
+     */
+    @NonNull
+    private Map<String, Tag> getTags(List<SimpleTag> simpleTags) {
+        boolean hasTrackTags = false;
+        for (SimpleTag simpleTag : simpleTags) {
+            hasTrackTags |= simpleTag.level <= TRACK_LEVEL;
+        }
+
+        Map<String, Tag> tags = new HashMap<>();
+        for (SimpleTag simpleTag : simpleTags) {
+            String key = NAME_KEYS.get(simpleTag.name);
+            if (key == null && simpleTag.level <= TRACK_LEVEL) {
+                key = TRACK_KEYS.get(simpleTag.name);
+            } else if (key == null && simpleTag.level >= ALBUM_LEVEL) {
+                key = hasTrackTags || !TRACK_KEYS.containsKey(simpleTag.name)
+                      ? ALBUM_KEYS.get(simpleTag.name) : TRACK_KEYS.get(simpleTag.name);
+            }
+
+            if (key != null && !tags.containsKey(key)) {
+                tags.put(key, new Tag(key, options.limit(simpleTag.value)));
+            }
+        }
+        return tags;
+    }
+
+    /*
+     * Read the whole of the element at the position, which must be of the given type
+     */
+    @NonNull
+    private ByteBuffer readBody(ChannelReader reader, long position, long id)
+            throws IOException, ScannerException {
+        reader.position(position);
+        Element element = readElement(reader, reader.size());
+        if (element.id != id || element.end == UNKNOWN_SIZE) {
+            throw new ScannerException("Expected EBML element " + Long.toHexString(id) + " at " +
+                                       position);
+        }
+
+        long length = element.end - element.start;
+        if (length > MAX_ELEMENT_LENGTH) {
+            throw new ScannerException("EBML element too large at " + position);
+        }
+        reader.position(element.start);
+        return reader.read((int) length);
+    }
+
+    /*
+     * Read an element's header from the file, leaving the reader at its body
+     */
+    @NonNull
+    private Element readElement(ChannelReader reader, long parentEnd)
+            throws IOException, ScannerException {
+        long position = reader.position();
+        ByteBuffer header =
+                reader.read((int) Math.min(MAX_ID_LENGTH + MAX_SIZE_LENGTH, parentEnd - position));
+        Element element = readElement(header);
+
+        long start = position + element.start;
+        long end = element.end == UNKNOWN_SIZE ? UNKNOWN_SIZE : position + element.end;
+        if (end > parentEnd) {
+            throw new ScannerException("EBML element runs past its parent at " + position);
+        }
+        reader.position(start);
+        return new Element(element.id, start, end);
+    }
+
+    /*
+     * Read an element's header from a buffer, leaving the buffer at its body. The element's start
+     * and end are positions in the buffer.
+     */
+    @NonNull
+    private static Element readElement(ByteBuffer data) throws ScannerException {
+        long id = readVariableInt(data, MAX_ID_LENGTH, true);
+        long size = readVariableInt(data, MAX_SIZE_LENGTH, false);
+        int start = data.position();
+        if (size == UNKNOWN_SIZE) {
+            return new Element(id, start, UNKNOWN_SIZE);
+        }
+        return new Element(id, start, start + size);
+    }
+
+    /*
+     * The body of an element read from a buffer, which must lie within the buffer. Moves the
+     * buffer past it.
+     */
+    @NonNull
+    private static ByteBuffer body(ByteBuffer data, Element element) throws ScannerException {
+        if (element.end == UNKNOWN_SIZE || element.end > data.limit()) {
+            throw new ScannerException("EBML element runs past its parent");
+        }
+        ByteBuffer body = data.duplicate();
+        body.position((int) element.start);
+        body.limit((int) element.end);
+        skip(data, element);
+        return body;
+    }
+
+    /*
+     * Move a buffer past an element read from it
+     */
+    private static void skip(ByteBuffer data, Element element) throws ScannerException {
+        if (element.end == UNKNOWN_SIZE || element.end > data.limit()) {
+            throw new ScannerException("EBML element runs past its parent");
+        }
+        data.position((int) element.end);
+    }
+
+    /*
+     * Read an EBML variable-length integer: the number of leading zeros in the first byte gives
+     * the number of bytes that follow. IDs keep the length marker; sizes don't, and a size of all
+     * ones is unknown.
+     */
+    private static long readVariableInt(ByteBuffer data, int maxLength, boolean id)
+            throws ScannerException {
+        if (!data.hasRemaining()) {
+            throw new ScannerException("Truncated EBML element");
+        }
+        int first = data.get() & 0xFF;
+        int length = Integer.numberOfLeadingZeros(first) - 23;
+        if (length > maxLength || data.remaining() < length - 1) {
+            throw new ScannerException("Invalid EBML element");
+        }
+
+        long value = id ? first : first & (0xFF >> length);
+        boolean unknown = value == 0xFF >> length;
+        for (int i = 1; i < length; i++) {
+            int next = data.get() & 0xFF;
+            unknown &= next == 0xFF;
+            value = value << 8 | next;
+        }
+        return !id && unknown ? UNKNOWN_SIZE : value;
+    }
+
+    private static long readUnsigned(ByteBuffer data) {
+        long value = 0;
+        while (data.hasRemaining()) {
+            value = value << 8 | data.get() & 0xFF;
+        }
+        return value;
+    }
+
+    @NonNull
+    private static String readString(ByteBuffer data) {
+        String value = new String(data.array(), data.arrayOffset() + data.position(),
+                                  data.remaining(), UTF_8);
+        int terminator = value.indexOf('\0');
+        return terminator < 0 ? value : value.substring(0, terminator);
+    }
+
+    @Override
+    public void release() {
+        // nothing to do
+    }
+
+    /**
+     * An element's ID, and where its body starts and ends
+     */
+    private static class Element {
+        private final long id;
+        private final long start;
+        private final long end;
+
+        private Element(long id, long start, long end) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * The positions of the top-level elements we need
+     */
+    private static class TopLevel {
+        private long tracks = -1;
+        private final Set<Long> tags = new LinkedHashSet<>();
+    }
+
+    /**
+     * A tag name and value, and the level of what it targets
+     */
+    private static class SimpleTag {
+        private final String name;
+        private final String value;
+        private long level;
+
+        private SimpleTag(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+}
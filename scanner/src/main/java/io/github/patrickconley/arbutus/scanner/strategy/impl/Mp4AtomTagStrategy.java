@@ -0,0 +1,316 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import androidx.annotation.NonNull;
+
+import org.jaudiotagger.tag.mp4.Mp4FieldKey;
+import org.jaudiotagger.tag.mp4.field.Mp4FieldType;
+import org.jaudiotagger.tag.reference.GenreTypes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.strategy.TagReadOptions;
+import io.github.patrickconley.arbutus.scanner.strategy.TagStrategy;
+
+/**
+ * Read the iTunes-style tags from an MP4 file without JAudioTagger, which loads the whole moov
+ * box (sample tables and all) to get to them. This follows the box headers down the path
+ * moov/udta/meta/ilst, skipping over everything else, including mdat wherever it is in the file.
+ * <p/>
+ * The tags are the same as those read by {@link Mp4TagStrategy}, except for cover art: that's
+ * skipped without being read, where JAudioTagger reads it and reports its type and size as an
+ * "artwork" tag. This also reads some files JAudioTagger can't: those with a meta box directly in
+ * the moov box, a 64-bit mdat before the moov, or a genre of the wrong type.
+ * <p/>
+ * The buffer is reused between files, so a strategy mustn't be shared between threads.
+ */
+public class Mp4AtomTagStrategy implements TagStrategy {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int HEADER_LENGTH = 8;
+    private static final int FULL_BOX_HEADER_LENGTH = 4;
+
+    /*
+     * A data box's header, type, and locale come before its value
+     */
+    private static final int DATA_HEADER_LENGTH = 16;
+
+    private static final String REVERSE_DNS = "----";
+    private static final String TRACK = Mp4FieldKey.TRACK.getFieldName();
+    private static final String DISC = Mp4FieldKey.DISCNUMBER.getFieldName();
+    private static final String GENRE = Mp4FieldKey.GENRE.getFieldName();
+    private static final String ARTWORK = Mp4FieldKey.ARTWORK.getFieldName();
+
+    /*
+     * An ilst is a few KB without its cover art
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final TagReadOptions options;
+
+    public Mp4AtomTagStrategy() {
+        this(TagReadOptions.DEFAULT);
+    }
+
+    /**
+     * @param options What to keep of the tags read
+     */
+    public Mp4AtomTagStrategy(@NonNull TagReadOptions options) {
+        this.options = options;
+    }
+
+    @Override
+    public Map<String, Tag> readTags(File file) throws ScannerException {
+        Map<String, Tag> tags = new HashMap<>();
+
+        try (ChannelReader reader = new ChannelReader(file, buffer)) {
+            Box moov = findBox(reader, reader.size(), "moov");
+            if (moov == null) {
+                throw new ScannerException("Not an MP4 file: " + file);
+            }
+
+            Box ilst = findIlst(reader, moov);
+            while (ilst != null && reader.position() < ilst.end) {
+                Box item = readBox(reader, ilst.end);
+                if (!item.type.equals(ARTWORK)) {
+                    readItem(reader, item, tags);
+                }
+                reader.position(item.end);
+            }
+        } catch (IOException e) {
+            throw new ScannerException(e);
+        }
+
+        return tags;
+    }
+
+    /*
+     * Find the ilst in moov/udta/meta, or in moov/meta if there's no udta, leaving the reader at
+     * its first item.
+     */
+    private Box findIlst(ChannelReader reader, Box moov) throws IOException, ScannerException {
+        long moovStart = reader.position();
+        Box parent = findBox(reader, moov.end, "udta");
+        if (parent == null) {
+            reader.position(moovStart);
+            parent = moov;
+        }
+
+        Box meta = findBox(reader, parent.end, "meta");
+        if (meta == null) {
+            return null;
+        }
+
+        // meta is a full box, except in some QuickTime files, where its first child follows its
+        // header
+        long metaStart = reader.position();
+        if (meta.end - metaStart < HEADER_LENGTH ||
+            !"hdlr".equals(readType(reader.read(HEADER_LENGTH), 4))) {
+            metaStart += FULL_BOX_HEADER_LENGTH;
+        }
+        reader.position(metaStart);
+
+        return findBox(reader, meta.end, "ilst");
+    }
+
+    /*
+     * Find the box of the given type before the end of its parent, leaving the reader at its
+     * contents
+     */
+    private Box findBox(ChannelReader reader, long parentEnd, String type)
+            throws IOException, ScannerException {
+        while (reader.position() + HEADER_LENGTH <= parentEnd) {
+            Box box = readBox(reader, parentEnd);
+            if (box.type.equals(type)) {
+                return box;
+            }
+            reader.position(box.end);
+        }
+        return null;
+    }
+
+    /*
+     * Read a box's header, leaving the reader at its contents
+     */
+    @NonNull
+    private Box readBox(ChannelReader reader, long parentEnd) throws IOException, ScannerException {
+        long start = reader.position();
+        ByteBuffer header = reader.read(HEADER_LENGTH);
+        long length = header.getInt() & 0xFFFFFFFFL;
+        String type = readType(header, 4);
+
+        if (length == 1) {
+            length = reader.read(8).getLong();
+        } else if (length == 0) {
+            length = parentEnd - start;
+        }
+
+        if (length < reader.position() - start || start + length > parentEnd) {
+            throw new ScannerException("Invalid MP4 box length " + length + " at " + start);
+        }
+        return new Box(type, start + length);
+    }
+
+    /*
+     * Read an ilst item: a data box, or for a reverse DNS item, mean and name boxes followed by a
+     * data box.
+     */
+    private void readItem(ChannelReader reader, Box item, Map<String, Tag> tags)
+            throws IOException, ScannerException {
+        int length = (int) (item.end - reader.position());
+        if (length < DATA_HEADER_LENGTH) {
+            return;
+        }
+
+        // Check for cover art before reading the rest
+        long start = reader.position();
+        ByteBuffer data = reader.read(DATA_HEADER_LENGTH);
+        if ("data".equals(readType(data, 4)) && Mp4FieldType.isCoverArtType(getDataType(data))) {
+            return;
+        }
+        reader.position(start);
+        data = reader.read(length);
+
+        String id = item.type;
+        String value;
+        if (id.equals(REVERSE_DNS)) {
+            id += ":" + readString(data, "mean") + ":" + readString(data, "name");
+            value = data.hasRemaining() ? readData(id, data) : "";
+        } else {
+            value = readData(id, data);
+        }
+
+        if (value != null) {
+            String key = Mp4TagStrategy.getKey(id);
+            tags.put(key, new Tag(key, options.limit(value)));
+        }
+    }
+
+    /*
+     * Convert a data box's value to a string the way JAudioTagger does, or return null if
+     * JAudioTagger would ignore it
+     */
+    private String readData(String id, ByteBuffer data) {
+        if (data.remaining() < DATA_HEADER_LENGTH) {
+            return null;
+        }
+        int length = data.getInt(data.position());
+        if (!"data".equals(readType(data, data.position() + 4)) || length < DATA_HEADER_LENGTH ||
+            length > data.remaining()) {
+            return null;
+        }
+
+        Mp4FieldType type = getDataType(data);
+        data.limit(data.position() + length);
+        data.position(data.position() + DATA_HEADER_LENGTH);
+
+        if (id.equals(TRACK) || id.equals(DISC)) {
+            // The number and total, after a padding value
+            short[] numbers = readNumbers(data, type);
+            String value = numbers.length > 1 && numbers[1] > 0 ? String.valueOf(numbers[1]) : "";
+            return numbers.length > 2 && numbers[2] > 0 ? value + "/" + numbers[2] : value;
+        } else if (id.equals(GENRE)) {
+            // An ID3 genre, counted from one
+            short[] numbers = readNumbers(data, type);
+            return numbers.length > 0 ? GenreTypes.getInstanceOf().getValueForId(numbers[0] - 1)
+                                      : null;
+        } else if (type == Mp4FieldType.TEXT) {
+            return readString(data);
+        } else if (type == Mp4FieldType.IMPLICIT) {
+            StringBuilder value = new StringBuilder();
+            for (short number : readNumbers(data, type)) {
+                value.append(value.length() > 0 ? "/" : "").append(number);
+            }
+            return value.toString();
+        } else if (type == Mp4FieldType.INTEGER) {
+            // Unsigned, and up to eight bytes long
+            long value = 0L;
+            while (data.hasRemaining()) {
+                value = (value << 8) | (data.get() & 0xFF);
+            }
+            return String.valueOf(value);
+        }
+
+        // An unexpected type for a known field, or binary data
+        return null;
+    }
+
+    @NonNull
+    private short[] readNumbers(ByteBuffer data, Mp4FieldType type) {
+        if (type != Mp4FieldType.IMPLICIT && type != Mp4FieldType.GENRES &&
+            type != Mp4FieldType.INTEGER) {
+            return new short[0];
+        }
+
+        short[] numbers = new short[data.remaining() / 2];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = data.getShort();
+        }
+        return numbers;
+    }
+
+    private Mp4FieldType getDataType(ByteBuffer data) {
+        return Mp4FieldType.getFieldType(data.getInt(data.position() + 8) & 0xFFFFFF);
+    }
+
+    /*
+     * Read a full box holding a string, e.g., a reverse DNS item's mean or name
+     */
+    @NonNull
+    private String readString(ByteBuffer data, String type) {
+        if (data.remaining() < HEADER_LENGTH) {
+            return "";
+        }
+        int length = data.getInt(data.position());
+        if (!type.equals(readType(data, data.position() + 4)) ||
+            length < HEADER_LENGTH + FULL_BOX_HEADER_LENGTH || length > data.remaining()) {
+            return "";
+        }
+
+        ByteBuffer value = data.duplicate();
+        value.position(data.position() + HEADER_LENGTH + FULL_BOX_HEADER_LENGTH);
+        value.limit(data.position() + length);
+        data.position(data.position() + length);
+        return readString(value);
+    }
+
+    @NonNull
+    private String readString(ByteBuffer data) {
+        return new String(data.array(), data.arrayOffset() + data.position(), data.remaining(),
+                          UTF_8);
+    }
+
+    @NonNull
+    private static String readType(ByteBuffer data, int index) {
+        return new String(data.array(), data.arrayOffset() + index, 4, ISO_8859_1);
+    }
+
+    @Override
+    public void release() {
+        // nothing to do
+    }
+
+    /**
+     * A box's type, and where it ends
+     */
+    private static class Box {
+        private final String type;
+        private final long end;
+
+        private Box(String type, long end) {
+            this.type = type;
+            this.end = end;
+        }
+    }
+
+}
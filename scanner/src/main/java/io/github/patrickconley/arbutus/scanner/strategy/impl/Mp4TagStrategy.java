@@ -1,5 +1,7 @@
 package io.github.patrickconley.arbutus.scanner.strategy.impl;
 
+import androidx.annotation.NonNull;
+
 import org.jaudiotagger.tag.TagField;
 import org.jaudiotagger.tag.mp4.Mp4FieldKey;
 
@@ -11,6 +13,7 @@ import java.util.Map;
 
 import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
 import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.strategy.TagReadOptions;
 import io.github.patrickconley.arbutus.scanner.strategy.TagStrategy;
 
 public class Mp4TagStrategy implements TagStrategy {
@@ -33,6 +36,19 @@ public class Mp4TagStrategy implements TagStrategy {
         METADATA_KEYS.put(Mp4FieldKey.DAY.getFieldName(), "date");
     }
 
+    private final TagReadOptions options;
+
+    public Mp4TagStrategy() {
+        this(TagReadOptions.DEFAULT);
+    }
+
+    /**
+     * @param options What to keep of the tags read
+     */
+    public Mp4TagStrategy(@NonNull TagReadOptions options) {
+        this.options = options;
+    }
+
     @Override
     public Map<String, Tag> readTags(File file) throws ScannerException {
         Map<String, Tag> tags = new HashMap<>();
@@ -40,15 +56,20 @@ public class Mp4TagStrategy implements TagStrategy {
         Iterator<TagField> tagIterator = new AudioFileReader().getTagFieldIterator(file);
         while (tagIterator.hasNext()) {
             TagField tag = tagIterator.next();
-            String key = getKey(tag);
-            tags.put(key, new Tag(key, tag.toString()));
+            String key = getKey(tag.getId());
+            // Check before converting, since converting decodes the field
+            if (!(options.isSkipBinary() && tag.isBinary()) && !options.isSkipped(key)) {
+                tags.put(key, new Tag(key, options.limit(tag.toString())));
+            }
         }
 
         return tags;
     }
 
-    private String getKey(TagField tag) {
-        String tagId = tag.getId();
+    /**
+     * @return The standard key for a field ID
+     */
+    static String getKey(String tagId) {
         return METADATA_KEYS.containsKey(tagId) ? METADATA_KEYS.get(tagId) : tagId;
     }
 
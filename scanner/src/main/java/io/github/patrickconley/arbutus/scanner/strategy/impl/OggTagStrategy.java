@@ -0,0 +1,231 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.strategy.TagReadOptions;
+import io.github.patrickconley.arbutus.scanner.strategy.TagStrategy;
+
+/**
+ * Read the comments from an Ogg Vorbis, Opus, or FLAC file without JAudioTagger. The comments are
+ * the second packet of the stream, so this reads pages from the start of the file until that
+ * packet is complete, and never touches the audio. Pages of other streams (e.g., an Ogg Skeleton)
+ * are skipped. The tags are the same as those read by {@link VorbisCommentTagStrategy}.
+ * <p/>
+ * The buffer is reused between files, so a strategy mustn't be shared between threads.
+ */
+public class OggTagStrategy implements TagStrategy {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final int CAPTURE_PATTERN = 0x4F676753; // "OggS"
+    private static final int PAGE_HEADER_LENGTH = 27;
+    private static final int FLAG_BEGINNING_OF_STREAM = 0x02;
+
+    /*
+     * The comments start on the second page of their stream, so give up if they haven't started
+     * after this many pages
+     */
+    private static final int MAX_PAGES_BEFORE_COMMENTS = 16;
+
+    /*
+     * The largest page has 255 segments of 255 bytes
+     */
+    private static final int BUFFER_SIZE = 255 * 255;
+
+    private static final int FLAC_BLOCK_TYPE_VORBIS_COMMENT = 4;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final PacketBuffer packet = new PacketBuffer();
+
+    private final TagReadOptions options;
+
+    public OggTagStrategy() {
+        this(TagReadOptions.DEFAULT);
+    }
+
+    /**
+     * @param options What to keep of the tags read
+     */
+    public OggTagStrategy(@NonNull TagReadOptions options) {
+        this.options = options;
+    }
+
+    @Override
+    public Map<String, Tag> readTags(File file) throws ScannerException {
+        Map<String, Tag> comments = new HashMap<>();
+
+        try (ChannelReader reader = new ChannelReader(file, buffer)) {
+            Codec codec = readCommentPacket(reader, file);
+            decode(codec, packet.wrap(), comments);
+        } catch (IOException e) {
+            throw new ScannerException(e);
+        } finally {
+            packet.reset();
+        }
+
+        return comments;
+    }
+
+    /*
+     * Read pages until the second packet of the first stream we can read is complete, leaving it
+     * in the packet buffer
+     */
+    private Codec readCommentPacket(ChannelReader reader, File file)
+            throws IOException, ScannerException {
+        Codec codec = null;
+        int serial = 0;
+        int packets = 0;
+
+        for (int pages = 0; packets < 2; pages++) {
+            if (packets == 0 && pages >= MAX_PAGES_BEFORE_COMMENTS) {
+                throw new ScannerException("No comments found in " + file);
+            }
+
+            ByteBuffer header = reader.read(PAGE_HEADER_LENGTH);
+            if (header.getInt(0) != CAPTURE_PATTERN) {
+                throw new ScannerException("Not an Ogg file: " + file);
+            }
+            boolean beginning = (header.get(5) & FLAG_BEGINNING_OF_STREAM) != 0;
+            int pageSerial = header.getInt(14);
+            int[] lacing = readLacing(reader, header.get(26) & 0xFF);
+
+            int length = 0;
+            for (int segment : lacing) {
+                length += segment;
+            }
+
+            if (codec == null && beginning) {
+                // A stream's first page holds just its identification header
+                ByteBuffer data = reader.read(length);
+                codec = Codec.identify(data);
+                serial = pageSerial;
+                packets = codec == null ? 0 : 1;
+            } else if (codec != null && pageSerial == serial) {
+                packets += readPacketData(reader.read(length), lacing, packets);
+            } else {
+                reader.skip(length);
+            }
+        }
+
+        return codec;
+    }
+
+    private int[] readLacing(ChannelReader reader, int segments) throws IOException {
+        ByteBuffer table = reader.read(segments);
+        int[] lacing = new int[segments];
+        for (int i = 0; i < segments; i++) {
+            lacing[i] = table.get(i) & 0xFF;
+        }
+        return lacing;
+    }
+
+    /*
+     * Add the second packet's segments on this page to the packet buffer. Return the number of
+     * packets completed.
+     */
+    private int readPacketData(ByteBuffer data, int[] lacing, int packets) {
+        int completed = 0;
+        int offset = data.arrayOffset() + data.position();
+        for (int segment : lacing) {
+            if (packets + completed == 1) {
+                packet.write(data.array(), offset, segment);
+            }
+            offset += segment;
+
+            // A segment shorter than 255 bytes ends its packet
+            if (segment < 255) {
+                completed++;
+                if (packets + completed == 2) {
+                    break;
+                }
+            }
+        }
+        return completed;
+    }
+
+    private void decode(Codec codec, ByteBuffer comment, Map<String, Tag> comments)
+            throws ScannerException {
+        if (!codec.isComment(comment)) {
+            throw new ScannerException("Invalid " + codec + " comment header");
+        }
+        comment.position(codec.commentSignature.length);
+
+        if (codec == Codec.FLAC) {
+            // The packet is a metadata block, which should be the comments
+            if (comment.remaining() < 4 ||
+                (comment.getInt() >>> 24 & 0x7F) != FLAC_BLOCK_TYPE_VORBIS_COMMENT) {
+                throw new ScannerException("No FLAC comment block");
+            }
+        }
+        VorbisCommentDecoder.decode(comment, comments, options);
+    }
+
+    @Override
+    public void release() {
+        // nothing to do
+    }
+
+    /**
+     * The codecs whose comments we can read, and the signatures of their identification and
+     * comment headers
+     */
+    private enum Codec {
+        VORBIS("\u0001vorbis", "\u0003vorbis"),
+        OPUS("OpusHead", "OpusTags"),
+        FLAC("\u007FFLAC", "");
+
+        private final byte[] identificationSignature;
+        private final byte[] commentSignature;
+
+        Codec(String identificationSignature, String commentSignature) {
+            this.identificationSignature = identificationSignature.getBytes(ISO_8859_1);
+            this.commentSignature = commentSignature.getBytes(ISO_8859_1);
+        }
+
+        static Codec identify(ByteBuffer data) {
+            for (Codec codec : values()) {
+                if (startsWith(data, codec.identificationSignature)) {
+                    return codec;
+                }
+            }
+            return null;
+        }
+
+        boolean isComment(ByteBuffer data) {
+            return startsWith(data, commentSignature);
+        }
+
+        private static boolean startsWith(ByteBuffer data, byte[] signature) {
+            if (data.remaining() < signature.length) {
+                return false;
+            }
+            for (int i = 0; i < signature.length; i++) {
+                if (data.get(data.position() + i) != signature[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A packet being assembled from its segments. The comments are decoded where they are,
+     * rather than from a copy, since a packet holding cover art can run to megabytes.
+     */
+    private static final class PacketBuffer extends ByteArrayOutputStream {
+        ByteBuffer wrap() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.strategy.TagReadOptions;
+
+/**
+ * Decode a Vorbis comment header: a vendor string, then a count of "KEY=value" comments, each
+ * prefixed with its length. The lengths are 32-bit little-endian and the strings are UTF-8.
+ * FLAC, Ogg, and Matroska files all carry their tags this way.
+ * <p/>
+ * The tags match those read by {@link VorbisCommentTagStrategy}: keys are lower-cased, the
+ * vendor string is a "vendor" tag, and if a key repeats, its last value wins. Each comment's key
+ * is decoded first, so skipped comments (e.g., base64 cover art) are never decoded at all, and
+ * only as much of a value as the options allow is.
+ */
+final class VorbisCommentDecoder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String VENDOR = "vendor";
+
+    private VorbisCommentDecoder() {
+    }
+
+    /**
+     * Decode the comments between the buffer's position and its limit into the map. The buffer
+     * must be backed by an array.
+     *
+     * @throws ScannerException If a length runs past the end of the buffer
+     */
+    static void decode(
+            @NonNull ByteBuffer buffer, @NonNull Map<String, Tag> comments,
+            @NonNull TagReadOptions options
+    ) throws ScannerException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        byte[] array = buffer.array();
+
+        int length = readLength(buffer);
+        int start = buffer.arrayOffset() + buffer.position();
+        comments.put(VENDOR, new Tag(VENDOR, readString(array, start, length, options)));
+        buffer.position(buffer.position() + length);
+
+        long count = readUnsignedInt(buffer);
+        for (long i = 0; i < count; i++) {
+            length = readLength(buffer);
+            start = buffer.arrayOffset() + buffer.position();
+            int separator = indexOf(array, start, start + length, '=');
+            if (separator > start) {
+                String key = new String(array, start, separator - start, UTF_8)
+                        .toLowerCase(Locale.US);
+                if (!options.isSkipped(key)) {
+                    String value =
+                            readString(array, separator + 1, start + length - separator - 1,
+                                       options);
+                    comments.put(key, new Tag(key, value));
+                }
+            }
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    private static int readLength(ByteBuffer buffer) throws ScannerException {
+        long length = readUnsignedInt(buffer);
+        if (length > buffer.remaining()) {
+            throw new ScannerException("Vorbis comment length " + length + " exceeds block");
+        }
+        return (int) length;
+    }
+
+    private static int indexOf(byte[] array, int start, int end, char c) {
+        for (int i = start; i < end; i++) {
+            if (array[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String readString(
+            byte[] array, int start, int length, TagReadOptions options
+    ) {
+        return new String(array, start, options.limit(array, start, length), UTF_8);
+    }
+
+    private static long readUnsignedInt(ByteBuffer buffer) throws ScannerException {
+        if (buffer.remaining() < 4) {
+            throw new ScannerException("Truncated Vorbis comment");
+        }
+        return buffer.getInt() & 0xFFFFFFFFL;
+    }
+
+}
@@ -1,5 +1,7 @@
 package io.github.patrickconley.arbutus.scanner.strategy.impl;
 
+import androidx.annotation.NonNull;
+
 import org.jaudiotagger.tag.TagField;
 
 import java.io.File;
@@ -10,10 +12,24 @@ import java.util.Map;
 
 import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
 import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.strategy.TagReadOptions;
 import io.github.patrickconley.arbutus.scanner.strategy.TagStrategy;
 
 public class VorbisCommentTagStrategy implements TagStrategy {
 
+    private final TagReadOptions options;
+
+    public VorbisCommentTagStrategy() {
+        this(TagReadOptions.DEFAULT);
+    }
+
+    /**
+     * @param options What to keep of the tags read
+     */
+    public VorbisCommentTagStrategy(@NonNull TagReadOptions options) {
+        this.options = options;
+    }
+
     /**
      * Read Vorbis Comments.
      */
@@ -25,8 +41,11 @@ public class VorbisCommentTagStrategy implements TagStrategy {
         Iterator<TagField> tagIterator = new AudioFileReader().getTagFieldIterator(file);
         while (tagIterator.hasNext()) {
             TagField tag = tagIterator.next();
-            String key = tag.getId().toLowerCase(Locale.getDefault());
-            comments.put(key, new Tag(key, tag.toString()));
+            String key = tag.getId().toLowerCase(Locale.US);
+            // Check before converting, since converting decodes the field
+            if (!(options.isSkipBinary() && tag.isBinary()) && !options.isSkipped(key)) {
+                comments.put(key, new Tag(key, options.limit(tag.toString())));
+            }
         }
 
         return comments;
@@ -8,6 +8,8 @@ import java.io.File;
 import java.util.Objects;
 
 import io.github.patrickconley.arbutus.datastorage.AppDatabase;
+import io.github.patrickconley.arbutus.datastorage.library.LibraryManager;
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
 import io.github.patrickconley.arbutus.scanner.visitor.impl.FileScanVisitor;
 
 /**
@@ -16,26 +18,56 @@ import io.github.patrickconley.arbutus.scanner.visitor.impl.FileScanVisitor;
  */
 public class LibraryScannerService extends IntentService {
 
-    // I might eventually add another action to refresh the library
     private static final String ACTION_SCAN_LIBRARY =
             "io.github.patrickconley.arbutus.settings.view.action.SCAN_LIBRARY";
+    private static final String ACTION_REBUILD_LIBRARY =
+            "io.github.patrickconley.arbutus.settings.view.action.REBUILD_LIBRARY";
     private static final String LIBRARY_PATH =
             "io.github.patrickconley.arbutus.settings.view.extra.LIBRARY_PATH";
+    private static final String SCAN_OPTIONS =
+            "io.github.patrickconley.arbutus.settings.view.extra.SCAN_OPTIONS";
 
     public LibraryScannerService() {
         super("LibraryScannerService");
     }
 
     /**
-     * Starts this service to scan the library. If the service is already performing a task this
-     * action will be queued.
+     * Starts this service to rebuild the library by reading every file, replacing the library
+     * once the scan is complete. If the service is already performing a task this action will be
+     * queued.
      *
      * @see IntentService
      */
     public static void startActionScanLibrary(Context context, String libraryPath) {
+        startActionScanLibrary(context, libraryPath, new ScanOptions());
+    }
+
+    /**
+     * Starts this service to scan the library with the given options. If the service is already
+     * performing a task this action will be queued.
+     *
+     * @see IntentService
+     */
+    public static void startActionScanLibrary(
+            Context context, String libraryPath, ScanOptions options
+    ) {
         Intent intent = new Intent(context, LibraryScannerService.class);
         intent.setAction(ACTION_SCAN_LIBRARY);
         intent.putExtra(LIBRARY_PATH, libraryPath);
+        intent.putExtra(SCAN_OPTIONS, options);
+        context.startService(intent);
+    }
+
+    /**
+     * Starts this service to rebuild the library from the tracks already scanned, e.g., after the
+     * library's structure has changed. If the service is already performing a task this action
+     * will be queued.
+     *
+     * @see IntentService
+     */
+    public static void startActionRebuildLibrary(Context context) {
+        Intent intent = new Intent(context, LibraryScannerService.class);
+        intent.setAction(ACTION_REBUILD_LIBRARY);
         context.startService(intent);
     }
 
@@ -45,19 +77,16 @@ public class LibraryScannerService extends IntentService {
             final String action = intent.getAction();
             if (ACTION_SCAN_LIBRARY.equals(action)) {
                 String libraryPath = Objects.requireNonNull(intent.getStringExtra(LIBRARY_PATH));
+                ScanOptions options = (ScanOptions) intent.getSerializableExtra(SCAN_OPTIONS);
+                if (options == null) {
+                    options = new ScanOptions();
+                }
 
-                truncateDatabase();
-                FileScanVisitor.execute(this, new File(libraryPath));
+                FileScanVisitor.execute(this, new File(libraryPath), options);
+            } else if (ACTION_REBUILD_LIBRARY.equals(action)) {
+                new LibraryManager(AppDatabase.getInstance(this)).rebuild();
             }
         }
     }
 
-    private void truncateDatabase() {
-        AppDatabase db = AppDatabase.getInstance(this);
-        db.libraryEntryDao().truncate();
-        db.tagInTrackDao().truncate();
-        db.tagDao().truncate();
-        db.trackDao().truncate();
-    }
-
 }
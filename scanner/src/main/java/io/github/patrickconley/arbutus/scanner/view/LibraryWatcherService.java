@@ -0,0 +1,89 @@
+package io.github.patrickconley.arbutus.scanner.view;
+
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.IBinder;
+
+import java.io.File;
+
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
+import io.github.patrickconley.arbutus.scanner.watcher.LibraryWatcher;
+
+/**
+ * A {@link Service} that keeps a {@link LibraryWatcher} on the library, so changes to its files
+ * reach the library without a scan. Starting the service again replaces the watcher if the
+ * library's path or the scan rules have changed; otherwise the watcher carries on, keeping its
+ * watches and the changes it hasn't scanned yet.
+ */
+public class LibraryWatcherService extends Service {
+
+    private static final String LIBRARY_PATH =
+            "io.github.patrickconley.arbutus.scanner.view.extra.LIBRARY_PATH";
+    private static final String SCAN_OPTIONS =
+            "io.github.patrickconley.arbutus.scanner.view.extra.SCAN_OPTIONS";
+
+    private LibraryWatcher watcher;
+
+    /**
+     * Starts this service watching the library, or restarts it with the given path and options.
+     *
+     * @param options Rules for which files to scan when they change
+     */
+    public static void startWatching(Context context, String libraryPath, ScanOptions options) {
+        Intent intent = new Intent(context, LibraryWatcherService.class);
+        intent.putExtra(LIBRARY_PATH, libraryPath);
+        intent.putExtra(SCAN_OPTIONS, options);
+        context.startService(intent);
+    }
+
+    /**
+     * Stops this service, and with it the watcher.
+     */
+    public static void stopWatching(Context context) {
+        context.stopService(new Intent(context, LibraryWatcherService.class));
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        String libraryPath = intent == null ? null : intent.getStringExtra(LIBRARY_PATH);
+        if (libraryPath == null) {
+            stopWatcher();
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        ScanOptions options = (ScanOptions) intent.getSerializableExtra(SCAN_OPTIONS);
+        if (options == null) {
+            options = new ScanOptions();
+        }
+
+        File root = new File(libraryPath);
+        if (watcher == null || !watcher.isWatching(root, options)) {
+            stopWatcher();
+            watcher = new LibraryWatcher(this, root, options);
+            watcher.start();
+        }
+
+        // If the process is killed, watch again with the same path and options
+        return START_REDELIVER_INTENT;
+    }
+
+    @Override
+    public void onDestroy() {
+        stopWatcher();
+        super.onDestroy();
+    }
+
+    private void stopWatcher() {
+        if (watcher != null) {
+            watcher.stop();
+            watcher = null;
+        }
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+}
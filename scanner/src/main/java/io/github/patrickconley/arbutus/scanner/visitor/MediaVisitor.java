@@ -8,6 +8,11 @@ import io.github.patrickconley.arbutus.scanner.model.impl.MediaFolder;
  * Traverse a hierarchical filesystem. Methods in subclasses of
  * {@link MediaVisitor} should only be called from {@link MediaFolder} and
  * {@link MediaFile}.
+ * <p/>
+ * Implementations needn't be thread-safe: a serial traversal calls its visitor from a single
+ * thread, and {@link io.github.patrickconley.arbutus.scanner.model.impl.ParallelMediaWalker}
+ * gives each of its worker threads a separate visitor from a {@link MediaVisitorFactory}.
+ * Anything the visitors share (a database, say) must be safe for concurrent use.
  *
  * @author pconley
  */
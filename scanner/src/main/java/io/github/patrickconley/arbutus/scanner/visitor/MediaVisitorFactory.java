@@ -0,0 +1,25 @@
+package io.github.patrickconley.arbutus.scanner.visitor;
+
+import io.github.patrickconley.arbutus.scanner.model.impl.ParallelMediaWalker;
+
+/**
+ * Create visitors for a parallel traversal. {@link ParallelMediaWalker} asks for one visitor per
+ * worker thread, so the visitors themselves don't need to be thread-safe.
+ *
+ * @param <V> Type of visitor created
+ */
+public interface MediaVisitorFactory<V extends MediaVisitor> {
+
+    /**
+     * @return A new visitor, to be used by a single thread
+     */
+    V newVisitor();
+
+    /**
+     * Release any resources held by a visitor once the traversal is finished.
+     *
+     * @param visitor Visitor created by {@link #newVisitor()}
+     */
+    void release(V visitor);
+
+}
@@ -1,21 +1,41 @@
 package io.github.patrickconley.arbutus.scanner.visitor.impl;
 
 import android.content.Context;
+import android.net.Uri;
 import android.util.Log;
 
 import java.io.File;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 import io.github.patrickconley.arbutus.datastorage.AppDatabase;
+import io.github.patrickconley.arbutus.datastorage.StagingDatabase;
 import io.github.patrickconley.arbutus.datastorage.library.LibraryManager;
 import io.github.patrickconley.arbutus.datastorage.metadata.TrackManager;
-import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.datastorage.metadata.dao.TrackDao;
 import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
-import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
+import io.github.patrickconley.arbutus.scanner.cache.TagReadCache;
+import io.github.patrickconley.arbutus.scanner.filter.ScanFilter;
+import io.github.patrickconley.arbutus.scanner.model.MediaFileBase;
+import io.github.patrickconley.arbutus.scanner.model.impl.DirectoryLister;
+import io.github.patrickconley.arbutus.scanner.model.impl.DirectoryPruner;
 import io.github.patrickconley.arbutus.scanner.model.impl.MediaFile;
 import io.github.patrickconley.arbutus.scanner.model.impl.MediaFolder;
+import io.github.patrickconley.arbutus.scanner.model.impl.ParallelMediaWalker;
+import io.github.patrickconley.arbutus.scanner.pipeline.BatchingTrackWriter;
+import io.github.patrickconley.arbutus.scanner.pipeline.ScanPipeline;
+import io.github.patrickconley.arbutus.scanner.pipeline.ScannedTrack;
+import io.github.patrickconley.arbutus.scanner.pipeline.TrackReader;
+import io.github.patrickconley.arbutus.scanner.pipeline.TrackWriter;
+import io.github.patrickconley.arbutus.scanner.pipeline.WriteCaches;
+import io.github.patrickconley.arbutus.scanner.quarantine.Quarantine;
+import io.github.patrickconley.arbutus.scanner.strategy.FormatCounts;
 import io.github.patrickconley.arbutus.scanner.strategy.StrategyFactory;
+import io.github.patrickconley.arbutus.scanner.strategy.TagReadOptions;
 import io.github.patrickconley.arbutus.scanner.visitor.MediaVisitor;
+import io.github.patrickconley.arbutus.scanner.visitor.MediaVisitorFactory;
 
 /**
  * Visit part of a filesystem, scanning its files for audio metadata.
@@ -25,38 +45,269 @@ import io.github.patrickconley.arbutus.scanner.visitor.MediaVisitor;
 public final class FileScanVisitor implements MediaVisitor {
     private static final String TAG = FileScanVisitor.class.getName();
 
-    private AppDatabase db;
-    private TrackManager trackManager;
-    private LibraryManager libraryManager;
-    private StrategyFactory strategyFactory;
+    private static final String TAG_CACHE_FILE = "tag-read-cache";
+
+    /*
+     * Held by each scan and update, so a watcher's update can't interleave with a scan
+     */
+    private static final Object LOCK = new Object();
+
+    private final TrackReader reader;
+    private final BatchingTrackWriter writer;
 
     /**
      * Scan the provided directory tree, then clean up.
      */
     public static void execute(Context context, File file) {
-        Log.i(TAG, "Scanning " + file);
+        execute(context, file, new ScanOptions());
+    }
+
+    /**
+     * Scan the provided directory tree, then clean up. A pipelined scan reads tags on the
+     * options' number of threads; otherwise, if the options allow more than one thread,
+     * subdirectories are scanned in parallel, each thread with its own visitor. A rebuild scans
+     * into a staging database, then replaces the library with it.
+     * <p/>
+     * A rebuild, which reads every file, keeps the tags it reads in a cache, so files that haven't
+     * changed since they were last read aren't read again by the next; an incremental scan skips
+     * unchanged files anyway. Files whose tags couldn't be read are quarantined in the library,
+     * and skipped by later scans until they change. A rebuild empties the quarantine first.
+     * <p/>
+     * Each directory's modification time is recorded in the library when it's listed. If the
+     * options allow, an incremental scan skips listing directories that haven't changed since.
+     */
+    public static void execute(Context context, File file, ScanOptions options) {
+        Log.i(TAG, "Scanning " + file + " (" + options.getMode() + ") on " +
+                   options.getThreadCount() + " threads" +
+                   (options.isPipelined() ? " (pipelined)" : ""));
+
+        synchronized (LOCK) {
+            executeLocked(context, file, options);
+        }
+    }
+
+    private static void executeLocked(Context context, File file, ScanOptions options) {
+        AppDatabase library = AppDatabase.getInstance(context);
+        Quarantine quarantine = Quarantine.load(library);
+        TrackFingerprints fingerprints = null;
+        TagReadCache tagCache = null;
+        if (options.getMode() == ScanOptions.Mode.INCREMENTAL) {
+            fingerprints = new TrackFingerprints(library.trackDao().getAll());
+        } else {
+            // Cached tags stay valid until their files change or are read differently (see the
+            // stamp), so they're kept from one scan to the next
+            tagCache = TagReadCache.open(new File(context.getCacheDir(), TAG_CACHE_FILE),
+                                         new TagReadOptions(options).getStamp());
+        }
+        DirectoryPruner pruner = DirectoryPruner.load(library, file, options, fingerprints);
+        try {
+            if (options.getMode() == ScanOptions.Mode.INCREMENTAL) {
+                execute(library, file, options, fingerprints, tagCache, quarantine, pruner);
+            } else {
+                quarantine.clear();
+                StagingDatabase staging = StagingDatabase.create(context, library);
+                try {
+                    execute(staging.getDatabase(), file, options, null, tagCache, quarantine,
+                            pruner);
+                    staging.publish();
+                } finally {
+                    staging.close();
+                }
+            }
+
+            quarantine.save(library);
+            pruner.save(library);
+        } finally {
+            if (tagCache != null) {
+                tagCache.close();
+            }
+        }
+    }
+
+    private static void execute(
+            AppDatabase db, File file, ScanOptions options, TrackFingerprints fingerprints,
+            TagReadCache tagCache, Quarantine quarantine, DirectoryPruner pruner
+    ) {
+        WriteCaches caches = new WriteCaches(options);
+        caches.warm(db);
+        FormatCounts formats = new FormatCounts();
+        ScanFilter filter = new ScanFilter(options);
+        MediaFolder root = new MediaFolder(file, filter, pruner);
+
+        StrategyFactory strategies =
+                new StrategyFactory(formats, new TagReadOptions(options));
+        Factory factory =
+                new Factory(db, options, fingerprints, caches, strategies, tagCache, quarantine);
+        long fileCount;
+        try {
+            if (options.isPipelined()) {
+                fileCount = new ScanPipeline(db, options, fingerprints, caches, strategies,
+                                             tagCache, quarantine).run(root);
+            } else if (options.getThreadCount() > 1) {
+                fileCount = new ParallelMediaWalker(options.getThreadCount())
+                        .walk(root, factory);
+            } else {
+                FileScanVisitor visitor = factory.newVisitor();
+                fileCount = root.accept(visitor);
+                factory.release(visitor);
+            }
+        } finally {
+            strategies.release();
+        }
+
+        // Only a walk that's visited every file gets here; an interrupted one throws
+        if (fingerprints != null) {
+            removeVanishedTracks(db, fingerprints.getUnclaimed());
+        }
+        if (options.isBulkLibraryBuild()) {
+            Log.i(TAG, "Rebuilding library");
+            new LibraryManager(db).rebuild();
+        }
+
+        Log.i(TAG, "Scanned " + fileCount + " files; " + caches + "; " + formats + "; " + filter +
+                   "; " + tagCache + "; " + quarantine + "; " + root.getVisitedDirectories() +
+                   "; " + root.getDirectoryLister() + "; " + pruner);
+    }
+
+    /**
+     * Scan only the given files and directories, e.g., those a watcher has seen change, leaving
+     * the rest of the library alone. New and changed files under the paths are read, and tracks
+     * whose files have gone from under them are removed. The options' rules for which files to
+     * scan apply; their mode, threads, and pipelining don't.
+     *
+     * @param paths Paths to scan, none of which is under another
+     */
+    public static void update(Context context, Collection<File> paths, ScanOptions options) {
+        synchronized (LOCK) {
+            updateLocked(context, paths, options);
+        }
+    }
+
+    private static void updateLocked(
+            Context context, Collection<File> paths, ScanOptions options
+    ) {
+        AppDatabase library = AppDatabase.getInstance(context);
+        Quarantine quarantine = Quarantine.load(library);
+        List<Track> tracks = new ArrayList<>();
+        for (File path : paths) {
+            tracks.addAll(getTracksUnder(library.trackDao(), Uri.fromFile(path)));
+        }
+        TrackFingerprints fingerprints = new TrackFingerprints(tracks);
+
+        WriteCaches caches = new WriteCaches(options);
+        caches.warm(library);
+        FormatCounts formats = new FormatCounts();
+        ScanFilter filter = new ScanFilter(options);
+        StrategyFactory strategies =
+                new StrategyFactory(formats, new TagReadOptions(options));
+        Factory factory =
+                new Factory(library, options, fingerprints, caches, strategies, null, quarantine);
+        long fileCount;
+        try {
+            FileScanVisitor visitor = factory.newVisitor();
+            fileCount = visitPaths(paths, filter, visitor);
+            factory.release(visitor);
+        } finally {
+            strategies.release();
+        }
 
-        FileScanVisitor visitor = new FileScanVisitor(AppDatabase.getInstance(context));
-        long fileCount = new MediaFolder(file).accept(visitor);
-        visitor.release();
+        if (!fingerprints.getUnclaimed().isEmpty()) {
+            removeVanishedTracks(library, fingerprints.getUnclaimed());
+        }
+        if (options.isBulkLibraryBuild()) {
+            new LibraryManager(library).rebuild();
+        }
+        quarantine.save(library);
 
-        Log.i(TAG, "Scanned " + fileCount + " files");
+        Log.i(TAG, "Updated " + paths.size() + " paths (" + fileCount + " files); " + caches +
+                   "; " + formats + "; " + filter + "; " + quarantine);
+    }
+
+    /**
+     * @return The library's tracks for the file, or for the files under the directory
+     */
+    static List<Track> getTracksUnder(TrackDao dao, Uri uri) {
+        List<Track> tracks = new ArrayList<>();
+        Track track = dao.getByUri(uri);
+        if (track != null) {
+            tracks.add(track);
+        }
+
+        // Every URI under the directory sorts between "<dir>/" and "<dir>0"
+        String prefix = uri.toString();
+        if (prefix.endsWith("/")) {
+            prefix = prefix.substring(0, prefix.length() - 1);
+        }
+        tracks.addAll(dao.getByUriRange(prefix + '/', prefix + '0'));
+        return tracks;
+    }
+
+    /**
+     * Visit the paths that are still to be scanned. A directory the filter now rejects (e.g.,
+     * it's been renamed to a hidden name) isn't visited, nor is a file in a directory with a
+     * .nomedia file, so the tracks under them are left unclaimed, and removed.
+     *
+     * @return Number of files visited
+     */
+    static long visitPaths(Collection<File> paths, ScanFilter filter, MediaVisitor visitor) {
+        DirectoryLister lister = DirectoryLister.create();
+        long fileCount = 0L;
+        for (File path : paths) {
+            MediaFileBase media;
+            if (path.isDirectory()) {
+                if (!filter.acceptDirectory(path)) {
+                    Log.d(TAG, "Not updating " + path + " (filtered)");
+                    continue;
+                }
+                // The folder checks its own .nomedia file
+                media = new MediaFolder(path, filter);
+            } else {
+                File parent = path.getParentFile();
+                DirectoryLister.Listing listing = parent == null ? null : lister.list(parent);
+                if (listing == null || listing.isNoMedia()) {
+                    Log.d(TAG, "Not updating " + path + " (.nomedia)");
+                    continue;
+                }
+                media = new MediaFile(path, filter);
+            }
+            fileCount += media.accept(visitor);
+        }
+        return fileCount;
     }
 
-    @Deprecated
-    //Used by unit tests
-    FileScanVisitor() {
+    /*
+     * Remove tracks whose files weren't found, along with any library entries and tags left
+     * empty
+     */
+    private static void removeVanishedTracks(AppDatabase db, final Collection<Track> tracks) {
+        Log.i(TAG, "Removing " + tracks.size() + " missing tracks");
+
+        final TrackManager trackManager = new TrackManager(db);
+        final LibraryManager libraryManager = new LibraryManager(db);
+        db.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                for (Track track : tracks) {
+                    libraryManager.removeTrack(track);
+                    trackManager.removeTrack(track);
+                }
+                libraryManager.removeEmptyEntries();
+                trackManager.removeUnusedTags();
+            }
+        });
     }
 
-    private FileScanVisitor(AppDatabase db) {
-        this.db = db;
-        this.trackManager = new TrackManager(db);
-        this.libraryManager = new LibraryManager(db);
-        this.strategyFactory = new StrategyFactory();
+    FileScanVisitor(TrackReader reader, BatchingTrackWriter writer) {
+        this.reader = reader;
+        this.writer = writer;
     }
 
+    /*
+     * Write any tracks still waiting for their batch. The strategies are shared, so they're
+     * released with the scan.
+     */
     private void release() {
-        strategyFactory.release();
+        writer.flush();
     }
 
     @Override
@@ -66,37 +317,57 @@ public final class FileScanVisitor implements MediaVisitor {
     }
 
     /**
-     * Scan the file for audio metadata; write the file and metadata to the library. If the file
-     * isn't audio, return without writing anything.
+     * Scan the file for audio metadata (see {@link TrackReader}); queue the file and metadata to
+     * be written to the library. If the file isn't audio, return without writing anything. In an
+     * incremental scan, files that haven't changed since they were last scanned are skipped, and
+     * changed files replace their previous tracks.
+     * <p/>
+     * Tracks are written in batches, so a failure to write may be reported by the visit that
+     * fills the batch rather than the visit that queued the failing track.
      */
     @Override
     public boolean visit(MediaFile file) {
-
-        final Map<String, Tag> tags;
-        try {
-            tags = strategyFactory.getStrategy(file).readTags(file.getFile());
-        } catch (ScannerException e) {
-            Log.e(TAG, "Failed to read tags from " + file, e);
-            return false;
+        if (reader.claimIfUnchanged(file)) {
+            return true;
         }
 
-        final Track track = new Track(file.getUri());
+        ScannedTrack track = reader.read(file);
+        return track != null && writer.add(track);
+    }
 
-        try {
-            db.runInTransaction(new Runnable() {
-                @Override
-                public void run() {
-                    trackManager.addTrack(track, tags);
-                    libraryManager.addTrack(track, tags);
-                }
-            });
-        } catch (RuntimeException e) {
-            // TODO: broadcast failures
-            Log.e(TAG, "Failed to save " + track, e);
-            return false;
+    /**
+     * Create a visitor for each scanning thread. The visitors share a database (whose
+     * transactions are serialized), caches, and track reader (whose strategy factory leases each
+     * thread its own tag readers), but each has its own batches.
+     */
+    private static final class Factory implements MediaVisitorFactory<FileScanVisitor> {
+        private final AppDatabase db;
+        private final ScanOptions options;
+        private final WriteCaches caches;
+        private final TrackReader reader;
+
+        Factory(
+                AppDatabase db, ScanOptions options, TrackFingerprints fingerprints,
+                WriteCaches caches, StrategyFactory strategies, TagReadCache tagCache,
+                Quarantine quarantine
+        ) {
+            this.db = db;
+            this.options = options;
+            this.caches = caches;
+            this.reader = new TrackReader(fingerprints, strategies, tagCache, quarantine);
         }
 
-        return true;
+        @Override
+        public FileScanVisitor newVisitor() {
+            TrackWriter trackWriter = new TrackWriter(db, caches, !options.isBulkLibraryBuild());
+            return new FileScanVisitor(reader, new BatchingTrackWriter(
+                    trackWriter, options.getBatchSize(), options.getFlushIntervalMillis()));
+        }
+
+        @Override
+        public void release(FileScanVisitor visitor) {
+            visitor.release();
+        }
     }
 
 }
@@ -0,0 +1,96 @@
+package io.github.patrickconley.arbutus.scanner.visitor.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
+
+/**
+ * The tracks in the library before an incremental scan, by URI. Tracks are claimed as their files
+ * are found; any left unclaimed at the end of the scan have disappeared.
+ * <p/>
+ * This is shared by all the visitors in a scan, so it's thread-safe.
+ */
+public class TrackFingerprints {
+
+    private final ConcurrentMap<String, Track> tracks = new ConcurrentHashMap<>();
+
+    /*
+     * Keys of the tracks in each directory, by path; built when first needed
+     */
+    private Map<String, List<String>> folders;
+
+    public TrackFingerprints(List<Track> tracks) {
+        for (Track track : tracks) {
+            this.tracks.put(track.toString(), track);
+        }
+    }
+
+    /**
+     * @return whether the track is already in the library with the same size and modification
+     * time
+     */
+    public boolean isUnchanged(Track track) {
+        Track saved = tracks.get(track.toString());
+        return saved != null && saved.hasSameFingerprint(track);
+    }
+
+    /**
+     * Mark a track's file as found.
+     *
+     * @return The library's previous version of the track, or null if the track is new
+     */
+    public Track claim(Track track) {
+        return tracks.remove(track.toString());
+    }
+
+    /**
+     * Mark the tracks of every file directly in a directory as found, without listing it.
+     *
+     * @return Number of tracks claimed
+     */
+    public int claimFolder(File directory) {
+        List<String> keys;
+        synchronized (this) {
+            if (folders == null) {
+                folders = new HashMap<>();
+                for (Track track : tracks.values()) {
+                    String path = track.getUri().getPath();
+                    String parent = path == null ? null : new File(path).getParent();
+                    List<String> siblings = folders.get(parent);
+                    if (siblings == null) {
+                        siblings = new ArrayList<>();
+                        folders.put(parent, siblings);
+                    }
+                    siblings.add(track.toString());
+                }
+            }
+            keys = folders.remove(directory.getAbsolutePath());
+        }
+        if (keys == null) {
+            return 0;
+        }
+
+        int claimed = 0;
+        for (String key : keys) {
+            if (tracks.remove(key) != null) {
+                claimed++;
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * @return Tracks whose files weren't found
+     */
+    public Collection<Track> getUnclaimed() {
+        return tracks.values();
+    }
+
+}
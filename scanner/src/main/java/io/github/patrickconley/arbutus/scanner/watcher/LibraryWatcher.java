@@ -0,0 +1,353 @@
+package io.github.patrickconley.arbutus.scanner.watcher;
+
+import android.content.Context;
+import android.os.FileObserver;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
+import io.github.patrickconley.arbutus.scanner.filter.ScanFilter;
+import io.github.patrickconley.arbutus.scanner.model.impl.DirectoryLister;
+import io.github.patrickconley.arbutus.scanner.model.impl.VisitedDirectories;
+import io.github.patrickconley.arbutus.scanner.visitor.impl.FileScanVisitor;
+
+/**
+ * Watch the library's directory tree, and scan only the paths that change, so music added,
+ * changed, or removed while the app is running reaches the library without scanning the whole
+ * tree.
+ * <p/>
+ * Each directory needs its own {@link FileObserver} (an inotify watch), and the kernel limits
+ * how many a process may have, so directories are watched breadth first, up to the options'
+ * maximum: the shallow directories, where albums are usually added, are watched, and changes
+ * below the limit are left to the next scan. Directories the scan filter rejects, or with a
+ * .nomedia file, aren't watched.
+ * <p/>
+ * Events are coalesced (see {@link PathCoalescer}) and the paths scanned on the watcher's own
+ * thread, which also watches directories as they're added.
+ */
+public class LibraryWatcher {
+    private static final String TAG = LibraryWatcher.class.getName();
+
+    private static final int EVENTS =
+            FileObserver.CREATE | FileObserver.CLOSE_WRITE | FileObserver.MOVED_FROM |
+            FileObserver.MOVED_TO | FileObserver.DELETE | FileObserver.DELETE_SELF |
+            FileObserver.MOVE_SELF;
+
+    /*
+     * A path waits for at most this many quiet intervals
+     */
+    private static final int MAX_DELAY_INTERVALS = 10;
+
+    private static final String NO_MEDIA_FILE = ".nomedia";
+
+    /**
+     * Scans the paths that have changed.
+     */
+    interface Updater {
+        void update(List<File> paths);
+    }
+
+    private final File root;
+    private final ScanFilter filter;
+    private final int maxWatches;
+    private final Updater updater;
+    private final PathCoalescer coalescer;
+    private final DirectoryLister lister = DirectoryLister.create();
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor();
+
+    /*
+     * The observer of each watched directory, by path
+     */
+    private final Map<String, FileObserver> observers = new HashMap<>();
+    private boolean stopped;
+    private boolean flushScheduled;
+
+    /**
+     * @param root    The library's directory
+     * @param options Rules for which files to scan, how long to wait for events to settle, and
+     *                how many directories to watch
+     */
+    public LibraryWatcher(
+            @NonNull final Context context, @NonNull File root, @NonNull final ScanOptions options
+    ) {
+        this(root, options, new Updater() {
+            @Override
+            public void update(List<File> paths) {
+                FileScanVisitor.update(context, paths, options);
+            }
+        });
+    }
+
+    LibraryWatcher(File root, ScanOptions options, Updater updater) {
+        this.root = root;
+        this.filter = new ScanFilter(options);
+        this.maxWatches = options.getMaxWatches();
+        this.updater = updater;
+        this.coalescer = new PathCoalescer(options.getWatchDebounceMillis(),
+                                           MAX_DELAY_INTERVALS * options.getWatchDebounceMillis());
+    }
+
+    /**
+     * Start watching, in the background.
+     */
+    public void start() {
+        Log.i(TAG, "Watching " + root);
+        watch(root);
+    }
+
+    /**
+     * @return whether this watches the directory with the same rules for which files to scan, so
+     * it needn't be replaced
+     */
+    public boolean isWatching(@NonNull File root, @NonNull ScanOptions options) {
+        return this.root.getAbsoluteFile().equals(root.getAbsoluteFile()) &&
+               filter.getRulesHash() == new ScanFilter(options).getRulesHash();
+    }
+
+    /**
+     * Stop watching. Changes that haven't been scanned yet are left to the next scan.
+     */
+    public void stop() {
+        executor.shutdownNow();
+        synchronized (observers) {
+            stopped = true;
+            for (FileObserver observer : observers.values()) {
+                observer.stopWatching();
+            }
+            observers.clear();
+        }
+        Log.i(TAG, "Stopped watching " + root + "; " + coalescer);
+    }
+
+    /**
+     * Watch the directory and those below it, breadth first, until the limit is reached.
+     *
+     * @return Number of directories newly watched
+     */
+    int addWatches(File top) {
+        Queue<File> pending = new ArrayDeque<>();
+        pending.add(top);
+        VisitedDirectories visited = new VisitedDirectories();
+
+        int added = 0;
+        while (!pending.isEmpty()) {
+            File directory = pending.remove();
+            if (!visited.add(directory)) {
+                continue;
+            }
+
+            DirectoryLister.Listing listing = lister.list(directory);
+            if (listing == null || listing.isNoMedia()) {
+                continue;
+            }
+
+            synchronized (observers) {
+                if (stopped) {
+                    return added;
+                }
+                String path = directory.getAbsolutePath();
+                if (!observers.containsKey(path)) {
+                    if (observers.size() >= maxWatches) {
+                        Log.w(TAG, "Watching the most directories allowed (" + maxWatches +
+                                   "); changes in " + directory + " and others are left to scans");
+                        return added;
+                    }
+                    FileObserver observer = new DirectoryObserver(directory);
+                    observers.put(path, observer);
+                    observer.startWatching();
+                    added++;
+                }
+            }
+
+            for (DirectoryLister.Entry entry : listing.getEntries()) {
+                if (entry.isDirectory() && filter.acceptDirectory(entry.getFile())) {
+                    pending.add(entry.getFile());
+                }
+            }
+        }
+
+        Log.d(TAG, "Watching " + added + " more directories under " + top);
+        return added;
+    }
+
+    /*
+     * Stop watching the directory and those below it
+     */
+    private void removeWatches(File directory) {
+        String path = directory.getAbsolutePath();
+        String prefix = path.endsWith(File.separator) ? path : path + File.separator;
+        synchronized (observers) {
+            for (Iterator<Map.Entry<String, FileObserver>> i = observers.entrySet().iterator();
+                 i.hasNext(); ) {
+                Map.Entry<String, FileObserver> entry = i.next();
+                if (entry.getKey().equals(path) || entry.getKey().startsWith(prefix)) {
+                    entry.getValue().stopWatching();
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Handle an event in a watched directory.
+     *
+     * @param name The name of the child the event happened to, or null if it happened to the
+     *             directory itself
+     */
+    void onEvent(File directory, int event, String name) {
+        event &= FileObserver.ALL_EVENTS;
+        if ((event & (FileObserver.DELETE_SELF | FileObserver.MOVE_SELF)) != 0) {
+            removeWatches(directory);
+            queue(directory);
+            return;
+        }
+        if (name == null) {
+            return;
+        }
+
+        // Adding a .nomedia file hides everything in the directory, so it's no longer watched;
+        // removing it reveals the directory again
+        if (name.equalsIgnoreCase(NO_MEDIA_FILE)) {
+            if ((event & (FileObserver.CREATE | FileObserver.MOVED_TO)) != 0) {
+                removeWatches(directory);
+            } else if ((event & (FileObserver.DELETE | FileObserver.MOVED_FROM)) != 0) {
+                watch(directory);
+            }
+            queue(directory);
+            return;
+        }
+
+        File path = new File(directory, name);
+        if ((event & (FileObserver.MOVED_FROM | FileObserver.DELETE)) != 0) {
+            removeWatches(path);
+        }
+        if ((event & (FileObserver.CREATE | FileObserver.MOVED_TO)) != 0 && path.isDirectory()) {
+            if (!filter.acceptDirectory(path)) {
+                // e.g., a directory renamed to a hidden name; its old name is queued when it's
+                // moved from
+                return;
+            }
+            watch(path);
+        }
+        queue(path);
+    }
+
+    private void watch(final File directory) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                addWatches(directory);
+            }
+        });
+    }
+
+    private void queue(File path) {
+        coalescer.add(path);
+        synchronized (this) {
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        schedule(coalescer.getMillisUntilDue());
+    }
+
+    /*
+     * Scan the paths if they've settled; otherwise wait until they might have
+     */
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (LibraryWatcher.this) {
+                if (coalescer.isEmpty()) {
+                    flushScheduled = false;
+                    return;
+                }
+                long delay = coalescer.getMillisUntilDue();
+                if (delay > 0L) {
+                    schedule(delay);
+                    return;
+                }
+                flushScheduled = false;
+            }
+
+            List<File> paths = coalescer.drain();
+            if (paths.isEmpty()) {
+                return;
+            }
+            Log.i(TAG, "Scanning " + paths.size() + " changed paths");
+            try {
+                updater.update(paths);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to scan changed paths " + paths, e);
+            }
+        }
+    };
+
+    private void schedule(long delayMillis) {
+        try {
+            executor.schedule(flush, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "Not scanning changed paths (stopped)");
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "Not watching new directories (stopped)");
+        }
+    }
+
+    /**
+     * @return Number of directories being watched
+     */
+    public int getWatchCount() {
+        synchronized (observers) {
+            return observers.size();
+        }
+    }
+
+    boolean isWatched(File directory) {
+        synchronized (observers) {
+            return observers.containsKey(directory.getAbsolutePath());
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "LibraryWatcher[watches=" + getWatchCount() + ", " + coalescer + "]";
+    }
+
+    private final class DirectoryObserver extends FileObserver {
+        private final File directory;
+
+        @SuppressWarnings("deprecation") // FileObserver(File, int) needs API 29
+        DirectoryObserver(File directory) {
+            super(directory.getAbsolutePath(), EVENTS);
+            this.directory = directory;
+        }
+
+        @Override
+        public void onEvent(int event, String path) {
+            LibraryWatcher.this.onEvent(directory, event, path);
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package io.github.patrickconley.arbutus.scanner.watcher;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gather the paths of filesystem events until they've settled, so that copying an album (a
+ * directory created, then a burst of files created and written) is scanned once, when the copy
+ * is done, rather than once per event.
+ * <p/>
+ * Paths are coalesced as they're added: a path already pending, or under a directory already
+ * pending, adds nothing; a directory replaces any pending paths under it. The kind of event
+ * doesn't matter, since each path is checked against the filesystem when it's scanned.
+ * <p/>
+ * The paths are due once no event has been added for the quiet interval, or once the oldest has
+ * waited for the longest delay, so a copy that never pauses is still scanned as it goes.
+ * <p/>
+ * Events are added by the observers' thread and drained by the watcher's, so this is
+ * thread-safe.
+ */
+public final class PathCoalescer {
+
+    private final long quietNanos;
+    private final long maxDelayNanos;
+
+    private final Set<String> pending = new HashSet<>();
+    private long firstEvent;
+    private long lastEvent;
+
+    private long events;
+    private long batches;
+    private long paths;
+
+    /**
+     * @param quietMillis    Time without events after which the paths are due
+     * @param maxDelayMillis Longest time a path may wait to be due
+     */
+    public PathCoalescer(long quietMillis, long maxDelayMillis) {
+        this.quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(quietMillis, maxDelayMillis));
+    }
+
+    /**
+     * Add the path of an event.
+     */
+    public synchronized void add(@NonNull File path) {
+        long now = System.nanoTime();
+        if (pending.isEmpty()) {
+            firstEvent = now;
+        }
+        lastEvent = now;
+        events++;
+
+        String added = path.getAbsolutePath();
+        for (File ancestor = new File(added); ancestor != null;
+             ancestor = ancestor.getParentFile()) {
+            if (pending.contains(ancestor.getPath())) {
+                return;
+            }
+        }
+
+        String prefix = added.endsWith(File.separator) ? added : added + File.separator;
+        for (Iterator<String> i = pending.iterator(); i.hasNext(); ) {
+            if (i.next().startsWith(prefix)) {
+                i.remove();
+            }
+        }
+        pending.add(added);
+    }
+
+    /**
+     * @return Time until the paths are due: 0 if they're due now, or the quiet interval if there
+     * are none
+     */
+    public synchronized long getMillisUntilDue() {
+        if (pending.isEmpty()) {
+            return TimeUnit.NANOSECONDS.toMillis(quietNanos);
+        }
+
+        long now = System.nanoTime();
+        long remaining = Math.min(lastEvent + quietNanos, firstEvent + maxDelayNanos) - now;
+        return remaining <= 0L ? 0L : Math.max(1L, TimeUnit.NANOSECONDS.toMillis(remaining));
+    }
+
+    public synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Take the pending paths, none of which is under another.
+     */
+    @NonNull
+    public synchronized List<File> drain() {
+        List<File> drained = new ArrayList<>(pending.size());
+        for (String path : pending) {
+            drained.add(new File(path));
+        }
+        pending.clear();
+
+        if (!drained.isEmpty()) {
+            batches++;
+            paths += drained.size();
+        }
+        return drained;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return "PathCoalescer[events=" + events + ", batches=" + batches + ", paths=" + paths +
+               ", pending=" + pending.size() + "]";
+    }
+
+}
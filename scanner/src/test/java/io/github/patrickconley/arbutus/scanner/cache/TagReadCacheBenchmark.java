@@ -0,0 +1,128 @@
+package io.github.patrickconley.arbutus.scanner.cache;
+
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.scanner.model.impl.MediaFile;
+import io.github.patrickconley.arbutus.scanner.strategy.StrategyFactory;
+import io.github.patrickconley.arbutus.scanner.strategy.TagReadOptions;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Compare the time to get the tags of a library of FLAC files, each with a 256KB picture, when
+ * the cache is cold (every file is sniffed and read) and when it's warm (the cache is reopened
+ * from its log and every file is only stat'd). The files have just been written, so even the cold
+ * reads come from the OS's page cache; on a device's storage the gap is wider.
+ * <p/>
+ * This takes a while, so it's ignored; remove the annotation to run it.
+ */
+@Ignore("Benchmark")
+public class TagReadCacheBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int FILES = 2000;
+    private static final int PICTURE_LENGTH = 256 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void warmVsCold() throws Exception {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            File file = folder.newFile("track" + i + ".flac");
+            writeFlac(file, "ARTIST=foo", "ALBUM=bar", "TITLE=track " + i, "TRACKNUMBER=" + i);
+            files.add(file);
+        }
+        File log = new File(folder.getRoot(), "cache");
+
+        long start = System.nanoTime();
+        StrategyFactory strategies = new StrategyFactory();
+        TagReadCache cache = TagReadCache.open(log, TagReadOptions.DEFAULT.getStamp());
+        for (File file : files) {
+            String path = file.getAbsolutePath();
+            long size = file.length();
+            long lastModified = file.lastModified();
+            if (cache.get(path, size, lastModified) == null) {
+                cache.put(path, size, lastModified,
+                          strategies.getStrategy(new MediaFile(file)).readTags(file));
+            }
+        }
+        cache.close();
+        strategies.release();
+        long cold = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        cache = TagReadCache.open(log, TagReadOptions.DEFAULT.getStamp());
+        for (File file : files) {
+            Map<String, Tag> tags =
+                    cache.get(file.getAbsolutePath(), file.length(), file.lastModified());
+            assertThat(tags).containsKey("title");
+        }
+        cache.close();
+        long warm = System.nanoTime() - start;
+
+        System.out.println(String.format(Locale.US, "%d files: cold %.3fms/file, warm %.3fms/file" +
+                                                    " (log %dKB)", FILES, cold / 1e6 / FILES,
+                                         warm / 1e6 / FILES, log.length() >> 10));
+    }
+
+    /*
+     * A FLAC file with a STREAMINFO block, a picture, and a Vorbis comment
+     */
+    private static void writeFlac(File file, String... comments) throws IOException {
+        ByteArrayOutputStream comment = new ByteArrayOutputStream();
+        writeString(comment, "reference libFLAC 1.3.2 20170101");
+        writeLittleEndian(comment, comments.length);
+        for (String value : comments) {
+            writeString(comment, value);
+        }
+
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{ 'f', 'L', 'a', 'C' });
+            writeBlockHeader(out, 0, false, 34);
+            out.write(new byte[34]);
+            writeBlockHeader(out, 6, false, PICTURE_LENGTH);
+            out.write(new byte[PICTURE_LENGTH]);
+            writeBlockHeader(out, 4, true, comment.size());
+            comment.writeTo(out);
+            out.write(new byte[1024]);
+        }
+    }
+
+    private static void writeBlockHeader(
+            FileOutputStream out, int type, boolean last, int length
+    ) throws IOException {
+        out.write((last ? 0x80 : 0) | type);
+        out.write(length >> 16);
+        out.write(length >> 8);
+        out.write(length);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        writeLittleEndian(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeLittleEndian(ByteArrayOutputStream out, int value) {
+        for (int i = 0; i < 4; i++) {
+            out.write(value >> (8 * i));
+        }
+    }
+
+}
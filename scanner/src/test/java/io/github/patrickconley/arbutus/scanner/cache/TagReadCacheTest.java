@@ -0,0 +1,207 @@
+package io.github.patrickconley.arbutus.scanner.cache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Feature: remember the tags read from files that haven't changed, between scans.
+ */
+public class TagReadCacheTest {
+
+    private static final int STAMP = 1;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File log;
+    private String path;
+    private Map<String, Tag> tags;
+
+    @Before
+    public void setup() throws IOException {
+        log = new File(folder.getRoot(), "cache");
+        path = folder.newFile("track.flac").getAbsolutePath();
+        tags = tags("artist", "Sigur Rós", "title", "Svefn-g-englar");
+    }
+
+    /**
+     * Given a file's tags in the cache, when I get them with the same size and modification time,
+     * then I get the tags.
+     */
+    @Test
+    public void hit() {
+        TagReadCache cache = TagReadCache.open(log, STAMP);
+        cache.put(path, 100L, 1000L, tags);
+
+        assertThat(cache.get(path, 100L, 1000L)).isEqualTo(tags);
+        assertThat(cache.toString()).isEqualTo("TagReadCache[hits=1, misses=0, entries=1]");
+        cache.close();
+    }
+
+    /**
+     * Given a file's tags in the cache, when I get them for a different size or modification
+     * time, or a different file, then I get nothing.
+     */
+    @Test
+    public void miss() {
+        TagReadCache cache = TagReadCache.open(log, STAMP);
+        cache.put(path, 100L, 1000L, tags);
+
+        assertThat(cache.get(path, 101L, 1000L)).isNull();
+        assertThat(cache.get(path, 100L, 1001L)).isNull();
+        assertThat(cache.get(path + "2", 100L, 1000L)).isNull();
+        assertThat(cache.toString()).isEqualTo("TagReadCache[hits=0, misses=3, entries=1]");
+        cache.close();
+    }
+
+    /**
+     * Given a file's tags in the cache, when I get them twice, then I get different tag objects,
+     * since writing a tag sets its ID.
+     */
+    @Test
+    public void newTags() {
+        TagReadCache cache = TagReadCache.open(log, STAMP);
+        cache.put(path, 100L, 1000L, tags);
+
+        Tag first = cache.get(path, 100L, 1000L).get("artist");
+        first.setId(1L);
+        assertThat(cache.get(path, 100L, 1000L).get("artist").getId()).isEqualTo(0L);
+        cache.close();
+    }
+
+    /**
+     * Given a cache that's been closed, when I open it again, then it has the latest tags of each
+     * file.
+     */
+    @Test
+    public void reopen() {
+        TagReadCache cache = TagReadCache.open(log, STAMP);
+        cache.put(path, 100L, 1000L, tags("title", "old"));
+        cache.put(path, 200L, 2000L, tags);
+        cache.put(path + "2", 100L, 1000L, new HashMap<String, Tag>());
+        cache.close();
+
+        cache = TagReadCache.open(log, STAMP);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get(path, 200L, 2000L)).isEqualTo(tags);
+        assertThat(cache.get(path + "2", 100L, 1000L)).isEmpty();
+        cache.close();
+    }
+
+    /**
+     * Given a log cut off in the middle of a record, when I open the cache, then it has the
+     * records before it, and new records are kept.
+     */
+    @Test
+    public void damagedLog() throws IOException {
+        TagReadCache cache = TagReadCache.open(log, STAMP);
+        cache.put(path, 100L, 1000L, tags);
+        cache.put(path + "2", 100L, 1000L, tags);
+        cache.close();
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(file.length() - 5);
+        }
+
+        cache = TagReadCache.open(log, STAMP);
+        assertThat(cache.size()).isEqualTo(1);
+        cache.put(path + "3", 100L, 1000L, tags);
+        cache.close();
+
+        cache = TagReadCache.open(log, STAMP);
+        assertThat(cache.get(path, 100L, 1000L)).isEqualTo(tags);
+        assertThat(cache.get(path + "3", 100L, 1000L)).isEqualTo(tags);
+        cache.close();
+    }
+
+    /**
+     * Given a log that isn't a cache, when I open the cache, then it's empty.
+     */
+    @Test
+    public void notALog() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.writeBytes("not a tag cache");
+        }
+
+        TagReadCache cache = TagReadCache.open(log, STAMP);
+        assertThat(cache.size()).isEqualTo(0);
+        cache.put(path, 100L, 1000L, tags);
+        cache.close();
+
+        assertThat(TagReadCache.open(log, STAMP).get(path, 100L, 1000L)).isEqualTo(tags);
+    }
+
+    /**
+     * Given a log written with a different stamp, e.g., tags read with other options, when I open
+     * the cache, then it's empty, and stays so after reopening.
+     */
+    @Test
+    public void differentStamp() {
+        TagReadCache cache = TagReadCache.open(log, STAMP);
+        cache.put(path, 100L, 1000L, tags);
+        cache.close();
+
+        cache = TagReadCache.open(log, STAMP + 1);
+        assertThat(cache.get(path, 100L, 1000L)).isNull();
+        cache.close();
+
+        assertThat(TagReadCache.open(log, STAMP).size()).isEqualTo(0);
+    }
+
+    /**
+     * Given a log with many superseded records, when I close the cache, then the log is
+     * compacted, dropping files that no longer exist.
+     */
+    @Test
+    public void compact() throws IOException {
+        String missing = new File(folder.getRoot(), "missing.flac").getAbsolutePath();
+        TagReadCache cache = TagReadCache.open(log, STAMP);
+        for (int i = 0; i < 2000; i++) {
+            cache.put(path, i, 1000L, tags);
+        }
+        cache.put(missing, 100L, 1000L, tags);
+        cache.close();
+        long compacted = log.length();
+
+        cache = TagReadCache.open(log, STAMP);
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.get(path, 1999L, 1000L)).isEqualTo(tags);
+        assertThat(cache.get(missing, 100L, 1000L)).isNull();
+        cache.close();
+        assertThat(log.length()).isEqualTo(compacted);
+    }
+
+    /**
+     * Given a cache, when I clear it, then it's empty, even after reopening.
+     */
+    @Test
+    public void clear() {
+        TagReadCache cache = TagReadCache.open(log, STAMP);
+        cache.put(path, 100L, 1000L, tags);
+        cache.clear();
+        assertThat(cache.size()).isEqualTo(0);
+        cache.close();
+
+        assertThat(TagReadCache.open(log, STAMP).size()).isEqualTo(0);
+    }
+
+    private static Map<String, Tag> tags(String... keysAndValues) {
+        Map<String, Tag> tags = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            tags.put(keysAndValues[i], new Tag(keysAndValues[i], keysAndValues[i + 1]));
+        }
+        return tags;
+    }
+
+}
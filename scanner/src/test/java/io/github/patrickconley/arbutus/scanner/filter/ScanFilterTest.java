@@ -0,0 +1,146 @@
+package io.github.patrickconley.arbutus.scanner.filter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Feature: skip files and directories that aren't worth scanning before reading them.
+ */
+public class ScanFilterTest {
+
+    private static final List<String> NONE = Collections.emptyList();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Given no rules, when I filter files and directories, then they're all accepted.
+     */
+    @Test
+    public void acceptAll() throws IOException {
+        assertThat(ScanFilter.ACCEPT_ALL.acceptFile(file(".hidden.jpg", 0))).isTrue();
+        assertThat(ScanFilter.ACCEPT_ALL.acceptDirectory(new File("/music/.hidden"))).isTrue();
+        assertThat(ScanFilter.ACCEPT_ALL.toString())
+                .isEqualTo("ScanFilter[hidden=0, excluded=0, extension=0, size=0]");
+    }
+
+    /**
+     * Given an extension allow-list, when I filter files, then only files with those extensions
+     * (in any case) are accepted.
+     */
+    @Test
+    public void extensions() throws IOException {
+        ScanFilter filter = new ScanFilter(Arrays.asList(" MP3", ".flac", ""), NONE, 0L, true);
+
+        assertThat(filter.acceptFile(file("track.mp3", 0))).isTrue();
+        assertThat(filter.acceptFile(file("TRACK.Flac", 0))).isTrue();
+        assertThat(filter.acceptFile(file("cover.jpg", 0))).isFalse();
+        assertThat(filter.acceptFile(file("README", 0))).isFalse();
+        assertThat(filter.acceptDirectory(folder.newFolder("album.mp3.d"))).isTrue();
+        assertThat(filter.getSkippedCount(ScanFilter.Rule.EXTENSION)).isEqualTo(2);
+    }
+
+    /**
+     * Given a minimum file size, when I filter files, then smaller files are rejected.
+     */
+    @Test
+    public void minFileSize() throws IOException {
+        ScanFilter filter = new ScanFilter(NONE, NONE, 100L, true);
+
+        assertThat(filter.acceptFile(file("track.mp3", 100))).isTrue();
+        assertThat(filter.acceptFile(file("stub.mp3", 99))).isFalse();
+        assertThat(filter.getSkippedCount(ScanFilter.Rule.SIZE)).isEqualTo(1);
+    }
+
+    /**
+     * Given hidden files aren't scanned, when I filter hidden files and directories, then they're
+     * rejected.
+     */
+    @Test
+    public void hidden() throws IOException {
+        ScanFilter filter = new ScanFilter(new ScanOptions().setScanHidden(false));
+
+        assertThat(filter.acceptFile(file("._track.mp3", 0))).isFalse();
+        assertThat(filter.acceptDirectory(new File("/music/.thumbnails"))).isFalse();
+        assertThat(filter.acceptDirectory(new File("/music/.hidden/album"))).isTrue();
+        assertThat(filter.getSkippedCount(ScanFilter.Rule.HIDDEN)).isEqualTo(2);
+    }
+
+    /**
+     * Given globs without slashes, when I filter files and directories, then the globs match
+     * their names anywhere in the tree.
+     */
+    @Test
+    public void nameGlobs() {
+        ScanFilter filter = new ScanFilter(NONE, Arrays.asList("samples", "*.cue", "disc?"), 0L,
+                                           true);
+
+        assertThat(filter.acceptDirectory(new File("/music/artist/Samples"))).isFalse();
+        assertThat(filter.acceptDirectory(new File("/music/artist/samples2"))).isTrue();
+        assertThat(filter.acceptFile(new File("/music/album/album.cue"))).isFalse();
+        assertThat(filter.acceptDirectory(new File("/music/album/disc1"))).isFalse();
+        assertThat(filter.acceptDirectory(new File("/music/album/disc10"))).isTrue();
+        assertThat(filter.getSkippedCount(ScanFilter.Rule.EXCLUDED)).isEqualTo(3);
+    }
+
+    /**
+     * Given globs with slashes, when I filter files and directories, then the globs match their
+     * whole paths, with '*' matching within a name and '**' across names.
+     */
+    @Test
+    public void pathGlobs() {
+        ScanFilter filter = new ScanFilter(
+                NONE, Arrays.asList("**/Podcasts/**", "/music/*/extras.mp3", "/music/(live)/*"),
+                0L, true);
+
+        assertThat(filter.acceptDirectory(new File("/music/Podcasts"))).isFalse();
+        assertThat(filter.acceptFile(new File("/music/a/b/podcasts/show.mp3"))).isFalse();
+        assertThat(filter.acceptFile(new File("/music/artist/extras.mp3"))).isFalse();
+        assertThat(filter.acceptFile(new File("/music/artist/album/extras.mp3"))).isTrue();
+        assertThat(filter.acceptFile(new File("/music/(live)/track.mp3"))).isFalse();
+        assertThat(filter.acceptFile(new File("/music/live/track.mp3"))).isTrue();
+        assertThat(filter.getSkippedCount(ScanFilter.Rule.EXCLUDED)).isEqualTo(4);
+    }
+
+    /**
+     * Given options with every rule, when I filter files, then each rejection is counted against
+     * the first rule that made it.
+     */
+    @Test
+    public void counts() throws IOException {
+        ScanFilter filter = new ScanFilter(
+                new ScanOptions().setIncludedExtensions(Collections.singleton("mp3"))
+                                 .setExcludedPaths(Collections.singleton("*.log"))
+                                 .setMinFileSize(10L)
+                                 .setScanHidden(false));
+
+        assertThat(filter.acceptFile(file(".rip.log", 0))).isFalse();
+        assertThat(filter.acceptFile(file("rip.log", 0))).isFalse();
+        assertThat(filter.acceptFile(file("cover.jpg", 0))).isFalse();
+        assertThat(filter.acceptFile(file("stub.mp3", 0))).isFalse();
+        assertThat(filter.acceptFile(file("track.mp3", 10))).isTrue();
+        assertThat(filter.toString())
+                .isEqualTo("ScanFilter[hidden=1, excluded=1, extension=1, size=1]");
+    }
+
+    private File file(String name, int size) throws IOException {
+        File file = folder.newFile(name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[size]);
+        }
+        return file;
+    }
+
+}
@@ -0,0 +1,113 @@
+package io.github.patrickconley.arbutus.scanner.model.impl;
+
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Compare the filesystem calls made to list a tree of 10,000 directories (100 artists of 100
+ * albums, each with four tracks) the way {@link MediaFolder} used to, reading each directory
+ * twice (once for a .nomedia file, once for its children), with the calls made by each
+ * {@link DirectoryLister}.
+ * <p/>
+ * This takes a while, so it's ignored; remove the annotation to run it.
+ */
+@Ignore("Benchmark")
+public class DirectoryListerBenchmark {
+
+    private static final int ARTISTS = 100;
+    private static final int ALBUMS = 100;
+    private static final int TRACKS = 4;
+    private static final int ROUNDS = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void largeTree() throws Exception {
+        File root = folder.newFolder();
+        for (int i = 0; i < ARTISTS; i++) {
+            for (int j = 0; j < ALBUMS; j++) {
+                File album = new File(root, "artist" + i + "/album" + j);
+                assertThat(album.mkdirs()).isTrue();
+                for (int k = 0; k < TRACKS; k++) {
+                    assertThat(new File(album, "track" + k + ".ogg").createNewFile()).isTrue();
+                }
+            }
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            long[] calls = listTwice(root);
+            report("listFiles twice", System.nanoTime() - start, calls[0], calls[1]);
+
+            for (DirectoryLister lister : new DirectoryLister[]{
+                    new DirectoryLister.FileLister(), new DirectoryLister.NioLister()
+            }) {
+                start = System.nanoTime();
+                walk(root, lister);
+                report(lister.getClass().getSimpleName(), System.nanoTime() - start,
+                       lister.getReadCount(), lister.getStatCount());
+                assertThat(lister.getStatCount()).isEqualTo(calls[1]);
+            }
+        }
+    }
+
+    /*
+     * The old listing: returns the number of directory reads and stats
+     */
+    private static long[] listTwice(File root) {
+        long reads = 0L;
+        long stats = 0L;
+        Deque<File> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            File dir = pending.pop();
+            reads++;
+            if (dir.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.equalsIgnoreCase(".nomedia");
+                }
+            }).length > 0) {
+                continue;
+            }
+
+            reads++;
+            for (File child : dir.listFiles()) {
+                stats++;
+                if (child.isDirectory()) {
+                    pending.push(child);
+                }
+            }
+        }
+        return new long[]{ reads, stats };
+    }
+
+    private static void walk(File root, DirectoryLister lister) {
+        Deque<File> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            for (DirectoryLister.Entry entry : lister.list(pending.pop()).getEntries()) {
+                if (entry.isDirectory()) {
+                    pending.push(entry.getFile());
+                }
+            }
+        }
+    }
+
+    private static void report(String lister, long nanos, long reads, long stats) {
+        System.out.println(String.format(Locale.US, "%s: %d directory reads, %d stats, %.1fms",
+                                         lister, reads, stats, nanos / 1e6));
+    }
+
+}
@@ -0,0 +1,101 @@
+package io.github.patrickconley.arbutus.scanner.model.impl;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Feature: list a directory's children and their types in a single read of the directory.
+ */
+@RunWith(Parameterized.class)
+public class DirectoryListerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Parameterized.Parameter
+    public boolean nio;
+
+    private DirectoryLister lister;
+
+    @Parameterized.Parameters(name = "nio={0}")
+    public static List<Object[]> listers() {
+        return Arrays.asList(new Object[]{ false }, new Object[]{ true });
+    }
+
+    @Before
+    public void createLister() {
+        lister = nio ? new DirectoryLister.NioLister() : new DirectoryLister.FileLister();
+    }
+
+    /**
+     * Given a directory with files, folders, and links, when I list it, then each child is listed
+     * with its type, following links, and the directory is read once.
+     */
+    @Test
+    public void children() throws IOException {
+        File dir = folder.newFolder();
+        File child = new File(dir, "child");
+        assertThat(child.mkdir()).isTrue();
+        assertThat(new File(dir, "sample.ogg").createNewFile()).isTrue();
+        Files.createSymbolicLink(new File(dir, "link").toPath(), child.toPath());
+        Files.createSymbolicLink(new File(dir, "broken").toPath(),
+                                 new File(dir, "missing").toPath());
+
+        DirectoryLister.Listing listing = lister.list(dir);
+
+        assertThat(listing.isNoMedia()).isFalse();
+        assertThat(types(listing)).containsExactly("child", true, "sample.ogg", false, "link", true,
+                                                   "broken", false);
+        assertThat(lister.getReadCount()).isEqualTo(1L);
+        assertThat(lister.getStatCount()).isEqualTo(4L);
+    }
+
+    /**
+     * Given a directory with a .nomedia file (in any case), when I list it, then it's marked as
+     * not to be scanned, and its children aren't stat'd.
+     */
+    @Test
+    public void noMedia() throws IOException {
+        File dir = folder.newFolder();
+        assertThat(new File(dir, "sample.ogg").createNewFile()).isTrue();
+        assertThat(new File(dir, ".NoMedia").createNewFile()).isTrue();
+
+        DirectoryLister.Listing listing = lister.list(dir);
+
+        assertThat(listing.isNoMedia()).isTrue();
+        assertThat(listing.getEntries()).isEmpty();
+        assertThat(lister.getStatCount()).isEqualTo(0L);
+    }
+
+    /**
+     * Given a directory that doesn't exist, when I list it, then there's no listing.
+     */
+    @Test
+    public void missing() {
+        assertThat(lister.list(new File(folder.getRoot(), "missing"))).isNull();
+        assertThat(lister.toString()).endsWith("[reads=1, stats=0]");
+    }
+
+    private static Map<String, Boolean> types(DirectoryLister.Listing listing) {
+        Map<String, Boolean> types = new HashMap<>();
+        for (DirectoryLister.Entry entry : listing.getEntries()) {
+            types.put(entry.getFile().getName(), entry.isDirectory());
+        }
+        return types;
+    }
+
+}
@@ -0,0 +1,205 @@
+package io.github.patrickconley.arbutus.scanner.model.impl;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
+import io.github.patrickconley.arbutus.datastorage.scan.model.ScannedDirectory;
+import io.github.patrickconley.arbutus.scanner.filter.ScanFilter;
+import io.github.patrickconley.arbutus.scanner.visitor.MediaVisitor;
+import io.github.patrickconley.arbutus.scanner.visitor.impl.TrackFingerprints;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Feature: an incremental scan skips listing directories that haven't changed since the last
+ * scan.
+ */
+public class DirectoryPrunerTest {
+
+    private static final int RULES = 1;
+    private static final long AN_HOUR_AGO = System.currentTimeMillis() - 3600000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File root;
+    private File album;
+    private File disc;
+
+    @Before
+    public void createTree() throws IOException {
+        root = folder.newFolder();
+        album = new File(root, "album");
+        disc = new File(album, "disc 1");
+        assertThat(disc.mkdirs()).isTrue();
+        assertThat(new File(root, "root.ogg").createNewFile()).isTrue();
+        assertThat(new File(album, "album.ogg").createNewFile()).isTrue();
+        assertThat(new File(disc, "disc.ogg").createNewFile()).isTrue();
+        age(root, album, disc);
+    }
+
+    /**
+     * Given a tree that hasn't changed since it was last scanned, when I scan it again, then no
+     * directory is listed, but every directory is still visited.
+     */
+    @Test
+    public void unchangedTree() {
+        List<ScannedDirectory> directories = scan(newPruner(null)).getRecorded();
+        assertThat(directories).hasSize(3);
+
+        List<String> visited = new ArrayList<>();
+        DirectoryPruner pruner = newPruner(directories);
+        scan(pruner, visited);
+
+        assertThat(visited).containsExactly(root.getName(), "album", "disc 1");
+        assertThat(pruner.getPrunedCount()).isEqualTo(3L);
+        assertThat(pruner.getRecorded()).isEmpty();
+    }
+
+    /**
+     * Given a directory whose children have changed since it was last scanned, when I scan the
+     * tree again, then only that directory is listed.
+     */
+    @Test
+    public void changedDirectory() throws IOException {
+        List<ScannedDirectory> directories = scan(newPruner(null)).getRecorded();
+        assertThat(new File(album, "bonus.ogg").createNewFile()).isTrue();
+        touch(album);
+
+        List<String> visited = new ArrayList<>();
+        DirectoryPruner pruner = newPruner(directories);
+        scan(pruner, visited);
+
+        assertThat(visited).containsExactly(root.getName(), "album", "album.ogg", "bonus.ogg",
+                                            "disc 1");
+        assertThat(pruner.getPrunedCount()).isEqualTo(2L);
+        assertThat(pruner.getRecorded()).hasSize(1);
+    }
+
+    /**
+     * Given a directory that had a .nomedia file when it was last scanned, when the file is
+     * removed and I scan the tree again, then the directory is listed though its parent isn't.
+     */
+    @Test
+    public void noMediaRemoved() throws IOException {
+        File noMedia = new File(disc, ".nomedia");
+        assertThat(noMedia.createNewFile()).isTrue();
+        age(disc);
+        List<ScannedDirectory> directories = scan(newPruner(null)).getRecorded();
+
+        assertThat(noMedia.delete()).isTrue();
+        touch(disc);
+        List<String> visited = new ArrayList<>();
+        DirectoryPruner pruner = newPruner(directories);
+        scan(pruner, visited);
+
+        assertThat(visited).containsExactly(root.getName(), "album", "disc 1", "disc.ogg");
+        assertThat(pruner.getPrunedCount()).isEqualTo(2L);
+    }
+
+    /**
+     * Given a tree scanned with different rules, when I scan it again, then every directory is
+     * listed.
+     */
+    @Test
+    public void changedRules() {
+        List<ScannedDirectory> directories = scan(newPruner(null)).getRecorded();
+
+        DirectoryPruner pruner =
+                new DirectoryPruner(directories, root, RULES + 1, newFingerprints());
+        List<String> visited = new ArrayList<>();
+        scan(pruner, visited);
+
+        assertThat(visited).hasSize(6);
+        assertThat(pruner.getPrunedCount()).isEqualTo(0L);
+        assertThat(pruner.getRecorded()).hasSize(3);
+    }
+
+    /**
+     * Given a directory changed just before it was scanned, when I scan the tree again, then the
+     * directory is listed again, since it might have changed again within its time's resolution.
+     */
+    @Test
+    public void recentlyChanged() {
+        assertThat(album.setLastModified(System.currentTimeMillis())).isTrue();
+        List<ScannedDirectory> directories = scan(newPruner(null)).getRecorded();
+
+        List<String> visited = new ArrayList<>();
+        scan(newPruner(directories), visited);
+
+        assertThat(visited).contains("album.ogg");
+    }
+
+    /**
+     * Given a scan that isn't incremental, when I scan an unchanged tree, then every directory is
+     * listed and recorded.
+     */
+    @Test
+    public void notPruning() {
+        List<ScannedDirectory> directories = scan(newPruner(null)).getRecorded();
+
+        DirectoryPruner pruner = new DirectoryPruner(directories, root, RULES, null);
+        List<String> visited = new ArrayList<>();
+        scan(pruner, visited);
+
+        assertThat(visited).hasSize(6);
+        assertThat(pruner.getPrunedCount()).isEqualTo(0L);
+    }
+
+    private DirectoryPruner newPruner(List<ScannedDirectory> directories) {
+        return directories == null ?
+               new DirectoryPruner(Collections.<ScannedDirectory>emptyList(), root, RULES, null) :
+               new DirectoryPruner(directories, root, RULES, newFingerprints());
+    }
+
+    private static TrackFingerprints newFingerprints() {
+        return new TrackFingerprints(Collections.<Track>emptyList());
+    }
+
+    private DirectoryPruner scan(DirectoryPruner pruner) {
+        return scan(pruner, new ArrayList<String>());
+    }
+
+    private DirectoryPruner scan(DirectoryPruner pruner, final List<String> visited) {
+        new MediaFolder(root, ScanFilter.ACCEPT_ALL, pruner).accept(new MediaVisitor() {
+            @Override
+            public boolean visit(MediaFolder dir) {
+                visited.add(dir.getFile().getName());
+                return true;
+            }
+
+            @Override
+            public boolean visit(MediaFile file) {
+                visited.add(file.getFile().getName());
+                return true;
+            }
+        });
+        return pruner;
+    }
+
+    /*
+     * Set the directories' times far enough in the past to be trusted
+     */
+    private static void age(File... directories) {
+        for (File directory : directories) {
+            assertThat(directory.setLastModified(AN_HOUR_AGO)).isTrue();
+        }
+    }
+
+    /*
+     * Change a directory's time, as adding or removing a child would
+     */
+    private static void touch(File directory) {
+        assertThat(directory.setLastModified(AN_HOUR_AGO + 60000L)).isTrue();
+    }
+
+}
@@ -10,7 +10,11 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
 
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
+import io.github.patrickconley.arbutus.scanner.filter.ScanFilter;
 import io.github.patrickconley.arbutus.scanner.visitor.MediaVisitor;
 
 import static org.junit.Assert.assertEquals;
@@ -327,4 +331,97 @@ public class MediaFolderTest {
         verify(visitor, times(3)).visit(ArgumentMatchers.<MediaFolder>any());
     }
 
+    /**
+     * Given a media folder that contains a hidden folder with a file, when I read the folder with
+     * hidden folders excluded, then its visitor isn't visited on the hidden folder or its file.
+     */
+    @Test
+    public void folderWithHiddenChild() throws IOException {
+        File mediaFolder = folder.newFolder();
+        File child = new File(mediaFolder, ".thumbnails");
+        assertTrue(child.mkdir());
+        assertTrue(new File(child, "sample.ogg").createNewFile());
+
+        ScanFilter filter = new ScanFilter(new ScanOptions().setScanHidden(false));
+        assertEquals(0L, new MediaFolder(mediaFolder, filter).accept(visitor));
+        verify(visitor, never()).visit(ArgumentMatchers.<MediaFile>any());
+        verify(visitor, times(1)).visit(ArgumentMatchers.<MediaFolder>any());
+        assertEquals(1L, filter.getSkippedCount(ScanFilter.Rule.HIDDEN));
+    }
+
+    /**
+     * Given a media folder that contains an audio file and an image, when I read the folder with
+     * an extension filter, then its visitor is only visited on the audio file.
+     */
+    @Test
+    public void folderWithFilteredFile() throws IOException {
+        File mediaFolder = folder.newFolder();
+        assertTrue(new File(mediaFolder, "sample.ogg").createNewFile());
+        assertTrue(new File(mediaFolder, "cover.jpg").createNewFile());
+
+        ScanFilter filter = new ScanFilter(
+                new ScanOptions().setIncludedExtensions(Collections.singleton("ogg")));
+        assertEquals(1L, new MediaFolder(mediaFolder, filter).accept(visitor));
+        verify(visitor, times(1)).visit(ArgumentMatchers.<MediaFile>any());
+        verify(visitor, times(1)).visit(ArgumentMatchers.<MediaFolder>any());
+        assertEquals(1L, filter.getSkippedCount(ScanFilter.Rule.EXTENSION));
+    }
+
+    /**
+     * Given a media folder that contains a link to itself, when I read the folder, then its
+     * visitor is visited on the media folder and its file once, and the link is reported as a
+     * duplicate.
+     */
+    @Test
+    public void folderWithLinkToItself() throws IOException {
+        File mediaFolder = folder.newFolder();
+        assertTrue(new File(mediaFolder, "sample.ogg").createNewFile());
+        Files.createSymbolicLink(new File(mediaFolder, "loop").toPath(), mediaFolder.toPath());
+
+        MediaFolder root = new MediaFolder(mediaFolder);
+        assertEquals(1L, root.accept(visitor));
+        verify(visitor, times(1)).visit(ArgumentMatchers.<MediaFile>any());
+        verify(visitor, times(1)).visit(ArgumentMatchers.<MediaFolder>any());
+        assertEquals(1L, root.getVisitedDirectories().getDuplicateCount());
+    }
+
+    /**
+     * Given a media folder that contains a folder with a file and a link to that folder, when I
+     * read the folder, then the linked folder's file is only visited once.
+     */
+    @Test
+    public void folderWithLinkToChild() throws IOException {
+        File mediaFolder = folder.newFolder();
+        File child = new File(mediaFolder, "child");
+        assertTrue(child.mkdir());
+        assertTrue(new File(child, "sample.ogg").createNewFile());
+        Files.createSymbolicLink(new File(mediaFolder, "link").toPath(), child.toPath());
+
+        MediaFolder root = new MediaFolder(mediaFolder);
+        assertEquals(1L, root.accept(visitor));
+        verify(visitor, times(1)).visit(ArgumentMatchers.<MediaFile>any());
+        verify(visitor, times(2)).visit(ArgumentMatchers.<MediaFolder>any());
+        assertEquals(2, root.getVisitedDirectories().size());
+        assertEquals(1L, root.getVisitedDirectories().getDuplicateCount());
+    }
+
+    /**
+     * Given a very deep tree of folders, when I read the tree, then every folder is visited
+     * without overflowing the stack.
+     */
+    @Test
+    public void deepTree() throws IOException {
+        File mediaFolder = folder.newFolder();
+        File leaf = mediaFolder;
+        for (int i = 0; i < 1000; i++) {
+            leaf = new File(leaf, "d");
+        }
+        assertTrue(leaf.mkdirs());
+        assertTrue(new File(leaf, "sample.ogg").createNewFile());
+
+        assertEquals(1L, new MediaFolder(mediaFolder).accept(visitor));
+        verify(visitor, times(1)).visit(ArgumentMatchers.<MediaFile>any());
+        verify(visitor, times(1001)).visit(ArgumentMatchers.<MediaFolder>any());
+    }
+
 }
@@ -0,0 +1,197 @@
+package io.github.patrickconley.arbutus.scanner.model.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.github.patrickconley.arbutus.scanner.visitor.MediaVisitorFactory;
+import io.github.patrickconley.arbutus.scanner.visitor.impl.FileCountVisitor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelMediaWalkerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CountingFactory factory = new CountingFactory();
+
+    /**
+     * Given a media folder that doesn't exist, when I walk the folder, then no files are visited.
+     */
+    @Test
+    public void missingFolder() throws IOException {
+        File mediaFolder = folder.newFolder();
+        assertTrue(mediaFolder.delete());
+
+        assertEquals(0L, new ParallelMediaWalker(4).walk(new MediaFolder(mediaFolder), factory));
+        assertEquals(0, factory.getCount());
+    }
+
+    /**
+     * Given a media folder with a .nomedia file, when I walk the folder, then no files are
+     * visited.
+     */
+    @Test
+    public void folderWithNomedia() throws IOException {
+        File mediaFolder = folder.newFolder();
+        assertTrue(new File(mediaFolder, "sample.ogg").createNewFile());
+        assertTrue(new File(mediaFolder, ".nomedia").createNewFile());
+
+        assertEquals(0L, new ParallelMediaWalker(4).walk(new MediaFolder(mediaFolder), factory));
+        assertEquals(0, factory.getCount());
+    }
+
+    /**
+     * Given a tree of folders, some with .nomedia files, when I walk the tree in parallel, then
+     * the same number of files are visited as in a serial scan.
+     */
+    @Test
+    public void treeMatchesSerialScan() throws IOException {
+        File mediaFolder = folder.newFolder();
+        for (int i = 0; i < 8; i++) {
+            File artist = new File(mediaFolder, "artist" + i);
+            assertTrue(artist.mkdir());
+            for (int j = 0; j < 4; j++) {
+                File album = new File(artist, "album" + j);
+                assertTrue(album.mkdir());
+                for (int k = 0; k < 5; k++) {
+                    assertTrue(new File(album, "track" + k + ".ogg").createNewFile());
+                }
+                if (i == j) {
+                    assertTrue(new File(album, ".nomedia").createNewFile());
+                }
+            }
+        }
+
+        FileCountVisitor serial = new FileCountVisitor();
+        long expected = new MediaFolder(mediaFolder).accept(serial);
+
+        assertEquals(8L * 4 * 5 - 4 * 5, expected);
+        assertEquals(expected,
+                     new ParallelMediaWalker(4).walk(new MediaFolder(mediaFolder), factory));
+        assertEquals(expected, factory.getCount());
+    }
+
+    /**
+     * Given a tree of folders, when I walk the tree in parallel, then every visitor is released.
+     */
+    @Test
+    public void visitorsAreReleased() throws IOException {
+        File mediaFolder = folder.newFolder();
+        for (int i = 0; i < 8; i++) {
+            File child = new File(mediaFolder, "child" + i);
+            assertTrue(child.mkdir());
+            assertTrue(new File(child, "sample.ogg").createNewFile());
+        }
+
+        new ParallelMediaWalker(4).walk(new MediaFolder(mediaFolder), factory);
+
+        assertThat(factory.visitors).isNotEmpty();
+        assertThat(factory.visitors.size()).isAtMost(4);
+        assertThat(factory.released).containsExactlyElementsIn(factory.visitors);
+    }
+
+    /**
+     * Given a walk whose visitor is busy, when the walk is interrupted, then it fails, and the
+     * visitor isn't released until it's finished its visit.
+     */
+    @Test
+    public void interruptedWalk() throws Exception {
+        File mediaFolder = folder.newFolder();
+        assertTrue(new File(mediaFolder, "sample.ogg").createNewFile());
+        final CountDownLatch visiting = new CountDownLatch(1);
+        final AtomicBoolean visited = new AtomicBoolean();
+        final AtomicBoolean releasedEarly = new AtomicBoolean();
+        final MediaVisitorFactory<FileCountVisitor> slowFactory =
+                new MediaVisitorFactory<FileCountVisitor>() {
+                    @Override
+                    public FileCountVisitor newVisitor() {
+                        return new FileCountVisitor() {
+                            @Override
+                            public boolean visit(MediaFile file) {
+                                visiting.countDown();
+                                long end = System.currentTimeMillis() + 200L;
+                                while (System.currentTimeMillis() < end) {
+                                    // Ignore the interrupt, as a database write would
+                                    Thread.interrupted();
+                                }
+                                visited.set(true);
+                                return super.visit(file);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public void release(FileCountVisitor visitor) {
+                        releasedEarly.compareAndSet(false, !visited.get());
+                    }
+                };
+        final File root = mediaFolder;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread walker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    new ParallelMediaWalker(2).walk(new MediaFolder(root), slowFactory);
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+
+        walker.start();
+        assertTrue(visiting.await(5L, TimeUnit.SECONDS));
+        walker.interrupt();
+        walker.join(5000L);
+
+        assertThat(failure.get()).isInstanceOf(IllegalStateException.class);
+        assertThat(visited.get()).isTrue();
+        assertThat(releasedEarly.get()).isFalse();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidThreadCount() {
+        new ParallelMediaWalker(0);
+    }
+
+    private static class CountingFactory implements MediaVisitorFactory<FileCountVisitor> {
+        private final List<FileCountVisitor> visitors =
+                Collections.synchronizedList(new ArrayList<FileCountVisitor>());
+        private final List<FileCountVisitor> released =
+                Collections.synchronizedList(new ArrayList<FileCountVisitor>());
+
+        @Override
+        public FileCountVisitor newVisitor() {
+            FileCountVisitor visitor = new FileCountVisitor();
+            visitors.add(visitor);
+            return visitor;
+        }
+
+        @Override
+        public void release(FileCountVisitor visitor) {
+            released.add(visitor);
+        }
+
+        int getCount() {
+            int count = 0;
+            for (FileCountVisitor visitor : visitors) {
+                count += visitor.getCount();
+            }
+            return count;
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package io.github.patrickconley.arbutus.scanner.pipeline;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Collections;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.StrictStubs.class)
+public class BatchingTrackWriterTest {
+
+    @Mock
+    private TrackWriter writer;
+
+    /**
+     * Given a batch that isn't full, when I add a track, then nothing is written.
+     */
+    @Test
+    public void partialBatchIsNotWritten() {
+        BatchingTrackWriter batches = new BatchingTrackWriter(writer, 3, 60000L);
+
+        assertTrue(batches.add(buildTrack()));
+        assertTrue(batches.add(buildTrack()));
+        verify(writer, never()).write(ArgumentMatchers.<ScannedTrack>anyList());
+    }
+
+    /**
+     * Given a batch that's almost full, when I add a track, then the batch is written.
+     */
+    @Test
+    public void fullBatchIsWritten() {
+        when(writer.write(ArgumentMatchers.<ScannedTrack>anyList())).thenReturn(3);
+        BatchingTrackWriter batches = new BatchingTrackWriter(writer, 3, 60000L);
+
+        batches.add(buildTrack());
+        batches.add(buildTrack());
+        assertTrue(batches.add(buildTrack()));
+        verify(writer, times(1)).write(ArgumentMatchers.<ScannedTrack>anyList());
+    }
+
+    /**
+     * Given a batch that has waited for the flush interval, when I check it, then the batch is
+     * written.
+     */
+    @Test
+    public void staleBatchIsWritten() throws InterruptedException {
+        when(writer.write(ArgumentMatchers.<ScannedTrack>anyList())).thenReturn(1);
+        BatchingTrackWriter batches = new BatchingTrackWriter(writer, 10, 10L);
+
+        batches.add(buildTrack());
+        Thread.sleep(20L);
+
+        assertEquals(0L, batches.getMillisUntilDue());
+        assertTrue(batches.flushIfDue());
+        verify(writer, times(1)).write(ArgumentMatchers.<ScannedTrack>anyList());
+    }
+
+    /**
+     * Given a batch in which a track can't be written, when the batch is written, then the
+     * failure is reported.
+     */
+    @Test
+    public void failedBatchIsReported() {
+        when(writer.write(ArgumentMatchers.<ScannedTrack>anyList())).thenReturn(1);
+        BatchingTrackWriter batches = new BatchingTrackWriter(writer, 2, 60000L);
+
+        batches.add(buildTrack());
+        assertFalse(batches.add(buildTrack()));
+    }
+
+    /**
+     * Given an empty batch, when I flush it, then nothing is written.
+     */
+    @Test
+    public void emptyBatchIsNotWritten() {
+        assertTrue(new BatchingTrackWriter(writer, 2, 60000L).flush());
+        verify(writer, never()).write(ArgumentMatchers.<ScannedTrack>anyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBatchSize() {
+        new BatchingTrackWriter(writer, 0, 60000L);
+    }
+
+    private ScannedTrack buildTrack() {
+        return new ScannedTrack(new Track(null), Collections.<String, Tag>emptyMap(), null);
+    }
+
+}
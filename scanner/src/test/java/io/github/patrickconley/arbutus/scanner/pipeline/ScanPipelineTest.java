@@ -0,0 +1,113 @@
+package io.github.patrickconley.arbutus.scanner.pipeline;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.IOException;
+
+import io.github.patrickconley.arbutus.datastorage.AppDatabase;
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.model.impl.MediaFile;
+import io.github.patrickconley.arbutus.scanner.model.impl.MediaFolder;
+import io.github.patrickconley.arbutus.scanner.strategy.StrategyFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.StrictStubs.class)
+public class ScanPipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private AppDatabase db;
+
+    /**
+     * Given an empty folder, when I scan it, then the pipeline finishes without finding anything.
+     */
+    @Test(timeout = 10000L)
+    public void emptyFolder() throws IOException {
+        ScanPipeline pipeline =
+                new ScanPipeline(db, new ScanOptions().setThreadCount(2), null, null,
+                                 new StrategyFactory(), null, null);
+
+        assertEquals(0L, pipeline.run(new MediaFolder(folder.newFolder())));
+    }
+
+    /**
+     * Given a folder with more files than fit in the pipeline's queues, when I scan it, then the
+     * pipeline finishes and returns the number of files found.
+     */
+    @Test(timeout = 10000L)
+    public void manyFiles() throws IOException {
+        File mediaFolder = folder.newFolder();
+        for (int i = 0; i < 500; i++) {
+            assertTrue(new File(mediaFolder, "sample" + i + ".ogg").createNewFile());
+        }
+
+        ScanPipeline pipeline =
+                new ScanPipeline(db, new ScanOptions().setThreadCount(2), null, null,
+                                 new StrategyFactory(), null, null);
+
+        assertEquals(500L, pipeline.run(new MediaFolder(mediaFolder)));
+    }
+
+    /**
+     * Given a reader that dies, when the walk fills the queue behind it, then the scan fails
+     * rather than waiting forever.
+     */
+    @Test(timeout = 10000L, expected = IllegalStateException.class)
+    public void readerDies() throws IOException, ScannerException {
+        File mediaFolder = folder.newFolder();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(new File(mediaFolder, "sample" + i + ".ogg").createNewFile());
+        }
+        StrategyFactory strategies = mock(StrategyFactory.class);
+        when(strategies.getStrategy(ArgumentMatchers.<MediaFile>any()))
+                .thenThrow(new LinkageError("Reader died"));
+
+        ScanPipeline pipeline =
+                new ScanPipeline(db, new ScanOptions().setThreadCount(1), null, null, strategies,
+                                 null, null);
+
+        pipeline.run(new MediaFolder(mediaFolder));
+    }
+
+    /**
+     * Given an interrupted thread, when I scan a folder, then the scan fails rather than
+     * returning a partial count.
+     */
+    @Test(timeout = 10000L)
+    public void interrupted() throws IOException {
+        ScanPipeline pipeline =
+                new ScanPipeline(db, new ScanOptions().setThreadCount(1), null, null,
+                                 new StrategyFactory(), null, null);
+        MediaFolder root = new MediaFolder(folder.newFolder());
+
+        Thread.currentThread().interrupt();
+        try {
+            pipeline.run(root);
+            fail("Expected the scan to fail");
+        } catch (IllegalStateException e) {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidReaderCount() {
+        new ScanPipeline(db, new ScanOptions().setThreadCount(0), null, null,
+                         new StrategyFactory(), null, null);
+    }
+
+}
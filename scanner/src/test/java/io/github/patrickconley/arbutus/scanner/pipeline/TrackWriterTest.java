@@ -0,0 +1,143 @@
+package io.github.patrickconley.arbutus.scanner.pipeline;
+
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import io.github.patrickconley.arbutus.datastorage.AppDatabase;
+import io.github.patrickconley.arbutus.datastorage.metadata.dao.TagDao;
+import io.github.patrickconley.arbutus.datastorage.metadata.dao.TagInTrackDao;
+import io.github.patrickconley.arbutus.datastorage.metadata.dao.TrackDao;
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.StrictStubs.class)
+public class TrackWriterTest {
+
+    @Mock
+    private AppDatabase db;
+
+    @Mock
+    private TrackDao trackDao;
+
+    @Mock
+    private TagDao tagDao;
+
+    @Mock
+    private TagInTrackDao tagInTrackDao;
+
+    /*
+     * Committed row IDs. As in SQLite, a new row gets one more than the highest, so the IDs used
+     * by a transaction that's rolled back are given out again.
+     */
+    private final Set<Long> trackIds = new HashSet<>();
+    private final Set<Long> tagIds = new HashSet<>();
+
+    private Track failingTrack;
+
+    @Before
+    public void setupDatabase() {
+        when(db.trackDao()).thenReturn(trackDao);
+        when(db.tagDao()).thenReturn(tagDao);
+        when(db.tagInTrackDao()).thenReturn(tagInTrackDao);
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                Set<Long> committedTracks = new HashSet<>(trackIds);
+                Set<Long> committedTags = new HashSet<>(tagIds);
+                try {
+                    invocation.<Runnable>getArgument(0).run();
+                    return null;
+                } catch (RuntimeException e) {
+                    trackIds.retainAll(committedTracks);
+                    tagIds.retainAll(committedTags);
+
+                    // Another writer commits a track before this one retries
+                    trackIds.add(insert(trackIds, 0L));
+                    tagIds.add(insert(tagIds, 0L));
+                    throw e;
+                }
+            }
+        }).when(db).runInTransaction(ArgumentMatchers.<Runnable>any());
+
+        when(trackDao.insert(ArgumentMatchers.<Track>any())).thenAnswer(new Answer<Track>() {
+            @Override
+            public Track answer(InvocationOnMock invocation) {
+                Track track = invocation.getArgument(0);
+                if (track == failingTrack) {
+                    failingTrack = null;
+                    throw new IllegalStateException("disk I/O error");
+                }
+                track.setId(insert(trackIds, track.getId()));
+                trackIds.add(track.getId());
+                return track;
+            }
+        });
+        when(tagDao.insert(ArgumentMatchers.<Tag>any())).thenAnswer(new Answer<Tag>() {
+            @Override
+            public Tag answer(InvocationOnMock invocation) {
+                Tag tag = invocation.getArgument(0);
+                tag.setId(insert(tagIds, tag.getId()));
+                tagIds.add(tag.getId());
+                return tag;
+            }
+        });
+    }
+
+    /**
+     * Given a batch that fails after some of its tracks were inserted, and another writer that
+     * commits before the batch is retried, when I write the batch, then every track is written
+     * with new IDs.
+     */
+    @Test
+    public void retryAfterAnotherWriterCommits() {
+        ScannedTrack first = buildTrack("first");
+        ScannedTrack second = buildTrack("second");
+        failingTrack = second.getTrack();
+
+        int count = new TrackWriter(db, null, false).write(Arrays.asList(first, second));
+
+        assertEquals(2, count);
+        assertEquals(2L, first.getTrack().getId());
+        assertEquals(3L, second.getTrack().getId());
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 3L)), trackIds);
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 3L)), tagIds);
+    }
+
+    /*
+     * Insert a row with the ID, or a new ID if it's zero, failing if the ID's taken
+     */
+    private static long insert(Set<Long> ids, long id) {
+        if (id == 0L) {
+            return ids.isEmpty() ? 1L : Collections.max(ids) + 1L;
+        }
+        if (ids.contains(id)) {
+            throw new IllegalStateException("UNIQUE constraint failed");
+        }
+        return id;
+    }
+
+    private static ScannedTrack buildTrack(String title) {
+        return new ScannedTrack(new Track(mock(Uri.class)),
+                                Collections.singletonMap("title", new Tag("title", title)), null);
+    }
+
+}
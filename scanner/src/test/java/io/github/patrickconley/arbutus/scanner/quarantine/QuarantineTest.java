@@ -0,0 +1,103 @@
+package io.github.patrickconley.arbutus.scanner.quarantine;
+
+import android.net.Uri;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
+import io.github.patrickconley.arbutus.datastorage.scan.model.QuarantinedFile;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Feature: skip files whose tags couldn't be read until they change.
+ */
+public class QuarantineTest {
+
+    // Android's Uri isn't available to unit tests, but each mock has its own string
+    private final Uri uri = mock(Uri.class);
+
+    /**
+     * Given a file quarantined by an earlier scan, when it's found unchanged, then it's
+     * quarantined and counted.
+     */
+    @Test
+    public void unchanged() {
+        Quarantine quarantine = new Quarantine(Collections.singletonList(file(100L, 1000L)));
+
+        assertThat(quarantine.isQuarantined(track(uri, 100L, 1000L))).isTrue();
+        assertThat(quarantine.getHitCount()).isEqualTo(1L);
+    }
+
+    /**
+     * Given a file quarantined by an earlier scan, when it's found with a different size or
+     * modification time, then it isn't quarantined.
+     */
+    @Test
+    public void changed() {
+        Quarantine quarantine = new Quarantine(Collections.singletonList(file(100L, 1000L)));
+
+        assertThat(quarantine.isQuarantined(track(uri, 101L, 1000L))).isFalse();
+        assertThat(quarantine.isQuarantined(track(uri, 100L, 1001L))).isFalse();
+        assertThat(quarantine.isQuarantined(track(mock(Uri.class), 100L, 1000L))).isFalse();
+        assertThat(quarantine.getHitCount()).isEqualTo(0L);
+    }
+
+    /**
+     * Given a file that failed during this scan, when it's found again, then it's quarantined.
+     */
+    @Test
+    public void add() {
+        Quarantine quarantine = new Quarantine(Collections.<QuarantinedFile>emptyList());
+
+        quarantine.add(track(uri, 100L, 1000L), new IllegalStateException("corrupt"));
+
+        assertThat(quarantine.isQuarantined(track(uri, 100L, 1000L))).isTrue();
+        assertThat(quarantine.toString())
+                .isEqualTo("Quarantine[hits=1, added=1, released=0, files=1]");
+    }
+
+    /**
+     * Given a quarantined file, when it's read, then it's released.
+     */
+    @Test
+    public void release() {
+        Quarantine quarantine = new Quarantine(Collections.singletonList(file(100L, 1000L)));
+
+        quarantine.release(track(uri, 200L, 2000L));
+
+        assertThat(quarantine.isQuarantined(track(uri, 100L, 1000L))).isFalse();
+        assertThat(quarantine.toString())
+                .isEqualTo("Quarantine[hits=0, added=0, released=1, files=0]");
+    }
+
+    /**
+     * Given quarantined files, when the quarantine is cleared, then none are quarantined.
+     */
+    @Test
+    public void clear() {
+        Quarantine quarantine = new Quarantine(Collections.singletonList(file(100L, 1000L)));
+
+        quarantine.clear();
+
+        assertThat(quarantine.isQuarantined(track(uri, 100L, 1000L))).isFalse();
+    }
+
+    private QuarantinedFile file(long size, long lastModified) {
+        QuarantinedFile file = new QuarantinedFile(uri);
+        file.setSize(size);
+        file.setLastModified(lastModified);
+        return file;
+    }
+
+    private static Track track(Uri uri, long size, long lastModified) {
+        Track track = new Track(uri);
+        track.setSize(size);
+        track.setLastModified(lastModified);
+        return track;
+    }
+
+}
@@ -0,0 +1,92 @@
+package io.github.patrickconley.arbutus.scanner.strategy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Feature: identify a file's format from its contents.
+ */
+@RunWith(Parameterized.class)
+public class ContentSnifferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Parameterized.Parameter
+    public String description;
+
+    @Parameterized.Parameter(1)
+    public byte[] contents;
+
+    @Parameterized.Parameter(2)
+    public MediaFormat expectedFormat;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+                { "FLAC", bytes("fLaC", 0, 0, 0, 34), MediaFormat.FLAC },
+                { "Ogg", bytes("OggS", 0, 2), MediaFormat.OGG },
+                { "MP3 with ID3", bytes("ID3", 4, 0, 0, 0, 0, 0, 2, 0, 0, 0xFF, 0xFB, 0x90, 0),
+                  MediaFormat.MP3 },
+                { "FLAC with ID3", bytes("ID3", 4, 0, 0x10, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+                                         0, 0, 'f', 'L', 'a', 'C'), MediaFormat.FLAC },
+                { "AAC with ID3", bytes("ID3", 3, 0, 0, 0, 0, 0, 0, 0xFF, 0xF1, 0x50, 0x80),
+                  MediaFormat.AAC },
+                { "ID3 and nothing else", bytes("ID3", 3, 0, 0, 0, 0, 0, 0), MediaFormat.MP3 },
+                { "MP3", bytes("", 0xFF, 0xFB, 0x90, 0), MediaFormat.MP3 },
+                { "AAC", bytes("", 0xFF, 0xF1, 0x50, 0x80), MediaFormat.AAC },
+                { "MP4", bytes("", 0, 0, 0, 24, 'f', 't', 'y', 'p', 'M', '4', 'A', ' '),
+                  MediaFormat.MP4 },
+                { "Matroska", bytes("", 0x1A, 0x45, 0xDF, 0xA3, 0x9F), MediaFormat.MATROSKA },
+                { "WAV", bytes("RIFF", 0x24, 0, 0, 0, 'W', 'A', 'V', 'E'), MediaFormat.WAV },
+                { "AIFF", bytes("FORM", 0, 0, 0, 0x24, 'A', 'I', 'F', 'F'), MediaFormat.AIFF },
+                { "JPEG", bytes("", 0xFF, 0xD8, 0xFF, 0xE0, 0, 0x10, 'J', 'F', 'I', 'F'),
+                  MediaFormat.JPEG },
+                { "PNG", bytes("", 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'),
+                  MediaFormat.PNG },
+                { "GIF", bytes("GIF89a", 1, 0), MediaFormat.GIF },
+                { "PDF", bytes("%PDF-1.4\n"), MediaFormat.PDF },
+                { "ZIP", bytes("PK", 3, 4, 20, 0), MediaFormat.ZIP },
+                { "AVI", bytes("RIFF", 0x24, 0, 0, 0, 'A', 'V', 'I', ' '), MediaFormat.AVI },
+                { "WebP", bytes("RIFF", 0x24, 0, 0, 0, 'W', 'E', 'B', 'P'), MediaFormat.WEBP },
+                { "cue sheet", bytes("REM GENRE Rock\r\nPERFORMER \"Sigur Rós\"\r\n"),
+                  MediaFormat.TEXT },
+                { "other RIFF", bytes("RIFF", 0x24, 0, 0, 0, 'C', 'D', 'X', 'A'),
+                  MediaFormat.UNKNOWN },
+                { "binary", bytes("MThd", 0, 0, 0, 6), MediaFormat.UNKNOWN },
+                { "empty", bytes(""), MediaFormat.UNKNOWN },
+                });
+    }
+
+    @Test
+    public void sniff() throws Exception {
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contents);
+        }
+
+        assertThat(new ContentSniffer().sniff(file)).isEqualTo(expectedFormat);
+    }
+
+    private static byte[] bytes(String prefix, int... rest) {
+        byte[] bytes = new byte[prefix.length() + rest.length];
+        for (int i = 0; i < prefix.length(); i++) {
+            bytes[i] = (byte) prefix.charAt(i);
+        }
+        for (int i = 0; i < rest.length; i++) {
+            bytes[prefix.length() + i] = (byte) rest[i];
+        }
+        return bytes;
+    }
+
+}
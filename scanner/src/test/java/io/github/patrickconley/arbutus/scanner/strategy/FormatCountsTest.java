@@ -0,0 +1,93 @@
+package io.github.patrickconley.arbutus.scanner.strategy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import io.github.patrickconley.arbutus.scanner.NotAudioException;
+import io.github.patrickconley.arbutus.scanner.model.impl.MediaFile;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Feature: skip files that aren't audio without reading their tags, and count the formats found.
+ */
+public class FormatCountsTest {
+
+    private static final byte[] FLAC = { 'f', 'L', 'a', 'C', 0, 0, 0, 34 };
+    private static final byte[] JPEG = { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0 };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FormatCounts counts = new FormatCounts();
+
+    /**
+     * Given an image, when I get its strategy, then it's rejected.
+     */
+    @Test(expected = NotAudioException.class)
+    public void rejectImage() throws Exception {
+        new StrategyFactory(counts).getStrategy(write("cover.jpg", JPEG));
+    }
+
+    /**
+     * Given an image with an audio extension, when I get its strategy, then it's rejected.
+     */
+    @Test(expected = NotAudioException.class)
+    public void rejectMislabeledImage() throws Exception {
+        new StrategyFactory(counts).getStrategy(write("track.mp3", JPEG));
+    }
+
+    /**
+     * Given a file of unknown contents with an image extension, when I get its strategy, then
+     * it's rejected.
+     */
+    @Test(expected = NotAudioException.class)
+    public void rejectImageExtension() throws Exception {
+        new StrategyFactory(counts).getStrategy(write("cover.png", new byte[0]));
+    }
+
+    /**
+     * Given files scanned by two factories, when I count their formats, then I get the formats of
+     * all the files, and how many were mislabeled.
+     */
+    @Test
+    public void countFormats() throws Exception {
+        StrategyFactory first = new StrategyFactory(counts);
+        StrategyFactory second = new StrategyFactory(counts);
+
+        first.getStrategy(write("track1.flac", FLAC));
+        second.getStrategy(write("track2.mp3", FLAC));
+        second.getStrategy(write("track3", FLAC));
+        try {
+            first.getStrategy(write("cover.jpg", JPEG));
+            fail("Image not rejected");
+        } catch (NotAudioException e) {
+            // expected
+        }
+
+        assertThat(counts.getSniffedCount(MediaFormat.FLAC)).isEqualTo(3);
+        assertThat(counts.getClaimedCount(MediaFormat.FLAC)).isEqualTo(1);
+        assertThat(counts.getClaimedCount(MediaFormat.MP3)).isEqualTo(1);
+        assertThat(counts.getClaimedCount(MediaFormat.UNKNOWN)).isEqualTo(1);
+        assertThat(counts.getSniffedCount(MediaFormat.JPEG)).isEqualTo(1);
+        assertThat(counts.getMislabeledCount()).isEqualTo(1);
+        assertThat(counts.toString()).isEqualTo(
+                "FormatCounts[FLAC=3 (claimed 1), MP3=0 (claimed 1), JPEG=1 (claimed 1), " +
+                "UNKNOWN=0 (claimed 1), mislabeled=1]");
+    }
+
+    private MediaFile write(String name, byte[] contents) throws IOException {
+        File file = folder.newFile(name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contents);
+        }
+        return new MediaFile(file);
+    }
+
+}
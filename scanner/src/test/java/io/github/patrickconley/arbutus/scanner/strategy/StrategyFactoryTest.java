@@ -1,44 +1,77 @@
 package io.github.patrickconley.arbutus.scanner.strategy;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.util.Arrays;
 import java.util.Collection;
 
 import io.github.patrickconley.arbutus.scanner.model.impl.MediaFile;
+import io.github.patrickconley.arbutus.scanner.strategy.impl.FallbackTagStrategy;
+import io.github.patrickconley.arbutus.scanner.strategy.impl.FlacTagStrategy;
 import io.github.patrickconley.arbutus.scanner.strategy.impl.GenericTagStrategy;
-import io.github.patrickconley.arbutus.scanner.strategy.impl.Mp4TagStrategy;
-import io.github.patrickconley.arbutus.scanner.strategy.impl.VorbisCommentTagStrategy;
+import io.github.patrickconley.arbutus.scanner.strategy.impl.MatroskaTagStrategy;
+import io.github.patrickconley.arbutus.scanner.strategy.impl.Mp4AtomTagStrategy;
+import io.github.patrickconley.arbutus.scanner.strategy.impl.OggTagStrategy;
 
 import static com.google.common.truth.Truth.assertThat;
 
 @RunWith(Parameterized.class)
 public class StrategyFactoryTest {
 
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[] FLAC = { 'f', 'L', 'a', 'C', 0, 0, 0, 34 };
+    private static final byte[] ID3 = { 'I', 'D', '3', 3, 0, 0, 0, 0, 0, 0 };
+    private static final byte[] MP4 = { 0, 0, 0, 24, 'f', 't', 'y', 'p', 'M', '4', 'A', ' ' };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Parameterized.Parameter
-    public File file;
+    public String name;
 
     @Parameterized.Parameter(1)
+    public byte[] contents;
+
+    @Parameterized.Parameter(2)
     public Class<?> expectedStrategy;
 
     @Parameterized.Parameters
     public static Collection<Object[]> data() {
         return Arrays.asList(new Object[][]{
-                { new File("track.ogg"), VorbisCommentTagStrategy.class },
-                { new File("track.mkv"), VorbisCommentTagStrategy.class },
-                { new File("track.flac"), VorbisCommentTagStrategy.class },
-                { new File("track.mp4"), Mp4TagStrategy.class },
-                { new File("track.m4a"), Mp4TagStrategy.class },
-                { new File("track.mp3"), GenericTagStrategy.class },
-                { new File("track.aac"), GenericTagStrategy.class },
+                // Unrecognised contents: use the extension
+                { "track.ogg", EMPTY, OggTagStrategy.class },
+                { "track.oga", EMPTY, OggTagStrategy.class },
+                { "track.opus", EMPTY, OggTagStrategy.class },
+                { "track.mkv", EMPTY, MatroskaTagStrategy.class },
+                { "track.mka", EMPTY, MatroskaTagStrategy.class },
+                { "track.webm", EMPTY, MatroskaTagStrategy.class },
+                { "track.flac", EMPTY, FlacTagStrategy.class },
+                { "track.mp4", EMPTY, Mp4AtomTagStrategy.class },
+                { "track.m4a", EMPTY, Mp4AtomTagStrategy.class },
+                { "book.m4b", EMPTY, Mp4AtomTagStrategy.class },
+                { "track.mp3", EMPTY, FallbackTagStrategy.class },
+                { "TRACK.MP3", EMPTY, FallbackTagStrategy.class },
+                { "track.aac", EMPTY, GenericTagStrategy.class },
+                // Recognised contents: use them, whatever the extension
+                { "track.mp3", FLAC, FlacTagStrategy.class },
+                { "track.flac", ID3, FallbackTagStrategy.class },
+                { "track", MP4, Mp4AtomTagStrategy.class },
                 });
     }
 
     @Test
-    public void getStrategy() {
+    public void getStrategy() throws Exception {
+        File file = new File(folder.getRoot(), name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contents);
+        }
+
         assertThat(new StrategyFactory().getStrategy(new MediaFile(file)))
                 .isInstanceOf(expectedStrategy);
     }
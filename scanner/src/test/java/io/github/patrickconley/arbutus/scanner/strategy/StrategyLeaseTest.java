@@ -0,0 +1,151 @@
+package io.github.patrickconley.arbutus.scanner.strategy;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.model.impl.MediaFile;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Feature: share a strategy factory between threads, each with its own strategies.
+ */
+public class StrategyLeaseTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final StrategyFactory factory = new StrategyFactory();
+    private MediaFile file;
+
+    @Before
+    public void writeFile() throws IOException {
+        File flac = folder.newFile("track.flac");
+        try (FileOutputStream out = new FileOutputStream(flac)) {
+            out.write(new byte[]{ 'f', 'L', 'a', 'C', 0, 0, 0, 34 });
+        }
+        file = new MediaFile(flac);
+    }
+
+    /**
+     * Given a factory, when one thread gets strategies for two files of the same format, then it
+     * gets the same strategy for both.
+     */
+    @Test
+    public void sameThread() throws Exception {
+        assertThat(factory.getStrategy(file)).isSameInstanceAs(factory.getStrategy(file));
+        assertThat(factory.getLeasedCount()).isEqualTo(1);
+    }
+
+    /**
+     * Given a factory, when two threads get strategies for the same file, then each gets its own
+     * strategy.
+     */
+    @Test
+    public void otherThread() throws Exception {
+        TagStrategy strategy = factory.getStrategy(file);
+
+        assertThat(getOnOtherThread(false)).isNotSameInstanceAs(strategy);
+    }
+
+    /**
+     * Given a thread that has released its strategies, when it gets another strategy, then it
+     * gets a new one.
+     */
+    @Test
+    public void releaseCurrentThread() throws Exception {
+        TagStrategy strategy = factory.getStrategy(file);
+
+        factory.releaseCurrentThread();
+        assertThat(factory.getLeasedCount()).isEqualTo(0);
+
+        assertThat(factory.getStrategy(file)).isNotSameInstanceAs(strategy);
+        assertThat(factory.getLeasedCount()).isEqualTo(1);
+    }
+
+    /**
+     * Given a thread that leased strategies then died, when another thread leases strategies,
+     * then the dead thread's strategies are reclaimed.
+     */
+    @Test
+    public void reclaimDeadThread() throws Exception {
+        getOnOtherThread(false);
+        assertThat(factory.getLeasedCount()).isEqualTo(1);
+
+        factory.getStrategy(file);
+        assertThat(factory.getLeasedCount()).isEqualTo(1);
+    }
+
+    /**
+     * Given threads that have leased strategies, when the factory is released, then every lease
+     * is released.
+     */
+    @Test
+    public void release() throws Exception {
+        factory.getStrategy(file);
+        getOnOtherThread(true);
+        assertThat(factory.getLeasedCount()).isEqualTo(1);
+
+        factory.release();
+        assertThat(factory.getLeasedCount()).isEqualTo(0);
+    }
+
+    /**
+     * Given a live thread that leased strategies, when the factory is released, then the thread
+     * gets a new strategy and lease the next time it asks.
+     */
+    @Test
+    public void reuseAfterRelease() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Callable<TagStrategy> getStrategy = new Callable<TagStrategy>() {
+            @Override
+            public TagStrategy call() throws ScannerException {
+                return factory.getStrategy(file);
+            }
+        };
+        try {
+            TagStrategy strategy = executor.submit(getStrategy).get();
+
+            factory.release();
+            assertThat(executor.submit(getStrategy).get()).isNotSameInstanceAs(strategy);
+            assertThat(factory.getLeasedCount()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * Get a strategy on a new thread, optionally releasing it there
+     */
+    private TagStrategy getOnOtherThread(final boolean release) throws InterruptedException {
+        final AtomicReference<TagStrategy> strategy = new AtomicReference<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    strategy.set(factory.getStrategy(file));
+                } catch (ScannerException e) {
+                    throw new IllegalStateException(e);
+                }
+                if (release) {
+                    factory.releaseCurrentThread();
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        return strategy.get();
+    }
+
+}
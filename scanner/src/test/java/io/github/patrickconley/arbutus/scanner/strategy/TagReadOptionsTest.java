@@ -0,0 +1,109 @@
+package io.github.patrickconley.arbutus.scanner.strategy;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Feature: keep artwork and oversized values out of the tags read.
+ */
+public class TagReadOptionsTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Given the default options, when I check artwork keys, then they're skipped, and other keys
+     * aren't.
+     */
+    @Test
+    public void skipArtwork() {
+        assertThat(TagReadOptions.DEFAULT.isSkipped("metadata_block_picture")).isTrue();
+        assertThat(TagReadOptions.DEFAULT.isSkipped("coverart")).isTrue();
+        assertThat(TagReadOptions.DEFAULT.isSkipped("artwork")).isTrue();
+        assertThat(TagReadOptions.DEFAULT.isSkipped("artist")).isFalse();
+    }
+
+    /**
+     * Given options keeping binary fields, when I check artwork keys, then they aren't skipped.
+     */
+    @Test
+    public void keepArtwork() {
+        TagReadOptions options = new TagReadOptions(new ScanOptions().setSkipBinaryTags(false));
+
+        assertThat(options.isSkipBinary()).isFalse();
+        assertThat(options.isSkipped("metadata_block_picture")).isFalse();
+    }
+
+    /**
+     * Given no maximum length, when I limit a value, then it's unchanged.
+     */
+    @Test
+    public void noLimit() {
+        TagReadOptions options = new TagReadOptions(true, 0);
+        String value = repeat("la ", 10000);
+        byte[] bytes = value.getBytes(UTF_8);
+
+        assertThat(options.limit(value)).isSameInstanceAs(value);
+        assertThat(options.limit(bytes, 0, bytes.length)).isEqualTo(bytes.length);
+    }
+
+    /**
+     * Given a maximum length, when I limit values, then they're cut to at most that many UTF-8
+     * bytes, without splitting a character.
+     */
+    @Test
+    public void limit() {
+        TagReadOptions options = new TagReadOptions(true, 8);
+
+        assertThat(options.limit("foo")).isEqualTo("foo");
+        assertThat(options.limit("12345678")).isEqualTo("12345678");
+        assertThat(options.limit("123456789")).isEqualTo("12345678");
+        // ó is two bytes, 日 is three, and 𝄞 is four (two UTF-16 units)
+        assertThat(options.limit("Sigur Rós")).isEqualTo("Sigur R");
+        assertThat(options.limit("日本語です")).isEqualTo("日本");
+        assertThat(options.limit("abcd𝄞x")).isEqualTo("abcd𝄞");
+        assertThat(options.limit("abcde𝄞")).isEqualTo("abcde");
+    }
+
+    /**
+     * Given a maximum length, when I limit encoded values, then I get the same cuts as for the
+     * decoded values.
+     */
+    @Test
+    public void limitBytes() {
+        TagReadOptions options = new TagReadOptions(true, 8);
+
+        for (String value : new String[]{ "foo", "123456789", "Sigur Rós", "日本語です", "abcd𝄞x",
+                                          "abcde𝄞" }) {
+            byte[] bytes = ("KEY=" + value).getBytes(UTF_8);
+            int length = options.limit(bytes, 4, bytes.length - 4);
+            assertThat(new String(bytes, 4, length, UTF_8)).isEqualTo(options.limit(value));
+        }
+    }
+
+    /**
+     * Given options that read tags differently, when I stamp them, then the stamps differ; given
+     * the same options, then they're the same.
+     */
+    @Test
+    public void stamp() {
+        int stamp = new TagReadOptions(true, 4096).getStamp();
+
+        assertThat(new TagReadOptions(true, 4096).getStamp()).isEqualTo(stamp);
+        assertThat(new TagReadOptions(false, 4096).getStamp()).isNotEqualTo(stamp);
+        assertThat(new TagReadOptions(true, 1024).getStamp()).isNotEqualTo(stamp);
+    }
+
+    private static String repeat(String value, int count) {
+        StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            repeated.append(value);
+        }
+        return repeated.toString();
+    }
+
+}
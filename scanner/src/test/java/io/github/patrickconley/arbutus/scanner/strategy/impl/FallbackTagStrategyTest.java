@@ -0,0 +1,80 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.strategy.TagStrategy;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.StrictStubs.class)
+public class FallbackTagStrategyTest {
+
+    private static final File FILE = new File("track.mp3");
+
+    @Mock
+    private TagStrategy primary;
+
+    @Mock
+    private TagStrategy fallback;
+
+    /**
+     * Given a file the primary strategy can read, when I read its tags, then I get the primary
+     * strategy's tags.
+     */
+    @Test
+    public void readWithPrimary() throws Exception {
+        Map<String, Tag> tags = Collections.singletonMap("artist", new Tag("artist", "foo"));
+        when(primary.readTags(FILE)).thenReturn(tags);
+
+        assertThat(new FallbackTagStrategy(primary, fallback).readTags(FILE)).isEqualTo(tags);
+        verify(fallback, never()).readTags(FILE);
+    }
+
+    /**
+     * Given a file the primary strategy can't read, when I read its tags, then I get the fallback
+     * strategy's tags.
+     */
+    @Test
+    public void readWithFallback() throws Exception {
+        Map<String, Tag> tags = Collections.singletonMap("artist", new Tag("artist", "foo"));
+        when(primary.readTags(FILE)).thenThrow(new ScannerException("Unreadable"));
+        when(fallback.readTags(FILE)).thenReturn(tags);
+
+        assertThat(new FallbackTagStrategy(primary, fallback).readTags(FILE)).isEqualTo(tags);
+    }
+
+    /**
+     * Given a file neither strategy can read, when I read its tags, then an exception is thrown.
+     */
+    @Test(expected = ScannerException.class)
+    public void neitherCanRead() throws Exception {
+        when(primary.readTags(FILE)).thenThrow(new ScannerException("Unreadable"));
+        when(fallback.readTags(FILE)).thenThrow(new ScannerException("Not audio"));
+
+        new FallbackTagStrategy(primary, fallback).readTags(FILE);
+    }
+
+    /**
+     * When I release the strategy, then both strategies are released.
+     */
+    @Test
+    public void release() {
+        new FallbackTagStrategy(primary, fallback).release();
+
+        verify(primary).release();
+        verify(fallback).release();
+    }
+
+}
@@ -0,0 +1,313 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.strategy.TagReadOptions;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Feature: read FLAC tags without JAudioTagger, getting the same tags it does.
+ */
+public class FlacTagStrategyTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String VENDOR = "reference libFLAC 1.3.2 20170101";
+    private static final int AUDIO_LENGTH = 1024;
+
+    private static final int STREAMINFO = 0;
+    private static final int PADDING = 1;
+    private static final int APPLICATION = 2;
+    private static final int VORBIS_COMMENT = 4;
+    private static final int PICTURE = 6;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FlacTagStrategy strategy = new FlacTagStrategy();
+
+    /**
+     * Given a FLAC file with comments, when I read its tags, then I get its comments with
+     * lower-case keys.
+     */
+    @Test
+    public void readComments() throws Exception {
+        File file = writeFlac(streamInfo(),
+                              comments("ARTIST=foo", "Album=bar", "title=baz", "TRACKNUMBER=1"),
+                              padding(1024));
+
+        Map<String, Tag> tags = strategy.readTags(file);
+
+        assertThat(tags).containsExactly("vendor", new Tag("vendor", VENDOR), "artist",
+                                         new Tag("artist", "foo"), "album", new Tag("album", "bar"),
+                                         "title", new Tag("title", "baz"), "tracknumber",
+                                         new Tag("tracknumber", "1"));
+        assertThat(tags).isEqualTo(new VorbisCommentTagStrategy().readTags(file));
+    }
+
+    /**
+     * Given a FLAC file with a picture and padding before its comments, when I read its tags,
+     * then I get the same tags as JAudioTagger.
+     */
+    @Test
+    public void skipPictureAndPadding() throws Exception {
+        assertSameTags(writeFlac(streamInfo(), picture(64 * 1024), padding(4096),
+                                 block(APPLICATION, new byte[16]),
+                                 comments("ARTIST=foo", "ALBUM=bar")));
+    }
+
+    /**
+     * Given a FLAC file with cover art in its comments, when I read its tags, then the cover art
+     * is skipped unless binary fields are kept.
+     */
+    @Test
+    public void skipPictureComment() throws Exception {
+        StringBuilder picture = new StringBuilder("METADATA_BLOCK_PICTURE=");
+        for (int i = 0; i < 64 * 1024; i++) {
+            picture.append('A');
+        }
+        File file = writeFlac(streamInfo(), comments("ARTIST=foo", picture.toString(),
+                                                     "COVERARTMIME=image/jpeg"));
+
+        assertThat(strategy.readTags(file)).containsExactly(
+                "vendor", new Tag("vendor", VENDOR), "artist", new Tag("artist", "foo"));
+        assertThat(new FlacTagStrategy(new TagReadOptions(false, 0)).readTags(file))
+                .containsKey("metadata_block_picture");
+        assertSameTags(file);
+    }
+
+    /**
+     * Given a FLAC file with a long comment, when I read its tags with a maximum value length,
+     * then the comment is cut to the maximum without splitting a character.
+     */
+    @Test
+    public void limitValueLength() throws Exception {
+        File file = writeFlac(streamInfo(), comments("ARTIST=Sigur Rós", "TITLE=foo"));
+
+        Map<String, Tag> tags = new FlacTagStrategy(new TagReadOptions(true, 8)).readTags(file);
+
+        assertThat(tags.get("artist")).isEqualTo(new Tag("artist", "Sigur R"));
+        assertThat(tags.get("title")).isEqualTo(new Tag("title", "foo"));
+        assertThat(tags.get("vendor")).isEqualTo(new Tag("vendor", VENDOR.substring(0, 8)));
+    }
+
+    /**
+     * Given a FLAC file with a comment block larger than the buffer, when I read its tags, then I
+     * get the same tags as JAudioTagger.
+     */
+    @Test
+    public void largeComments() throws Exception {
+        StringBuilder lyrics = new StringBuilder("LYRICS=");
+        for (int i = 0; i < 2000; i++) {
+            lyrics.append("la la la ");
+        }
+
+        assertSameTags(writeFlac(streamInfo(), comments("ARTIST=foo", lyrics.toString())));
+    }
+
+    /**
+     * Given a FLAC file with non-ASCII comments, when I read its tags, then I get the same tags as
+     * JAudioTagger.
+     */
+    @Test
+    public void unicodeComments() throws Exception {
+        assertSameTags(writeFlac(streamInfo(), comments("ARTIST=Sigur Rós", "TITLE=Hoppípolla",
+                                                        "ALBUM=東京", "COMMENT=")));
+    }
+
+    /**
+     * Given a FLAC file with a repeated comment, when I read its tags, then I get the same tags as
+     * JAudioTagger.
+     */
+    @Test
+    public void repeatedComment() throws Exception {
+        assertSameTags(
+                writeFlac(streamInfo(), comments("ARTIST=foo", "GENRE=rock", "ARTIST=bar")));
+    }
+
+    /**
+     * Given a FLAC file with an ID3 tag before its stream, when I read its tags, then I get the
+     * same tags as JAudioTagger.
+     */
+    @Test
+    public void skipId3Tag() throws Exception {
+        File file = folder.newFile("track.flac");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{ 'I', 'D', '3', 3, 0, 0, 0, 0, 1, 0 }); // 128 bytes
+            out.write(new byte[128]);
+            out.write(flac(streamInfo(), comments("ARTIST=foo")));
+        }
+
+        assertThat(strategy.readTags(file)).containsEntry("artist", new Tag("artist", "foo"));
+        assertSameTags(file);
+    }
+
+    /**
+     * Given a file that isn't FLAC, when I read its tags, then an exception is thrown.
+     */
+    @Test(expected = ScannerException.class)
+    public void notFlac() throws Exception {
+        File file = folder.newFile("track.flac");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("OggS and more".getBytes(UTF_8));
+        }
+
+        strategy.readTags(file);
+    }
+
+    /**
+     * Given a FLAC file whose comment block is cut short, when I read its tags, then an exception
+     * is thrown.
+     */
+    @Test(expected = ScannerException.class)
+    public void truncatedComments() throws Exception {
+        byte[] flac = flac(streamInfo(), comments("ARTIST=foo"));
+        File file = folder.newFile("track.flac");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(flac, 0, flac.length - AUDIO_LENGTH - 4);
+        }
+
+        strategy.readTags(file);
+    }
+
+    /**
+     * Given a FLAC file with a comment whose length runs past its block, when I read its tags,
+     * then an exception is thrown.
+     */
+    @Test(expected = ScannerException.class)
+    public void commentOverrunsBlock() throws Exception {
+        byte[] block = comments("ARTIST=foo");
+        int firstComment = 4 + 4 + VENDOR.length() + 4;
+        ByteBuffer.wrap(block).order(ByteOrder.LITTLE_ENDIAN).putInt(firstComment, 1000);
+
+        strategy.readTags(writeFlac(streamInfo(), block));
+    }
+
+    /**
+     * Given a strategy that's read a file, when I read another, then I get only the second file's
+     * tags.
+     */
+    @Test
+    public void reuseStrategy() throws Exception {
+        strategy.readTags(writeFlac(streamInfo(), comments("ARTIST=foo", "ALBUM=bar")));
+
+        assertThat(strategy.readTags(writeFlac(streamInfo(), padding(10), comments("TITLE=baz"))))
+                .containsExactly("vendor", new Tag("vendor", VENDOR), "title",
+                                 new Tag("title", "baz"));
+    }
+
+    /**
+     * Given a device whose language lowercases "I" differently, when I read a file's tags, then
+     * their keys are lowercased as in English.
+     */
+    @Test
+    public void keysIgnoreLocale() throws Exception {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertThat(strategy.readTags(writeFlac(streamInfo(), comments("TITLE=foo"))))
+                    .containsKey("title");
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    private void assertSameTags(File file) throws ScannerException {
+        assertThat(strategy.readTags(file))
+                .isEqualTo(new VorbisCommentTagStrategy().readTags(file));
+    }
+
+    private File writeFlac(byte[]... blocks) throws IOException {
+        File file = File.createTempFile("track", ".flac", folder.getRoot());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(flac(blocks));
+        }
+        return file;
+    }
+
+    /*
+     * The stream marker, the metadata blocks (the last one flagged), and some "audio"
+     */
+    private byte[] flac(byte[]... blocks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('f');
+        out.write('L');
+        out.write('a');
+        out.write('C');
+        for (int i = 0; i < blocks.length; i++) {
+            byte[] block = blocks[i];
+            if (i == blocks.length - 1) {
+                block[0] |= (byte) 0x80;
+            }
+            out.write(block, 0, block.length);
+        }
+        out.write(new byte[AUDIO_LENGTH], 0, AUDIO_LENGTH);
+        return out.toByteArray();
+    }
+
+    /*
+     * 44.1kHz, stereo, 16 bits per sample, one second long
+     */
+    private byte[] streamInfo() {
+        ByteBuffer data = ByteBuffer.allocate(34);
+        data.putShort((short) 4096).putShort((short) 4096);
+        data.put(new byte[]{ 0, 0, 0x10, 0, 0, 0x10 });
+        long samples = 44100;
+        data.putLong((44100L << 44) | (1L << 41) | (15L << 36) | samples);
+        return block(STREAMINFO, data.array());
+    }
+
+    private byte[] comments(String... comments) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        writeString(data, VENDOR);
+        writeInt(data, comments.length);
+        for (String comment : comments) {
+            writeString(data, comment);
+        }
+        return block(VORBIS_COMMENT, data.toByteArray());
+    }
+
+    private byte[] picture(int size) {
+        ByteBuffer data = ByteBuffer.allocate(32 + "image/png".length() + size);
+        data.putInt(3).putInt(9).put("image/png".getBytes(UTF_8)).putInt(0);
+        data.putInt(1).putInt(1).putInt(24).putInt(0).putInt(size);
+        return block(PICTURE, data.array());
+    }
+
+    private byte[] padding(int size) {
+        return block(PADDING, new byte[size]);
+    }
+
+    private byte[] block(int type, byte[] data) {
+        ByteBuffer block = ByteBuffer.allocate(4 + data.length);
+        block.putInt((type << 24) | data.length).put(data);
+        return block.array();
+    }
+
+    private void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        writeInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private void writeInt(ByteArrayOutputStream out, int value) {
+        byte[] bytes = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+        out.write(bytes, 0, bytes.length);
+    }
+
+}
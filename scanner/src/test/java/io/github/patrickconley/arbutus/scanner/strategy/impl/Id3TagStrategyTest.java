@@ -0,0 +1,255 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Feature: read ID3 tags without {@link android.media.MediaMetadataRetriever}, using the keys
+ * {@link GenericTagStrategy} does.
+ */
+public class Id3TagStrategyTest {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Charset UTF_16 = Charset.forName("UTF-16");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /*
+     * An MPEG-1 layer III frame header: 128kbps, 44.1kHz
+     */
+    private static final byte[] AUDIO = { (byte) 0xFF, (byte) 0xFB, (byte) 0x90, 0 };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Id3TagStrategy strategy = new Id3TagStrategy();
+
+    /**
+     * Given an MP3 file with an ID3v2.3 tag, when I read its tags, then I get them with the
+     * standard keys.
+     */
+    @Test
+    public void readId3v23() throws Exception {
+        byte[] frames = concat(frame(3, "TPE1", text(0, "foo")), frame(3, "TALB", text(0, "bar")),
+                               frame(3, "TIT2", text(1, "Hoppípolla")),
+                               frame(3, "TRCK", text(0, "3/12")), frame(3, "TCON", text(0, "(17)")),
+                               frame(3, "TYER", text(0, "1999")),
+                               frame(3, "COMM", text(0, "ignored")));
+
+        Map<String, Tag> tags = strategy.readTags(write(tag(3, 0, frames), null));
+
+        assertThat(tags).containsExactly("artist", new Tag("artist", "foo"), "album",
+                                         new Tag("album", "bar"), "title",
+                                         new Tag("title", "Hoppípolla"), "tracknumber",
+                                         new Tag("tracknumber", "3/12"), "genre",
+                                         new Tag("genre", "Rock"), "year",
+                                         new Tag("year", "1999"));
+    }
+
+    /**
+     * Given an MP3 file with an ID3v2.4 tag, when I read its tags, then I get the first of each
+     * frame's values, and the year from the recording time.
+     */
+    @Test
+    public void readId3v24() throws Exception {
+        byte[] frames = concat(frame(4, "TPE1", text(3, "Sigur Rós\0Amiina")),
+                               frame(4, "TDRC", text(3, "2005-09-12")),
+                               frame(4, "TCON", text(3, "Post-rock")));
+
+        Map<String, Tag> tags = strategy.readTags(write(tag(4, 0, frames), null));
+
+        assertThat(tags).containsExactly("artist", new Tag("artist", "Sigur Rós"), "date",
+                                         new Tag("date", "2005-09-12"), "year",
+                                         new Tag("year", "2005"), "genre",
+                                         new Tag("genre", "Post-rock"));
+    }
+
+    /**
+     * Given an MP3 file with an ID3v2.2 tag, when I read its tags, then I get them with the
+     * standard keys.
+     */
+    @Test
+    public void readId3v22() throws Exception {
+        byte[] frames = concat(frame(2, "TP1", text(1, "foo")), frame(2, "TT2", text(0, "bar")),
+                               frame(2, "TCO", text(0, "(52)Electronica")));
+
+        assertThat(strategy.readTags(write(tag(2, 0, frames), null)))
+                .containsExactly("artist", new Tag("artist", "foo"), "title",
+                                 new Tag("title", "bar"), "genre", new Tag("genre", "Electronica"));
+    }
+
+    /**
+     * Given an MP3 file with a large picture before its text frames, when I read its tags, then I
+     * get the text frames.
+     */
+    @Test
+    public void skipPicture() throws Exception {
+        byte[] frames = concat(frame(3, "APIC", new byte[512 * 1024]),
+                               frame(3, "TPE1", text(0, "foo")));
+
+        assertThat(strategy.readTags(write(tag(3, 0, frames), null)))
+                .containsExactly("artist", new Tag("artist", "foo"));
+    }
+
+    /**
+     * Given an MP3 file with an unsynchronised ID3v2.4 frame, when I read its tags, then I get its
+     * value.
+     */
+    @Test
+    public void unsynchronisedFrame() throws Exception {
+        // "ÿ" is 0xFF in ISO-8859-1, so it's followed by an extra zero
+        byte[] value = { 0, 'f', (byte) 0xFF, 0, 'o' };
+        byte[] tpe1 = frame(4, "TPE1", value);
+        tpe1[9] = 0x02;
+
+        assertThat(strategy.readTags(write(tag(4, 0, tpe1), null)))
+                .containsExactly("artist", new Tag("artist", "fÿo"));
+    }
+
+    /**
+     * Given an MP3 file with only an ID3v1 tag, when I read its tags, then I get them with the
+     * standard keys.
+     */
+    @Test
+    public void readId3v1() throws Exception {
+        assertThat(strategy.readTags(write(new byte[0], id3v1("bar", "foo", 7, 17))))
+                .containsExactly("title", new Tag("title", "bar"), "artist",
+                                 new Tag("artist", "foo"), "year", new Tag("year", "1999"),
+                                 "tracknumber", new Tag("tracknumber", "7"), "genre",
+                                 new Tag("genre", "Rock"));
+    }
+
+    /**
+     * Given an MP3 file with ID3v2 and ID3v1 tags, when I read its tags, then the ID3v1 tag only
+     * fills in what the ID3v2 tag doesn't have.
+     */
+    @Test
+    public void preferId3v2() throws Exception {
+        byte[] id3v2 = tag(3, 0, frame(3, "TIT2", text(0, "baz")));
+
+        assertThat(strategy.readTags(write(id3v2, id3v1("bar", "foo", 0, 255))))
+                .containsExactly("title", new Tag("title", "baz"), "artist",
+                                 new Tag("artist", "foo"), "year", new Tag("year", "1999"));
+    }
+
+    /**
+     * Given an MP3 file without tags, when I read its tags, then I get no tags.
+     */
+    @Test
+    public void noTags() throws Exception {
+        assertThat(strategy.readTags(write(new byte[0], null))).isEmpty();
+    }
+
+    /**
+     * Given a file with an ID3v2 tag but no audio, when I read its tags, then an exception is
+     * thrown.
+     */
+    @Test(expected = ScannerException.class)
+    public void noAudio() throws Exception {
+        File file = folder.newFile("track.mp3");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(tag(3, 0, frame(3, "TPE1", text(0, "foo"))));
+            out.write(new byte[8192]);
+        }
+
+        strategy.readTags(file);
+    }
+
+    /**
+     * Given an MP3 file with an unsynchronised ID3v2.3 tag, when I read its tags, then an exception
+     * is thrown so another strategy can read it.
+     */
+    @Test(expected = ScannerException.class)
+    public void unsynchronisedTag() throws Exception {
+        strategy.readTags(write(tag(3, 0x80, frame(3, "TPE1", text(0, "foo"))), null));
+    }
+
+    /**
+     * Given a strategy that's read a file, when I read another, then I get only the second file's
+     * tags.
+     */
+    @Test
+    public void reuseStrategy() throws Exception {
+        strategy.readTags(write(tag(3, 0, frame(3, "TPE1", text(0, "foo"))), null));
+
+        assertThat(strategy.readTags(write(tag(3, 0, frame(3, "TALB", text(0, "bar"))), null)))
+                .containsExactly("album", new Tag("album", "bar"));
+    }
+
+    private File write(byte[] id3v2, byte[] id3v1) throws IOException {
+        File file = File.createTempFile("track", ".mp3", folder.getRoot());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(id3v2);
+            for (int i = 0; i < 4; i++) {
+                out.write(AUDIO);
+                out.write(new byte[413]);
+            }
+            if (id3v1 != null) {
+                out.write(id3v1);
+            }
+        }
+        return file;
+    }
+
+    private static byte[] tag(int version, int flags, byte[] frames) {
+        ByteBuffer tag = ByteBuffer.allocate(10 + frames.length + 64); // with some padding
+        tag.put("ID3".getBytes(ISO_8859_1)).put((byte) version).put((byte) 0).put((byte) flags);
+        tag.put(syncsafe(frames.length + 64)).put(frames);
+        return tag.array();
+    }
+
+    private static byte[] frame(int version, String id, byte[] value) {
+        ByteBuffer frame;
+        if (version == 2) {
+            frame = ByteBuffer.allocate(6 + value.length).put(id.getBytes(ISO_8859_1));
+            frame.put((byte) (value.length >> 16)).putShort((short) value.length);
+        } else {
+            frame = ByteBuffer.allocate(10 + value.length).put(id.getBytes(ISO_8859_1));
+            frame.put(version == 4 ? syncsafe(value.length) : ByteBuffer.allocate(4)
+                                                                        .putInt(value.length)
+                                                                        .array());
+            frame.putShort((short) 0);
+        }
+        return frame.put(value).array();
+    }
+
+    private static byte[] text(int encoding, String value) {
+        Charset[] charsets = { ISO_8859_1, UTF_16, null, UTF_8 };
+        return concat(new byte[]{ (byte) encoding }, value.getBytes(charsets[encoding]));
+    }
+
+    private static byte[] id3v1(String title, String artist, int track, int genre) {
+        ByteBuffer tag = ByteBuffer.allocate(128).put("TAG".getBytes(ISO_8859_1));
+        tag.put(title.getBytes(ISO_8859_1)).position(33);
+        tag.put(artist.getBytes(ISO_8859_1)).position(93);
+        tag.put("1999".getBytes(ISO_8859_1)).position(126);
+        return tag.put((byte) track).put((byte) genre).array();
+    }
+
+    private static byte[] syncsafe(int value) {
+        return new byte[]{ (byte) (value >> 21 & 0x7F), (byte) (value >> 14 & 0x7F),
+                           (byte) (value >> 7 & 0x7F), (byte) (value & 0x7F) };
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            bytes.write(part, 0, part.length);
+        }
+        return bytes.toByteArray();
+    }
+
+}
@@ -0,0 +1,182 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Build Matroska files: an EBML header, then a segment holding a SeekHead, the segment info, a
+ * single track, clusters of a given size (left sparse), and the tags last, as mkvmerge writes
+ * them.
+ */
+class MatroskaFileBuilder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final long INFO = 0x1549A966L;
+    private static final long TRACKS = 0x1654AE6BL;
+    private static final long TAGS = 0x1254C367L;
+    private static final long CLUSTER = 0x1F43B675L;
+
+    private static final int TRACK_TYPE_VIDEO = 1;
+    private static final int TRACK_TYPE_AUDIO = 2;
+
+    private ByteArrayOutputStream tags;
+    private String docType = "matroska";
+    private boolean seekHead = true;
+    private int trackType = TRACK_TYPE_AUDIO;
+    private int clusterCount = 1;
+    private long clusterLength = 1024;
+
+    /**
+     * Add a tag targeting the given level (e.g., 30 for a track, 50 for an album) with pairs of
+     * names and values. A level of zero leaves out the targets, so the level is the default of 50.
+     */
+    MatroskaFileBuilder tag(int level, String... namesAndValues) {
+        byte[] targets = level == 0 ? new byte[0] : element(0x63C0, element(0x68CA, uint(level)));
+        return tag(targets, namesAndValues);
+    }
+
+    /**
+     * Add a tag targeting a chapter.
+     */
+    MatroskaFileBuilder chapterTag(String... namesAndValues) {
+        return tag(element(0x63C0, element(0x63C4, uint(1))), namesAndValues);
+    }
+
+    private MatroskaFileBuilder tag(byte[] targets, String... namesAndValues) {
+        ByteArrayOutputStream tag = new ByteArrayOutputStream();
+        write(tag, targets);
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            write(tag, element(0x67C8, element(0x45A3, namesAndValues[i].getBytes(UTF_8)),
+                               element(0x4487, namesAndValues[i + 1].getBytes(UTF_8))));
+        }
+
+        if (tags == null) {
+            tags = new ByteArrayOutputStream();
+        }
+        write(tags, element(0x7373, tag.toByteArray()));
+        return this;
+    }
+
+    MatroskaFileBuilder docType(String type) {
+        docType = type;
+        return this;
+    }
+
+    /**
+     * Leave out the SeekHead, so the tags can only be found by walking the segment.
+     */
+    MatroskaFileBuilder withoutSeekHead() {
+        seekHead = false;
+        return this;
+    }
+
+    /**
+     * Make the only track a video track.
+     */
+    MatroskaFileBuilder video() {
+        trackType = TRACK_TYPE_VIDEO;
+        return this;
+    }
+
+    /**
+     * Write this many clusters of the given length between the track list and the tags.
+     */
+    MatroskaFileBuilder clusters(int count, long length) {
+        clusterCount = count;
+        clusterLength = length;
+        return this;
+    }
+
+    void write(File file) throws IOException {
+        byte[] info = element(INFO, element(0x2AD7B1, uint(1000000)));
+        byte[] tracks = element(TRACKS, element(0xAE, element(0xD7, uint(1)),
+                                                element(0x83, uint(trackType)),
+                                                element(0x86, "A_VORBIS".getBytes(UTF_8))));
+        byte[] tagsElement = tags == null ? new byte[0] : element(TAGS, tags.toByteArray());
+        long clustersLength = clusterCount * (12 + clusterLength);
+
+        // The SeekHead's length doesn't depend on the positions, which are all eight bytes
+        byte[] seek = seekHead(0, 0, tags == null ? -1 : 0);
+        long infoPosition = seekHead ? seek.length : 0;
+        long tracksPosition = infoPosition + info.length;
+        long tagsPosition = tracksPosition + tracks.length + clustersLength;
+        seek = seekHead ? seekHead(infoPosition, tracksPosition, tags == null ? -1 : tagsPosition)
+                        : new byte[0];
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(0);
+            out.write(element(0x1A45DFA3L, element(0x4286, uint(1)),
+                              element(0x4282, docType.getBytes(UTF_8))));
+            out.write(header(0x18538067L, tagsPosition + tagsElement.length));
+            out.write(seek);
+            out.write(info);
+            out.write(tracks);
+            for (int i = 0; i < clusterCount; i++) {
+                out.write(header(CLUSTER, clusterLength));
+                out.seek(out.getFilePointer() + clusterLength);
+            }
+            out.setLength(out.getFilePointer());
+            out.write(tagsElement);
+        }
+    }
+
+    private byte[] seekHead(long info, long tracks, long tags) {
+        ByteArrayOutputStream seeks = new ByteArrayOutputStream();
+        write(seeks, seek(INFO, info));
+        write(seeks, seek(TRACKS, tracks));
+        if (tags >= 0) {
+            write(seeks, seek(TAGS, tags));
+        }
+        return element(0x114D9B74L, seeks.toByteArray());
+    }
+
+    private byte[] seek(long id, long position) {
+        return element(0x4DBB, element(0x53AB, id(id)),
+                       element(0x53AC, ByteBuffer.allocate(8).putLong(position).array()));
+    }
+
+    static byte[] element(long id, byte[]... children) {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        for (byte[] child : children) {
+            write(contents, child);
+        }
+
+        ByteArrayOutputStream element = new ByteArrayOutputStream();
+        write(element, header(id, contents.size()));
+        write(element, contents.toByteArray());
+        return element.toByteArray();
+    }
+
+    /*
+     * An element ID and an eight-byte size
+     */
+    private static byte[] header(long id, long size) {
+        byte[] idBytes = id(id);
+        ByteBuffer header = ByteBuffer.allocate(idBytes.length + 8);
+        header.put(idBytes).putLong(size | 0x0100000000000000L);
+        return header.array();
+    }
+
+    private static byte[] id(long id) {
+        int length = id > 0xFFFFFF ? 4 : id > 0xFFFF ? 3 : id > 0xFF ? 2 : 1;
+        byte[] bytes = new byte[length];
+        for (int i = length - 1; i >= 0; i--, id >>= 8) {
+            bytes[i] = (byte) id;
+        }
+        return bytes;
+    }
+
+    private static byte[] uint(long value) {
+        return ByteBuffer.allocate(8).putLong(value).array();
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+
+}
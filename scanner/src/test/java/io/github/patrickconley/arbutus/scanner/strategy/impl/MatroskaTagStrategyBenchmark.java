@@ -0,0 +1,66 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Locale;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Time reading the tags of Matroska files from 64MB to 32GB (of sparse clusters), with the tags
+ * at the end. With a SeekHead the time should be the same for every size; without one it grows
+ * with the number of clusters.
+ * <p/>
+ * This takes a while, so it's ignored; remove the annotation to run it.
+ */
+@Ignore("Benchmark")
+public class MatroskaTagStrategyBenchmark {
+
+    private static final long[] SIZES = {
+            64L * 1024 * 1024, 1024L * 1024 * 1024, 8L * 1024 * 1024 * 1024,
+            32L * 1024 * 1024 * 1024
+    };
+    private static final long CLUSTER_LENGTH = 4L * 1024 * 1024;
+    private static final int READS = 200;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void largeFiles() throws Exception {
+        MatroskaTagStrategy strategy = new MatroskaTagStrategy();
+        for (long size : SIZES) {
+            int clusters = (int) (size / CLUSTER_LENGTH);
+            File indexed = folder.newFile("indexed" + size + ".mka");
+            new MatroskaFileBuilder().clusters(clusters, CLUSTER_LENGTH).tag(30, "TITLE", "foo")
+                                     .write(indexed);
+            File walked = folder.newFile("walked" + size + ".mka");
+            new MatroskaFileBuilder().withoutSeekHead().clusters(clusters, CLUSTER_LENGTH)
+                                     .tag(30, "TITLE", "foo").write(walked);
+
+            assertThat(strategy.readTags(indexed)).containsEntry("title", new Tag("title", "foo"));
+            assertThat(strategy.readTags(walked)).containsEntry("title", new Tag("title", "foo"));
+
+            System.out.println(String.format(Locale.US, "%dMB: SeekHead %.3fms/file, " +
+                                                        "walk %.3fms/file", size >> 20,
+                                             time(strategy, indexed) / 1e6 / READS,
+                                             time(strategy, walked) / 1e6 / READS));
+        }
+    }
+
+    private long time(MatroskaTagStrategy strategy, File file) throws ScannerException {
+        long start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            strategy.readTags(file);
+        }
+        return System.nanoTime() - start;
+    }
+
+}
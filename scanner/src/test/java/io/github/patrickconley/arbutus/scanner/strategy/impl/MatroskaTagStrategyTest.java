@@ -0,0 +1,185 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Feature: read Matroska tags, mapped to the keys the other strategies use.
+ */
+public class MatroskaTagStrategyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MatroskaTagStrategy strategy = new MatroskaTagStrategy();
+
+    /**
+     * Given a Matroska file with album and track tags, when I read its tags, then I get them with
+     * the standard keys.
+     */
+    @Test
+    public void readTags() throws Exception {
+        File file = write(new MatroskaFileBuilder()
+                                  .tag(50, "TITLE", "bar", "ARTIST", "baz", "TOTAL_PARTS", "12",
+                                       "DATE_RELEASED", "1999", "GENRE", "Rock")
+                                  .tag(30, "TITLE", "Hoppípolla", "ARTIST", "foo", "PART_NUMBER",
+                                       "3"));
+
+        assertThat(strategy.readTags(file))
+                .containsExactly("album", new Tag("album", "bar"), "albumartist",
+                                 new Tag("albumartist", "baz"), "tracktotal",
+                                 new Tag("tracktotal", "12"), "date", new Tag("date", "1999"),
+                                 "genre", new Tag("genre", "Rock"), "title",
+                                 new Tag("title", "Hoppípolla"), "artist",
+                                 new Tag("artist", "foo"), "tracknumber",
+                                 new Tag("tracknumber", "3"));
+    }
+
+    /**
+     * Given a Matroska file with tags only for the whole file, as FFmpeg writes them, when I read
+     * its tags, then the titles and artists are the track's.
+     */
+    @Test
+    public void readFileTags() throws Exception {
+        File file = write(new MatroskaFileBuilder().tag(0, "TITLE", "foo", "ARTIST", "bar",
+                                                        "ALBUM", "baz", "PART_NUMBER", "3",
+                                                        "ENCODER", "Lavf58"));
+
+        assertThat(strategy.readTags(file))
+                .containsExactly("title", new Tag("title", "foo"), "artist",
+                                 new Tag("artist", "bar"), "album", new Tag("album", "baz"),
+                                 "tracknumber", new Tag("tracknumber", "3"));
+    }
+
+    /**
+     * Given a Matroska file with tags for a chapter, when I read its tags, then I don't get them.
+     */
+    @Test
+    public void skipChapterTags() throws Exception {
+        File file = write(new MatroskaFileBuilder().chapterTag("TITLE", "Chapter 1")
+                                                   .tag(30, "ARTIST", "foo"));
+
+        assertThat(strategy.readTags(file)).containsExactly("artist", new Tag("artist", "foo"));
+    }
+
+    /**
+     * Given a Matroska file without a SeekHead, when I read its tags, then I get them from after
+     * the clusters.
+     */
+    @Test
+    public void withoutSeekHead() throws Exception {
+        File file = write(new MatroskaFileBuilder().withoutSeekHead().clusters(10, 64 * 1024)
+                                                   .tag(30, "ARTIST", "foo"));
+
+        assertThat(strategy.readTags(file)).containsExactly("artist", new Tag("artist", "foo"));
+    }
+
+    /**
+     * Given a Matroska file with more than 4GB of clusters before its tags, when I read its tags,
+     * then I get them.
+     */
+    @Test
+    public void largeFile() throws Exception {
+        File file = write(new MatroskaFileBuilder().clusters(2, 3L * 1024 * 1024 * 1024)
+                                                   .tag(30, "ARTIST", "foo"));
+
+        assertThat(strategy.readTags(file)).containsExactly("artist", new Tag("artist", "foo"));
+    }
+
+    /**
+     * Given a WebM file, when I read its tags, then I get them.
+     */
+    @Test
+    public void readWebm() throws Exception {
+        File file = write(new MatroskaFileBuilder().docType("webm").tag(30, "ARTIST", "foo"));
+
+        assertThat(strategy.readTags(file)).containsExactly("artist", new Tag("artist", "foo"));
+    }
+
+    /**
+     * Given a Matroska file without tags, when I read its tags, then I get no tags.
+     */
+    @Test
+    public void noTags() throws Exception {
+        assertThat(strategy.readTags(write(new MatroskaFileBuilder()))).isEmpty();
+    }
+
+    /**
+     * Given a Matroska file without an audio track, when I read its tags, then an exception is
+     * thrown.
+     */
+    @Test(expected = ScannerException.class)
+    public void noAudio() throws Exception {
+        strategy.readTags(write(new MatroskaFileBuilder().video().tag(30, "TITLE", "foo")));
+    }
+
+    /**
+     * Given an EBML file that isn't Matroska, when I read its tags, then an exception is thrown.
+     */
+    @Test(expected = ScannerException.class)
+    public void unknownDocType() throws Exception {
+        strategy.readTags(write(new MatroskaFileBuilder().docType("other")));
+    }
+
+    /**
+     * Given a file that isn't Matroska, when I read its tags, then an exception is thrown.
+     */
+    @Test(expected = ScannerException.class)
+    public void notMatroska() throws Exception {
+        File file = folder.newFile("track.mka");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{ 'O', 'g', 'g', 'S' });
+            out.write(new byte[1024]);
+        }
+
+        strategy.readTags(file);
+    }
+
+    /**
+     * Given a Matroska file whose element runs past the end of its parent, when I read its tags,
+     * then an exception is thrown.
+     */
+    @Test(expected = ScannerException.class)
+    public void elementOverrunsParent() throws Exception {
+        File file = folder.newFile("track.mka");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(MatroskaFileBuilder.element(0x1A45DFA3L, MatroskaFileBuilder
+                    .element(0x4282, "matroska".getBytes("UTF-8"))));
+            // A segment of 16 bytes holding an element of 1000
+            out.write(new byte[]{ 0x18, 0x53, (byte) 0x80, 0x67, (byte) 0x90, 0x16, 0x54,
+                                  (byte) 0xAE, 0x6B, (byte) 0x83, (byte) 0xE8 });
+            out.write(new byte[1024]);
+        }
+
+        strategy.readTags(file);
+    }
+
+    /**
+     * Given a strategy that's read a file, when I read another, then I get only the second file's
+     * tags.
+     */
+    @Test
+    public void reuseStrategy() throws Exception {
+        strategy.readTags(write(new MatroskaFileBuilder().tag(30, "ARTIST", "foo", "TITLE", "bar")));
+
+        assertThat(strategy.readTags(write(new MatroskaFileBuilder().tag(30, "TITLE", "baz"))))
+                .containsExactly("title", new Tag("title", "baz"));
+    }
+
+    private File write(MatroskaFileBuilder builder) throws IOException {
+        File file = File.createTempFile("track", ".mka", folder.getRoot());
+        builder.write(file);
+        return file;
+    }
+
+}
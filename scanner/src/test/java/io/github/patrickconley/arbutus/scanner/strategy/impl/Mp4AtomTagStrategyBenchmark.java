@@ -0,0 +1,80 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.strategy.TagStrategy;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Compare the time to read the tags of large MP4 files with {@link Mp4AtomTagStrategy} and with
+ * JAudioTagger ({@link Mp4TagStrategy}). The files are shaped like long audiobooks: 300MB of
+ * (sparse) media data, and a sample table of about two million entries in the moov box.
+ * <p/>
+ * This takes a while, so it's ignored; remove the annotation to run it.
+ */
+@Ignore("Benchmark")
+public class Mp4AtomTagStrategyBenchmark {
+
+    private static final int FILES = 20;
+    private static final int ROUNDS = 5;
+
+    /*
+     * Twelve hours of 44.1kHz AAC, at 1024 samples per frame
+     */
+    private static final int SAMPLES = 12 * 60 * 60 * 44100 / 1024;
+    private static final long MEDIA_DATA_LENGTH = 300L * 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void largeFiles() throws Exception {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            File file = folder.newFile("book" + i + ".m4b");
+            Mp4FileBuilder builder = new Mp4FileBuilder().samples(SAMPLES).cover(512 * 1024)
+                                                         .text("©ART", "foo").text("©alb", "bar")
+                                                         .text("©nam", "chapter " + i);
+            if (i % 2 == 0) {
+                builder.mdatFirst(MEDIA_DATA_LENGTH);
+            }
+            builder.write(file);
+            files.add(file);
+        }
+
+        TagStrategy atoms = new Mp4AtomTagStrategy();
+        TagStrategy jaudiotagger = new Mp4TagStrategy();
+        for (File file : files) {
+            assertThat(atoms.readTags(file)).containsEntry("title", jaudiotagger.readTags(file)
+                                                                                .get("title"));
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long atomsTime = time(atoms, files);
+            long jaudiotaggerTime = time(jaudiotagger, files);
+            System.out.println(String.format(Locale.US, "Round %d: atoms %.2fms/file, " +
+                                                        "JAudioTagger %.2fms/file", round,
+                                             atomsTime / 1e6 / FILES,
+                                             jaudiotaggerTime / 1e6 / FILES));
+        }
+    }
+
+    private long time(TagStrategy strategy, List<File> files) throws ScannerException {
+        long start = System.nanoTime();
+        for (File file : files) {
+            strategy.readTags(file);
+        }
+        return System.nanoTime() - start;
+    }
+
+}
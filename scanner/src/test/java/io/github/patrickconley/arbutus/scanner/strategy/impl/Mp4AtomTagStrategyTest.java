@@ -0,0 +1,211 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.strategy.TagReadOptions;
+
+import static com.google.common.truth.Truth.assertThat;
+import static io.github.patrickconley.arbutus.scanner.strategy.impl.Mp4FileBuilder.IMPLICIT;
+import static io.github.patrickconley.arbutus.scanner.strategy.impl.Mp4FileBuilder.INTEGER;
+import static io.github.patrickconley.arbutus.scanner.strategy.impl.Mp4FileBuilder.TEXT;
+
+/**
+ * Feature: read MP4 tags without JAudioTagger, getting the same tags it does.
+ */
+public class Mp4AtomTagStrategyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Mp4AtomTagStrategy strategy = new Mp4AtomTagStrategy();
+
+    /**
+     * Given an MP4 file with tags, when I read its tags, then I get them with the standard keys.
+     */
+    @Test
+    public void readTags() throws Exception {
+        File file = write(new Mp4FileBuilder().text("©ART", "foo")
+                                              .text("©alb", "bar")
+                                              .text("©day", "1999")
+                                              .numbers("trkn", IMPLICIT, 0, 3, 12, 0));
+
+        Map<String, Tag> tags = strategy.readTags(file);
+
+        assertThat(tags).containsExactly("artist", new Tag("artist", "foo"), "album",
+                                         new Tag("album", "bar"), "date", new Tag("date", "1999"),
+                                         "tracknumber", new Tag("tracknumber", "3/12"));
+        assertThat(tags).isEqualTo(new Mp4TagStrategy().readTags(file));
+    }
+
+    /**
+     * Given an MP4 file with tags of each type, when I read its tags, then I get the same tags as
+     * JAudioTagger.
+     */
+    @Test
+    public void readEachType() throws Exception {
+        assertSameTags(write(new Mp4FileBuilder().text("©nam", "Hoppípolla")
+                                                 .numbers("trkn", IMPLICIT, 0, 3, 0, 0)
+                                                 .numbers("disk", IMPLICIT, 0, 1, 2)
+                                                 .numbers("gnre", IMPLICIT, 18)
+                                                 .integer("tmpo", 2, 120)
+                                                 .integer("cpil", 1, 1)
+                                                 .numbers("xxxx", IMPLICIT, 1, 2, 3)
+                                                 .reverseDns("com.apple.iTunes",
+                                                             "MusicBrainz Album Id", "baz")));
+    }
+
+    /**
+     * Given an MP4 file with fields JAudioTagger ignores, when I read its tags, then I get the
+     * same tags as JAudioTagger.
+     */
+    @Test
+    public void ignoreInvalidFields() throws Exception {
+        assertSameTags(write(new Mp4FileBuilder().text("©ART", "foo")
+                                                 .numbers("©alb", INTEGER, 1)
+                                                 .numbers("trkn", TEXT)
+                                                 .item("©nam")));
+    }
+
+    /**
+     * Given an MP4 file with cover art, when I read its tags, then I get the same tags as
+     * JAudioTagger keeping binary fields, apart from the cover, and the same as JAudioTagger
+     * skipping them.
+     */
+    @Test
+    public void skipCoverArt() throws Exception {
+        File file = write(new Mp4FileBuilder().cover(256 * 1024).text("©ART", "foo"));
+
+        Map<String, Tag> expected =
+                new Mp4TagStrategy(new TagReadOptions(false, 0)).readTags(file);
+        assertThat(expected).containsKey("artwork");
+        expected.remove("artwork");
+
+        assertThat(strategy.readTags(file)).isEqualTo(expected);
+        assertThat(new Mp4TagStrategy().readTags(file)).isEqualTo(expected);
+    }
+
+    /**
+     * Given an MP4 file with its media data before its tags, when I read its tags, then I get the
+     * same tags as JAudioTagger.
+     */
+    @Test
+    public void mediaDataFirst() throws Exception {
+        assertSameTags(write(new Mp4FileBuilder().mdatFirst(300L * 1024 * 1024)
+                                                 .text("©ART", "foo")));
+    }
+
+    /**
+     * Given an MP4 file with more than 4GB of media data before its tags, when I read its tags,
+     * then I get its tags.
+     */
+    @Test
+    public void largeMediaDataFirst() throws Exception {
+        assertThat(strategy.readTags(write(new Mp4FileBuilder().mdatFirst(5L * 1024 * 1024 * 1024)
+                                                               .text("©ART", "foo"))))
+                .containsExactly("artist", new Tag("artist", "foo"));
+    }
+
+    /**
+     * Given an MP4 file with a meta box outside a udta box, when I read its tags, then I get its
+     * tags.
+     */
+    @Test
+    public void metaWithoutUdta() throws Exception {
+        assertThat(strategy.readTags(write(new Mp4FileBuilder().withoutUdta()
+                                                               .text("©ART", "foo"))))
+                .containsExactly("artist", new Tag("artist", "foo"));
+    }
+
+    /**
+     * Given an MP4 file with a genre of the wrong type, when I read its tags, then I get its other
+     * tags.
+     */
+    @Test
+    public void invalidGenre() throws Exception {
+        assertThat(strategy.readTags(write(new Mp4FileBuilder().numbers("gnre", TEXT)
+                                                               .text("©ART", "foo"))))
+                .containsExactly("artist", new Tag("artist", "foo"));
+    }
+
+    /**
+     * Given an MP4 file with an integer too large for an int, when I read its tags, then I get
+     * the whole value.
+     */
+    @Test
+    public void largeInteger() throws Exception {
+        assertThat(strategy.readTags(write(new Mp4FileBuilder().integer("tmpo", 4, -1))))
+                .containsExactly("bpm", new Tag("bpm", "4294967295"));
+    }
+
+    /**
+     * Given an MP4 file without tags, when I read its tags, then I get no tags.
+     */
+    @Test
+    public void noTags() throws Exception {
+        assertThat(strategy.readTags(write(new Mp4FileBuilder()))).isEmpty();
+    }
+
+    /**
+     * Given a file that isn't MP4, when I read its tags, then an exception is thrown.
+     */
+    @Test(expected = ScannerException.class)
+    public void notMp4() throws Exception {
+        File file = folder.newFile("track.m4a");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(Mp4FileBuilder.box("ftyp", new byte[8]));
+            out.write(new byte[]{ 'f', 'L', 'a', 'C' });
+        }
+
+        strategy.readTags(file);
+    }
+
+    /**
+     * Given an MP4 file whose box runs past the end of its parent, when I read its tags, then an
+     * exception is thrown.
+     */
+    @Test(expected = ScannerException.class)
+    public void boxOverrunsParent() throws Exception {
+        byte[] moov = Mp4FileBuilder.box("moov", Mp4FileBuilder.box("udta", new byte[8]));
+        ByteBuffer.wrap(moov).putInt(8, 1000); // the udta's length
+        File file = folder.newFile("track.m4a");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(moov);
+            out.write(new byte[1024]);
+        }
+
+        strategy.readTags(file);
+    }
+
+    /**
+     * Given a strategy that's read a file, when I read another, then I get only the second file's
+     * tags.
+     */
+    @Test
+    public void reuseStrategy() throws Exception {
+        strategy.readTags(write(new Mp4FileBuilder().text("©ART", "foo").text("©alb", "bar")));
+
+        assertThat(strategy.readTags(write(new Mp4FileBuilder().text("©nam", "baz"))))
+                .containsExactly("title", new Tag("title", "baz"));
+    }
+
+    private void assertSameTags(File file) throws ScannerException {
+        assertThat(strategy.readTags(file)).isEqualTo(new Mp4TagStrategy().readTags(file));
+    }
+
+    private File write(Mp4FileBuilder builder) throws IOException {
+        File file = File.createTempFile("track", ".m4a", folder.getRoot());
+        builder.write(file);
+        return file;
+    }
+
+}
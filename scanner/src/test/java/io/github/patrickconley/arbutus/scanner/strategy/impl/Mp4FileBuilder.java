@@ -0,0 +1,208 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Build MP4 files good enough for JAudioTagger: a single AAC track, optionally with an ilst of
+ * tags, and an mdat of a given size (left sparse) before or after the moov.
+ */
+class Mp4FileBuilder {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final int TEXT = 1;
+    static final int IMPLICIT = 0;
+    static final int INTEGER = 21;
+    static final int JPEG = 13;
+
+    private ByteArrayOutputStream ilst;
+    private boolean udta = true;
+    private boolean mdatFirst;
+    private long mdatLength = 1024;
+    private int sampleCount;
+
+    /**
+     * Add a text item, e.g., "©ART".
+     */
+    Mp4FileBuilder text(String id, String value) {
+        return item(id, data(TEXT, value.getBytes(UTF_8)));
+    }
+
+    /**
+     * Add an item of 16-bit numbers, e.g., a track number.
+     */
+    Mp4FileBuilder numbers(String id, int type, int... numbers) {
+        ByteBuffer value = ByteBuffer.allocate(numbers.length * 2);
+        for (int number : numbers) {
+            value.putShort((short) number);
+        }
+        return item(id, data(type, value.array()));
+    }
+
+    /**
+     * Add an integer item of the given length in bytes.
+     */
+    Mp4FileBuilder integer(String id, int length, int value) {
+        byte[] bytes = new byte[length];
+        for (int i = length - 1; i >= 0; i--, value >>= 8) {
+            bytes[i] = (byte) value;
+        }
+        return item(id, data(INTEGER, bytes));
+    }
+
+    /**
+     * Add a reverse DNS item.
+     */
+    Mp4FileBuilder reverseDns(String issuer, String name, String value) {
+        return item("----", fullBox("mean", issuer.getBytes(UTF_8)),
+                    fullBox("name", name.getBytes(UTF_8)), data(TEXT, value.getBytes(UTF_8)));
+    }
+
+    /**
+     * Add a cover of the given size.
+     */
+    Mp4FileBuilder cover(int size) {
+        return item("covr", data(JPEG, new byte[size]));
+    }
+
+    /**
+     * Add an item with any contents.
+     */
+    Mp4FileBuilder item(String id, byte[]... children) {
+        if (ilst == null) {
+            ilst = new ByteArrayOutputStream();
+        }
+        write(ilst, box(id, children));
+        return this;
+    }
+
+    /**
+     * Put the meta box directly in the moov box, rather than in a udta box.
+     */
+    Mp4FileBuilder withoutUdta() {
+        udta = false;
+        return this;
+    }
+
+    /**
+     * Put the mdat box before the moov box, as a recorder would.
+     */
+    Mp4FileBuilder mdatFirst(long length) {
+        mdatFirst = true;
+        mdatLength = length;
+        return this;
+    }
+
+    /**
+     * Give the track a sample size table with this many entries, which JAudioTagger will load.
+     */
+    Mp4FileBuilder samples(int count) {
+        sampleCount = count;
+        return this;
+    }
+
+    void write(File file) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(0);
+            out.write(box("ftyp", "M4A ".getBytes(ISO_8859_1), new byte[4],
+                          "M4A mp42isom".getBytes(ISO_8859_1)));
+            if (mdatFirst) {
+                writeMdat(out);
+            }
+            out.write(moov());
+            if (!mdatFirst) {
+                writeMdat(out);
+            }
+        }
+    }
+
+    /*
+     * Write the mdat header, using a 64-bit length if it needs one, then leave a hole for the rest
+     */
+    private void writeMdat(RandomAccessFile out) throws IOException {
+        ByteBuffer header;
+        if (mdatLength + 8 > 0xFFFFFFFFL) {
+            header = ByteBuffer.allocate(16).putInt(1).put("mdat".getBytes(ISO_8859_1))
+                               .putLong(mdatLength + 16);
+        } else {
+            header = ByteBuffer.allocate(8).putInt((int) (mdatLength + 8))
+                               .put("mdat".getBytes(ISO_8859_1));
+        }
+        out.write(header.array());
+        out.setLength(out.getFilePointer() + mdatLength);
+        out.seek(out.length());
+    }
+
+    private byte[] moov() {
+        ByteBuffer mvhd = ByteBuffer.allocate(100);
+        mvhd.putInt(0).putInt(0).putInt(0).putInt(44100).putInt(44100); // one second
+        mvhd.putInt(0x00010000).putShort((short) 0x0100);
+
+        ByteBuffer mdhd = ByteBuffer.allocate(20);
+        mdhd.putInt(0).putInt(0).putInt(44100).putInt(44100);
+
+        ByteBuffer mp4a = ByteBuffer.allocate(28);
+        mp4a.position(6);
+        mp4a.putShort((short) 1).position(16);
+        mp4a.putShort((short) 2).putShort((short) 16).putInt(0).putInt(44100 << 16);
+
+        // AAC LC, stereo, 128kbps
+        byte[] esds = { 0x03, 25, 0, 1, 0, 0x04, 17, 0x40, 0x15, 0, 0, 0, 0, 1, (byte) 0xF4, 0,
+                        0, 1, (byte) 0xF4, 0, 0x05, 2, 0x12, 0x10, 0x06, 1, 2 };
+
+        ByteBuffer stsd = ByteBuffer.allocate(8).putInt(0).putInt(1);
+        ByteBuffer stsz = ByteBuffer.allocate(12 + sampleCount * 4);
+        stsz.putInt(0).putInt(0).putInt(sampleCount);
+
+        byte[] sampleEntry = box("mp4a", mp4a.array(), fullBox("esds", esds));
+        byte[] stbl = box("stbl", box("stsd", stsd.array(), sampleEntry),
+                          box("stsz", stsz.array()));
+        byte[] trak = box("trak", box("mdia", fullBox("mdhd", mdhd.array()), handler("soun"),
+                                      box("minf", box("smhd", new byte[8]), stbl)));
+
+        if (ilst == null) {
+            return box("moov", box("mvhd", mvhd.array()), trak);
+        }
+        byte[] meta = fullBox("meta", handler("mdir"), box("ilst", ilst.toByteArray()));
+        return box("moov", box("mvhd", mvhd.array()), trak, udta ? box("udta", meta) : meta);
+    }
+
+    private byte[] handler(String type) {
+        ByteBuffer hdlr = ByteBuffer.allocate(25);
+        hdlr.putInt(0).putInt(0).put(type.getBytes(ISO_8859_1));
+        return box("hdlr", hdlr.array());
+    }
+
+    private byte[] data(int type, byte[] value) {
+        return box("data", ByteBuffer.allocate(8).putInt(type).putInt(0).array(), value);
+    }
+
+    private byte[] fullBox(String type, byte[]... children) {
+        byte[][] contents = new byte[children.length + 1][];
+        contents[0] = new byte[4];
+        System.arraycopy(children, 0, contents, 1, children.length);
+        return box(type, contents);
+    }
+
+    static byte[] box(String type, byte[]... children) {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        for (byte[] child : children) {
+            write(contents, child);
+        }
+
+        ByteBuffer box = ByteBuffer.allocate(8 + contents.size());
+        box.putInt(8 + contents.size()).put(type.getBytes(ISO_8859_1)).put(contents.toByteArray());
+        return box.array();
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+
+}
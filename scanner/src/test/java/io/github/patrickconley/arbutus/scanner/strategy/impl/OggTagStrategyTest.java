@@ -0,0 +1,271 @@
+package io.github.patrickconley.arbutus.scanner.strategy.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.scanner.ScannerException;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Feature: read Ogg comments without JAudioTagger, getting the same tags it does.
+ */
+public class OggTagStrategyTest {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int SERIAL = 0x1234;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private OggTagStrategy strategy = new OggTagStrategy();
+
+    /**
+     * Given an Ogg Vorbis file with comments, when I read its tags, then I get the same tags as
+     * JAudioTagger.
+     */
+    @Test
+    public void readVorbis() throws Exception {
+        File file = write(".ogg", vorbisHeaders(comments("ARTIST=foo", "Album=bar",
+                                                         "TITLE=Hoppípolla")));
+
+        Map<String, Tag> tags = strategy.readTags(file);
+
+        assertThat(tags).containsEntry("artist", new Tag("artist", "foo"));
+        assertThat(tags).containsEntry("album", new Tag("album", "bar"));
+        assertThat(tags).containsEntry("title", new Tag("title", "Hoppípolla"));
+        assertThat(tags).isEqualTo(new VorbisCommentTagStrategy().readTags(file));
+    }
+
+    /**
+     * Given an Ogg Vorbis file with comments spanning several pages, when I read its tags, then I
+     * get the same tags as JAudioTagger.
+     */
+    @Test
+    public void readLargeComments() throws Exception {
+        char[] picture = new char[200 * 1024];
+        Arrays.fill(picture, 'A');
+        File file = write(".ogg", vorbisHeaders(
+                comments("ARTIST=foo", "METADATA_BLOCK_PICTURE=" + new String(picture),
+                         "TITLE=bar")));
+
+        Map<String, Tag> tags = strategy.readTags(file);
+
+        assertThat(tags).containsEntry("title", new Tag("title", "bar"));
+        assertThat(tags).isEqualTo(new VorbisCommentTagStrategy().readTags(file));
+    }
+
+    /**
+     * Given an Opus file with comments, when I read its tags, then I get them with lower-case
+     * keys.
+     */
+    @Test
+    public void readOpus() throws Exception {
+        ByteBuffer head = ByteBuffer.allocate(19).order(ByteOrder.LITTLE_ENDIAN);
+        head.put("OpusHead".getBytes(ISO_8859_1)).put((byte) 1).put((byte) 2).putShort((short) 312)
+            .putInt(48000);
+        byte[] tags = concat("OpusTags".getBytes(ISO_8859_1), comments("ARTIST=foo"),
+                             new byte[16]); // padding
+
+        assertThat(strategy.readTags(write(".opus", head.array(), tags)))
+                .containsExactly("vendor", new Tag("vendor", "test"), "artist",
+                                 new Tag("artist", "foo"));
+    }
+
+    /**
+     * Given an Ogg FLAC file with comments, when I read its tags, then I get them with lower-case
+     * keys.
+     */
+    @Test
+    public void readFlac() throws Exception {
+        byte[] identification = concat("\u007FFLAC".getBytes(ISO_8859_1), new byte[]{ 1, 0, 0, 1 },
+                                       "fLaC".getBytes(ISO_8859_1), new byte[38]);
+        byte[] comments = comments("ARTIST=foo");
+        byte[] block = concat(ByteBuffer.allocate(4).putInt(0x84000000 | comments.length).array(),
+                              comments);
+
+        assertThat(strategy.readTags(write(".oga", identification, block)))
+                .containsExactly("vendor", new Tag("vendor", "test"), "artist",
+                                 new Tag("artist", "foo"));
+    }
+
+    /**
+     * Given an Ogg file with a skeleton stream before the audio, when I read its tags, then I get
+     * the audio stream's comments.
+     */
+    @Test
+    public void skipOtherStreams() throws Exception {
+        File file = File.createTempFile("track", ".ogg", folder.getRoot());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(page(0x02, 0x99, 0, "fishead\0".getBytes(ISO_8859_1)));
+            byte[][] headers = vorbisHeaders(comments("ARTIST=foo"));
+            out.write(page(0x02, SERIAL, 0, headers[0]));
+            out.write(page(0, 0x99, 1, new byte[0]));
+            out.write(page(0, SERIAL, 1, headers[1], headers[2]));
+        }
+
+        assertThat(strategy.readTags(file)).containsEntry("artist", new Tag("artist", "foo"));
+    }
+
+    /**
+     * Given an Ogg file of a codec without comments we can read, when I read its tags, then an
+     * exception is thrown.
+     */
+    @Test(expected = ScannerException.class)
+    public void unknownCodec() throws Exception {
+        strategy.readTags(write(".ogg", "Speex   ".getBytes(ISO_8859_1), comments("ARTIST=foo")));
+    }
+
+    /**
+     * Given a file that isn't Ogg, when I read its tags, then an exception is thrown.
+     */
+    @Test(expected = ScannerException.class)
+    public void notOgg() throws Exception {
+        File file = folder.newFile("track.ogg");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("fLaC".getBytes(ISO_8859_1));
+            out.write(new byte[1024]);
+        }
+
+        strategy.readTags(file);
+    }
+
+    /**
+     * Given a strategy that's read a file, when I read another, then I get only the second file's
+     * tags.
+     */
+    @Test
+    public void reuseStrategy() throws Exception {
+        strategy.readTags(write(".ogg", vorbisHeaders(comments("ARTIST=foo", "ALBUM=bar"))));
+
+        assertThat(strategy.readTags(write(".ogg", vorbisHeaders(comments("TITLE=baz")))))
+                .containsExactly("vendor", new Tag("vendor", "test"), "title",
+                                 new Tag("title", "baz"));
+    }
+
+    /*
+     * Write the identification header on its own page, the other headers on the next, then some
+     * (empty) audio
+     */
+    private File write(String extension, byte[]... headers) throws IOException {
+        File file = File.createTempFile("track", extension, folder.getRoot());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(page(0x02, SERIAL, 0, headers[0]));
+            out.write(page(0, SERIAL, 1, Arrays.copyOfRange(headers, 1, headers.length)));
+            ByteBuffer audio = ByteBuffer.wrap(page(0x04, SERIAL, 2, new byte[100]));
+            audio.order(ByteOrder.LITTLE_ENDIAN).putLong(6, 44100);
+            out.write(audio.array());
+        }
+        return file;
+    }
+
+    private static byte[][] vorbisHeaders(byte[] comments) {
+        ByteBuffer identification = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+        identification.put((byte) 1).put("vorbis".getBytes(ISO_8859_1)).putInt(0).put((byte) 2)
+                      .putInt(44100).putInt(0).putInt(128000).putInt(0).put((byte) 0xB8)
+                      .put((byte) 1);
+
+        byte[] comment = concat(new byte[]{ 3 }, "vorbis".getBytes(ISO_8859_1), comments,
+                                new byte[]{ 1 });
+        byte[] setup = concat(new byte[]{ 5 }, "vorbis".getBytes(ISO_8859_1), new byte[300]);
+        return new byte[][]{ identification.array(), comment, setup };
+    }
+
+    private static byte[] comments(String... comments) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeString(bytes, "test");
+        bytes.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(comments.length)
+                              .array(), 0, 4);
+        for (String comment : comments) {
+            writeString(bytes, comment);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(ByteArrayOutputStream bytes, String value) {
+        byte[] string = value.getBytes(UTF_8);
+        bytes.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(string.length)
+                              .array(), 0, 4);
+        bytes.write(string, 0, string.length);
+    }
+
+    /*
+     * Lay the packets out on as many pages as they need
+     */
+    private static byte[] page(int flags, int serial, int sequence, byte[]... packets) {
+        ByteArrayOutputStream pages = new ByteArrayOutputStream();
+        ByteArrayOutputStream lacing = new ByteArrayOutputStream();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        boolean continued = false;
+        for (byte[] packet : packets) {
+            int remaining = packet.length;
+            int segment;
+            do {
+                // A packet ends with a segment shorter than 255 bytes, even an empty one
+                segment = Math.min(remaining, 255);
+                lacing.write(segment);
+                data.write(packet, packet.length - remaining, segment);
+                remaining -= segment;
+
+                if (lacing.size() == 255) {
+                    writePage(pages, flags | (continued ? 0x01 : 0), serial, sequence++, lacing,
+                              data);
+                    continued = segment == 255;
+                    flags &= ~0x02;
+                }
+            } while (segment == 255);
+        }
+        if (lacing.size() > 0) {
+            writePage(pages, flags | (continued ? 0x01 : 0), serial, sequence, lacing, data);
+        }
+        return pages.toByteArray();
+    }
+
+    private static void writePage(ByteArrayOutputStream pages, int flags, int serial,
+                                  int sequence, ByteArrayOutputStream lacing,
+                                  ByteArrayOutputStream data) {
+        ByteBuffer page = ByteBuffer.allocate(27 + lacing.size() + data.size());
+        page.order(ByteOrder.LITTLE_ENDIAN);
+        page.put("OggS".getBytes(ISO_8859_1)).put((byte) 0).put((byte) flags).putLong(0)
+            .putInt(serial).putInt(sequence).putInt(0).put((byte) lacing.size())
+            .put(lacing.toByteArray()).put(data.toByteArray());
+        page.putInt(22, crc(page.array()));
+        pages.write(page.array(), 0, page.capacity());
+        lacing.reset();
+        data.reset();
+    }
+
+    private static int crc(byte[] bytes) {
+        int crc = 0;
+        for (byte b : bytes) {
+            crc ^= (b & 0xFF) << 24;
+            for (int i = 0; i < 8; i++) {
+                crc = crc < 0 ? crc << 1 ^ 0x04C11DB7 : crc << 1;
+            }
+        }
+        return crc;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            bytes.write(part, 0, part.length);
+        }
+        return bytes.toByteArray();
+    }
+
+}
@@ -1,62 +1,85 @@
 package io.github.patrickconley.arbutus.scanner.visitor.impl;
 
-import android.database.sqlite.SQLiteConstraintException;
 import android.net.Uri;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatchers;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
-import io.github.patrickconley.arbutus.datastorage.AppDatabase;
-import io.github.patrickconley.arbutus.datastorage.library.LibraryManager;
-import io.github.patrickconley.arbutus.datastorage.metadata.TrackManager;
+import io.github.patrickconley.arbutus.datastorage.metadata.dao.TrackDao;
 import io.github.patrickconley.arbutus.datastorage.metadata.model.Tag;
+import io.github.patrickconley.arbutus.datastorage.metadata.model.Track;
+import io.github.patrickconley.arbutus.scanner.NotAudioException;
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
 import io.github.patrickconley.arbutus.scanner.ScannerException;
+import io.github.patrickconley.arbutus.scanner.filter.ScanFilter;
 import io.github.patrickconley.arbutus.scanner.model.impl.MediaFile;
 import io.github.patrickconley.arbutus.scanner.model.impl.MediaFolder;
+import io.github.patrickconley.arbutus.scanner.pipeline.BatchingTrackWriter;
+import io.github.patrickconley.arbutus.scanner.pipeline.ScannedTrack;
+import io.github.patrickconley.arbutus.scanner.pipeline.TrackReader;
+import io.github.patrickconley.arbutus.scanner.quarantine.Quarantine;
 import io.github.patrickconley.arbutus.scanner.strategy.StrategyFactory;
 import io.github.patrickconley.arbutus.scanner.strategy.TagStrategy;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
-import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.StrictStubs.class)
 public class FileScanVisitorTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Mock
-    private AppDatabase db;
+    private BatchingTrackWriter writer;
 
     @Mock
-    private TrackManager trackManager;
+    private StrategyFactory strategyFactory;
 
     @Mock
-    private LibraryManager libraryManager;
+    private TagStrategy tagStrategy;
 
     @Mock
-    private StrategyFactory strategyFactory;
+    private TrackFingerprints fingerprints;
 
     @Mock
-    private TagStrategy tagStrategy;
+    private Quarantine quarantine;
+
+    private FileScanVisitor visitor;
 
-    @InjectMocks
-    @SuppressWarnings("deprecation")
-    private FileScanVisitor visitor = new FileScanVisitor();
+    @Before
+    public void setupVisitor() {
+        visitor = new FileScanVisitor(
+                new TrackReader(fingerprints, strategyFactory, null, quarantine), writer);
+    }
 
     @Before
     public void setupStrategyFactory() throws ScannerException {
-        when(strategyFactory.getStrategy(ArgumentMatchers.<MediaFile>any()))
+        // unchanged files aren't read
+        lenient().when(strategyFactory.getStrategy(ArgumentMatchers.<MediaFile>any()))
                .thenReturn(tagStrategy);
-        when(tagStrategy.readTags(ArgumentMatchers.<File>any()))
+        lenient().when(tagStrategy.readTags(ArgumentMatchers.<File>any()))
                .thenReturn(new HashMap<String, Tag>());
     }
 
@@ -89,8 +112,7 @@ public class FileScanVisitorTest {
         when(mediaFile.getFile()).thenReturn(new File("foo"));
         when(mediaFile.getUri()).thenReturn(mock(Uri.class));
 
-        doThrow(SQLiteConstraintException.class).when(db).runInTransaction(
-                ArgumentMatchers.<Runnable>any());
+        when(writer.add(ArgumentMatchers.<ScannedTrack>any())).thenReturn(false);
 
         assertFalse(visitor.visit(mediaFile));
     }
@@ -100,7 +122,182 @@ public class FileScanVisitorTest {
      */
     @Test
     public void visitingAValidFileSavesIt() {
+        when(writer.add(ArgumentMatchers.<ScannedTrack>any())).thenReturn(true);
+
+        assertTrue(visitor.visit(new MediaFile(new File("foo"))));
+    }
+
+    /**
+     * Given a file that hasn't changed since the last scan, when I visit the file, then it isn't
+     * read again.
+     */
+    @Test
+    public void visitingAnUnchangedFileSkipsIt() throws ScannerException {
+        when(fingerprints.isUnchanged(ArgumentMatchers.<Track>any())).thenReturn(true);
+
+        assertTrue(visitor.visit(new MediaFile(new File("foo"))));
+        verify(fingerprints).claim(ArgumentMatchers.<Track>any());
+        verify(tagStrategy, never()).readTags(ArgumentMatchers.<File>any());
+        verify(writer, never()).add(ArgumentMatchers.<ScannedTrack>any());
+    }
+
+    /**
+     * Given a file that has changed since the last scan, when I visit the file, then it's read
+     * and saved.
+     */
+    @Test
+    public void visitingAChangedFileSavesIt() throws ScannerException {
+        when(fingerprints.isUnchanged(ArgumentMatchers.<Track>any())).thenReturn(false);
+        when(writer.add(ArgumentMatchers.<ScannedTrack>any())).thenReturn(true);
+
+        assertTrue(visitor.visit(new MediaFile(new File("foo"))));
+        verify(tagStrategy).readTags(ArgumentMatchers.<File>any());
+        verify(fingerprints).claim(ArgumentMatchers.<Track>any());
+        verify(writer).add(ArgumentMatchers.<ScannedTrack>any());
+    }
+
+    /**
+     * Given a changed file that can't be read, when I visit the file, then its previous track is
+     * left unclaimed (so it will be removed).
+     */
+    @Test
+    public void visitingAChangedUnreadableFileDoesNotClaimIt() throws ScannerException {
+        when(tagStrategy.readTags(ArgumentMatchers.<File>any())).thenThrow(ScannerException.class);
+
+        assertFalse(visitor.visit(new MediaFile(new File("foo"))));
+        verify(fingerprints, never()).claim(ArgumentMatchers.<Track>any());
+    }
+
+    /**
+     * Given a file that can't be read, when I visit the file, then it's quarantined.
+     */
+    @Test
+    public void visitingAnUnreadableFileQuarantinesIt() throws ScannerException {
+        when(tagStrategy.readTags(ArgumentMatchers.<File>any())).thenThrow(ScannerException.class);
+
+        assertFalse(visitor.visit(new MediaFile(new File("foo"))));
+        verify(quarantine).add(ArgumentMatchers.<Track>any(),
+                               ArgumentMatchers.<Exception>any());
+    }
+
+    /**
+     * Given a file whose reader fails unexpectedly, when I visit the file, then it's quarantined
+     * rather than failing the scan.
+     */
+    @Test
+    public void visitingAFileThatBreaksTheReaderQuarantinesIt() throws ScannerException {
+        when(tagStrategy.readTags(ArgumentMatchers.<File>any()))
+                .thenThrow(IllegalArgumentException.class);
+
+        assertFalse(visitor.visit(new MediaFile(new File("foo"))));
+        verify(quarantine).add(ArgumentMatchers.<Track>any(),
+                               ArgumentMatchers.<Exception>any());
+        verify(writer, never()).add(ArgumentMatchers.<ScannedTrack>any());
+    }
+
+    /**
+     * Given a file that isn't audio, when I visit the file, then it's skipped without being
+     * quarantined.
+     */
+    @Test
+    public void visitingAFileThatIsNotAudioSkipsIt() throws ScannerException {
+        when(strategyFactory.getStrategy(ArgumentMatchers.<MediaFile>any()))
+                .thenThrow(new NotAudioException("Not audio: JPEG"));
+
+        assertFalse(visitor.visit(new MediaFile(new File("cover.jpg"))));
+        verify(quarantine, never()).add(ArgumentMatchers.<Track>any(),
+                                        ArgumentMatchers.<Exception>any());
+        verify(writer, never()).add(ArgumentMatchers.<ScannedTrack>any());
+    }
+
+    /**
+     * Given a quarantined file that hasn't changed, when I visit the file, then it isn't read.
+     */
+    @Test
+    public void visitingAQuarantinedFileSkipsIt() throws ScannerException {
+        when(quarantine.isQuarantined(ArgumentMatchers.<Track>any())).thenReturn(true);
+
+        assertFalse(visitor.visit(new MediaFile(new File("foo"))));
+        verify(tagStrategy, never()).readTags(ArgumentMatchers.<File>any());
+        verify(writer, never()).add(ArgumentMatchers.<ScannedTrack>any());
+    }
+
+    /**
+     * Given a file that can now be read, when I visit the file, then it's released from
+     * quarantine.
+     */
+    @Test
+    public void visitingAReadableFileReleasesIt() {
+        when(writer.add(ArgumentMatchers.<ScannedTrack>any())).thenReturn(true);
+
         assertTrue(visitor.visit(new MediaFile(new File("foo"))));
+        verify(quarantine).release(ArgumentMatchers.<Track>any());
+    }
+
+    /**
+     * Given a file added to a directory, when I update the directory, then the file is read and
+     * saved.
+     */
+    @Test
+    public void updatingADirectorySavesAnAddedFile() throws IOException, ScannerException {
+        File album = folder.newFolder("album");
+        writeFile(new File(album, "01.ogg"));
+
+        assertEquals(1L, FileScanVisitor.visitPaths(Collections.singletonList(album),
+                                                    new ScanFilter(new ScanOptions()), visitor));
+        verify(tagStrategy).readTags(ArgumentMatchers.<File>any());
+        verify(writer).add(ArgumentMatchers.<ScannedTrack>any());
+    }
+
+    /**
+     * Given a directory that's been deleted, when I update it, then the library's tracks under it
+     * are found by their URIs' range, and none is claimed (so they will be removed).
+     */
+    @Test
+    public void updatingADeletedDirectoryLeavesItsTracksUnclaimed() {
+        List<Track> tracks =
+                Arrays.asList(new Track(mock(Uri.class)), new Track(mock(Uri.class)));
+        TrackDao dao = mock(TrackDao.class);
+        when(dao.getByUriRange("file:///music/album/", "file:///music/album0"))
+                .thenReturn(tracks);
+
+        assertEquals(tracks, FileScanVisitor.getTracksUnder(dao, uri("file:///music/album/")));
+        assertEquals(0L, FileScanVisitor.visitPaths(
+                Collections.singletonList(new File(folder.getRoot(), "album")),
+                new ScanFilter(new ScanOptions()), visitor));
+        verify(fingerprints, never()).claim(ArgumentMatchers.<Track>any());
+    }
+
+    /**
+     * Given directories the rules reject, or with a .nomedia file, when I update them, then
+     * nothing under them is read.
+     */
+    @Test
+    public void updatingAnUnscannedDirectoryReadsNothing() throws IOException, ScannerException {
+        File excluded = folder.newFolder("excluded");
+        writeFile(new File(excluded, "01.ogg"));
+        File hidden = folder.newFolder("hidden");
+        writeFile(new File(hidden, "01.ogg"));
+        assertTrue(new File(hidden, ".nomedia").createNewFile());
+        ScanFilter filter = new ScanFilter(
+                new ScanOptions().setExcludedPaths(Collections.singletonList("excluded")));
+
+        assertEquals(0L, FileScanVisitor.visitPaths(
+                Arrays.asList(excluded, hidden, new File(hidden, "01.ogg")), filter, visitor));
+        verify(tagStrategy, never()).readTags(ArgumentMatchers.<File>any());
+        verify(writer, never()).add(ArgumentMatchers.<ScannedTrack>any());
+    }
+
+    private static Uri uri(String value) {
+        Uri uri = mock(Uri.class);
+        when(uri.toString()).thenReturn(value);
+        return uri;
+    }
+
+    private static void writeFile(File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{ 'O', 'g', 'g', 'S' });
+        }
     }
 
 }
@@ -0,0 +1,200 @@
+package io.github.patrickconley.arbutus.scanner.watcher;
+
+import android.os.FileObserver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Feature: watch the library's directories, and scan the paths that change once they've settled.
+ */
+public class LibraryWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BlockingQueue<List<File>> updates = new LinkedBlockingQueue<>();
+    private final LibraryWatcher.Updater updater = new LibraryWatcher.Updater() {
+        @Override
+        public void update(List<File> paths) {
+            updates.add(paths);
+        }
+    };
+
+    private File root;
+    private LibraryWatcher watcher;
+
+    @Before
+    public void createTree() throws IOException {
+        root = folder.newFolder();
+        for (String artist : new String[]{ "a", "b", "c" }) {
+            for (String album : new String[]{ "1", "2", "3" }) {
+                assertThat(new File(root, artist + "/" + album).mkdirs()).isTrue();
+            }
+        }
+    }
+
+    @After
+    public void stopWatcher() {
+        if (watcher != null) {
+            watcher.stop();
+        }
+    }
+
+    /**
+     * Given a tree with more directories than may be watched, when I watch it, then the
+     * shallowest directories are watched, up to the limit.
+     */
+    @Test
+    public void watchesAreBounded() {
+        watcher = new LibraryWatcher(root, new ScanOptions().setMaxWatches(4), updater);
+
+        assertThat(watcher.addWatches(root)).isEqualTo(4);
+        assertThat(watcher.isWatched(root)).isTrue();
+        assertThat(watcher.isWatched(new File(root, "a"))).isTrue();
+        assertThat(watcher.isWatched(new File(root, "c"))).isTrue();
+        assertThat(watcher.isWatched(new File(root, "a/1"))).isFalse();
+    }
+
+    /**
+     * Given a watcher, when I ask whether it watches a library, then it does only for the same
+     * directory with the same rules.
+     */
+    @Test
+    public void isWatching() {
+        watcher = new LibraryWatcher(root, new ScanOptions().setScanHidden(false), updater);
+
+        assertThat(watcher.isWatching(root, new ScanOptions().setScanHidden(false)
+                                                             .setWatchDebounceMillis(0L)))
+                .isTrue();
+        assertThat(watcher.isWatching(new File(root.getPath() + "/"),
+                                      new ScanOptions().setScanHidden(false))).isTrue();
+        assertThat(watcher.isWatching(root, new ScanOptions())).isFalse();
+        assertThat(watcher.isWatching(new File(root, "a"),
+                                      new ScanOptions().setScanHidden(false))).isFalse();
+    }
+
+    /**
+     * Given directories with a .nomedia file or excluded by the rules, when I watch the tree,
+     * then they and their descendants aren't watched.
+     */
+    @Test
+    public void unscannedDirectoriesAreNotWatched() throws IOException {
+        assertThat(new File(root, "a/.nomedia").createNewFile()).isTrue();
+        watcher = new LibraryWatcher(
+                root, new ScanOptions().setExcludedPaths(Collections.singletonList("b")),
+                updater);
+
+        assertThat(watcher.addWatches(root)).isEqualTo(5);
+        assertThat(watcher.isWatched(new File(root, "a"))).isFalse();
+        assertThat(watcher.isWatched(new File(root, "b/1"))).isFalse();
+        assertThat(watcher.isWatched(new File(root, "c/1"))).isTrue();
+    }
+
+    /**
+     * Given an album copied into a watched directory, when its events settle, then the album's
+     * directory is scanned once, and it's watched.
+     */
+    @Test
+    public void copiedAlbum() throws Exception {
+        watcher = new LibraryWatcher(root, new ScanOptions().setWatchDebounceMillis(50L),
+                                     updater);
+        watcher.addWatches(root);
+        File artist = new File(root, "a");
+        File album = new File(artist, "4");
+        assertThat(album.mkdir()).isTrue();
+
+        watcher.onEvent(artist, FileObserver.CREATE | 0x40000000, "4");
+        watcher.onEvent(album, FileObserver.CREATE, "01.ogg");
+        watcher.onEvent(album, FileObserver.CLOSE_WRITE, "01.ogg");
+        watcher.onEvent(album, FileObserver.CREATE, "02.ogg");
+
+        assertThat(updates.poll(5L, TimeUnit.SECONDS)).containsExactly(album.getAbsoluteFile());
+        assertThat(updates.poll(200L, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(watcher.isWatched(album)).isTrue();
+    }
+
+    /**
+     * Given a watched directory that's deleted, when I'm told, then it and its descendants are
+     * no longer watched, and it's scanned.
+     */
+    @Test
+    public void deletedDirectory() throws Exception {
+        watcher = new LibraryWatcher(root, new ScanOptions().setWatchDebounceMillis(0L),
+                                     updater);
+        watcher.addWatches(root);
+        assertThat(watcher.getWatchCount()).isEqualTo(13);
+
+        File artist = new File(root, "b");
+        watcher.onEvent(root, FileObserver.DELETE, "b");
+
+        assertThat(watcher.getWatchCount()).isEqualTo(9);
+        assertThat(updates.poll(5L, TimeUnit.SECONDS)).containsExactly(artist.getAbsoluteFile());
+    }
+
+    /**
+     * Given a watched directory, when a .nomedia file is added to it, then it and its
+     * descendants are no longer watched, and it's scanned; when the file is removed, then
+     * they're watched again.
+     */
+    @Test
+    public void noMediaFile() throws Exception {
+        watcher = new LibraryWatcher(root, new ScanOptions().setWatchDebounceMillis(0L),
+                                     updater);
+        watcher.addWatches(root);
+        File artist = new File(root, "c");
+        File noMedia = new File(artist, ".nomedia");
+        assertThat(noMedia.createNewFile()).isTrue();
+
+        watcher.onEvent(artist, FileObserver.CREATE, ".nomedia");
+
+        assertThat(watcher.getWatchCount()).isEqualTo(9);
+        assertThat(watcher.isWatched(new File(artist, "1"))).isFalse();
+        assertThat(updates.poll(5L, TimeUnit.SECONDS)).containsExactly(artist.getAbsoluteFile());
+
+        assertThat(noMedia.delete()).isTrue();
+        watcher.onEvent(artist, FileObserver.DELETE, ".nomedia");
+
+        assertThat(updates.poll(5L, TimeUnit.SECONDS)).containsExactly(artist.getAbsoluteFile());
+        assertThat(watcher.getWatchCount()).isEqualTo(13);
+    }
+
+    /**
+     * Given a watched album, when it's renamed to a hidden name, then its old path is scanned,
+     * and its new one isn't.
+     */
+    @Test
+    public void albumMovedToHiddenName() throws Exception {
+        watcher = new LibraryWatcher(root, new ScanOptions().setScanHidden(false)
+                                                            .setWatchDebounceMillis(0L), updater);
+        watcher.addWatches(root);
+        File artist = new File(root, "a");
+        File album = new File(artist, "1");
+        File hidden = new File(artist, ".1");
+        assertThat(album.renameTo(hidden)).isTrue();
+
+        watcher.onEvent(artist, FileObserver.MOVED_FROM | 0x40000000, "1");
+        watcher.onEvent(artist, FileObserver.MOVED_TO | 0x40000000, ".1");
+
+        assertThat(updates.poll(5L, TimeUnit.SECONDS)).containsExactly(album.getAbsoluteFile());
+        assertThat(updates.poll(200L, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(watcher.isWatched(album)).isFalse();
+        assertThat(watcher.isWatched(hidden)).isFalse();
+    }
+
+}
@@ -0,0 +1,87 @@
+package io.github.patrickconley.arbutus.scanner.watcher;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Feature: gather filesystem events' paths until they settle, scanning each changed subtree once.
+ */
+public class PathCoalescerTest {
+
+    private static final File ALBUM = new File("/music/album");
+
+    /**
+     * Given a directory that's pending, when I add paths under it, then only the directory is
+     * drained.
+     */
+    @Test
+    public void pathsUnderPendingDirectory() {
+        PathCoalescer coalescer = new PathCoalescer(0L, 0L);
+
+        coalescer.add(ALBUM);
+        coalescer.add(new File(ALBUM, "01.ogg"));
+        coalescer.add(new File(ALBUM, "disc 2/01.ogg"));
+        coalescer.add(ALBUM);
+
+        assertThat(coalescer.drain()).containsExactly(ALBUM.getAbsoluteFile());
+        assertThat(coalescer.toString()).contains("events=4, batches=1, paths=1");
+    }
+
+    /**
+     * Given paths that are pending, when I add a directory above them, then they're replaced by
+     * the directory, but a sibling with a similar name isn't.
+     */
+    @Test
+    public void directoryAbovePendingPaths() {
+        PathCoalescer coalescer = new PathCoalescer(0L, 0L);
+        File sibling = new File("/music/album 2/01.ogg");
+
+        coalescer.add(new File(ALBUM, "01.ogg"));
+        coalescer.add(new File(ALBUM, "02.ogg"));
+        coalescer.add(sibling);
+        coalescer.add(ALBUM);
+
+        assertThat(coalescer.drain()).containsExactly(ALBUM.getAbsoluteFile(),
+                                                      sibling.getAbsoluteFile());
+        assertThat(coalescer.isEmpty()).isTrue();
+    }
+
+    /**
+     * Given events that keep arriving, when I check the paths, then they aren't due until the
+     * events stop.
+     */
+    @Test
+    public void quietInterval() throws InterruptedException {
+        PathCoalescer coalescer = new PathCoalescer(60000L, 120000L);
+        assertThat(coalescer.getMillisUntilDue()).isEqualTo(60000L);
+
+        coalescer.add(ALBUM);
+        assertThat(coalescer.getMillisUntilDue()).isGreaterThan(0L);
+
+        coalescer = new PathCoalescer(50L, 60000L);
+        coalescer.add(ALBUM);
+        Thread.sleep(100L);
+        assertThat(coalescer.getMillisUntilDue()).isEqualTo(0L);
+    }
+
+    /**
+     * Given events that never stop, when the first has waited for the longest delay, then the
+     * paths are due.
+     */
+    @Test
+    public void maxDelay() throws InterruptedException {
+        PathCoalescer coalescer = new PathCoalescer(50L, 100L);
+
+        coalescer.add(ALBUM);
+        for (int i = 0; i < 6; i++) {
+            Thread.sleep(25L);
+            coalescer.add(new File(ALBUM, i + ".ogg"));
+        }
+
+        assertThat(coalescer.getMillisUntilDue()).isEqualTo(0L);
+    }
+
+}
@@ -0,0 +1,70 @@
+package io.github.patrickconley.arbutus.settings;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.preference.PreferenceManager;
+
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
+import io.github.patrickconley.arbutus.scanner.view.LibraryWatcherService;
+
+/**
+ * Turn the settings into scan options, and keep the library's watcher in step with them.
+ */
+public final class ScanPreferences {
+
+    private static final long BYTES_PER_KB = 1024L;
+
+    private ScanPreferences() {
+    }
+
+    /**
+     * @return Options with the settings' rules for which files to scan
+     */
+    public static ScanOptions getScanOptions(Context context, SharedPreferences preferences) {
+        return new ScanOptions()
+                .setIncludedExtensions(split(preferences.getString(
+                        Settings.SCAN_EXTENSIONS.getKey(),
+                        context.getString(R.string.setting_scan_extensions_default)), "[,\\s]+"))
+                .setExcludedPaths(split(preferences.getString(
+                        Settings.SCAN_EXCLUDED_PATHS.getKey(), ""), "[\\n,]+"))
+                .setMinFileSize(BYTES_PER_KB * parseSize(preferences.getString(
+                        Settings.SCAN_MIN_FILE_SIZE.getKey(),
+                        context.getString(R.string.setting_scan_min_file_size_default))))
+                .setScanHidden(preferences.getBoolean(Settings.SCAN_HIDDEN.getKey(), true));
+    }
+
+    /**
+     * Watch the library with the current rules if it's been chosen and watching is on; otherwise
+     * stop watching.
+     */
+    public static void updateWatcher(Context context) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        String libraryPath = preferences.getString(Settings.LIBRARY_PATH.getKey(), null);
+        if (libraryPath != null && preferences.getBoolean(Settings.WATCH_LIBRARY.getKey(), true)) {
+            LibraryWatcherService.startWatching(context, libraryPath,
+                                                getScanOptions(context, preferences));
+        } else {
+            LibraryWatcherService.stopWatching(context);
+        }
+    }
+
+    /*
+     * Empty entries are ignored by the scan filter
+     */
+    private static List<String> split(String value, String separator) {
+        return Arrays.asList(value.trim().split(separator));
+    }
+
+    private static long parseSize(String value) {
+        try {
+            return Math.max(0L, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+}
@@ -2,7 +2,10 @@ package io.github.patrickconley.arbutus.settings;
 
 // Keys must match those in preferences.xml
 public enum Settings {
-    LIBRARY_PATH("library path"), SCAN_NOW("scan library"),;
+    LIBRARY_PATH("library path"), SCAN_NOW("scan library"), SCAN_VERIFY("scan library verify"),
+    SCAN_REBUILD("scan library rebuild"), SCAN_EXTENSIONS("scan extensions"),
+    SCAN_EXCLUDED_PATHS("scan excluded paths"), SCAN_MIN_FILE_SIZE("scan minimum file size"),
+    SCAN_HIDDEN("scan hidden"), SCAN_QUARANTINE("scan quarantine"), WATCH_LIBRARY("watch library"),;
 
     private final String key;
 
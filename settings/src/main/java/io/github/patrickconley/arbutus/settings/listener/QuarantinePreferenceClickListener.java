@@ -0,0 +1,75 @@
+package io.github.patrickconley.arbutus.settings.listener;
+
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.AsyncTask;
+
+import androidx.appcompat.app.AlertDialog;
+import androidx.preference.Preference;
+
+import java.util.List;
+
+import io.github.patrickconley.arbutus.scanner.quarantine.Quarantine;
+import io.github.patrickconley.arbutus.settings.R;
+
+/**
+ * List the files the scanner couldn't read (and so skips until they change), offering to clear
+ * the list so the next scan tries them again. The library is read and written off the main
+ * thread.
+ */
+public final class QuarantinePreferenceClickListener
+        implements Preference.OnPreferenceClickListener {
+
+    @Override
+    public boolean onPreferenceClick(Preference preference) {
+        new ListTask(preference.getContext()).execute();
+        return true;
+    }
+
+    private static final class ListTask extends AsyncTask<Void, Void, List<String>> {
+        private final Context context;
+
+        ListTask(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        protected List<String> doInBackground(Void... voids) {
+            return Quarantine.describeAll(context);
+        }
+
+        @Override
+        protected void onPostExecute(List<String> files) {
+            AlertDialog.Builder dialog = new AlertDialog.Builder(context)
+                    .setTitle(R.string.setting_scan_quarantine_title)
+                    .setNegativeButton(android.R.string.cancel, null);
+            if (files.isEmpty()) {
+                dialog.setMessage(R.string.setting_scan_quarantine_empty);
+            } else {
+                dialog.setItems(files.toArray(new String[0]), null)
+                      .setPositiveButton(R.string.setting_scan_quarantine_clear,
+                                         new DialogInterface.OnClickListener() {
+                                             @Override
+                                             public void onClick(DialogInterface d, int which) {
+                                                 new ClearTask(context).execute();
+                                             }
+                                         });
+            }
+            dialog.show();
+        }
+    }
+
+    private static final class ClearTask extends AsyncTask<Void, Void, Void> {
+        private final Context context;
+
+        ClearTask(Context context) {
+            this.context = context.getApplicationContext();
+        }
+
+        @Override
+        protected Void doInBackground(Void... voids) {
+            Quarantine.releaseAll(context);
+            return null;
+        }
+    }
+}
@@ -1,18 +1,44 @@
 package io.github.patrickconley.arbutus.settings.listener;
 
+import android.content.Context;
+import android.content.SharedPreferences;
+
 import androidx.preference.Preference;
 
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
 import io.github.patrickconley.arbutus.scanner.view.LibraryScannerService;
+import io.github.patrickconley.arbutus.settings.ScanPreferences;
 import io.github.patrickconley.arbutus.settings.Settings;
 
 public final class ScanNowPreferenceClickListener
         implements Preference.OnPreferenceClickListener {
 
+    private final ScanOptions.Mode mode;
+    private final boolean checkEveryFile;
+
+    /**
+     * @param mode           Whether to scan only what's changed, or rebuild the library
+     * @param checkEveryFile whether to list every folder, rather than skipping those that
+     *                       haven't changed since the last scan
+     */
+    public ScanNowPreferenceClickListener(ScanOptions.Mode mode, boolean checkEveryFile) {
+        this.mode = mode;
+        this.checkEveryFile = checkEveryFile;
+    }
+
     @Override
     public boolean onPreferenceClick(Preference preference) {
-        String libraryPath =
-                preference.getSharedPreferences().getString(Settings.LIBRARY_PATH.getKey(), null);
-        LibraryScannerService.startActionScanLibrary(preference.getContext(), libraryPath);
+        Context context = preference.getContext();
+        SharedPreferences preferences = preference.getSharedPreferences();
+
+        String libraryPath = preferences.getString(Settings.LIBRARY_PATH.getKey(), null);
+        ScanOptions options = ScanPreferences.getScanOptions(context, preferences)
+                .setMode(mode)
+                .setPipelined(true)
+                .setBulkLibraryBuild(true)
+                .setPruneUnchangedDirectories(!checkEveryFile)
+                .setThreadCount(Runtime.getRuntime().availableProcessors());
+        LibraryScannerService.startActionScanLibrary(context, libraryPath, options);
 
         return true;
     }
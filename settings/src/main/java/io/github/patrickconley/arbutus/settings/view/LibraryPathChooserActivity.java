@@ -8,6 +8,7 @@ import androidx.preference.PreferenceManager;
 
 import com.codekidlabs.storagechooser.StorageChooser;
 
+import io.github.patrickconley.arbutus.settings.ScanPreferences;
 import io.github.patrickconley.arbutus.settings.Settings;
 
 public class LibraryPathChooserActivity extends AppCompatActivity
@@ -36,6 +37,7 @@ public class LibraryPathChooserActivity extends AppCompatActivity
                          .edit()
                          .putString(Settings.LIBRARY_PATH.getKey(), path)
                          .apply();
+        ScanPreferences.updateWatcher(this);
         finish();
     }
 
@@ -2,12 +2,19 @@ package io.github.patrickconley.arbutus.settings.view;
 
 import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.text.InputType;
+import android.widget.EditText;
 
+import androidx.annotation.NonNull;
+import androidx.preference.EditTextPreference;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceFragmentCompat;
 
+import io.github.patrickconley.arbutus.scanner.ScanOptions;
 import io.github.patrickconley.arbutus.settings.R;
+import io.github.patrickconley.arbutus.settings.ScanPreferences;
 import io.github.patrickconley.arbutus.settings.Settings;
+import io.github.patrickconley.arbutus.settings.listener.QuarantinePreferenceClickListener;
 import io.github.patrickconley.arbutus.settings.listener.ScanNowPreferenceClickListener;
 
 import static java.util.Objects.requireNonNull;
@@ -18,6 +25,22 @@ public class SettingsFragment extends PreferenceFragmentCompat
     @Override
     public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
         setPreferencesFromResource(R.xml.preferences, rootKey);
+
+        getExcludedPathsPreference().setOnBindEditTextListener(
+                new EditTextPreference.OnBindEditTextListener() {
+                    @Override
+                    public void onBindEditText(@NonNull EditText editText) {
+                        editText.setInputType(
+                                InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_FLAG_MULTI_LINE);
+                    }
+                });
+        getMinFileSizePreference().setOnBindEditTextListener(
+                new EditTextPreference.OnBindEditTextListener() {
+                    @Override
+                    public void onBindEditText(@NonNull EditText editText) {
+                        editText.setInputType(InputType.TYPE_CLASS_NUMBER);
+                    }
+                });
     }
 
     @Override
@@ -27,7 +50,14 @@ public class SettingsFragment extends PreferenceFragmentCompat
 
         getLibraryPathPreference().setSummaryProvider(new LibraryPathPreferenceSummaryProvider());
 
-        getScanNowPreference().setOnPreferenceClickListener(new ScanNowPreferenceClickListener());
+        getScanNowPreference().setOnPreferenceClickListener(
+                new ScanNowPreferenceClickListener(ScanOptions.Mode.INCREMENTAL, false));
+        getScanVerifyPreference().setOnPreferenceClickListener(
+                new ScanNowPreferenceClickListener(ScanOptions.Mode.INCREMENTAL, true));
+        getScanRebuildPreference().setOnPreferenceClickListener(
+                new ScanNowPreferenceClickListener(ScanOptions.Mode.REBUILD, true));
+        getQuarantinePreference()
+                .setOnPreferenceClickListener(new QuarantinePreferenceClickListener());
         onSharedPreferenceChanged(getSharedPreferences(), Settings.LIBRARY_PATH.getKey());
     }
 
@@ -41,8 +71,20 @@ public class SettingsFragment extends PreferenceFragmentCompat
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
 
         if (key.equals(Settings.LIBRARY_PATH.getKey())) {
-            getScanNowPreference().setEnabled(
-                    sharedPreferences.getString(Settings.LIBRARY_PATH.getKey(), null) != null);
+            boolean hasLibraryPath =
+                    sharedPreferences.getString(Settings.LIBRARY_PATH.getKey(), null) != null;
+            getScanNowPreference().setEnabled(hasLibraryPath);
+            getScanVerifyPreference().setEnabled(hasLibraryPath);
+            getScanRebuildPreference().setEnabled(hasLibraryPath);
+        }
+
+        // The path is watched when it's chosen (see LibraryPathChooserActivity)
+        if (key.equals(Settings.WATCH_LIBRARY.getKey()) ||
+            key.equals(Settings.SCAN_EXTENSIONS.getKey()) ||
+            key.equals(Settings.SCAN_EXCLUDED_PATHS.getKey()) ||
+            key.equals(Settings.SCAN_MIN_FILE_SIZE.getKey()) ||
+            key.equals(Settings.SCAN_HIDDEN.getKey())) {
+            ScanPreferences.updateWatcher(requireContext());
         }
 
     }
@@ -59,4 +101,26 @@ public class SettingsFragment extends PreferenceFragmentCompat
         return requireNonNull(findPreference(Settings.SCAN_NOW.getKey()));
     }
 
+    private Preference getScanVerifyPreference() {
+        return requireNonNull(findPreference(Settings.SCAN_VERIFY.getKey()));
+    }
+
+    private Preference getScanRebuildPreference() {
+        return requireNonNull(findPreference(Settings.SCAN_REBUILD.getKey()));
+    }
+
+    private Preference getQuarantinePreference() {
+        return requireNonNull(findPreference(Settings.SCAN_QUARANTINE.getKey()));
+    }
+
+    private EditTextPreference getExcludedPathsPreference() {
+        return requireNonNull(
+                (EditTextPreference) findPreference(Settings.SCAN_EXCLUDED_PATHS.getKey()));
+    }
+
+    private EditTextPreference getMinFileSizePreference() {
+        return requireNonNull(
+                (EditTextPreference) findPreference(Settings.SCAN_MIN_FILE_SIZE.getKey()));
+    }
+
 }